@@ -0,0 +1,123 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the getters of {@link Category} that the card table, the category
+ * tree and learn sessions call all the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CategoryBenchmark {
+	@Param({ "1000", "100000" })
+	private int m_cards;
+
+	private Category m_root;
+	private Category m_leaf;
+
+	@Setup
+	public void setup() {
+		m_root = SyntheticLessons.create(m_cards).getRootCategory();
+
+		m_leaf = m_root;
+		while (!m_leaf.getChildCategories().isEmpty()) {
+			final List<Category> children = m_leaf.getChildCategories();
+			m_leaf = children.get(children.size() - 1);
+		}
+	}
+
+	@Benchmark
+	public int cardCount() {
+		return m_root.getCardCount();
+	}
+
+	@Benchmark
+	public int cardCountPerLevel() {
+		int count = 0;
+		for (int level = 0; level < m_root.getNumberOfDecks(); level++) {
+			count += m_root.getCardCount(level);
+		}
+
+		return count;
+	}
+
+	@Benchmark
+	public List<Card> cards() {
+		return m_root.getCards();
+	}
+
+	@Benchmark
+	public int cardsView() {
+		int count = 0;
+		for (final Card card : m_root.getCardsView()) {
+			count += card.getLevel();
+		}
+
+		return count;
+	}
+
+	@Benchmark
+	public List<Card> learnedCards() {
+		return m_root.getLearnedCards();
+	}
+
+	@Benchmark
+	public List<Card> expiredCards() {
+		return m_root.getExpiredCards();
+	}
+
+	@Benchmark
+	public String path() {
+		return m_leaf.getPath();
+	}
+
+	@Benchmark
+	public int depth() {
+		return m_leaf.getDepth();
+	}
+
+	@Benchmark
+	public Category childCategory() {
+		return m_root.getChildCategory("category5"); //$NON-NLS-1$
+	}
+
+	@Benchmark
+	public List<Category> subtreeList() {
+		return m_root.getSubtreeList();
+	}
+}
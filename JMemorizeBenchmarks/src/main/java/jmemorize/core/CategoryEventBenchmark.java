@@ -0,0 +1,89 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of firing card events in a deep category tree with many
+ * observers per category. Run with <code>-prof gc</code> to see the
+ * allocations per event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CategoryEventBenchmark {
+	private static final int DEPTH = 10;
+	private static final int OBSERVERS_PER_CATEGORY = 50;
+
+	private Category m_leaf;
+	private Card m_card;
+	private int m_notifications;
+
+	@Setup
+	public void setup() {
+		final Category root = new Category("root");
+		m_leaf = root;
+
+		for (int i = 0; i < DEPTH; i++) {
+			for (int j = 0; j < OBSERVERS_PER_CATEGORY; j++) {
+				m_leaf.addObserver(new CountingObserver());
+			}
+
+			if (i < DEPTH - 1) {
+				m_leaf = m_leaf.addCategoryChild(new Category("level" + i));
+			}
+		}
+
+		m_card = new Card("front", "back");
+		m_leaf.addCard(m_card);
+	}
+
+	@Benchmark
+	public int fireCardEvent() {
+		m_leaf.fireCardEvent(Events.EDITED_EVENT, m_card, m_leaf, 0);
+		return m_notifications;
+	}
+
+	private class CountingObserver implements CategoryObserver {
+		@Override
+		public void onCardEvent(final int type, final Card card, final Category category, final int deck) {
+			m_notifications++;
+		}
+
+		@Override
+		public void onCategoryEvent(final int type, final Category category) {
+			m_notifications++;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link DuplicateDetector} on all cards of a lesson, and on an
+ * import of a tenth of its size that copies every second card of the lesson.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DuplicateDetectorBenchmark {
+	@Param({ "10000", "100000" })
+	private int m_cards;
+
+	private List<Card> m_lessonCards;
+	private List<Card> m_incomingCards;
+
+	@Setup
+	public void setup() {
+		m_lessonCards = SyntheticLessons.create(m_cards).getRootCategory().getCards();
+
+		m_incomingCards = new ArrayList<Card>();
+		for (int i = 0; i < m_cards / 10; i += 2) {
+			final Card card = m_lessonCards.get(i);
+			m_incomingCards.add(new Card(card.getFrontSide().getText().getUnformatted(),
+					card.getBackSide().getText().getUnformatted()));
+			m_incomingCards.add(SyntheticLessons.create(1, 1, 0, i).getRootCategory().getCards().get(0));
+		}
+	}
+
+	@Benchmark
+	public List<List<Card>> lesson() {
+		return new DuplicateDetector().findDuplicates(m_lessonCards);
+	}
+
+	@Benchmark
+	public List<List<Card>> incoming() {
+		return new DuplicateDetector().findDuplicates(m_incomingCards, m_lessonCards);
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures creating {@link FormattedText}s, which happens for both sides of
+ * every card that is loaded or edited.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormattedTextBenchmark {
+	private static final int TEXTS = 1024;
+
+	private final String[] m_plainTexts = new String[TEXTS];
+	private final String[] m_styledTexts = new String[TEXTS];
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(SyntheticLessons.DEFAULT_SEED);
+		for (int i = 0; i < TEXTS; i++) {
+			m_plainTexts[i] = SyntheticLessons.createText(random, 2, 8);
+			m_styledTexts[i] = "<b>" + SyntheticLessons.createText(random, 1, 3) + "</b> &lt;" //-NLS-1$ //-NLS-2$
+					+ SyntheticLessons.createText(random, 1, 3) + "&gt; <i>" //-NLS-1$
+					+ SyntheticLessons.createText(random, 1, 3) + "</i><img src=\"image" + i + ".png\"/>"; //-NLS-1$ //-NLS-2$
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TEXTS)
+	public void plain(final Blackhole blackhole) {
+		for (final String text : m_plainTexts) {
+			blackhole.consume(FormattedText.formatted(text));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TEXTS)
+	public void styled(final Blackhole blackhole) {
+		for (final String text : m_styledTexts) {
+			blackhole.consume(FormattedText.formatted(text));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TEXTS)
+	public void unformatted(final Blackhole blackhole) {
+		for (final String text : m_plainTexts) {
+			blackhole.consume(FormattedText.unformatted(text));
+		}
+	}
+}
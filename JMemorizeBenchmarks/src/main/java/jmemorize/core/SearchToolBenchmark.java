@@ -0,0 +1,130 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link SearchTool#search} over all cards of a lesson, as done by
+ * the find frame before, and the same searches with the {@link SearchIndex}
+ * of the lesson. The find frame now only takes the candidates from the index
+ * on the event dispatch thread, and refines the previous results when the
+ * search text gets longer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchToolBenchmark {
+	@Param({ "1000", "100000", "500000" })
+	private int m_cards;
+
+	// a frequent syllable and a word that doesn't occur at all
+	@Param({ "ka", "kalomine" })
+	private String m_text;
+
+	private Category m_root;
+	private SearchIndex m_index;
+
+	// the results for the search text without its last character
+	private List<Card> m_previousResults;
+
+	@Setup
+	public void setup() {
+		final Lesson lesson = SyntheticLessons.create(m_cards);
+		m_root = lesson.getRootCategory();
+		m_index = lesson.getSearchIndex();
+		m_previousResults = m_index.search(m_text.substring(0, m_text.length() - 1), SearchTool.BOTH_SIDES, false,
+				m_root);
+	}
+
+	@Benchmark
+	public List<Card> ignoreCase() {
+		return SearchTool.search(m_text, SearchTool.BOTH_SIDES, false, m_root.getCardsView());
+	}
+
+	@Benchmark
+	public List<Card> matchCase() {
+		return SearchTool.search(m_text, SearchTool.BOTH_SIDES, true, m_root.getCardsView());
+	}
+
+	@Benchmark
+	public List<Card> frontSide() {
+		return SearchTool.search(m_text, SearchTool.FRONT_SIDE, false, m_root.getCardsView());
+	}
+
+	@Benchmark
+	public List<Card> indexedIgnoreCase() {
+		return m_index.search(m_text, SearchTool.BOTH_SIDES, false, m_root);
+	}
+
+	@Benchmark
+	public List<Card> indexedMatchCase() {
+		return m_index.search(m_text, SearchTool.BOTH_SIDES, true, m_root);
+	}
+
+	@Benchmark
+	public List<Card> indexedSubtree() {
+		return m_index.search(m_text, SearchTool.BOTH_SIDES, false, m_root.getChildCategories().get(0));
+	}
+
+	@Benchmark
+	public List<Card> indexedCandidates() {
+		return m_index.getCandidates(m_text, SearchTool.BOTH_SIDES, false, m_root);
+	}
+
+	@Benchmark
+	public List<Card> refined() {
+		final List<Card> cards = new ArrayList<Card>(m_previousResults);
+		cards.removeIf(SearchTool.matcher(m_text, SearchTool.BOTH_SIDES, false).negate());
+		return cards;
+	}
+
+	@Benchmark
+	public List<Card> regex() {
+		return SearchTool.search(m_text + "[a-z]", SearchTool.REGEX_MODE, SearchTool.BOTH_SIDES, false,
+				m_root.getCardsView());
+	}
+
+	@Benchmark
+	public List<Card> fuzzy() {
+		return SearchTool.search(m_text, SearchTool.FUZZY_MODE, SearchTool.BOTH_SIDES, false, m_root.getCardsView());
+	}
+
+	@Benchmark
+	public List<Card> indexedFuzzy() {
+		return m_index.search(m_text, SearchTool.FUZZY_MODE, SearchTool.BOTH_SIDES, false, m_root);
+	}
+}
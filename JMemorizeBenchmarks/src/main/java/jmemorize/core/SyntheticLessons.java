@@ -0,0 +1,138 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import jmemorize.core.learn.LearnSettings;
+
+/**
+ * Creates lessons with made-up categories and cards for the benchmarks.
+ *
+ * All names, texts, levels and dates only depend on the given seed, so the
+ * same arguments always give the same lesson and benchmark results can be
+ * compared between commits. Dates are relative to a fixed point in time
+ * instead of the current time.
+ */
+public final class SyntheticLessons {
+	public static final long DEFAULT_SEED = 4711;
+
+	public static final int DEFAULT_CHILDREN = 8;
+	public static final int DEFAULT_DEPTH = 3;
+
+	// 26-Nov-2011 11:38:16
+	public static final long BASE_TIME = 1322307496000L;
+
+	private static final String[] SYLLABLES = { "ka", "lo", "mi", "ne", "su", "ta", "ri", "po", "ve", "da", "gu",
+			"zo", "bar", "ten", "lis", "mon", "qua", "sch", "ij", "aan" };
+
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+	private SyntheticLessons() {
+	}
+
+	/**
+	 * @return a lesson with given number of cards in a category tree of the
+	 *         default size, using the default seed.
+	 */
+	public static Lesson create(final int cards) {
+		return create(cards, DEFAULT_CHILDREN, DEFAULT_DEPTH, DEFAULT_SEED);
+	}
+
+	/**
+	 * @param cards
+	 *            the number of cards.
+	 * @param children
+	 *            the number of child categories of every category that isn't a
+	 *            leaf.
+	 * @param depth
+	 *            the depth of the leaf categories. The root has depth 0.
+	 * @param seed
+	 *            the seed for all random choices.
+	 */
+	public static Lesson create(final int cards, final int children, final int depth, final long seed) {
+		final Random random = new Random(seed);
+		final Lesson lesson = new Lesson(false);
+
+		final List<Category> categories = new ArrayList<Category>();
+		addCategories(lesson.getRootCategory(), children, depth, categories);
+
+		for (int i = 0; i < cards; i++) {
+			final Category category = categories.get(random.nextInt(categories.size()));
+			addCard(category, random);
+		}
+
+		return lesson;
+	}
+
+	/**
+	 * @return a sentence of made-up words that only depends on the state of
+	 *         given random.
+	 */
+	public static String createText(final Random random, final int minWords, final int maxWords) {
+		final int words = minWords + random.nextInt(maxWords - minWords + 1);
+
+		final StringBuilder text = new StringBuilder();
+		for (int i = 0; i < words; i++) {
+			if (i > 0) {
+				text.append(' ');
+			}
+
+			final int syllables = 1 + random.nextInt(4);
+			for (int j = 0; j < syllables; j++) {
+				text.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+			}
+		}
+
+		return text.toString();
+	}
+
+	private static void addCategories(final Category category, final int children, final int depth,
+			final List<Category> categories) {
+		categories.add(category);
+
+		if (depth == 0)
+			return;
+
+		for (int i = 0; i < children; i++) {
+			final Category child = category.addCategoryChild(new Category("category" + i)); //$NON-NLS-1$
+			addCategories(child, children, depth - 1, categories);
+		}
+	}
+
+	private static void addCard(final Category category, final Random random) {
+		final Date created = new Date(BASE_TIME - random.nextInt(365) * DAY);
+		final Card card = new Card(created, createText(random, 1, 3), createText(random, 2, 8));
+
+		// about half of the cards are learned, spread over all levels
+		final int level = random.nextBoolean() ? 0 : 1 + random.nextInt(LearnSettings.SCHEDULE_LEVELS - 1);
+		category.addCard(card, level);
+
+		if (level > 0) {
+			final long tested = created.getTime() + random.nextInt(30) * DAY;
+			card.setDateTested(new Date(tested));
+			card.setDateExpired(new Date(tested + level * DAY + random.nextInt(60) * DAY - 30 * DAY));
+			card.setDateTouched(new Date(tested));
+		}
+	}
+}
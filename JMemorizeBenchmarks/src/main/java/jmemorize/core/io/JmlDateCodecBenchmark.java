@@ -0,0 +1,112 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import jmemorize.core.SyntheticLessons;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures formatting and parsing the dates of lesson files with
+ * {@link JmlDateCodec}, compared to the {@link DateFormat} that was used
+ * before. Every card has up to five dates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JmlDateCodecBenchmark {
+	private static final int DATES = 1024;
+
+	private final Date[] m_dates = new Date[DATES];
+	private final String[] m_texts = new String[DATES];
+
+	private JmlDateCodec m_codec;
+	private DateFormat m_dateFormat;
+
+	@Setup
+	public void setup() {
+		m_codec = new JmlDateCodec(TimeZone.getDefault(),
+				JmlDateCodec.Encoding.MEDIUM);
+		m_dateFormat = DateFormat.getDateTimeInstance(DateFormat.MEDIUM,
+				DateFormat.MEDIUM, Locale.UK);
+
+		final Random random = new Random(SyntheticLessons.DEFAULT_SEED);
+		for (int i = 0; i < DATES; i++) {
+			// within two years before the base time, without milliseconds
+			m_dates[i] = new Date(SyntheticLessons.BASE_TIME
+					- random.nextInt(2 * 365 * 24 * 3600) * 1000L);
+			m_texts[i] = m_codec.format(m_dates[i]);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DATES)
+	public void formatCodec(final Blackhole blackhole) {
+		for (final Date date : m_dates) {
+			blackhole.consume(m_codec.format(date));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DATES)
+	public void formatDateFormat(final Blackhole blackhole) {
+		for (final Date date : m_dates) {
+			blackhole.consume(m_dateFormat.format(date));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DATES)
+	public void parseCodec(final Blackhole blackhole) {
+		for (final String text : m_texts) {
+			blackhole.consume(m_codec.parse(text));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DATES)
+	public void parseDateFormat(final Blackhole blackhole)
+			throws ParseException {
+		for (final String text : m_texts) {
+			blackhole.consume(m_dateFormat.parse(text));
+		}
+	}
+}
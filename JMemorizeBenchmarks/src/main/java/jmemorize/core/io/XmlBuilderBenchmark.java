@@ -0,0 +1,89 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jmemorize.core.Lesson;
+import jmemorize.core.SyntheticLessons;
+
+/**
+ * Measures loading and saving lessons in the JML format. Every operation
+ * takes long enough to be measured on its own, so every call is timed
+ * separately. Whether the files are compressed depends on the settings of
+ * the user that runs the benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class XmlBuilderBenchmark {
+	@Param({ "1000", "100000", "1000000" })
+	private int m_cards;
+
+	private Lesson m_lesson;
+	private File m_loadFile;
+	private File m_saveFile;
+
+	@Setup
+	public void setup() throws Exception {
+		m_lesson = SyntheticLessons.create(m_cards);
+
+		m_loadFile = File.createTempFile("load", ".jml"); //$NON-NLS-1$ //$NON-NLS-2$
+		m_saveFile = File.createTempFile("save", ".jml"); //$NON-NLS-1$ //$NON-NLS-2$
+		XmlBuilder.saveAsXMLFile(m_loadFile, m_lesson);
+	}
+
+	@TearDown
+	public void tearDown() {
+		m_loadFile.delete();
+		m_saveFile.delete();
+	}
+
+	@Benchmark
+	public Lesson load() throws Exception {
+		final Lesson lesson = new Lesson(false);
+		XmlBuilder.loadFromXMLFile(m_loadFile, lesson);
+
+		return lesson;
+	}
+
+	@Benchmark
+	public File save() throws Exception {
+		XmlBuilder.saveAsXMLFile(m_saveFile, m_lesson);
+
+		return m_saveFile;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.learn;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.SyntheticLessons;
+
+/**
+ * Measures starting a {@link DefaultLearnSession} and learning all of its
+ * cards. Answers are taken from a seeded random, so every run learns the
+ * same lesson with the same answers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefaultLearnSessionBenchmark {
+	// every answer fails with this probability
+	private static final float FAIL_RATIO = 0.2f;
+
+	@Param({ "1000", "10000" })
+	private int m_cards;
+
+	private final LearnSettings m_settings = new LearnSettings();
+	private Category m_root;
+
+	private Handler[] m_handlers;
+
+	@Setup(Level.Trial)
+	public void rememberHandlers() {
+		m_handlers = Logger.getLogger("").getHandlers(); //-NLS-1$
+	}
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		// learning changes the levels of the cards, so every session gets a
+		// fresh lesson
+		m_root = SyntheticLessons.create(m_cards).getRootCategory();
+	}
+
+	/**
+	 * Every session adds a console handler to the root logger. Remove them
+	 * again, so that later sessions don't get slower because of them.
+	 */
+	@TearDown(Level.Iteration)
+	public void removeHandlers() {
+		final Logger logger = Logger.getLogger(""); //-NLS-1$
+		for (final Handler handler : logger.getHandlers()) {
+			logger.removeHandler(handler);
+		}
+
+		for (final Handler handler : m_handlers) {
+			logger.addHandler(handler);
+		}
+	}
+
+	@Benchmark
+	public DefaultLearnSession create() {
+		return createSession();
+	}
+
+	@Benchmark
+	public int learnAll() {
+		final DefaultLearnSession session = createSession();
+		session.startLearning();
+
+		final Random random = new Random(SyntheticLessons.DEFAULT_SEED);
+		int checks = 0;
+		while (!session.isQuit()) {
+			session.cardChecked(random.nextFloat() >= FAIL_RATIO, false);
+			checks++;
+		}
+
+		return checks;
+	}
+
+	private DefaultLearnSession createSession() {
+		final List<Card> selectedCards = Collections.emptyList();
+		return new DefaultLearnSession(m_root, m_settings, selectedCards, true, true, new NoSessionProvider());
+	}
+
+	private static class NoSessionProvider implements LearnSessionProvider {
+		@Override
+		public void startLearnSession(final LearnSettings settings, final List<Card> selectedCards,
+				final Category category, final boolean learnUnlearned, final boolean learnExpired) {
+		}
+
+		@Override
+		public void sessionEnded(final LearnSession session) {
+		}
+
+		@Override
+		public boolean isSessionRunning() {
+			return false;
+		}
+
+		@Override
+		public void addLearnSessionObserver(final LearnSessionObserver observer) {
+		}
+
+		@Override
+		public void removeLearnSessionObserver(final LearnSessionObserver observer) {
+		}
+	}
+}
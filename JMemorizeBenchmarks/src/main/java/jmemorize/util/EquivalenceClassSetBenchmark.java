@@ -0,0 +1,103 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.util;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link EquivalenceClassSet} that learn sessions keep their
+ * cards in. Elements are grouped into one class per level, like cards are.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EquivalenceClassSetBenchmark {
+	private static final int CLASSES = 10;
+
+	private static final Comparator<Integer> BY_CLASS = new Comparator<Integer>() {
+		@Override
+		public int compare(final Integer o1, final Integer o2) {
+			return Integer.compare(o1 % CLASSES, o2 % CLASSES);
+		}
+	};
+
+	@Param({ "1000", "100000" })
+	private int m_size;
+
+	private Integer[] m_elements;
+	private EquivalenceClassSet<Integer> m_set;
+	private Iterator<Integer> m_loopIterator;
+	private int m_next;
+
+	@Setup
+	public void setup() {
+		m_elements = new Integer[m_size];
+		for (int i = 0; i < m_size; i++) {
+			m_elements[i] = Integer.valueOf(i);
+		}
+
+		m_set = new EquivalenceClassSet<Integer>(BY_CLASS);
+		for (final Integer element : m_elements) {
+			m_set.add(element);
+		}
+
+		m_loopIterator = m_set.loopIterator();
+	}
+
+	@Benchmark
+	public EquivalenceClassSet<Integer> addAll() {
+		final EquivalenceClassSet<Integer> set = new EquivalenceClassSet<Integer>(BY_CLASS);
+		for (final Integer element : m_elements) {
+			set.add(element);
+		}
+
+		return set;
+	}
+
+	@Benchmark
+	public boolean removeAndAdd() {
+		final Integer element = m_elements[m_next];
+		m_next = (m_next + 1) % m_size;
+
+		m_set.remove(element);
+		return m_set.add(element);
+	}
+
+	@Benchmark
+	public Integer loopIterator() {
+		return m_loopIterator.next();
+	}
+}
@@ -0,0 +1,485 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.learn.LearnHistory.SessionSummary;
+import jmemorize.core.media.MediaRepository;
+import jmemorize.core.media.MediaRepository.MediaItem;
+
+/**
+ * Saves lessons in a compact binary format, as an alternative to JML. Files
+ * with the extension {@link #EXTENSION} are saved and loaded in this format.
+ *
+ * A file starts with a header of fixed size that gives the version of the
+ * format and the offsets of all sections:
+ *
+ * <ul>
+ * <li>strings: the UTF-8 bytes of every distinct text, category name and
+ * image id, each one stored once.</li>
+ * <li>string index: the number of strings and the offset of every string in
+ * the strings section, followed by the offset of its end.</li>
+ * <li>categories: all categories in preorder, each one with the index of its
+ * parent and of its name.</li>
+ * <li>cards: one record per card with its category, deck level, id, texts,
+ * dates, statistics and images. Dates are stored as 8 byte numbers, all other
+ * numbers as variable length integers.</li>
+ * <li>card index: the number of cards and the offset of every card record,
+ * so that a single card can be read without reading the others.</li>
+ * <li>learn history: the learn sessions of the lesson.</li>
+ * <li>media: the bytes of all images the cards refer to, followed by the
+ * media index, which has the id, offset, length and CRC-32 of every
+ * image.</li>
+ * </ul>
+ *
+ * Texts are referred to by their index in the string index. The fixed size
+ * tables let {@link BinaryLessonReader} map a file into memory and read cards
+ * and strings on demand. Readers refuse files of a newer version than
+ * {@link #VERSION}.
+ */
+final class BinaryLessonFormat {
+	static final String EXTENSION = ".jmb"; //$NON-NLS-1$
+
+	// "JMBL"
+	static final int MAGIC = 0x4A4D424C;
+	static final int VERSION = 1;
+
+	// magic, version and the offsets of seven sections
+	static final int HEADER_LENGTH = 4 + 4 + 7 * 8;
+
+	// flags of card records
+	static final int HAS_DATE_TESTED = 1;
+	static final int HAS_DATE_EXPIRED = 2;
+
+	private static final String TEMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+
+	private BinaryLessonFormat() {
+	}
+
+	/**
+	 * @return <code>true</code> if given file is saved and loaded in the
+	 *         binary format.
+	 */
+	static boolean isBinaryFile(final File file) {
+		return file.getName().toLowerCase().endsWith(EXTENSION);
+	}
+
+	/**
+	 * Loads all categories, cards and learn sessions of given file into the
+	 * lesson. Images are added to the media repository and only read from
+	 * the file when they are needed.
+	 */
+	static void load(final File file, final Lesson lesson) throws IOException {
+		// not mapped, so the file can be saved over right after loading
+		try (BinaryLessonReader reader = new BinaryLessonReader(file, false)) {
+			reader.readLesson(lesson);
+			XmlBuilder.ensureUniqueIds(lesson);
+			reader.registerImages(MediaRepository.getInstance());
+		}
+	}
+
+	/**
+	 * Saves the lesson with all images its cards refer to. The file is
+	 * written next to the target first, so images can still be read from
+	 * the old file while it is written. Images that no card refers to are
+	 * removed from the media repository, like when saving JML.
+	 */
+	static void save(final File file, final Lesson lesson) throws IOException {
+		final File temp = new File(file.getPath() + TEMP_SUFFIX);
+		final Map<String, long[]> images;
+
+		try (FileChannel channel = new FileOutputStream(temp).getChannel()) {
+			final Output out = new Output(channel, HEADER_LENGTH);
+			images = new Writer(out, lesson).write(channel);
+		}
+
+		Files.move(temp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+
+		// the images are read from the new file from now on
+		final MediaRepository repository = MediaRepository.getInstance();
+		for (final Map.Entry<String, long[]> entry : images.entrySet()) {
+			final MediaItem item = repository.getImageItem(entry.getKey());
+			final long[] range = entry.getValue();
+
+			if (item != null)
+				item.setSource(new FileRangeSource(file, range[0], range[1],
+						range[2]));
+		}
+
+		// all other images would still be read from the replaced file
+		repository.retain(images.keySet());
+	}
+
+	/**
+	 * Writes the sections of a lesson.
+	 */
+	private static class Writer {
+		private final Output m_out;
+		private final Lesson m_lesson;
+		private final MediaRepository m_repository = MediaRepository
+				.getInstance();
+
+		private final Map<String, Integer> m_strings = new LinkedHashMap<String, Integer>();
+		private final Map<Category, Integer> m_categories = new HashMap<Category, Integer>();
+		private final List<Category> m_categoryList;
+
+		Writer(final Output out, final Lesson lesson) {
+			m_out = out;
+			m_lesson = lesson;
+			m_categoryList = lesson.getRootCategory().getSubtreeList();
+		}
+
+		/**
+		 * @return the offset, length and CRC-32 of every image, by id.
+		 */
+		Map<String, long[]> write(final FileChannel channel)
+				throws IOException {
+			final long[] offsets = new long[7];
+			final List<String> imageIds = collectStrings();
+
+			offsets[0] = m_out.position();
+			final int[] stringOffsets = writeStrings();
+
+			offsets[1] = m_out.position();
+			m_out.writeInt(stringOffsets.length - 1);
+			for (final int offset : stringOffsets) {
+				m_out.writeInt(offset);
+			}
+
+			offsets[2] = m_out.position();
+			writeCategories();
+
+			offsets[3] = m_out.position();
+			final int[] cardOffsets = writeCards();
+
+			offsets[4] = m_out.position();
+			m_out.writeInt(cardOffsets.length);
+			for (final int offset : cardOffsets) {
+				m_out.writeInt(offset);
+			}
+
+			offsets[5] = m_out.position();
+			writeLearnHistory();
+
+			final Map<String, long[]> images = writeImages(imageIds);
+
+			offsets[6] = m_out.position();
+			m_out.writeVarint(images.size());
+			for (final Map.Entry<String, long[]> entry : images.entrySet()) {
+				m_out.writeVarint(m_strings.get(entry.getKey()));
+				m_out.writeLong(entry.getValue()[0]);
+				m_out.writeLong(entry.getValue()[1]);
+				m_out.writeInt((int) entry.getValue()[2]);
+			}
+
+			m_out.flush();
+
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			for (final long offset : offsets) {
+				header.putLong(offset);
+			}
+			header.flip();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+
+			return images;
+		}
+
+		/**
+		 * Gives every distinct string an index, in the order of their first
+		 * use.
+		 *
+		 * @return the ids of all images that are referred to.
+		 */
+		private List<String> collectStrings() {
+			final List<String> imageIds = new ArrayList<String>();
+
+			for (final Category category : m_categoryList) {
+				add(category.getName());
+			}
+
+			for (final Category category : m_categoryList) {
+				for (int level = 0; level < category.getNumberOfDecks(); level++) {
+					for (final Card card : category.getLocalCards(level)) {
+						add(card.getFrontSide().getText().getFormatted());
+						add(card.getBackSide().getText().getFormatted());
+
+						addImages(card.getFrontSide().getMedia(), imageIds);
+						addImages(card.getBackSide().getMedia(), imageIds);
+					}
+				}
+			}
+
+			return imageIds;
+		}
+
+		private void addImages(final List<String> ids,
+				final List<String> imageIds) {
+			for (final String id : ids) {
+				final String resolved = m_repository.resolveId(id);
+				if (add(resolved))
+					imageIds.add(resolved);
+			}
+		}
+
+		private boolean add(final String string) {
+			if (m_strings.containsKey(string))
+				return false;
+
+			m_strings.put(string, m_strings.size());
+			return true;
+		}
+
+		private int[] writeStrings() throws IOException {
+			final int[] offsets = new int[m_strings.size() + 1];
+			final long start = m_out.position();
+
+			int i = 0;
+			for (final String string : m_strings.keySet()) {
+				offsets[i++] = offset(start);
+				m_out.write(string.getBytes(StandardCharsets.UTF_8));
+			}
+			offsets[i] = offset(start);
+
+			return offsets;
+		}
+
+		private void writeCategories() throws IOException {
+			m_out.writeVarint(m_categoryList.size());
+
+			for (final Category category : m_categoryList) {
+				final Integer parent = m_categories.get(category.getParent());
+
+				// the root has no parent, all others have index + 1
+				m_out.writeVarint(parent != null ? parent + 1 : 0);
+				m_out.writeVarint(m_strings.get(category.getName()));
+
+				m_categories.put(category, m_categories.size());
+			}
+		}
+
+		private int[] writeCards() throws IOException {
+			final int[] offsets = new int[m_lesson.getRootCategory()
+					.getCardCount()];
+			final long start = m_out.position();
+
+			int i = 0;
+			for (final Category category : m_categoryList) {
+				final int index = m_categories.get(category);
+
+				for (int level = 0; level < category.getNumberOfDecks(); level++) {
+					for (final Card card : category.getLocalCards(level)) {
+						offsets[i++] = offset(start);
+						writeCard(card, index, level);
+					}
+				}
+			}
+
+			return offsets;
+		}
+
+		private void writeCard(final Card card, final int category,
+				final int level) throws IOException {
+			m_out.writeVarint(category);
+			m_out.writeVarint(level);
+			m_out.writeVarint(card.getId());
+			m_out.writeVarint(m_strings.get(card.getFrontSide().getText()
+					.getFormatted()));
+			m_out.writeVarint(m_strings.get(card.getBackSide().getText()
+					.getFormatted()));
+
+			int flags = 0;
+			if (card.getDateTested() != null)
+				flags |= HAS_DATE_TESTED;
+			if (card.getDateExpired() != null)
+				flags |= HAS_DATE_EXPIRED;
+			m_out.writeVarint(flags);
+
+			m_out.writeLong(card.getDateCreated().getTime());
+			m_out.writeLong(card.getDateModified().getTime());
+			m_out.writeLong(card.getDateTouched().getTime());
+			if (card.getDateTested() != null)
+				m_out.writeLong(card.getDateTested().getTime());
+			if (card.getDateExpired() != null)
+				m_out.writeLong(card.getDateExpired().getTime());
+
+			m_out.writeVarint(card.getLearnedAmount(true));
+			m_out.writeVarint(card.getLearnedAmount(false));
+			m_out.writeVarint(card.getSkippedAmount());
+			m_out.writeVarint(card.getTestsPassed());
+			m_out.writeVarint(card.getTestsTotal());
+
+			writeMedia(card.getFrontSide().getMedia());
+			writeMedia(card.getBackSide().getMedia());
+		}
+
+		private void writeMedia(final List<String> ids) throws IOException {
+			m_out.writeVarint(ids.size());
+			for (final String id : ids) {
+				m_out.writeVarint(m_strings.get(m_repository.resolveId(id)));
+			}
+		}
+
+		private void writeLearnHistory() throws IOException {
+			final List<SessionSummary> summaries = m_lesson.getLearnHistory()
+					.getSummaries();
+
+			m_out.writeVarint(summaries.size());
+			for (final SessionSummary summary : summaries) {
+				m_out.writeLong(summary.getStart().getTime());
+				m_out.writeLong(summary.getEnd().getTime());
+				m_out.writeVarint((int) summary.getPassed());
+				m_out.writeVarint((int) summary.getFailed());
+				m_out.writeVarint((int) summary.getSkipped());
+				m_out.writeVarint((int) summary.getRelearned());
+			}
+		}
+
+		private Map<String, long[]> writeImages(final List<String> imageIds)
+				throws IOException {
+			final Map<String, long[]> images = new LinkedHashMap<String, long[]>();
+
+			for (final String id : imageIds) {
+				final MediaItem item = m_repository.getImageItem(id);
+				if (item == null)
+					continue;
+
+				final long offset = m_out.position();
+				final CRC32 crc = new CRC32();
+				item.writeTo(new OutputStream() {
+					@Override
+					public void write(final int b) throws IOException {
+						crc.update(b);
+						m_out.write(new byte[] { (byte) b });
+					}
+
+					@Override
+					public void write(final byte[] bytes, final int offset,
+							final int length) throws IOException {
+						crc.update(bytes, offset, length);
+						m_out.write(bytes, offset, length);
+					}
+				});
+
+				images.put(id, new long[] { offset, m_out.position() - offset,
+						crc.getValue() });
+			}
+
+			return images;
+		}
+
+		private int offset(final long start) throws IOException {
+			final long offset = m_out.position() - start;
+			if (offset > Integer.MAX_VALUE)
+				throw new IOException("Lesson too large."); //$NON-NLS-1$
+
+			return (int) offset;
+		}
+	}
+
+	/**
+	 * A buffered stream that knows its position in the file and writes
+	 * numbers in the byte order of {@link ByteBuffer}.
+	 */
+	private static class Output {
+		private final OutputStream m_out;
+		private final byte[] m_number = new byte[8];
+		private long m_position;
+
+		Output(final FileChannel channel, final long position)
+				throws IOException {
+			channel.position(position);
+			m_out = new BufferedOutputStream(
+					Channels.newOutputStream(channel), 65536);
+			m_position = position;
+		}
+
+		long position() {
+			return m_position;
+		}
+
+		void write(final byte[] bytes) throws IOException {
+			write(bytes, 0, bytes.length);
+		}
+
+		void write(final byte[] bytes, final int offset, final int length)
+				throws IOException {
+			m_out.write(bytes, offset, length);
+			m_position += length;
+		}
+
+		void writeInt(final int value) throws IOException {
+			for (int i = 0; i < 4; i++) {
+				m_number[i] = (byte) (value >>> (24 - 8 * i));
+			}
+			write(m_number, 0, 4);
+		}
+
+		void writeLong(final long value) throws IOException {
+			for (int i = 0; i < 8; i++) {
+				m_number[i] = (byte) (value >>> (56 - 8 * i));
+			}
+			write(m_number, 0, 8);
+		}
+
+		/**
+		 * Writes a number in groups of 7 bits, least significant first. The
+		 * highest bit of every byte tells if more bytes follow. Negative
+		 * numbers take 10 bytes.
+		 */
+		void writeVarint(long value) throws IOException {
+			while ((value & ~0x7FL) != 0) {
+				m_out.write((int) ((value & 0x7F) | 0x80));
+				m_position++;
+				value >>>= 7;
+			}
+
+			m_out.write((int) value);
+			m_position++;
+		}
+
+		void flush() throws IOException {
+			m_out.flush();
+		}
+	}
+}
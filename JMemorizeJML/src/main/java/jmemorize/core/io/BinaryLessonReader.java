@@ -0,0 +1,376 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.learn.LearnHistory;
+import jmemorize.core.media.MediaRepository;
+
+/**
+ * Reads lessons in the format of {@link BinaryLessonFormat}. Strings and
+ * cards are only decoded when they are asked for, so a single card can be
+ * read without reading the whole lesson.
+ *
+ * A reader either maps the file into memory or reads it into the heap. A
+ * mapping stays until the buffer is garbage collected, even after the
+ * reader is closed, and on some platforms a mapped file can't be replaced
+ * or deleted. So lessons that are loaded as a whole, and might be saved
+ * over right after, are read into the heap.
+ *
+ * A reader isn't thread-safe.
+ */
+class BinaryLessonReader implements Closeable {
+	private final File m_file;
+	private final RandomAccessFile m_randomAccessFile;
+	private final ByteBuffer m_buffer;
+
+	private final int m_strings;
+	private final int m_stringIndex;
+	private final int m_categories;
+	private final int m_cards;
+	private final int m_cardIndex;
+	private final int m_learnHistory;
+	private final int m_mediaIndex;
+
+	private final String[] m_stringCache;
+	private final int m_cardCount;
+
+	// the position of the next number to read
+	private int m_position;
+
+	/**
+	 * Creates a reader that maps the file into memory.
+	 */
+	BinaryLessonReader(final File file) throws IOException {
+		this(file, true);
+	}
+
+	/**
+	 * @param map <code>true</code> if the file is to be mapped into memory,
+	 *        <code>false</code> if it is to be read into the heap.
+	 */
+	BinaryLessonReader(final File file, final boolean map) throws IOException {
+		m_file = file.getAbsoluteFile();
+		m_randomAccessFile = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+
+		try {
+			final FileChannel channel = m_randomAccessFile.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Lesson file too large: " + file); //$NON-NLS-1$
+
+			m_buffer = map ? channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size()) : read(channel);
+
+			if (m_buffer.capacity() < BinaryLessonFormat.HEADER_LENGTH
+					|| m_buffer.getInt(0) != BinaryLessonFormat.MAGIC)
+				throw new IOException("Not a binary lesson file: " + file); //$NON-NLS-1$
+
+			final int version = m_buffer.getInt(4);
+			if (version > BinaryLessonFormat.VERSION)
+				throw new IOException("Unsupported version " + version //$NON-NLS-1$
+						+ " of lesson file " + file); //$NON-NLS-1$
+
+			m_strings = section(0);
+			m_stringIndex = section(1);
+			m_categories = section(2);
+			m_cards = section(3);
+			m_cardIndex = section(4);
+			m_learnHistory = section(5);
+			m_mediaIndex = section(6);
+
+			m_stringCache = new String[m_buffer.getInt(m_stringIndex)];
+			m_cardCount = m_buffer.getInt(m_cardIndex);
+		} catch (final IOException | RuntimeException e) {
+			m_randomAccessFile.close();
+			throw e;
+		}
+	}
+
+	private static ByteBuffer read(final FileChannel channel)
+			throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0)
+				throw new IOException("Unexpected end of file"); //$NON-NLS-1$
+		}
+
+		return buffer;
+	}
+
+	private int section(final int index) throws IOException {
+		final long offset = m_buffer.getLong(8 + 8 * index);
+		if (offset < BinaryLessonFormat.HEADER_LENGTH
+				|| offset > m_buffer.capacity())
+			throw new IOException("Damaged lesson file: " + m_file); //$NON-NLS-1$
+
+		return (int) offset;
+	}
+
+	int getCardCount() {
+		return m_cardCount;
+	}
+
+	/**
+	 * @return the string with given index, which is only decoded once.
+	 */
+	String getString(final int index) {
+		String string = m_stringCache[index];
+		if (string == null) {
+			final int start = m_buffer.getInt(m_stringIndex + 4 + 4 * index);
+			final int end = m_buffer.getInt(m_stringIndex + 8 + 4 * index);
+
+			final byte[] bytes = new byte[end - start];
+			final ByteBuffer buffer = m_buffer.duplicate();
+			buffer.position(m_strings + start);
+			buffer.get(bytes);
+
+			string = new String(bytes, StandardCharsets.UTF_8);
+			m_stringCache[index] = string;
+		}
+
+		return string;
+	}
+
+	/**
+	 * @return a new card with the values of the card with given index, which
+	 *         isn't added to any category.
+	 */
+	Card readCard(final int index) throws IOException {
+		seekCard(index);
+		readVarint(); // category
+		readVarint(); // level
+
+		return readCardValues();
+	}
+
+	/**
+	 * Adds all categories, cards and learn sessions of the file to the
+	 * lesson. The cards of a deck are added at once.
+	 */
+	void readLesson(final Lesson lesson) throws IOException {
+		try {
+			final List<Category> categories = readCategories(lesson
+					.getRootCategory());
+
+			m_position = m_cards;
+			final List<Card> deck = new ArrayList<Card>();
+			int deckCategory = -1;
+			int deckLevel = -1;
+
+			for (int i = 0; i < m_cardCount; i++) {
+				final int category = readIndex(categories.size());
+				final int level = (int) readVarint();
+
+				if (category != deckCategory || level != deckLevel) {
+					addDeck(categories, deckCategory, deckLevel, deck);
+					deckCategory = category;
+					deckLevel = level;
+				}
+
+				deck.add(readCardValues());
+			}
+			addDeck(categories, deckCategory, deckLevel, deck);
+
+			readLearnHistory(lesson.getLearnHistory());
+		} catch (final IndexOutOfBoundsException e) {
+			throw new IOException("Damaged lesson file: " + m_file, e); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Adds all images of the file to the repository. Their bytes are read
+	 * from the file when they are needed.
+	 */
+	void registerImages(final MediaRepository repository) throws IOException {
+		m_position = m_mediaIndex;
+
+		final int count = (int) readVarint();
+		for (int i = 0; i < count; i++) {
+			final String id = getString(readIndex(m_stringCache.length));
+			final long offset = readLong();
+			final long length = readLong();
+			final long crc = readInt() & 0xFFFFFFFFL;
+
+			repository.addImage(new FileRangeSource(m_file, offset, length,
+					crc), id);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		m_randomAccessFile.close();
+	}
+
+	private List<Category> readCategories(final Category root)
+			throws IOException {
+		m_position = m_categories;
+
+		final int count = (int) readVarint();
+		final List<Category> categories = new ArrayList<Category>(count);
+
+		for (int i = 0; i < count; i++) {
+			final int parent = readIndex(categories.size() + 1);
+			final String name = getString(readIndex(m_stringCache.length));
+
+			if (parent == 0) {
+				root.setName(name);
+				categories.add(root);
+			} else {
+				categories.add(categories.get(parent - 1).addCategoryChild(
+						new Category(name)));
+			}
+		}
+
+		return categories;
+	}
+
+	private static void addDeck(final List<Category> categories,
+			final int category, final int level, final List<Card> deck) {
+		if (deck.isEmpty())
+			return;
+
+		categories.get(category).addCards(deck, level);
+		deck.clear();
+	}
+
+	private Card readCardValues() throws IOException {
+		final long id = readVarint();
+		final String front = getString(readIndex(m_stringCache.length));
+		final String back = getString(readIndex(m_stringCache.length));
+		final int flags = (int) readVarint();
+
+		final Date created = new Date(readLong());
+		final Date modified = new Date(readLong());
+		final Date touched = new Date(readLong());
+		final Date tested = (flags & BinaryLessonFormat.HAS_DATE_TESTED) != 0 ? new Date(
+				readLong()) : null;
+		final Date expired = (flags & BinaryLessonFormat.HAS_DATE_EXPIRED) != 0 ? new Date(
+				readLong()) : null;
+
+		final int learnedFront = (int) readVarint();
+		final int learnedBack = (int) readVarint();
+		final int skipped = (int) readVarint();
+		final int testsPassed = (int) readVarint();
+		final int testsTotal = (int) readVarint();
+
+		// the same steps as in XmlBuilder.createCard
+		final Card card = new Card(created, front, back);
+		card.setId(id);
+		card.setDateModified(modified);
+
+		card.setDateTested(tested);
+		card.setDateExpired(expired);
+		card.setDateTouched(touched);
+
+		card.setLearnedAmount(true, learnedFront);
+		card.setLearnedAmount(false, learnedBack);
+		card.incStats(testsPassed, testsTotal);
+
+		card.setSkippedAmount(skipped);
+
+		card.getFrontSide().setMedia(readMedia());
+		card.getBackSide().setMedia(readMedia());
+
+		return card;
+	}
+
+	private List<String> readMedia() throws IOException {
+		final int count = (int) readVarint();
+		if (count == 0)
+			return Collections.emptyList();
+
+		final List<String> ids = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			ids.add(getString(readIndex(m_stringCache.length)));
+		}
+
+		return ids;
+	}
+
+	private void readLearnHistory(final LearnHistory history)
+			throws IOException {
+		m_position = m_learnHistory;
+
+		final int count = (int) readVarint();
+		for (int i = 0; i < count; i++) {
+			final Date start = new Date(readLong());
+			final Date end = new Date(readLong());
+
+			history.addSummary(start, end, (int) readVarint(),
+					(int) readVarint(), (int) readVarint(), (int) readVarint());
+		}
+	}
+
+	private void seekCard(final int index) {
+		if (index < 0 || index >= m_cardCount)
+			throw new IndexOutOfBoundsException("Card " + index); //$NON-NLS-1$
+
+		m_position = m_cards + m_buffer.getInt(m_cardIndex + 4 + 4 * index);
+	}
+
+	private int readIndex(final int size) throws IOException {
+		final long index = readVarint();
+		if (index >= size)
+			throw new IOException("Damaged lesson file: " + m_file); //$NON-NLS-1$
+
+		return (int) index;
+	}
+
+	private long readVarint() {
+		long value = 0;
+		int shift = 0;
+
+		byte b;
+		do {
+			b = m_buffer.get(m_position++);
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0 && shift < 64);
+
+		return value;
+	}
+
+	private int readInt() {
+		final int value = m_buffer.getInt(m_position);
+		m_position += 4;
+
+		return value;
+	}
+
+	private long readLong() {
+		final long value = m_buffer.getLong(m_position);
+		m_position += 8;
+
+		return value;
+	}
+}
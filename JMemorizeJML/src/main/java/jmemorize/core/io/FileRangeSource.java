@@ -0,0 +1,123 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import jmemorize.core.media.MediaRepository.MediaSource;
+
+/**
+ * A range of bytes in a file on disk, e.g. an image in a binary lesson file.
+ * The file is only opened when the range is read.
+ */
+class FileRangeSource implements MediaSource {
+	private final File m_file;
+	private final long m_offset;
+	private final long m_length;
+	private final long m_crc;
+
+	FileRangeSource(final File file, final long offset, final long length,
+			final long crc) {
+		m_file = file.getAbsoluteFile();
+		m_offset = offset;
+		m_length = length;
+		m_crc = crc;
+	}
+
+	File getFile() {
+		return m_file;
+	}
+
+	public long length() {
+		return m_length;
+	}
+
+	public long crc() {
+		return m_crc;
+	}
+
+	public InputStream open() throws IOException {
+		final FileInputStream in = new FileInputStream(m_file);
+
+		try {
+			in.getChannel().position(m_offset);
+		} catch (final IOException e) {
+			in.close();
+			throw e;
+		}
+
+		// reads end at the end of the range
+		return new FilterInputStream(in) {
+			private long m_remaining = m_length;
+
+			@Override
+			public int read() throws IOException {
+				if (m_remaining <= 0)
+					return -1;
+
+				final int b = super.read();
+				if (b >= 0)
+					m_remaining--;
+
+				return b;
+			}
+
+			@Override
+			public int read(final byte[] buffer, final int offset,
+					final int length) throws IOException {
+				if (m_remaining <= 0)
+					return -1;
+
+				final int read = super.read(buffer, offset,
+						(int) Math.min(length, m_remaining));
+				if (read > 0)
+					m_remaining -= read;
+
+				return read;
+			}
+
+			@Override
+			public long skip(final long n) throws IOException {
+				final long skipped = super.skip(Math.min(n, m_remaining));
+				m_remaining -= skipped;
+
+				return skipped;
+			}
+
+			@Override
+			public int available() throws IOException {
+				return (int) Math.min(super.available(), m_remaining);
+			}
+
+			@Override
+			public boolean markSupported() {
+				return false;
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return m_file + "@" + m_offset + "+" + m_length; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
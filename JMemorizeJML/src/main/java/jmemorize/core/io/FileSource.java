@@ -0,0 +1,54 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import jmemorize.core.media.MediaRepository.MediaSource;
+
+/**
+ * A file on disk that is only opened when it is read.
+ */
+class FileSource implements MediaSource {
+	private final File m_file;
+
+	FileSource(final File file) {
+		m_file = file.getAbsoluteFile();
+	}
+
+	File getFile() {
+		return m_file;
+	}
+
+	public long length() {
+		return m_file.length();
+	}
+
+	public InputStream open() throws IOException {
+		return new FileInputStream(m_file);
+	}
+
+	@Override
+	public String toString() {
+		return m_file.toString();
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats and parses the dates of lesson files. This class is thread-safe.
+ *
+ * By default dates are written like the medium date and time format of
+ * <code>Locale.UK</code> did on Java 8, e.g. <code>26-Nov-2011 11:38:16</code>,
+ * in the time zone of the codec and without milliseconds. Such dates are
+ * parsed and formatted field by field, without {@link DateFormat}. Dates are
+ * converted with a {@link GregorianCalendar} like DateFormat does, so lenient
+ * values and daylight saving time are handled the same way. Everything that
+ * doesn't have exactly this layout, e.g. dates of files written with other
+ * locale data, is parsed by DateFormat as before.
+ *
+ * Dates can also be written as ISO-8601 instants in UTC or as milliseconds
+ * since the epoch, see {@link #ENCODING_PROPERTY}. Both keep milliseconds
+ * and time zones, but can't be read by older versions of jMemorize. All
+ * three encodings are always parsed.
+ */
+final class JmlDateCodec {
+	enum Encoding {
+		MEDIUM, ISO_8601, EPOCH_MILLIS
+	}
+
+	// the encoding of dates in new files: medium, iso_8601 or epoch_millis
+	static final String ENCODING_PROPERTY = "jmemorize.jml.dateEncoding"; //$NON-NLS-1$
+
+	private static final JmlDateCodec DEFAULT = new JmlDateCodec(
+			TimeZone.getDefault(), encodingOf(System
+					.getProperty(ENCODING_PROPERTY)));
+
+	private static final String[] MONTHS = { "Jan", "Feb", "Mar", "Apr", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			"May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+
+	// dd-MMM-yyyy HH:mm:ss
+	private static final int MEDIUM_LENGTH = 20;
+
+	private final TimeZone m_timeZone;
+	private final Encoding m_encoding;
+
+	// calendars and formats aren't thread-safe
+	private final ThreadLocal<State> m_state = ThreadLocal
+			.withInitial(State::new);
+
+	JmlDateCodec(final TimeZone timeZone, final Encoding encoding) {
+		m_timeZone = (TimeZone) timeZone.clone();
+		m_encoding = encoding;
+	}
+
+	/**
+	 * @return the codec for the default time zone, with the encoding given
+	 *         by {@link #ENCODING_PROPERTY}.
+	 */
+	static JmlDateCodec getDefault() {
+		return DEFAULT;
+	}
+
+	private static Encoding encodingOf(final String name) {
+		if (name != null) {
+			for (final Encoding encoding : Encoding.values()) {
+				if (encoding.name().equalsIgnoreCase(name))
+					return encoding;
+			}
+		}
+
+		return Encoding.MEDIUM;
+	}
+
+	String format(final Date date) {
+		switch (m_encoding) {
+		case ISO_8601:
+			return Instant.ofEpochMilli(date.getTime()).toString();
+		case EPOCH_MILLIS:
+			return Long.toString(date.getTime());
+		default:
+			return formatMedium(date.getTime());
+		}
+	}
+
+	/**
+	 * @return the date or <code>null</code> if given text isn't a date in
+	 *         any of the encodings.
+	 */
+	Date parse(final String text) {
+		if (text.length() == MEDIUM_LENGTH) {
+			final long time = parseMedium(text);
+			if (time != Long.MIN_VALUE)
+				return new Date(time);
+		}
+
+		if (isIso8601(text)) {
+			try {
+				return new Date(Instant.parse(text).toEpochMilli());
+			} catch (final DateTimeParseException | ArithmeticException e) {
+				// not an instant after all
+			}
+		}
+
+		if (isNumber(text))
+			return new Date(Long.parseLong(text));
+
+		try {
+			return m_state.get().getDateFormat().parse(text);
+		} catch (final ParseException e) {
+			return null;
+		}
+	}
+
+	private String formatMedium(final long time) {
+		final State state = m_state.get();
+		final Calendar calendar = state.m_calendar;
+		calendar.setTimeInMillis(time);
+
+		final int year = calendar.get(Calendar.YEAR);
+		if (calendar.get(Calendar.ERA) != GregorianCalendar.AD || year > 9999)
+			return state.getDateFormat().format(new Date(time));
+
+		final char[] chars = state.m_chars;
+		put(chars, 0, calendar.get(Calendar.DAY_OF_MONTH), 2);
+		chars[2] = '-';
+		MONTHS[calendar.get(Calendar.MONTH)].getChars(0, 3, chars, 3);
+		chars[6] = '-';
+		put(chars, 7, year, 4);
+		chars[11] = ' ';
+		put(chars, 12, calendar.get(Calendar.HOUR_OF_DAY), 2);
+		chars[14] = ':';
+		put(chars, 15, calendar.get(Calendar.MINUTE), 2);
+		chars[17] = ':';
+		put(chars, 18, calendar.get(Calendar.SECOND), 2);
+
+		return new String(chars);
+	}
+
+	/**
+	 * @return the time of given date in the medium layout or
+	 *         {@link Long#MIN_VALUE} if it doesn't have exactly this layout.
+	 */
+	private long parseMedium(final String text) {
+		if (text.charAt(2) != '-' || text.charAt(6) != '-'
+				|| text.charAt(11) != ' ' || text.charAt(14) != ':'
+				|| text.charAt(17) != ':')
+			return Long.MIN_VALUE;
+
+		final int month = month(text);
+		final int day = digits(text, 0, 2);
+		final int year = digits(text, 7, 4);
+		final int hour = digits(text, 12, 2);
+		final int minute = digits(text, 15, 2);
+		final int second = digits(text, 18, 2);
+
+		if (month < 0 || day < 0 || year < 0 || hour < 0 || minute < 0
+				|| second < 0)
+			return Long.MIN_VALUE;
+
+		// the fields are set like DateFormat sets them
+		final Calendar calendar = m_state.get().m_calendar;
+		calendar.clear();
+		calendar.set(year, month, day, hour, minute, second);
+
+		return calendar.getTimeInMillis();
+	}
+
+	private static int month(final String text) {
+		for (int i = 0; i < MONTHS.length; i++) {
+			if (text.startsWith(MONTHS[i], 3))
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return the number given by the digits or -1 if there are other
+	 *         characters.
+	 */
+	private static int digits(final String text, final int start,
+			final int length) {
+		int value = 0;
+		for (int i = start; i < start + length; i++) {
+			final char c = text.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+
+			value = value * 10 + c - '0';
+		}
+
+		return value;
+	}
+
+	private static void put(final char[] chars, final int start, int value,
+			final int length) {
+		for (int i = start + length - 1; i >= start; i--) {
+			chars[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	private static boolean isIso8601(final String text) {
+		return text.length() > 10 && text.charAt(4) == '-'
+				&& text.charAt(10) == 'T';
+	}
+
+	private static boolean isNumber(final String text) {
+		final int start = text.startsWith("-") ? 1 : 0; //$NON-NLS-1$
+		if (text.length() == start || text.length() - start > 18)
+			return false;
+
+		for (int i = start; i < text.length(); i++) {
+			if (text.charAt(i) < '0' || text.charAt(i) > '9')
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * The objects of a thread that aren't thread-safe.
+	 */
+	private class State {
+		private final Calendar m_calendar = new GregorianCalendar(m_timeZone,
+				Locale.UK);
+		private final char[] m_chars = new char[MEDIUM_LENGTH];
+
+		private DateFormat m_dateFormat;
+
+		// only created for dates without the medium layout
+		DateFormat getDateFormat() {
+			if (m_dateFormat == null) {
+				m_dateFormat = DateFormat.getDateTimeInstance(
+						DateFormat.MEDIUM, DateFormat.MEDIUM, Locale.UK);
+				m_dateFormat.setTimeZone(m_timeZone);
+			}
+
+			return m_dateFormat;
+		}
+	}
+}
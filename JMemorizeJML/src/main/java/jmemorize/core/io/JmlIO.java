@@ -17,6 +17,9 @@ public class JmlIO implements JMemorizeIO {
 	public File file;
 	private final JmlUI jMemorizeUI;
 
+	// records the changes to the loaded or saved lesson, see LessonJournal
+	private LessonJournal journal;
+
 	public JmlIO(final JmlUI jmlUI) {
 		this.jMemorizeUI = jmlUI;
 	}
@@ -24,10 +27,16 @@ public class JmlIO implements JMemorizeIO {
 	@Override
 	public void load(final File file, final Lesson lesson) throws IOException {
 		try {
+			closeJournal();
 			MediaRepository.getInstance().clear();
 
 			// final Lesson lesson = new Lesson(false);
-			XmlBuilder.loadFromXMLFile(file, lesson);
+			if (BinaryLessonFormat.isBinaryFile(file)) {
+				BinaryLessonFormat.load(file, lesson);
+			} else {
+				XmlBuilder.loadFromXMLFile(file, lesson);
+				journal = LessonJournal.open(file, lesson);
+			}
 			lesson.setCanSave(false);
 			// m_recentFiles.push(file.getAbsolutePath());
 
@@ -48,11 +57,33 @@ public class JmlIO implements JMemorizeIO {
 	@Override
 	public void save(final File file, final Lesson lesson) throws IOException {
 		try {
+			// only the changes since the last save are written, if possible
+			if (journal != null && journal.isFor(file, lesson)
+					&& journal.append()) {
+				lesson.setCanSave(false);
+				this.file = file;
+				return;
+			}
+
+			closeJournal();
+
+			// binary lessons are written fast enough to go without journal
+			if (BinaryLessonFormat.isBinaryFile(file)) {
+				BinaryLessonFormat.save(file, lesson);
+				lesson.setCanSave(false);
+				this.file = file;
+				return;
+			}
+
 			final File tempFile = new File(file.getAbsolutePath() + "~"); //$NON-NLS-1$
 			XmlBuilder.saveAsXMLFile(tempFile, lesson);
 
 			file.delete();
 			copyFile(tempFile, file);
+			XmlBuilder.moveImageSources(tempFile, file);
+			log.info(MediaRepository.getInstance().getSummary());
+
+			journal = LessonJournal.create(file, lesson);
 
 			lesson.setCanSave(false);
 			// m_recentFiles.push(file.getAbsolutePath());
@@ -67,6 +98,13 @@ public class JmlIO implements JMemorizeIO {
 		}
 	}
 
+	private void closeJournal() {
+		if (journal != null) {
+			journal.close();
+			journal = null;
+		}
+	}
+
 	private static void copyFile(final File in, final File out) throws IOException {
 		FileChannel sourceChannel = null;
 		FileChannel destinationChannel = null;
@@ -124,6 +162,7 @@ public class JmlIO implements JMemorizeIO {
 
 	@Override
 	public void reset() {
+		closeJournal();
 		file = null;
 	}
 }
@@ -0,0 +1,90 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.File;
+import java.io.IOException;
+
+import jmemorize.core.Lesson;
+import jmemorize.core.media.MediaRepository;
+
+/**
+ * Converts lessons between JML and the binary format of {@link
+ * BinaryLessonFormat}, in both directions. The format of every file is given
+ * by its extension. All cards, categories, learn sessions and images are
+ * kept.
+ */
+public final class LessonConverter {
+	private LessonConverter() {
+	}
+
+	/**
+	 * Loads the lesson of the source file, including the changes recorded in
+	 * its journal, and saves it to the target file. Note that this replaces
+	 * the contents of the media repository.
+	 */
+	public static void convert(final File source, final File target)
+			throws IOException {
+		MediaRepository.getInstance().clear();
+
+		final Lesson lesson = new Lesson(false);
+		load(source, lesson);
+		save(target, lesson);
+	}
+
+	/**
+	 * Loads the lesson like the application does, so that the changes in
+	 * the journal of a JML file are part of it. The journal is left as it
+	 * is.
+	 */
+	static void load(final File file, final Lesson lesson) throws IOException {
+		final JmlIO jmlIO = new JmlIO(null);
+		try {
+			jmlIO.load(file, lesson);
+		} finally {
+			jmlIO.reset();
+		}
+	}
+
+	static void save(final File file, final Lesson lesson) throws IOException {
+		if (BinaryLessonFormat.isBinaryFile(file)) {
+			BinaryLessonFormat.save(file, lesson);
+			return;
+		}
+
+		try {
+			XmlBuilder.saveAsXMLFile(file, lesson);
+		} catch (final IOException e) {
+			throw e;
+		} catch (final Exception e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	public static void main(final String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: LessonConverter <source> <target>"); //$NON-NLS-1$
+			System.err.println("Files ending with " + BinaryLessonFormat.EXTENSION //$NON-NLS-1$
+					+ " are binary lessons, all others JML."); //$NON-NLS-1$
+			System.exit(1);
+		}
+
+		convert(new File(args[0]), new File(args[1]));
+	}
+}
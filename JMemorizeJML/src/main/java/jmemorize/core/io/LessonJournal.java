@@ -0,0 +1,912 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardBatch;
+import jmemorize.core.Category;
+import jmemorize.core.CategoryObserver;
+import jmemorize.core.Lesson;
+import jmemorize.core.learn.LearnHistory;
+import jmemorize.core.learn.LearnHistory.SessionSummary;
+import jmemorize.core.media.MediaRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * An append-only log of the changes made to a lesson since it was last
+ * written as a whole, kept in a file next to the lesson file.
+ *
+ * Saving a lesson with a journal only appends the cards, categories and
+ * learn sessions that changed since the last save, instead of writing the
+ * whole lesson again. Loading a lesson replays its journal on top of the
+ * lesson file. Once the journal grows beyond a threshold, it is compacted in
+ * the background: the lesson file is rewritten with all changes applied and
+ * the journal starts over.
+ *
+ * The journal starts with a header that records length and modification time
+ * of the lesson file it belongs to, so that it is ignored if the lesson file
+ * was replaced without it. During a compaction, the header also accepts the
+ * compacted lesson file, see {@link #compact()}. Every record is followed by
+ * its CRC-32 and replay stops at the first record that is incomplete or
+ * damaged, e.g. because jMemorize died while appending it.
+ *
+ * Categories are identified by the names on their path below the root
+ * category and cards by their id. Sibling categories can have the same name:
+ * once a record would refer to such a path, {@link #append()} refuses and the
+ * lesson has to be saved as a whole. So do added images, which aren't
+ * journaled.
+ */
+@Slf4j
+class LessonJournal implements CategoryObserver {
+	static final String SUFFIX = ".journal"; //$NON-NLS-1$
+
+	// journals that grow beyond this number of bytes are compacted
+	static final String COMPACTION_THRESHOLD_PROPERTY = "jmemorize.journal.compactionThreshold"; //$NON-NLS-1$
+	private static final long DEFAULT_COMPACTION_THRESHOLD = 1 << 20;
+
+	private static final String TEMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+
+	// "JMJL"
+	private static final int MAGIC = 0x4A4D4A4C;
+	private static final int VERSION = 2;
+
+	// magic, version, length and modification time of the lesson file, and
+	// length and modification time of a compacted lesson file together with
+	// the position of the first record that it doesn't contain
+	private static final int HEADER_LENGTH = 4 + 4 + 8 + 8 + 8 + 8 + 8;
+
+	private static final byte ADD_CATEGORY = 1;
+	private static final byte REMOVE_CATEGORY = 2;
+	private static final byte RENAME_CATEGORY = 3;
+	private static final byte PUT_CARD = 4;
+	private static final byte REMOVE_CARD = 5;
+	private static final byte ADD_SESSION = 6;
+
+	private final File m_lessonFile;
+	private final File m_file;
+	private final Lesson m_lesson;
+
+	// the ids of all images when the journal was opened
+	private final Set<String> m_imageIds;
+
+	// the path of every category of the lesson, so that removed and renamed
+	// categories can be found by their old path
+	private final Map<Category, List<String>> m_paths = new HashMap<Category, List<String>>();
+
+	// category records in the order of the events, not yet appended
+	private final List<byte[]> m_categoryRecords = new ArrayList<byte[]>();
+
+	// cards that changed since the last append, by id
+	private final Map<Long, Card> m_changedCards = new LinkedHashMap<Long, Card>();
+
+	private int m_sessionCount;
+
+	// set once a record refers to a category by a path that several
+	// categories have
+	private boolean m_ambiguous;
+
+	// the number of valid bytes in the journal file. Guarded by this
+	private long m_length;
+
+	private long m_compactionThreshold = Long.getLong(
+			COMPACTION_THRESHOLD_PROPERTY, DEFAULT_COMPACTION_THRESHOLD);
+
+	private final AtomicBoolean m_compacting = new AtomicBoolean();
+	private Thread m_compaction;
+	private boolean m_closed;
+
+	private LessonJournal(final File lessonFile, final Lesson lesson,
+			final long length) {
+		m_lessonFile = lessonFile.getAbsoluteFile();
+		m_file = journalFile(m_lessonFile);
+		m_lesson = lesson;
+		m_length = length;
+		m_imageIds = new HashSet<String>(MediaRepository.getInstance()
+				.getKeys());
+		m_sessionCount = lesson.getLearnHistory().getSummaries().size();
+
+		addPaths(lesson.getRootCategory(), new ArrayList<String>());
+		lesson.getRootCategory().addObserver(this);
+	}
+
+	/**
+	 * Replays the journal of given lesson file and starts recording the
+	 * changes to given lesson, which must have just been loaded from that
+	 * file. The damaged tail of the journal is cut off.
+	 *
+	 * @return <code>null</code> if the lesson file has no journal or the
+	 *         journal belongs to another lesson file. Such a lesson has to be
+	 *         saved as a whole first, e.g. because the file was written by an
+	 *         older version that didn't store the ids of cards. The journal
+	 *         of another lesson file is left alone.
+	 */
+	static LessonJournal open(final File lessonFile, final Lesson lesson)
+			throws IOException {
+		final File file = journalFile(lessonFile);
+		if (!file.exists())
+			return null;
+
+		final long start = readStart(file, lessonFile);
+		final long length = start < 0 ? -1 : replay(file, lessonFile, lesson,
+				Long.MAX_VALUE);
+
+		if (length < 0) {
+			log.warn("Ignoring journal {} of another lesson file", file); //$NON-NLS-1$
+			return null;
+		}
+
+		if (length < file.length()) {
+			log.warn("Cutting off damaged records of journal {}", file); //$NON-NLS-1$
+			try (RandomAccessFile out = new RandomAccessFile(file, "rw")) { //$NON-NLS-1$
+				out.setLength(length);
+			}
+		}
+
+		// a compaction was interrupted, the journal starts over with the
+		// records that the lesson file doesn't contain
+		if (isCompacting(file)) {
+			final File temp = new File(file.getPath() + TEMP_SUFFIX);
+			writeHeader(temp, lessonFile, null, HEADER_LENGTH);
+			copyRecords(file, start, length, temp);
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+
+			return new LessonJournal(lessonFile, lesson, file.length());
+		}
+
+		return new LessonJournal(lessonFile, lesson, length);
+	}
+
+	/**
+	 * Starts a new, empty journal for given lesson file, which must have just
+	 * been written from given lesson as a whole, and starts recording the
+	 * changes to the lesson.
+	 */
+	static LessonJournal create(final File lessonFile, final Lesson lesson)
+			throws IOException {
+		writeHeader(journalFile(lessonFile), lessonFile, null, HEADER_LENGTH);
+
+		return new LessonJournal(lessonFile, lesson, HEADER_LENGTH);
+	}
+
+	static File journalFile(final File lessonFile) {
+		return new File(lessonFile.getPath() + SUFFIX);
+	}
+
+	/**
+	 * @return <code>true</code> if this journal records the changes to given
+	 *         lesson, which is stored in given file.
+	 */
+	boolean isFor(final File lessonFile, final Lesson lesson) {
+		return !m_closed && m_lesson == lesson
+				&& m_lessonFile.equals(lessonFile.getAbsoluteFile());
+	}
+
+	/**
+	 * Appends all changes since the last append to the journal file and
+	 * forces them to the disk.
+	 *
+	 * @return <code>false</code> if the changes can't be journaled and the
+	 *         lesson has to be saved as a whole instead.
+	 */
+	boolean append() throws IOException {
+		final List<SessionSummary> summaries = m_lesson.getLearnHistory()
+				.getSummaries();
+
+		if (m_ambiguous || summaries.size() < m_sessionCount || hasNewImages())
+			return false;
+
+		final ByteArrayOutputStream records = new ByteArrayOutputStream();
+		for (final byte[] record : m_categoryRecords) {
+			writeRecord(records, record);
+		}
+
+		for (final Map.Entry<Long, Card> entry : m_changedCards.entrySet()) {
+			final Card card = entry.getValue();
+			if (!isInLesson(card)) {
+				writeRecord(records, removeCard(entry.getKey()));
+			} else if (isAmbiguous(card.getCategory())) {
+				m_ambiguous = true;
+				return false;
+			} else {
+				writeRecord(records, putCard(card));
+			}
+		}
+
+		for (final SessionSummary summary : summaries.subList(m_sessionCount,
+				summaries.size())) {
+			writeRecord(records, addSession(summary));
+		}
+
+		synchronized (this) {
+			if (records.size() == 0)
+				return true;
+
+			try (FileOutputStream out = new FileOutputStream(m_file, true)) {
+				records.writeTo(out);
+				out.getFD().sync();
+			}
+
+			m_length += records.size();
+		}
+
+		m_categoryRecords.clear();
+		m_changedCards.clear();
+		m_sessionCount = summaries.size();
+
+		if (getLength() > m_compactionThreshold)
+			startCompaction();
+
+		return true;
+	}
+
+	/**
+	 * Stops recording the changes to the lesson. A running compaction is
+	 * finished first.
+	 */
+	void close() {
+		m_lesson.getRootCategory().removeObserver(this);
+		awaitCompaction();
+
+		synchronized (this) {
+			m_closed = true;
+		}
+	}
+
+	synchronized long getLength() {
+		return m_length;
+	}
+
+	void setCompactionThreshold(final long threshold) {
+		m_compactionThreshold = threshold;
+	}
+
+	/**
+	 * Waits until the running compaction, if any, is finished.
+	 */
+	void awaitCompaction() {
+		final Thread compaction;
+		synchronized (this) {
+			compaction = m_compaction;
+		}
+
+		if (compaction == null)
+			return;
+
+		try {
+			compaction.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void onCardEvent(final int type, final Card card,
+			final Category category, final int deck) {
+		if (type != EXPIRED_EVENT)
+			m_changedCards.put(card.getId(), card);
+	}
+
+	@Override
+	public void onCardsEvent(final int type, final CardBatch batch) {
+		for (int i = 0; i < batch.size(); i++) {
+			final Card card = batch.getCard(i);
+			m_changedCards.put(card.getId(), card);
+		}
+	}
+
+	@Override
+	public void onCategoryEvent(final int type, final Category category) {
+		switch (type) {
+		case ADDED_EVENT:
+			final List<String> parentPath = m_paths.get(category.getParent());
+			if (parentPath != null) {
+				m_ambiguous |= isAmbiguous(category);
+				addSubtree(category, parentPath);
+			}
+			break;
+
+		case REMOVED_EVENT:
+			// the category isn't a child of its parent anymore
+			final List<String> path = m_paths.get(category);
+			if (path != null) {
+				m_ambiguous |= category.getParent().getChildCategoryCount(
+						category.getName()) > 0
+						|| isAmbiguous(category.getParent());
+				m_categoryRecords.add(categoryRecord(REMOVE_CATEGORY, path,
+						null));
+				removePaths(category);
+			}
+			break;
+
+		case EDITED_EVENT:
+			final List<String> oldPath = m_paths.get(category);
+			final Category parent = category.getParent();
+			if (oldPath != null && parent != null) {
+				final String oldName = oldPath.get(oldPath.size() - 1);
+				final int others = parent.getChildCategoryCount(oldName)
+						- (oldName.equals(category.getName()) ? 1 : 0);
+				m_ambiguous |= others > 0 || isAmbiguous(parent);
+				m_categoryRecords.add(categoryRecord(RENAME_CATEGORY,
+						oldPath, category.getName()));
+				addPaths(category, m_paths.get(parent));
+			}
+			break;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if another category of the lesson has the
+	 *         same path as given category.
+	 */
+	private static boolean isAmbiguous(final Category category) {
+		for (Category child = category; child.getParent() != null; child = child
+				.getParent()) {
+			if (child.getParent().getChildCategoryCount(child.getName()) > 1)
+				return true;
+		}
+
+		return false;
+	}
+
+	private void addSubtree(final Category category,
+			final List<String> parentPath) {
+		final List<String> path = pathOf(category, parentPath);
+		m_paths.put(category, path);
+		m_categoryRecords.add(categoryRecord(ADD_CATEGORY, path, null));
+
+		for (final Card card : category.getLocalCards()) {
+			m_changedCards.put(card.getId(), card);
+		}
+
+		for (final Category child : category.getChildCategories()) {
+			addSubtree(child, path);
+		}
+	}
+
+	private void addPaths(final Category category,
+			final List<String> parentPath) {
+		final List<String> path = category.getParent() == null ? parentPath
+				: pathOf(category, parentPath);
+		m_paths.put(category, path);
+
+		for (final Category child : category.getChildCategories()) {
+			addPaths(child, path);
+		}
+	}
+
+	private void removePaths(final Category category) {
+		m_paths.remove(category);
+
+		for (final Category child : category.getChildCategories()) {
+			removePaths(child);
+		}
+	}
+
+	private static List<String> pathOf(final Category category,
+			final List<String> parentPath) {
+		final List<String> path = new ArrayList<String>(parentPath.size() + 1);
+		path.addAll(parentPath);
+		path.add(category.getName());
+
+		return path;
+	}
+
+	private boolean isInLesson(final Card card) {
+		Category category = card.getCategory();
+		while (category != null && category.getParent() != null) {
+			category = category.getParent();
+		}
+
+		return category == m_lesson.getRootCategory();
+	}
+
+	private boolean hasNewImages() {
+		for (final String id : MediaRepository.getInstance().getKeys()) {
+			if (!m_imageIds.contains(id))
+				return true;
+		}
+
+		return false;
+	}
+
+	private void startCompaction() {
+		if (!m_compacting.compareAndSet(false, true))
+			return;
+
+		final Thread compaction = new Thread(() -> {
+			try {
+				compact();
+			} catch (final Exception e) {
+				log.error("Could not compact journal " + m_file, e); //$NON-NLS-1$
+			} finally {
+				m_compacting.set(false);
+			}
+		}, "Journal compaction"); //$NON-NLS-1$
+		compaction.setDaemon(true);
+
+		synchronized (this) {
+			m_compaction = compaction;
+		}
+
+		compaction.start();
+	}
+
+	/**
+	 * Writes a new lesson file with all changes of the journal applied and
+	 * starts a new journal with the records that were appended meanwhile.
+	 * The lesson is read from the files instead of taken from memory, so
+	 * that it can change while the new lesson file is written.
+	 *
+	 * The files are swapped so that dying at any point loses nothing: first
+	 * the journal is replaced by one that accepts both the old and the new
+	 * lesson file, and only replays the records that the new one doesn't
+	 * contain for it. Then the lesson file is replaced, and at last the
+	 * journal by one with only these records.
+	 */
+	private void compact() throws Exception {
+		final long limit = getLength();
+
+		final Lesson lesson = new Lesson(false);
+		XmlBuilder.loadWithoutImages(m_lessonFile, lesson);
+		if (replay(m_file, m_lessonFile, lesson, limit) != limit)
+			throw new IOException("Journal changed during compaction."); //$NON-NLS-1$
+
+		final File snapshot = new File(m_lessonFile.getPath() + TEMP_SUFFIX);
+		final File journal = new File(m_file.getPath() + TEMP_SUFFIX);
+		XmlBuilder.saveWithImagesOf(m_lessonFile, lesson, snapshot);
+
+		synchronized (this) {
+			if (m_closed) {
+				Files.deleteIfExists(snapshot.toPath());
+				return;
+			}
+
+			// moving the files keeps their length and modification time, so
+			// the journals can refer to the new lesson file already
+			writeHeader(journal, m_lessonFile, snapshot, limit);
+			copyRecords(m_file, HEADER_LENGTH, m_length, journal);
+			Files.move(journal.toPath(), m_file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+
+			Files.move(snapshot.toPath(), m_lessonFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+
+			writeHeader(journal, m_lessonFile, null, HEADER_LENGTH);
+			copyRecords(m_file, limit, m_length, journal);
+			Files.move(journal.toPath(), m_file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+
+			m_length = m_file.length();
+		}
+
+		log.info("Compacted journal of {}", m_lessonFile); //$NON-NLS-1$
+	}
+
+	/**
+	 * Writes a journal header for given lesson file.
+	 *
+	 * @param compactedFile
+	 *            the lesson file that replaces the lesson file during a
+	 *            compaction or <code>null</code>.
+	 * @param compactedStart
+	 *            the position of the first record that the compacted lesson
+	 *            file doesn't contain.
+	 */
+	static void writeHeader(final File journal, final File lessonFile,
+			final File compactedFile, final long compactedStart)
+			throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(
+				journal))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(lessonFile.length());
+			out.writeLong(lessonFile.lastModified());
+			out.writeLong(compactedFile != null ? compactedFile.length() : -1);
+			out.writeLong(compactedFile != null ? compactedFile
+					.lastModified() : -1);
+			out.writeLong(compactedStart);
+		}
+	}
+
+	/**
+	 * @return the position of the first record of the journal that given
+	 *         lesson file doesn't contain, or -1 if the journal doesn't belong
+	 *         to that lesson file.
+	 */
+	private static long readStart(final File journal, final File lessonFile)
+			throws IOException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(
+				journal))) {
+			return readStart(in, lessonFile);
+		}
+	}
+
+	private static long readStart(final DataInputStream in,
+			final File lessonFile) throws IOException {
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				return -1;
+
+			final long length = in.readLong();
+			final long modified = in.readLong();
+			final long compactedLength = in.readLong();
+			final long compactedModified = in.readLong();
+			final long compactedStart = in.readLong();
+
+			if (length == lessonFile.length()
+					&& modified == lessonFile.lastModified())
+				return HEADER_LENGTH;
+
+			if (compactedLength == lessonFile.length()
+					&& compactedModified == lessonFile.lastModified())
+				return compactedStart;
+
+			return -1;
+		} catch (final EOFException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the header of given journal accepts a
+	 *         compacted lesson file, too.
+	 */
+	private static boolean isCompacting(final File journal) throws IOException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(
+				journal))) {
+			in.readFully(new byte[4 + 4 + 8 + 8]);
+			return in.readLong() != -1;
+		}
+	}
+
+	/**
+	 * Appends the bytes of given journal from start to end to the target
+	 * journal and forces them to the disk.
+	 */
+	private static void copyRecords(final File journal, final long start,
+			final long end, final File target) throws IOException {
+		try (FileOutputStream out = new FileOutputStream(target, true);
+				RandomAccessFile in = new RandomAccessFile(journal, "r")) { //$NON-NLS-1$
+			final byte[] records = new byte[(int) (end - start)];
+			in.seek(start);
+			in.readFully(records);
+
+			out.write(records);
+			out.getFD().sync();
+		}
+	}
+
+	/**
+	 * Applies the records of the journal up to given position to the lesson.
+	 * Records that the lesson file already contains, see
+	 * {@link #compact()}, are checked but not applied.
+	 *
+	 * @return the position after the last record that was read, or -1 if the
+	 *         journal doesn't belong to given lesson file.
+	 */
+	static long replay(final File journal, final File lessonFile,
+			final Lesson lesson, final long limit) throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(journal)))) {
+			final long start = readStart(in, lessonFile);
+			if (start < 0)
+				return -1;
+
+			final Replay replay = new Replay(lesson);
+			final CRC32 crc = new CRC32();
+
+			long position = HEADER_LENGTH;
+			while (position < limit) {
+				final byte[] record;
+				try {
+					final int length = in.readInt();
+					if (length <= 0 || length > journal.length())
+						break;
+
+					record = new byte[length];
+					in.readFully(record);
+
+					crc.reset();
+					crc.update(record);
+					if (in.readInt() != (int) crc.getValue())
+						break;
+				} catch (final EOFException e) {
+					break;
+				}
+
+				if (position >= start)
+					replay.apply(record);
+				position += 4 + record.length + 4;
+			}
+
+			// the records that the lesson file doesn't contain are lost
+			return position < start ? -1 : position;
+		}
+	}
+
+	private static void writeRecord(final ByteArrayOutputStream out,
+			final byte[] record) throws IOException {
+		final CRC32 crc = new CRC32();
+		crc.update(record);
+
+		final DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(record.length);
+		data.write(record);
+		data.writeInt((int) crc.getValue());
+	}
+
+	private static byte[] categoryRecord(final byte type,
+			final List<String> path, final String newName) {
+		final Record record = new Record(type);
+		record.writeStrings(path);
+		if (newName != null)
+			record.writeString(newName);
+
+		return record.toByteArray();
+	}
+
+	private byte[] putCard(final Card card) throws IOException {
+		final Record record = new Record(PUT_CARD);
+		record.writeStrings(m_paths.get(card.getCategory()));
+		record.writeInt(card.getLevel());
+
+		final List<String> attributes = new ArrayList<String>();
+		XmlBuilder.writeCardAttributes(new AttributeWriter() {
+			@Override
+			public void attribute(final String name, final String value) {
+				attributes.add(name);
+				attributes.add(value);
+			}
+
+			@Override
+			public void attribute(final String name, final long value) {
+				attribute(name, Long.toString(value));
+			}
+		}, card);
+		record.writeStrings(attributes);
+
+		record.writeStrings(resolveIds(card.getFrontSide().getMedia()));
+		record.writeStrings(resolveIds(card.getBackSide().getMedia()));
+
+		return record.toByteArray();
+	}
+
+	/**
+	 * @return the ids of the images that are kept for given ids, which can be
+	 *         the ids of merged duplicates, see
+	 *         {@link MediaRepository#resolveId(String)}.
+	 */
+	private static List<String> resolveIds(final List<String> ids) {
+		final MediaRepository repository = MediaRepository.getInstance();
+		final List<String> resolved = new ArrayList<String>(ids.size());
+		for (final String id : ids) {
+			resolved.add(repository.resolveId(id));
+		}
+
+		return resolved;
+	}
+
+	private static byte[] removeCard(final long id) {
+		final Record record = new Record(REMOVE_CARD);
+		record.writeLong(id);
+
+		return record.toByteArray();
+	}
+
+	private static byte[] addSession(final SessionSummary summary) {
+		final Record record = new Record(ADD_SESSION);
+		record.writeLong(summary.getStart().getTime());
+		record.writeLong(summary.getEnd().getTime());
+		record.writeInt((int) summary.getPassed());
+		record.writeInt((int) summary.getFailed());
+		record.writeInt((int) summary.getSkipped());
+		record.writeInt((int) summary.getRelearned());
+
+		return record.toByteArray();
+	}
+
+	/**
+	 * The body of a record. Strings are written as UTF-8 with their length
+	 * in front, because card texts can be longer than {@link
+	 * DataOutputStream#writeUTF(String)} allows.
+	 */
+	private static class Record {
+		private final ByteArrayOutputStream m_bytes = new ByteArrayOutputStream();
+		private final DataOutputStream m_out = new DataOutputStream(m_bytes);
+
+		Record(final byte type) {
+			m_bytes.write(type);
+		}
+
+		void writeInt(final int value) {
+			try {
+				m_out.writeInt(value);
+			} catch (final IOException e) {
+				throw new AssertionError(e);
+			}
+		}
+
+		void writeLong(final long value) {
+			try {
+				m_out.writeLong(value);
+			} catch (final IOException e) {
+				throw new AssertionError(e);
+			}
+		}
+
+		void writeString(final String value) {
+			final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeInt(bytes.length);
+			m_bytes.write(bytes, 0, bytes.length);
+		}
+
+		void writeStrings(final List<String> values) {
+			writeInt(values.size());
+			for (final String value : values) {
+				writeString(value);
+			}
+		}
+
+		byte[] toByteArray() {
+			return m_bytes.toByteArray();
+		}
+	}
+
+	/**
+	 * Applies records to a lesson.
+	 */
+	private static class Replay {
+		private final Lesson m_lesson;
+		private final Map<Long, Card> m_cards = new HashMap<Long, Card>();
+
+		Replay(final Lesson lesson) {
+			m_lesson = lesson;
+
+			for (final Card card : lesson.getRootCategory().getCards()) {
+				m_cards.put(card.getId(), card);
+			}
+		}
+
+		void apply(final byte[] record) throws IOException {
+			final DataInputStream in = new DataInputStream(
+					new ByteArrayInputStream(record));
+
+			switch (in.readByte()) {
+			case ADD_CATEGORY: {
+				final List<String> path = readStrings(in);
+				final Category parent = find(path.subList(0, path.size() - 1));
+				if (parent != null)
+					parent.addCategoryChild(new Category(path
+							.get(path.size() - 1)));
+				break;
+			}
+			case REMOVE_CATEGORY: {
+				final Category category = find(readStrings(in));
+				if (category != null && category.getParent() != null)
+					category.remove();
+				break;
+			}
+			case RENAME_CATEGORY: {
+				final Category category = find(readStrings(in));
+				final String name = readString(in);
+				if (category != null)
+					category.setName(name);
+				break;
+			}
+			case PUT_CARD:
+				putCard(in);
+				break;
+			case REMOVE_CARD: {
+				final Card card = m_cards.remove(in.readLong());
+				if (card != null && card.getCategory() != null)
+					card.getCategory().removeCard(card);
+				break;
+			}
+			case ADD_SESSION: {
+				final LearnHistory history = m_lesson.getLearnHistory();
+				history.addSummary(new Date(in.readLong()),
+						new Date(in.readLong()), in.readInt(), in.readInt(),
+						in.readInt(), in.readInt());
+				break;
+			}
+			default:
+				throw new IOException("Unknown journal record."); //$NON-NLS-1$
+			}
+		}
+
+		private void putCard(final DataInputStream in) throws IOException {
+			final Category category = find(readStrings(in));
+			final int level = in.readInt();
+
+			final List<String> attributes = readStrings(in);
+			final Map<String, String> byName = new HashMap<String, String>();
+			for (int i = 0; i + 1 < attributes.size(); i += 2) {
+				byName.put(attributes.get(i), attributes.get(i + 1));
+			}
+
+			final Card card = XmlBuilder.createCard(byName);
+			card.getFrontSide().setMedia(readStrings(in));
+			card.getBackSide().setMedia(readStrings(in));
+
+			final Card old = m_cards.put(card.getId(), card);
+			if (old != null && old.getCategory() != null)
+				old.getCategory().removeCard(old);
+
+			if (category != null)
+				category.addCard(card, level);
+		}
+
+		private Category find(final List<String> path) {
+			Category category = m_lesson.getRootCategory();
+			for (final String name : path) {
+				category = category.getChildCategory(name);
+				if (category == null)
+					return null;
+			}
+
+			return category;
+		}
+
+		private static List<String> readStrings(final DataInputStream in)
+				throws IOException {
+			final int size = in.readInt();
+			final List<String> values = new ArrayList<String>(Math.min(size,
+					64));
+			for (int i = 0; i < size; i++) {
+				values.add(readString(in));
+			}
+
+			return values;
+		}
+
+		private static String readString(final DataInputStream in)
+				throws IOException {
+			final byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -20,27 +20,33 @@ package jmemorize.core.io;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.text.DateFormat;
-import java.text.ParseException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.FactoryConfigurationError;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -58,7 +64,10 @@ import jmemorize.core.learn.LearnHistory;
 import jmemorize.core.learn.LearnHistory.SessionSummary;
 import jmemorize.core.media.MediaRepository;
 import jmemorize.core.media.MediaRepository.MediaItem;
+import jmemorize.core.media.MediaRepository.MediaSource;
 
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
@@ -74,6 +83,7 @@ class XmlBuilder {
 	private static final String LESSON = "Lesson"; //$NON-NLS-1$
 	private static final String DECK = "Deck"; //$NON-NLS-1$
 	private static final String CARD = "Card"; //$NON-NLS-1$
+	private static final String CARD_ID = "Id"; //$NON-NLS-1$
 	private static final String SIDE = "Side"; //$NON-NLS-1$
 	private static final String IMG = "image"; //$NON-NLS-1$
 	private static final String IMG_ID = "id"; //$NON-NLS-1$
@@ -102,11 +112,18 @@ class XmlBuilder {
 
 	private static final String LESSON_ZIP_ENTRY_NAME = "lesson.xml"; //$NON-NLS-1$
 	private static final String IMAGE_FOLDER = "images"; //$NON-NLS-1$
+	private static final String TEMP_SUFFIX = ".tmp"; //$NON-NLS-1$
 
-	// we need a fixed formatter in file (not locale depent)
-	private final static DateFormat DATE_FORMAT = DateFormat
-			.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM,
-					Locale.UK);
+	private static final Set<String> COMPRESSED_IMAGE_EXTENSIONS = new HashSet<String>(
+			Arrays.asList("jpg", "jpeg", "png", "gif")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+	// set this system property to true to load lessons with the DOM parser
+	// instead of the streaming parser
+	static final String DOM_LOADER_PROPERTY = "jmemorize.jml.domLoader"; //$NON-NLS-1$
+
+	// we need a fixed format in file (not locale depent). Lessons can be
+	// compacted in the background, so the codec is thread-safe.
+	private final static JmlDateCodec DATE_CODEC = JmlDateCodec.getDefault();
 
 	/**
 	 * Saves the lesson to an {@link OutputStream} which contains an XML
@@ -122,47 +139,52 @@ class XmlBuilder {
 	public static void saveAsXMLFile(final File file, final Lesson lesson)
 			throws IOException, TransformerException,
 			ParserConfigurationException {
-		OutputStream out;
-		ZipOutputStream zipOut = null;
+		saveAsXMLFile(file, lesson, false);
+	}
 
-		if (Settings.loadIsSaveCompressed()) {
-			out = zipOut = new ZipOutputStream(new FileOutputStream(file));
-			zipOut.putNextEntry(new ZipEntry(LESSON_ZIP_ENTRY_NAME));
-		} else {
-			out = new FileOutputStream(file);
-		}
+	/**
+	 * @param useDom
+	 *            <code>true</code> if the lesson should be built as DOM
+	 *            document and then serialized, <code>false</code> if it should
+	 *            be written tag by tag. Both give the same output.
+	 */
+	static void saveAsXMLFile(final File file, final Lesson lesson,
+			final boolean useDom) throws IOException, TransformerException,
+			ParserConfigurationException {
+		final boolean compressed = Settings.loadIsSaveCompressed();
 
-		try {
-			final Document document = DocumentBuilderFactory.newInstance()
-					.newDocumentBuilder().newDocument();
+		// images that are still read from the archive we are about to
+		// replace are copied from it before it is replaced
+		final File target = compressed && isImageArchive(file) ? new File(
+				file.getPath() + TEMP_SUFFIX) : file;
 
-			// add lesson tag as root
-			final Element lessonTag = document.createElement(LESSON);
-			document.appendChild(lessonTag);
+		// the lesson must refer to the images as they are stored
+		removeUnusedImagesFromRepository(lesson);
 
-			// add category tags
-			writeCategory(document, lessonTag, lesson.getRootCategory());
-			writeLearnHistory(document, lesson.getLearnHistory());
+		OutputStream out;
+		ZipArchiveOutputStream zipOut = null;
 
-			// transform document for file output
-			final Transformer transformer = TransformerFactory.newInstance()
-					.newTransformer();
-			transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8"); //$NON-NLS-1$
-			transformer.setOutputProperty(OutputKeys.INDENT, "yes"); //$NON-NLS-1$
+		if (compressed) {
+			out = zipOut = new ZipArchiveOutputStream(target);
+			zipOut.putArchiveEntry(new ZipArchiveEntry(LESSON_ZIP_ENTRY_NAME));
+		} else {
+			out = new FileOutputStream(target);
+		}
 
-			transformer.transform(new DOMSource(document),
-					new StreamResult(out));
+		try {
+			if (useDom)
+				writeDocument(out, lesson);
+			else
+				writeLesson(out, lesson);
 		} finally {
 			if (zipOut != null)
-				zipOut.closeEntry();
+				zipOut.closeArchiveEntry();
 
 			else
 				out.close();
 		}
 
 		try {
-			removeUnusedImagesFromRepository(lesson);
-
 			if (zipOut == null)
 				writeImageRepositoryToDisk(new File(file.getParent()));
 			else
@@ -171,6 +193,101 @@ class XmlBuilder {
 			if (zipOut != null)
 				zipOut.close();
 		}
+
+		if (target != file) {
+			Files.move(target.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		if (compressed)
+			readImagesFromZip(file);
+	}
+
+	/**
+	 * Lets all images that are read from given archive be read from the same
+	 * entries of another archive, e.g. after the first was copied there.
+	 */
+	static void moveImageSources(final File from, final File to) {
+		final File archive = from.getAbsoluteFile();
+
+		for (final MediaItem item : MediaRepository.getInstance()
+				.getImageItems()) {
+			final MediaSource source = item.getSource();
+
+			if (source instanceof ZipEntrySource
+					&& ((ZipEntrySource) source).getArchive().equals(archive)) {
+				item.setSource(new ZipEntrySource(to,
+						((ZipEntrySource) source).getEntryName(), source
+								.length(), source.crc()));
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if any image is read from given archive.
+	 */
+	private static boolean isImageArchive(final File file) {
+		final File archive = file.getAbsoluteFile();
+
+		for (final MediaItem item : MediaRepository.getInstance()
+				.getImageItems()) {
+			final MediaSource source = item.getSource();
+
+			if (source instanceof ZipEntrySource
+					&& ((ZipEntrySource) source).getArchive().equals(archive))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Lets all images be read from given archive they were just saved to, so
+	 * that their bytes don't have to stay in memory.
+	 */
+	private static void readImagesFromZip(final File archive) {
+		for (final MediaItem item : MediaRepository.getInstance()
+				.getImageItems()) {
+			item.setSource(new ZipEntrySource(archive, imageEntryName(item),
+					item.getLength(), item.getCrc()));
+		}
+	}
+
+	private static void writeLesson(final OutputStream out, final Lesson lesson)
+			throws IOException {
+		final XmlWriter writer = new XmlWriter(out);
+		writer.writeDeclaration();
+
+		// add lesson tag as root
+		writer.startElement(LESSON);
+		writeCategory(writer, lesson.getRootCategory());
+		writeLearnHistory(writer, lesson.getLearnHistory());
+		writer.endElement(LESSON);
+
+		writer.flush();
+	}
+
+	private static void writeDocument(final OutputStream out,
+			final Lesson lesson) throws TransformerException,
+			ParserConfigurationException {
+		final Document document = DocumentBuilderFactory.newInstance()
+				.newDocumentBuilder().newDocument();
+
+		// add lesson tag as root
+		final Element lessonTag = document.createElement(LESSON);
+		document.appendChild(lessonTag);
+
+		// add category tags
+		writeCategory(document, lessonTag, lesson.getRootCategory());
+		writeLearnHistory(document, lesson.getLearnHistory());
+
+		// transform document for file output
+		final Transformer transformer = TransformerFactory.newInstance()
+				.newTransformer();
+		transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8"); //$NON-NLS-1$
+		transformer.setOutputProperty(OutputKeys.INDENT, "yes"); //$NON-NLS-1$
+
+		transformer.transform(new DOMSource(document), new StreamResult(out));
 	}
 
 	/**
@@ -178,34 +295,137 @@ class XmlBuilder {
 	 * 
 	 * Don't use this method directly. Use the {@link LessonProvider} instead.
 	 * 
+	 * The document is read with a streaming parser that creates categories
+	 * and cards while it reads, unless the {@link #DOM_LOADER_PROPERTY} system
+	 * property is set or there is no streaming parser available.
+	 * 
 	 * @param File
 	 *            xmlFile the file that containt the XML document which
 	 *            represents the lesson.
 	 */
 	public static void loadFromXMLFile(final File xmlFile, final Lesson lesson)
 			throws SAXException, IOException, ParserConfigurationException {
+		loadFromXMLFile(xmlFile, lesson,
+				Boolean.getBoolean(DOM_LOADER_PROPERTY));
+	}
+
+	/**
+	 * @param useDom
+	 *            <code>true</code> if the lesson should be read into a DOM
+	 *            document first, <code>false</code> if it should be read with
+	 *            the streaming parser.
+	 */
+	static void loadFromXMLFile(final File xmlFile, final Lesson lesson,
+			final boolean useDom) throws SAXException, IOException,
+			ParserConfigurationException {
+		loadFromXMLFile(xmlFile, lesson, useDom, true);
+	}
+
+	/**
+	 * Loads the cards, categories and learn history of a lesson, but leaves
+	 * the media repository alone.
+	 */
+	static void loadWithoutImages(final File xmlFile, final Lesson lesson)
+			throws SAXException, IOException, ParserConfigurationException {
+		loadFromXMLFile(xmlFile, lesson, false, false);
+	}
+
+	private static void loadFromXMLFile(final File xmlFile,
+			final Lesson lesson, final boolean useDom, final boolean loadImages)
+			throws SAXException, IOException, ParserConfigurationException {
+		final ZipFile zipFile = openZipFile(xmlFile);
+
+		if (zipFile != null) {
+			// the lesson and the images are found through the central
+			// directory, images are only decompressed when they are shown
+			try {
+				final ZipEntry lessonEntry = zipFile
+						.getEntry(LESSON_ZIP_ENTRY_NAME);
+				if (lessonEntry == null)
+					throw new IOException("Unexpected zip entry.");
+
+				try (InputStream in = zipFile.getInputStream(lessonEntry)) {
+					loadLesson(in, lesson, useDom);
+				}
+
+				if (loadImages)
+					registerImagesFromZip(zipFile, xmlFile);
+			} finally {
+				zipFile.close();
+			}
+
+			return;
+		}
+
 		InputStream in;
-		ZipInputStream zipIn = null;
 
 		try {
 			in = new GZIPInputStream(new FileInputStream(xmlFile));
 		} catch (final IOException ex) {
-			in = zipIn = new ZipInputStream(new FileInputStream(xmlFile));
-			final ZipEntry zipEntry = zipIn.getNextEntry();
-
 			// file might not be compressed. try loading it directly
-			if (zipEntry == null) // expected when the file is not zipped
-			{
-				in = new FileInputStream(xmlFile);
-				zipIn = null;
-			} else {
-				if (!zipEntry.getName().equals(LESSON_ZIP_ENTRY_NAME))
-					throw new IOException("Unexpected zip entry.");
+			in = new FileInputStream(xmlFile);
+		}
+
+		try {
+			loadLesson(in, lesson, useDom);
+		} finally {
+			in.close();
+		}
+
+		if (loadImages)
+			loadImageRepositoryFromDisk(xmlFile);
+	}
+
+	/**
+	 * Writes given lesson to the target file in the format of the source
+	 * file. If the source is a zip archive, all its other entries are copied
+	 * as they are, so the images stay the same.
+	 */
+	static void saveWithImagesOf(final File source, final Lesson lesson,
+			final File target) throws IOException {
+		final ZipFile zipFile = openZipFile(source);
+
+		if (zipFile == null) {
+			try (OutputStream out = new FileOutputStream(target)) {
+				writeLesson(out, lesson);
 			}
+
+			return;
+		}
+
+		zipFile.close();
+
+		try (ZipArchiveOutputStream zipOut = new ZipArchiveOutputStream(target);
+				ZipEntryCopier copier = new ZipEntryCopier()) {
+			zipOut.putArchiveEntry(new ZipArchiveEntry(LESSON_ZIP_ENTRY_NAME));
+			writeLesson(zipOut, lesson);
+			zipOut.closeArchiveEntry();
+
+			copier.copyAll(source, LESSON_ZIP_ENTRY_NAME, zipOut);
 		}
+	}
 
-		// get lesson tag
+	/**
+	 * @return the given file as zip archive or <code>null</code> if it isn't
+	 *         one.
+	 */
+	private static ZipFile openZipFile(final File file) throws IOException {
 		try {
+			return new ZipFile(file);
+		} catch (final ZipException e) {
+			return null; // expected when the file is not zipped
+		}
+	}
+
+	private static void loadLesson(final InputStream in, final Lesson lesson,
+			final boolean useDom) throws SAXException, IOException,
+			ParserConfigurationException {
+		final XMLInputFactory streamFactory = useDom ? null
+				: createInputFactory();
+
+		if (streamFactory != null) {
+			loadLesson(streamFactory, in, lesson);
+		} else {
 			final DocumentBuilderFactory factory = DocumentBuilderFactory
 					.newInstance();
 			final Document doc = factory.newDocumentBuilder().parse(in);
@@ -215,28 +435,21 @@ class XmlBuilder {
 					CATEGORY).item(0);
 			loadCategory(lesson.getRootCategory(), null, categoryTag, 0);
 			loadLearnHistory(doc, lesson.getLearnHistory());
-		} finally {
-			if (zipIn == null)
-				in.close();
 		}
 
-		try {
-			if (zipIn == null)
-				loadImageRepositoryFromDisk(xmlFile);
-
-			else {
-				zipIn = new ZipInputStream(new FileInputStream(xmlFile));
+		ensureUniqueIds(lesson);
+	}
 
-				ZipEntry entry;
-				while ((entry = zipIn.getNextEntry()) != null) {
-					loadImageFromZipEntry(zipIn, entry);
-				}
-			}
-		} catch (final Exception e) {
-			// Main.logThrowable("Exception while loading lesson "+xmlFile, e);
-		} finally {
-			if (zipIn != null)
-				zipIn.close();
+	/**
+	 * Gives every card whose id an earlier card of the lesson already has a
+	 * new id. Nothing keeps files that were edited or merged by hand from
+	 * having the same id twice, and the journal would mix up such cards.
+	 */
+	static void ensureUniqueIds(final Lesson lesson) {
+		final Set<Long> ids = new HashSet<Long>();
+		for (final Card card : lesson.getRootCategory().getCardsView()) {
+			if (!ids.add(card.getId()))
+				card.setId(Card.createId());
 		}
 	}
 
@@ -260,7 +473,7 @@ class XmlBuilder {
 			if (child.getNodeType() != Node.ELEMENT_NODE)
 				continue;
 
-			final NamedNodeMap attributes = child.getAttributes();
+			final Attributes attributes = attributesOf(child);
 
 			final Date start = readDate(attributes, STATS_START);
 			final Date end = readDate(attributes, STATS_END);
@@ -288,9 +501,9 @@ class XmlBuilder {
 		for (final SessionSummary summary : history.getSummaries()) {
 			final Element sessionTag = document.createElement(SESSION);
 			sessionTag.setAttribute(STATS_START,
-					DATE_FORMAT.format(summary.getStart()));
+					DATE_CODEC.format(summary.getStart()));
 			sessionTag.setAttribute(STATS_END,
-					DATE_FORMAT.format(summary.getEnd()));
+					DATE_CODEC.format(summary.getEnd()));
 
 			sessionTag.setAttribute(STATS_PASSED,
 					toInteger(summary.getPassed()));
@@ -327,15 +540,18 @@ class XmlBuilder {
 
 		for (final MediaItem item : repository.getImageItems()) {
 			final File imgFile = new File(imgDir + File.separator
-					+ item.getId());
+					+ item.getId()).getAbsoluteFile();
 
-			if (imgFile.exists()) {
-				// TODO if same file continue
+			final MediaSource source = item.getSource();
+			if (source instanceof FileSource
+					&& ((FileSource) source).getFile().equals(imgFile))
+				continue;
+
+			try (OutputStream out = new FileOutputStream(imgFile, false)) {
+				item.writeTo(out);
 			}
 
-			final FileOutputStream out = new FileOutputStream(imgFile, false);
-			out.write(item.getBytes());
-			out.close();
+			item.setSource(new FileSource(imgFile));
 		}
 
 		return imgDir;
@@ -383,6 +599,7 @@ class XmlBuilder {
 
 	private static Element writeCard(final Document document, final Card card) {
 		final Element cardTag = document.createElement(CARD);
+		cardTag.setAttribute(CARD_ID, Long.toString(card.getId()));
 
 		// save card sides
 		cardTag.setAttribute(FRONTSIDE, card.getFrontSide().getText()
@@ -392,19 +609,19 @@ class XmlBuilder {
 
 		// save dates
 		cardTag.setAttribute(DATE_CREATED,
-				DATE_FORMAT.format(card.getDateCreated()));
+				DATE_CODEC.format(card.getDateCreated()));
 		cardTag.setAttribute(DATE_MODIFIED,
-				DATE_FORMAT.format(card.getDateModified()));
+				DATE_CODEC.format(card.getDateModified()));
 		cardTag.setAttribute(DATE_TOUCHED,
-				DATE_FORMAT.format(card.getDateTouched()));
+				DATE_CODEC.format(card.getDateTouched()));
 
 		if (card.getDateTested() != null) {
 			cardTag.setAttribute(DATE_TESTED,
-					DATE_FORMAT.format(card.getDateTested()));
+					DATE_CODEC.format(card.getDateTested()));
 		}
 		if (card.getDateExpired() != null) {
 			cardTag.setAttribute(DATE_EXPIRED,
-					DATE_FORMAT.format(card.getDateExpired()));
+					DATE_CODEC.format(card.getDateExpired()));
 		}
 
 		// save amount learned
@@ -433,9 +650,10 @@ class XmlBuilder {
 			final CardSide cardSide) {
 		final Element sideElement = doc.createElement(SIDE);
 
+		final MediaRepository repository = MediaRepository.getInstance();
 		for (final String imgID : cardSide.getMedia()) {
 			final Element imgElement = doc.createElement(IMG);
-			imgElement.setAttribute(IMG_ID, imgID);
+			imgElement.setAttribute(IMG_ID, repository.resolveId(imgID));
 
 			sideElement.appendChild(imgElement);
 		}
@@ -443,18 +661,158 @@ class XmlBuilder {
 		return sideElement;
 	}
 
-	private static void writeImageRepositoryToZip(final ZipOutputStream zipOut)
+	private static void writeCategory(final XmlWriter writer,
+			final Category category) throws IOException {
+		writer.startElement(CATEGORY);
+		writer.attribute(NAME, category.getName());
+
+		// for all decks add a deck tag
+		for (int i = 0; i < category.getNumberOfDecks(); i++) {
+			writer.startElement(DECK);
+
+			// for all cards add a card tag
+			for (final Card card : category.getLocalCards(i)) {
+				writeCard(writer, card);
+			}
+
+			writer.endElement(DECK);
+		}
+
+		// now add child categories
+		for (final Category child : category.getChildCategories()) {
+			writeCategory(writer, child);
+		}
+
+		writer.endElement(CATEGORY);
+	}
+
+	private static void writeCard(final XmlWriter writer, final Card card)
 			throws IOException {
+		writer.startElement(CARD);
+		writeCardAttributes(writer, card);
+
+		// save images
+		writeImages(writer, card.getFrontSide());
+		writeImages(writer, card.getBackSide());
+
+		writer.endElement(CARD);
+	}
+
+	/**
+	 * Writes all attributes of a card tag, sorted by name like the DOM
+	 * serializer does.
+	 */
+	static void writeCardAttributes(final AttributeWriter writer,
+			final Card card) throws IOException {
+		writer.attribute(AMOUNT_LEARNED_BACK, card.getLearnedAmount(false));
+		writer.attribute(AMOUNT_LEARNED_FRONT, card.getLearnedAmount(true));
+		writer.attribute(AMOUNT_SKIPPED, card.getSkippedAmount());
+		writer.attribute(BACKSIDE, card.getBackSide().getText().getFormatted());
+		writer.attribute(DATE_CREATED,
+				DATE_CODEC.format(card.getDateCreated()));
+
+		if (card.getDateExpired() != null) {
+			writer.attribute(DATE_EXPIRED,
+					DATE_CODEC.format(card.getDateExpired()));
+		}
+
+		writer.attribute(DATE_MODIFIED,
+				DATE_CODEC.format(card.getDateModified()));
+
+		if (card.getDateTested() != null) {
+			writer.attribute(DATE_TESTED,
+					DATE_CODEC.format(card.getDateTested()));
+		}
+
+		writer.attribute(DATE_TOUCHED,
+				DATE_CODEC.format(card.getDateTouched()));
+		writer.attribute(FRONTSIDE, card.getFrontSide().getText()
+				.getFormatted());
+		writer.attribute(CARD_ID, card.getId());
+		writer.attribute(TESTS_HIT, card.getTestsPassed());
+		writer.attribute(TESTS_TOTAL, card.getTestsTotal());
+	}
+
+	private static void writeImages(final XmlWriter writer,
+			final CardSide cardSide) throws IOException {
+		writer.startElement(SIDE);
+
 		final MediaRepository repository = MediaRepository.getInstance();
+		for (final String imgID : cardSide.getMedia()) {
+			writer.startElement(IMG);
+			writer.attribute(IMG_ID, repository.resolveId(imgID));
+			writer.endElement(IMG);
+		}
 
-		for (final MediaItem item : repository.getImageItems()) {
-			zipOut.putNextEntry(new ZipEntry(IMAGE_FOLDER + File.separator
-					+ item.getId()));
-			zipOut.write(item.getBytes());
-			zipOut.closeEntry();
+		writer.endElement(SIDE);
+	}
+
+	private static void writeLearnHistory(final XmlWriter writer,
+			final LearnHistory history) throws IOException {
+		writer.startElement(STATS_ROOT);
+
+		for (final SessionSummary summary : history.getSummaries()) {
+			writer.startElement(SESSION);
+			writer.attribute(STATS_END, DATE_CODEC.format(summary.getEnd()));
+			writer.attribute(STATS_FAILED, (int) summary.getFailed());
+			writer.attribute(STATS_PASSED, (int) summary.getPassed());
+			writer.attribute(STATS_RELEARNED, (int) summary.getRelearned());
+			writer.attribute(STATS_SKIPPED, (int) summary.getSkipped());
+			writer.attribute(STATS_START,
+					DATE_CODEC.format(summary.getStart()));
+			writer.endElement(SESSION);
+		}
+
+		writer.endElement(STATS_ROOT);
+	}
+
+	/**
+	 * Images that are read from an archive are copied from there as they are
+	 * stored, without inflating and deflating them again. Other images are
+	 * only deflated if they aren't in a compressed format already.
+	 */
+	private static void writeImageRepositoryToZip(
+			final ZipArchiveOutputStream zipOut) throws IOException {
+		final MediaRepository repository = MediaRepository.getInstance();
+
+		try (ZipEntryCopier copier = new ZipEntryCopier()) {
+			for (final MediaItem item : repository.getImageItems()) {
+				final String name = imageEntryName(item);
+
+				final MediaSource source = item.getSource();
+				if (source instanceof ZipEntrySource
+						&& copier.copy((ZipEntrySource) source, name, zipOut))
+					continue;
+
+				final ZipArchiveEntry entry = new ZipArchiveEntry(name);
+				if (isCompressedImage(item.getId()))
+					entry.setMethod(ZipArchiveEntry.STORED);
+
+				zipOut.putArchiveEntry(entry);
+				item.writeTo(zipOut);
+				zipOut.closeArchiveEntry();
+			}
 		}
 	}
 
+	/**
+	 * @return <code>true</code> if the image with given ID is stored in a
+	 *         format that is compressed already and won't get any smaller by
+	 *         deflating it.
+	 */
+	private static boolean isCompressedImage(final String id) {
+		final int dotPos = id.lastIndexOf('.');
+		if (dotPos < 0)
+			return false;
+
+		return COMPRESSED_IMAGE_EXTENSIONS.contains(id.substring(dotPos + 1)
+				.toLowerCase(Locale.ENGLISH));
+	}
+
+	private static String imageEntryName(final MediaItem item) {
+		return IMAGE_FOLDER + File.separator + item.getId();
+	}
+
 	private static void loadCategory(final Category category,
 			final Category father, final Element categoryTag, final int depth) {
 		// for all child tags in category tag
@@ -485,25 +843,38 @@ class XmlBuilder {
 				final Element catTag = (Element) child;
 				final String name = catTag.getAttribute(NAME);
 
-				Category childCategory = category.getChildCategory(name);
-				if (childCategory == null) {
-					childCategory = new Category(name);
-					category.addCategoryChild(childCategory);
-				}
-
+				final Category childCategory = getOrAddChild(category, name);
 				loadCategory(childCategory, category, catTag, depth + 1);
 			}
 		}
 	}
 
 	private static Card loadCard(final Node cardTag) {
-		final NamedNodeMap attributes = cardTag.getAttributes();
+		final Card card = createCard(attributesOf(cardTag));
+
+		// load images
+		card.getFrontSide().setMedia(loadImages(cardTag, 0));
+		card.getBackSide().setMedia(loadImages(cardTag, 1));
+
+		return card;
+	}
+
+	/**
+	 * Creates a card from the attributes of a card tag, given by name.
+	 * Images are loaded separately.
+	 */
+	static Card createCard(final Map<String, String> attributes) {
+		return createCard(attributes::get);
+	}
 
+	/**
+	 * Creates a card from the attributes of a card tag. Images are loaded
+	 * separately.
+	 */
+	private static Card createCard(final Attributes attributes) {
 		// read front/backside
-		final String frontSide = attributes.getNamedItem(FRONTSIDE)
-				.getNodeValue();
-		final String backSide = attributes.getNamedItem(BACKSIDE)
-				.getNodeValue();
+		final String frontSide = attributes.get(FRONTSIDE);
+		final String backSide = attributes.get(BACKSIDE);
 
 		// read dates
 		Date dateCreated = readDate(attributes, DATE_CREATED);
@@ -531,6 +902,11 @@ class XmlBuilder {
 
 		// create card
 		final Card card = new Card(dateCreated, frontSide, backSide);
+
+		// cards of older lessons have no id and keep their generated one
+		final String id = attributes.get(CARD_ID);
+		if (id != null)
+			card.setId(Long.parseLong(id));
 		if (dateModified != null)
 			card.setDateModified(dateModified);
 
@@ -544,10 +920,6 @@ class XmlBuilder {
 
 		card.setSkippedAmount(skippedAmount);
 
-		// load images
-		card.getFrontSide().setMedia(loadImages(cardTag, 0));
-		card.getBackSide().setMedia(loadImages(cardTag, 1));
-
 		return card;
 	}
 
@@ -587,6 +959,190 @@ class XmlBuilder {
 		return new ArrayList<String>();
 	}
 
+	/**
+	 * @return the factory for streaming parsers or <code>null</code> if there
+	 *         is no implementation available.
+	 */
+	private static XMLInputFactory createInputFactory() {
+		try {
+			return XMLInputFactory.newInstance();
+		} catch (final FactoryConfigurationError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the lesson with a streaming parser. Like the DOM loader this uses
+	 * the first category tag as root category and the first statistics tag as
+	 * learn history.
+	 */
+	private static void loadLesson(final XMLInputFactory factory,
+			final InputStream in, final Lesson lesson) throws SAXException {
+		try {
+			final XMLStreamReader reader = factory.createXMLStreamReader(in);
+
+			try {
+				boolean categoryLoaded = false;
+				boolean historyLoaded = false;
+
+				while (reader.hasNext()) {
+					if (reader.next() != XMLStreamConstants.START_ELEMENT)
+						continue;
+
+					final String name = reader.getLocalName();
+					if (!categoryLoaded && name.equals(CATEGORY)) {
+						loadCategory(lesson.getRootCategory(), reader);
+						categoryLoaded = true;
+					} else if (!historyLoaded && name.equals(STATS_ROOT)) {
+						loadLearnHistory(reader, lesson.getLearnHistory());
+						historyLoaded = true;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (final XMLStreamException e) {
+			throw new SAXException(e);
+		}
+	}
+
+	private static void loadCategory(final Category category,
+			final XMLStreamReader reader) throws XMLStreamException {
+		int deckLevel = 0;
+		while (nextChild(reader)) {
+			final String name = reader.getLocalName();
+
+			// if deck tag
+			if (name.equalsIgnoreCase(DECK)) {
+				while (nextChild(reader)) {
+					if (reader.getLocalName().equalsIgnoreCase(CARD))
+						category.addCard(loadCard(reader), deckLevel);
+					else
+						skipElement(reader);
+				}
+
+				deckLevel++;
+			}
+			// if category tag
+			else if (name.equalsIgnoreCase(CATEGORY)) {
+				final String childName = reader.getAttributeValue(null, NAME);
+
+				// missing attributes are empty in DOM elements
+				final Category childCategory = getOrAddChild(category,
+						childName != null ? childName : ""); //$NON-NLS-1$
+
+				loadCategory(childCategory, reader);
+			} else {
+				skipElement(reader);
+			}
+		}
+	}
+
+	private static Category getOrAddChild(final Category category,
+			final String name) {
+		Category childCategory = category.getChildCategory(name);
+		if (childCategory == null) {
+			childCategory = new Category(name);
+			category.addCategoryChild(childCategory);
+		}
+
+		return childCategory;
+	}
+
+	private static Card loadCard(final XMLStreamReader reader)
+			throws XMLStreamException {
+		final Card card = createCard(name -> reader.getAttributeValue(null,
+				name));
+
+		// load images of the first two side tags
+		List<String> frontImages = null;
+		List<String> backImages = null;
+		while (nextChild(reader)) {
+			if (!reader.getLocalName().equalsIgnoreCase(SIDE)) {
+				skipElement(reader);
+			} else if (frontImages == null) {
+				frontImages = loadImages(reader);
+			} else if (backImages == null) {
+				backImages = loadImages(reader);
+			} else {
+				skipElement(reader);
+			}
+		}
+
+		card.getFrontSide().setMedia(
+				frontImages != null ? frontImages : new ArrayList<String>());
+		card.getBackSide().setMedia(
+				backImages != null ? backImages : new ArrayList<String>());
+
+		return card;
+	}
+
+	private static List<String> loadImages(final XMLStreamReader reader)
+			throws XMLStreamException {
+		final List<String> imgIDs = new ArrayList<String>();
+		while (nextChild(reader)) {
+			if (reader.getLocalName().equalsIgnoreCase(IMG)) {
+				final String id = reader.getAttributeValue(null, IMG_ID);
+				if (id != null)
+					imgIDs.add(id);
+			}
+
+			skipElement(reader);
+		}
+
+		return imgIDs;
+	}
+
+	private static void loadLearnHistory(final XMLStreamReader reader,
+			final LearnHistory history) throws XMLStreamException {
+		final Attributes attributes = name -> reader.getAttributeValue(null,
+				name);
+
+		while (nextChild(reader)) {
+			final Date start = readDate(attributes, STATS_START);
+			final Date end = readDate(attributes, STATS_END);
+
+			final int passed = readInt(attributes, STATS_PASSED);
+			final int failed = readInt(attributes, STATS_FAILED);
+			final int skipped = readInt(attributes, STATS_SKIPPED);
+			final int relearned = readInt(attributes, STATS_RELEARNED);
+
+			history.addSummary(start, end, passed, failed, skipped, relearned);
+			skipElement(reader);
+		}
+
+		history.setIsLoaded(true);
+	}
+
+	/**
+	 * Moves the reader to the next child tag of the current tag.
+	 * 
+	 * @return <code>true</code> if the reader is at the start of the next
+	 *         child tag. <code>false</code> if it is at the end of the current
+	 *         tag.
+	 */
+	private static boolean nextChild(final XMLStreamReader reader)
+			throws XMLStreamException {
+		while (true) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				return true;
+			case XMLStreamConstants.END_ELEMENT:
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Moves the reader to the end of the current tag.
+	 */
+	private static void skipElement(final XMLStreamReader reader)
+			throws XMLStreamException {
+		while (nextChild(reader)) {
+			skipElement(reader);
+		}
+	}
+
 	private static void loadImageRepositoryFromDisk(final File dir) {
 		final MediaRepository repository = MediaRepository.getInstance();
 
@@ -597,63 +1153,91 @@ class XmlBuilder {
 		if (files == null)
 			return;
 
+		// the images are only read when they are shown
 		for (final File file : files) {
-			try {
-				final FileInputStream in = new FileInputStream(file);
-				repository.addImage(in, file.getName());
-			} catch (final FileNotFoundException e) {
-				// ignore for now
-			} catch (final IOException e) {
-				// Main.logThrowable("could not load image "+file, e);
-			}
+			if (file.isFile())
+				repository.addImage(new FileSource(file), file.getName());
 		}
 	}
 
-	private static void loadImageFromZipEntry(final InputStream in,
-			final ZipEntry entry) throws IOException {
+	/**
+	 * Adds all images of given archive to the repository without reading
+	 * them.
+	 */
+	private static void registerImagesFromZip(final ZipFile zipFile,
+			final File archive) {
 		final MediaRepository repository = MediaRepository.getInstance();
 
-		final String name = entry.getName();
-		if (!name.startsWith(IMAGE_FOLDER))
-			return;
+		final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+		while (entries.hasMoreElements()) {
+			final ZipEntry entry = entries.nextElement();
 
-		repository.addImage(in, name.substring(IMAGE_FOLDER.length() + 1));
+			final String name = entry.getName();
+			if (!name.startsWith(IMAGE_FOLDER) || entry.isDirectory())
+				continue;
+
+			repository.addImage(
+					new ZipEntrySource(archive, name, entry.getSize(), entry
+							.getCrc()),
+					name.substring(IMAGE_FOLDER.length() + 1));
+		}
 	}
 
+	/**
+	 * Removes all images that aren't used by any card. Images with the same
+	 * bytes are merged. The cards keep the ids they have, which the repository
+	 * resolves to the image that is kept, and the writers write the resolved
+	 * ids, so that saving doesn't edit any card.
+	 */
 	private static void removeUnusedImagesFromRepository(final Lesson lesson) {
+		final MediaRepository repository = MediaRepository.getInstance();
+		repository.mergeDuplicates();
+
 		final Set<String> usedImageIDs = new HashSet<String>();
 
-		final List<Card> allCards = lesson.getRootCategory().getCards();
-		for (final Card card : allCards) {
+		for (final Card card : lesson.getRootCategory().getCardsView()) {
 			usedImageIDs.addAll(card.getFrontSide().getMedia());
 			usedImageIDs.addAll(card.getBackSide().getMedia());
 		}
 
-		MediaRepository.getInstance().retain(usedImageIDs);
+		repository.retain(usedImageIDs);
 	}
 
 	private static String toInteger(final float num) {
 		return Integer.toString((int) num);
 	}
 
-	private static int readInt(final NamedNodeMap attributes,
+	private static int readInt(final Attributes attributes,
 			final String attributeItem) {
-		final Node num = attributes.getNamedItem(attributeItem);
-		return (num != null) ? Integer.parseInt(num.getNodeValue()) : 0;
+		final String num = attributes.get(attributeItem);
+		return (num != null) ? Integer.parseInt(num) : 0;
 	}
 
-	private static Date readDate(final NamedNodeMap attributes,
+	private static Date readDate(final Attributes attributes,
 			final String attributeItem) {
-		final Node date = attributes.getNamedItem(attributeItem);
+		final String date = attributes.get(attributeItem);
 
-		if (date != null) {
-			try {
-				return DATE_FORMAT.parse(date.getNodeValue());
-			} catch (final ParseException e) {
-				// Main.logThrowable("Could not parse date.", e);
-			}
-		}
+		return (date != null) ? DATE_CODEC.parse(date) : null;
+	}
+
+	private static Attributes attributesOf(final Node node) {
+		final NamedNodeMap attributes = node.getAttributes();
 
-		return null;
+		return name -> {
+			final Node attribute = attributes.getNamedItem(name);
+			return attribute != null ? attribute.getNodeValue() : null;
+		};
+	}
+
+	/**
+	 * The attributes of a tag, as given by either the DOM or the streaming
+	 * parser.
+	 */
+	private interface Attributes {
+		/**
+		 * @return the value of the attribute with given name or
+		 *         <code>null</code> if the tag has no such attribute.
+		 */
+		String get(String name);
 	}
 }
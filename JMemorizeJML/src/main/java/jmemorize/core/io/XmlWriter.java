@@ -0,0 +1,212 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes an XML document tag by tag to an output stream, without building a
+ * document in memory first.
+ *
+ * The output has the same layout and escaping as a DOM document serialized
+ * by the default JDK transformer with indenting enabled: every tag on a line
+ * of its own, tags without children closed with <code>/&gt;</code>, and line
+ * breaks, tabs and other control characters in attribute values written as
+ * character references so that they survive attribute normalization.
+ * Attributes are written in the order they are given.
+ */
+class XmlWriter implements AttributeWriter {
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Writer m_out;
+	private final char[] m_buffer = new char[BUFFER_SIZE];
+	private int m_length;
+
+	// scratch space for the digits of a number
+	private final char[] m_digits = new char[20];
+
+	// true if the start tag of the current element hasn't been closed yet
+	private boolean m_startTagOpen;
+
+	/**
+	 * @param out
+	 *            the stream to write to, encoded in UTF-8. It isn't closed by
+	 *            this writer.
+	 */
+	XmlWriter(final OutputStream out) {
+		m_out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+	}
+
+	void writeDeclaration() throws IOException {
+		write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n"); //$NON-NLS-1$
+	}
+
+	void startElement(final String name) throws IOException {
+		closeStartTag();
+
+		write('<');
+		write(name);
+		m_startTagOpen = true;
+	}
+
+	/**
+	 * Adds an attribute to the element that was just started.
+	 */
+	public void attribute(final String name, final String value)
+			throws IOException {
+		assert m_startTagOpen;
+
+		write(' ');
+		write(name);
+		write("=\""); //$NON-NLS-1$
+		writeEscaped(value);
+		write('"');
+	}
+
+	public void attribute(final String name, final long value)
+			throws IOException {
+		assert m_startTagOpen;
+
+		write(' ');
+		write(name);
+		write("=\""); //$NON-NLS-1$
+		writeNumber(value);
+		write('"');
+	}
+
+	void endElement(final String name) throws IOException {
+		if (m_startTagOpen) {
+			write("/>\n"); //$NON-NLS-1$
+			m_startTagOpen = false;
+		} else {
+			write("</"); //$NON-NLS-1$
+			write(name);
+			write(">\n"); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Writes all buffered output to the stream.
+	 */
+	void flush() throws IOException {
+		m_out.write(m_buffer, 0, m_length);
+		m_length = 0;
+		m_out.flush();
+	}
+
+	private void closeStartTag() throws IOException {
+		if (m_startTagOpen) {
+			write(">\n"); //$NON-NLS-1$
+			m_startTagOpen = false;
+		}
+	}
+
+	private void writeEscaped(final String value) throws IOException {
+		final int length = value.length();
+		for (int i = 0; i < length; i++) {
+			final char c = value.charAt(i);
+
+			switch (c) {
+			case '&':
+				write("&amp;"); //$NON-NLS-1$
+				break;
+			case '<':
+				write("&lt;"); //$NON-NLS-1$
+				break;
+			case '>':
+				write("&gt;"); //$NON-NLS-1$
+				break;
+			case '"':
+				write("&quot;"); //$NON-NLS-1$
+				break;
+			default:
+				if (c < ' ') {
+					writeReference(c);
+				} else if (Character.isHighSurrogate(c) && i + 1 < length
+						&& Character.isLowSurrogate(value.charAt(i + 1))) {
+					writeReference(Character.toCodePoint(c, value.charAt(++i)));
+				} else {
+					write(c);
+				}
+			}
+		}
+	}
+
+	private void writeReference(final int codePoint) throws IOException {
+		write("&#"); //$NON-NLS-1$
+		writeNumber(codePoint);
+		write(';');
+	}
+
+	private void writeNumber(long value) throws IOException {
+		if (value < 0) {
+			if (value == Long.MIN_VALUE) {
+				write(Long.toString(value));
+				return;
+			}
+
+			write('-');
+			value = -value;
+		}
+
+		// the digits come out backwards
+		final char[] digits = m_digits;
+		int start = digits.length;
+		do {
+			digits[--start] = (char) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+
+		for (int i = start; i < digits.length; i++) {
+			write(digits[i]);
+		}
+	}
+
+	private void write(final String text) throws IOException {
+		final int length = text.length();
+		if (m_length + length > BUFFER_SIZE) {
+			drain();
+
+			if (length > BUFFER_SIZE) {
+				m_out.write(text);
+				return;
+			}
+		}
+
+		text.getChars(0, length, m_buffer, m_length);
+		m_length += length;
+	}
+
+	private void write(final char c) throws IOException {
+		if (m_length == BUFFER_SIZE) {
+			drain();
+		}
+
+		m_buffer[m_length++] = c;
+	}
+
+	private void drain() throws IOException {
+		m_out.write(m_buffer, 0, m_length);
+		m_length = 0;
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * Copies entries of zip archives into another archive as they are stored,
+ * without inflating and deflating them again. Every source archive is
+ * opened once and kept open until this copier is closed.
+ */
+class ZipEntryCopier implements Closeable {
+	private final Map<File, ZipFile> m_archives = new HashMap<File, ZipFile>();
+
+	/**
+	 * Copies the entry given source reads from to a new entry with given
+	 * name.
+	 * 
+	 * @return <code>false</code> if the entry couldn't be copied as it is,
+	 *         e.g. because it is missing or encrypted.
+	 */
+	boolean copy(final ZipEntrySource source, final String name,
+			final ZipArchiveOutputStream out) throws IOException {
+		final ZipFile archive = getArchive(source.getArchive());
+
+		ZipArchiveEntry sourceEntry = archive.getEntry(source.getEntryName());
+
+		// the names of entries written on Windows are read with slashes
+		// instead of backslashes
+		if (sourceEntry == null)
+			sourceEntry = archive.getEntry(source.getEntryName().replace('\\',
+					'/'));
+
+		if (sourceEntry == null || !archive.canReadEntryData(sourceEntry))
+			return false;
+
+		copy(archive, sourceEntry, name, out);
+		return true;
+	}
+
+	/**
+	 * Copies all entries of given archive, except the one with given name,
+	 * to entries with the same names.
+	 */
+	void copyAll(final File source, final String except,
+			final ZipArchiveOutputStream out) throws IOException {
+		final ZipFile archive = getArchive(source);
+
+		final Enumeration<ZipArchiveEntry> entries = archive.getEntries();
+		while (entries.hasMoreElements()) {
+			final ZipArchiveEntry entry = entries.nextElement();
+
+			if (!entry.getName().equals(except))
+				copy(archive, entry, entry.getName(), out);
+		}
+	}
+
+	private ZipFile getArchive(final File file) throws IOException {
+		ZipFile archive = m_archives.get(file);
+		if (archive == null) {
+			archive = new ZipFile(file);
+			m_archives.put(file, archive);
+		}
+
+		return archive;
+	}
+
+	private static void copy(final ZipFile archive,
+			final ZipArchiveEntry sourceEntry, final String name,
+			final ZipArchiveOutputStream out) throws IOException {
+		final ZipArchiveEntry entry = new ZipArchiveEntry(name);
+		entry.setMethod(sourceEntry.getMethod());
+		entry.setCrc(sourceEntry.getCrc());
+		entry.setSize(sourceEntry.getSize());
+		entry.setCompressedSize(sourceEntry.getCompressedSize());
+		entry.setTime(sourceEntry.getTime());
+
+		try (InputStream in = archive.getRawInputStream(sourceEntry)) {
+			out.addRawArchiveEntry(entry, in);
+		}
+	}
+
+	public void close() throws IOException {
+		IOException exception = null;
+
+		for (final ZipFile archive : m_archives.values()) {
+			try {
+				archive.close();
+			} catch (final IOException e) {
+				exception = e;
+			}
+		}
+
+		m_archives.clear();
+
+		if (exception != null)
+			throw exception;
+	}
+}
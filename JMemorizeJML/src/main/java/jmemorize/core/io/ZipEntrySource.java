@@ -0,0 +1,107 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import jmemorize.core.media.MediaRepository.MediaSource;
+
+/**
+ * An entry of a zip archive on disk. The archive is only opened when the
+ * entry is read, and found through its central directory, so reading one
+ * entry doesn't decompress any of the others.
+ */
+class ZipEntrySource implements MediaSource {
+	private final File m_archive;
+	private final String m_entryName;
+	private final long m_length;
+	private final long m_crc;
+
+	/**
+	 * @param length
+	 *            the uncompressed size of the entry or -1 if it isn't known.
+	 * @param crc
+	 *            the CRC-32 of the entry or -1 if it isn't known.
+	 */
+	ZipEntrySource(final File archive, final String entryName,
+			final long length, final long crc) {
+		m_archive = archive.getAbsoluteFile();
+		m_entryName = entryName;
+		m_length = length;
+		m_crc = crc;
+	}
+
+	File getArchive() {
+		return m_archive;
+	}
+
+	String getEntryName() {
+		return m_entryName;
+	}
+
+	public long length() {
+		return m_length;
+	}
+
+	public long crc() {
+		return m_crc;
+	}
+
+	public InputStream open() throws IOException {
+		final ZipFile zipFile = new ZipFile(m_archive);
+
+		try {
+			ZipEntry entry = zipFile.getEntry(m_entryName);
+
+			// archives copied by ZipEntryCopier store names written on
+			// Windows with slashes instead of backslashes
+			if (entry == null)
+				entry = zipFile.getEntry(m_entryName.replace('\\', '/'));
+
+			if (entry == null)
+				throw new FileNotFoundException(m_archive + ": " + m_entryName); //$NON-NLS-1$
+
+			// closing the entry stream closes the archive
+			return new FilterInputStream(zipFile.getInputStream(entry)) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						zipFile.close();
+					}
+				}
+			};
+		} catch (final IOException | RuntimeException e) {
+			zipFile.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return m_archive + "!" + m_entryName; //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,126 @@
+package jmemorize.core.io;
+
+import static jmemorize.core.io.JmlTestFiles.dumpLesson;
+import static jmemorize.core.io.JmlTestFiles.readImage;
+import static jmemorize.core.io.JmlTestFiles.resource;
+import static jmemorize.core.io.JmlTestFiles.testFile;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import jmemorize.core.Card;
+import jmemorize.core.Lesson;
+import jmemorize.core.media.MediaRepository;
+
+import org.junit.Test;
+
+public class BinaryLessonFormatTest {
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		final File binaryFile = testFile("binary.jmb");
+		final File jmlFile = testFile("binary.jml");
+
+		for (final String name : new String[] {
+				"/AlgemeneOpleidingBankbedrijf.jml", "/picture.jml" }) {
+			final File source = resource(name);
+
+			MediaRepository.getInstance().clear();
+			final Lesson lesson = new Lesson(false);
+			XmlBuilder.loadFromXMLFile(source, lesson);
+			final String dump = dumpLesson(lesson);
+
+			LessonConverter.convert(source, binaryFile);
+			final Lesson binary = new Lesson(false);
+			new JmlIO(null).load(binaryFile, binary);
+			assertEquals(name, dump, dumpLesson(binary));
+			assertEquals(lesson, binary);
+
+			LessonConverter.convert(binaryFile, jmlFile);
+			final Lesson jml = new Lesson(false);
+			XmlBuilder.loadFromXMLFile(jmlFile, jml);
+			assertEquals(name, dump, dumpLesson(jml));
+
+			// single cards are read without reading the lesson
+			try (BinaryLessonReader reader = new BinaryLessonReader(binaryFile)) {
+				final Map<Long, Card> cards = new HashMap<Long, Card>();
+				for (final Card card : binary.getRootCategory().getCards()) {
+					cards.put(card.getId(), card);
+				}
+				assertEquals(cards.size(), reader.getCardCount());
+
+				final Card last = reader.readCard(cards.size() - 1);
+				assertTrue(cards.get(last.getId()).contentEquals(last));
+			}
+		}
+
+		// the images are kept
+		assertArrayEquals(readImage(resource("/picture.jml"),
+				"images\\BerichtHandlers.gif"), MediaRepository.getInstance()
+				.getImageItems().iterator().next().getBytes());
+		MediaRepository.getInstance().clear();
+	}
+
+	@Test
+	public void testConvertReplaysJournal() throws Exception {
+		final File file = testFile("converted.jml");
+		Files.copy(resource("/AlgemeneOpleidingBankbedrijf.jml").toPath(),
+				file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		final JmlIO jmlIO = new JmlIO(null);
+		final Lesson lesson = new Lesson(false);
+		jmlIO.load(file, lesson);
+		jmlIO.save(file, lesson);
+
+		// the edit is only in the journal
+		lesson.getRootCategory().getCards().get(0)
+				.setSides("edited front", "edited back");
+		jmlIO.save(file, lesson);
+		jmlIO.reset();
+
+		final File binaryFile = testFile("converted.jmb");
+		LessonConverter.convert(file, binaryFile);
+		final Lesson binary = new Lesson(false);
+		new JmlIO(null).load(binaryFile, binary);
+		assertEquals(dumpLesson(lesson), dumpLesson(binary));
+
+		MediaRepository.getInstance().clear();
+	}
+
+	@Test
+	public void testSaveOverLoadedFile() throws Exception {
+		final File file = testFile("inplace.jmb");
+		LessonConverter.convert(resource("/picture.jml"), file);
+
+		final MediaRepository repository = MediaRepository.getInstance();
+		final JmlIO jmlIO = new JmlIO(null);
+		final Lesson lesson = new Lesson(false);
+		jmlIO.load(file, lesson);
+		final byte[] image = repository.getImageItems().iterator().next()
+				.getBytes();
+
+		// an image no card refers to isn't kept
+		final String unused = repository.addImage(new ByteArrayInputStream(
+				new byte[] { 1, 2, 3 }), "unused.gif");
+		jmlIO.save(file, lesson);
+
+		assertNull(repository.getImageItem(unused));
+		assertEquals(1, repository.getImageItems().size());
+		assertArrayEquals(image, repository.getImageItems().iterator().next()
+				.getBytes());
+
+		final Lesson loaded = new Lesson(false);
+		jmlIO.load(file, loaded);
+		assertEquals(dumpLesson(lesson), dumpLesson(loaded));
+
+		repository.clear();
+	}
+}
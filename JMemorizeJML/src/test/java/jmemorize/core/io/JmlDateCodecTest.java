@@ -0,0 +1,80 @@
+package jmemorize.core.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class JmlDateCodecTest {
+
+	@Test
+	public void testMatchesDateFormat() throws ParseException {
+		final Random random = new Random(4711);
+		for (final String zone : new String[] { "Europe/Amsterdam",
+				"America/New_York", "Australia/Lord_Howe", "UTC" }) {
+			final TimeZone timeZone = TimeZone.getTimeZone(zone);
+			final JmlDateCodec codec = new JmlDateCodec(timeZone,
+					JmlDateCodec.Encoding.MEDIUM);
+			final DateFormat format = new SimpleDateFormat(
+					"dd-MMM-yyyy HH:mm:ss", Locale.UK);
+			format.setTimeZone(timeZone);
+
+			for (int i = 0; i < 10000; i++) {
+				// 1900 until 2100
+				final long time = -2208988800000L
+						+ (long) (random.nextDouble() * 6311433600000L);
+				final Date date = new Date(time);
+
+				final String text = codec.format(date);
+				assertEquals(format.format(date), text);
+				assertEquals(format.parse(text), codec.parse(text));
+			}
+
+			// days that don't exist, times in a daylight saving gap and
+			// trailing text are parsed like DateFormat does
+			for (final String text : new String[] { "31-Feb-2011 10:00:00",
+					"29-Mar-2015 02:30:00", "31-Mar-2013 02:30:00",
+					"08-Mar-2015 02:30:00", "01-Nov-2015 01:30:00",
+					"05-Apr-2015 01:45:00", "26-Nov-2011 11:38:16 extra",
+					"26-Nov-2011 25:61:61", "26-nov-2011 11:38:16" }) {
+				assertEquals(text, format.parse(text), codec.parse(text));
+			}
+
+			assertNull(codec.parse("26-Sept-2011"));
+		}
+	}
+
+	@Test
+	public void testEncodings() {
+		final TimeZone timeZone = TimeZone.getTimeZone("Europe/Amsterdam");
+		final Date date = new Date(1322307496123L);
+
+		final JmlDateCodec iso = new JmlDateCodec(timeZone,
+				JmlDateCodec.Encoding.ISO_8601);
+		assertEquals("2011-11-26T11:38:16.123Z", iso.format(date));
+		assertEquals(date, iso.parse(iso.format(date)));
+
+		final JmlDateCodec millis = new JmlDateCodec(timeZone,
+				JmlDateCodec.Encoding.EPOCH_MILLIS);
+		assertEquals("1322307496123", millis.format(date));
+		assertEquals(date, millis.parse(millis.format(date)));
+		assertEquals(new Date(-1), millis.parse("-1"));
+
+		// every codec reads every encoding
+		final JmlDateCodec medium = new JmlDateCodec(timeZone,
+				JmlDateCodec.Encoding.MEDIUM);
+		assertEquals("26-Nov-2011 12:38:16", medium.format(date));
+		assertEquals(date, medium.parse(iso.format(date)));
+		assertEquals(date, iso.parse(millis.format(date)));
+		assertEquals(new Date(1322307496000L),
+				millis.parse(medium.format(date)));
+	}
+}
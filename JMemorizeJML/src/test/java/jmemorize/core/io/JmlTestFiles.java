@@ -0,0 +1,139 @@
+package jmemorize.core.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.learn.LearnHistory.SessionSummary;
+
+import org.apache.commons.lang.SystemUtils;
+
+/**
+ * Files and lesson dumps shared by the tests of the lesson formats.
+ */
+final class JmlTestFiles {
+	private JmlTestFiles() {
+	}
+
+	/**
+	 * @return the test resource of given name, e.g. "/picture.jml".
+	 */
+	static File resource(final String name) throws URISyntaxException {
+		return new File(JmlTestFiles.class.getResource(name).toURI());
+	}
+
+	/**
+	 * @return a file of given name in the temporary test directory.
+	 */
+	static File testFile(final String name) {
+		final File testDir = new File(SystemUtils.getJavaIoTmpDir(),
+				"jmemorize-tests");
+		testDir.mkdirs();
+
+		return new File(testDir, name);
+	}
+
+	static byte[] readImage(final File file, final String entryName)
+			throws IOException {
+		try (ZipFile zipFile = new ZipFile(file);
+				InputStream in = zipFile.getInputStream(zipFile
+						.getEntry(entryName))) {
+			return readAll(in);
+		}
+	}
+
+	/**
+	 * @return the lesson document of given file, which may or may not be
+	 *         compressed.
+	 */
+	static byte[] readLessonXml(final File file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			final ZipInputStream zipIn = new ZipInputStream(in);
+			if (zipIn.getNextEntry() != null)
+				return readAll(zipIn);
+		}
+
+		try (InputStream in = new FileInputStream(file)) {
+			return readAll(in);
+		}
+	}
+
+	private static byte[] readAll(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, read);
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return everything that is loaded from a lesson file, except the ids of
+	 *         cards, which are generated for files without ids.
+	 */
+	static String dumpLesson(final Lesson lesson) {
+		final StringBuilder stringBuilder = new StringBuilder();
+		for (final Category category : lesson.getRootCategory()
+				.getSubtreeList()) {
+			stringBuilder.append(category.getPath()).append('\n');
+
+			for (int level = 0; level < category.getNumberOfDecks(); level++) {
+				for (final Card card : category.getLocalCards(level)) {
+					stringBuilder.append(level).append(' ')
+							.append(card.getFrontSide().getText().getFormatted())
+							.append('|')
+							.append(card.getBackSide().getText().getFormatted())
+							.append('|').append(card.getFrontSide().getMedia())
+							.append(card.getBackSide().getMedia()).append('|')
+							.append(card.getDateCreated()).append('|')
+							.append(card.getDateModified()).append('|')
+							.append(card.getDateTouched()).append('|')
+							.append(card.getDateTested()).append('|')
+							.append(card.getDateExpired()).append('|')
+							.append(card.getLearnedAmount(true)).append(' ')
+							.append(card.getLearnedAmount(false)).append(' ')
+							.append(card.getSkippedAmount()).append(' ')
+							.append(card.getTestsPassed()).append(' ')
+							.append(card.getTestsTotal()).append('\n');
+				}
+			}
+		}
+
+		for (final SessionSummary summary : lesson.getLearnHistory()
+				.getSummaries()) {
+			stringBuilder.append(summary.getStart()).append(' ')
+					.append(summary.getEnd()).append(' ')
+					.append(summary.getPassed()).append(' ')
+					.append(summary.getFailed()).append(' ')
+					.append(summary.getSkipped()).append(' ')
+					.append(summary.getRelearned()).append('\n');
+		}
+
+		return stringBuilder.toString();
+	}
+
+	/**
+	 * @return the lines of given dump in natural order, for lessons whose
+	 *         cards and categories may be in another order.
+	 */
+	static List<String> sortedLines(final String text) {
+		final List<String> lines = new ArrayList<String>(Arrays.asList(text
+				.split("\n")));
+		Collections.sort(lines);
+		return lines;
+	}
+}
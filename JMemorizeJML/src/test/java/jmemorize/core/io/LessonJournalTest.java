@@ -0,0 +1,341 @@
+package jmemorize.core.io;
+
+import static jmemorize.core.io.JmlTestFiles.dumpLesson;
+import static jmemorize.core.io.JmlTestFiles.readImage;
+import static jmemorize.core.io.JmlTestFiles.resource;
+import static jmemorize.core.io.JmlTestFiles.sortedLines;
+import static jmemorize.core.io.JmlTestFiles.testFile;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.media.MediaRepository;
+
+import org.junit.Test;
+
+public class LessonJournalTest {
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		final File file = copyOf("/AlgemeneOpleidingBankbedrijf.jml",
+				"journal.jml");
+		final File journalFile = LessonJournal.journalFile(file);
+
+		// the first save writes the whole lesson, with the ids of its cards
+		final JmlIO jmlIO = new JmlIO(null);
+		final Lesson lesson = new Lesson(false);
+		jmlIO.load(file, lesson);
+		jmlIO.save(file, lesson);
+		assertTrue(journalFile.exists());
+		final byte[] snapshot = Files.readAllBytes(file.toPath());
+
+		final Category root = lesson.getRootCategory();
+		final List<Card> cards = root.getCards();
+		cards.get(0).setSides("edited front", "edited back");
+		Category.raiseCardLevel(cards.get(1), new Date(), new Date());
+		cards.get(2).getCategory().removeCard(cards.get(2));
+
+		final Category added = root.addCategoryChild(new Category("added"));
+		added.addCategoryChild(new Category("child")).addCard(
+				new Card("new front", "new back"), 1);
+		added.setName("renamed");
+		Category.moveCard(cards.get(3), added);
+		lesson.getLearnHistory().addSummary(new Date(0), new Date(60000), 1,
+				2, 3, 4);
+
+		jmlIO.save(file, lesson);
+		assertArrayEquals(snapshot, Files.readAllBytes(file.toPath()));
+		jmlIO.reset();
+
+		final Lesson loaded = new Lesson(false);
+		new JmlIO(null).load(file, loaded);
+		assertEquals(sortedLines(dumpLesson(lesson)),
+				sortedLines(dumpLesson(loaded)));
+
+		// the journal is cut off after the last complete record
+		Files.write(journalFile.toPath(), new byte[] { 0, 0, 1, 0, 4 },
+				StandardOpenOption.APPEND);
+		final Lesson repaired = new Lesson(false);
+		XmlBuilder.loadFromXMLFile(file, repaired);
+		final LessonJournal journal = LessonJournal.open(file, repaired);
+		assertEquals(sortedLines(dumpLesson(lesson)),
+				sortedLines(dumpLesson(repaired)));
+		assertEquals(journal.getLength(), journalFile.length());
+		journal.close();
+	}
+
+	@Test
+	public void testTornRecords() throws Exception {
+		final File file = copyOf("/AlgemeneOpleidingBankbedrijf.jml",
+				"torn.jml");
+		final File journalFile = LessonJournal.journalFile(file);
+
+		final JmlIO jmlIO = new JmlIO(null);
+		final Lesson lesson = new Lesson(false);
+		jmlIO.load(file, lesson);
+		jmlIO.save(file, lesson);
+
+		final List<Card> cards = lesson.getRootCategory().getCards();
+		cards.get(0).setSides("first front", "first back");
+		jmlIO.save(file, lesson);
+		final String firstDump = dumpLesson(lesson);
+		final long firstLength = journalFile.length();
+
+		cards.get(1).setSides("second front", "second back");
+		jmlIO.save(file, lesson);
+		final long secondLength = journalFile.length();
+		jmlIO.reset();
+		assertTrue(secondLength > firstLength);
+		final byte[] journal = Files.readAllBytes(journalFile.toPath());
+
+		// a record that was only partly written
+		try (RandomAccessFile out = new RandomAccessFile(journalFile, "rw")) {
+			out.setLength((firstLength + secondLength) / 2);
+		}
+		final Lesson torn = new Lesson(false);
+		new JmlIO(null).load(file, torn);
+		assertEquals(sortedLines(firstDump), sortedLines(dumpLesson(torn)));
+		assertEquals(firstLength, journalFile.length());
+
+		// a record whose checksum doesn't match
+		journal[(int) secondLength - 6] ^= 1;
+		Files.write(journalFile.toPath(), journal);
+		final Lesson damaged = new Lesson(false);
+		new JmlIO(null).load(file, damaged);
+		assertEquals(sortedLines(firstDump), sortedLines(dumpLesson(damaged)));
+		assertEquals(firstLength, journalFile.length());
+	}
+
+	@Test
+	public void testHeaderMismatch() throws Exception {
+		final File file = copyOf("/AlgemeneOpleidingBankbedrijf.jml",
+				"mismatch.jml");
+
+		final JmlIO jmlIO = new JmlIO(null);
+		final Lesson lesson = new Lesson(false);
+		jmlIO.load(file, lesson);
+		jmlIO.save(file, lesson);
+		lesson.getRootCategory().getCards().get(0)
+				.setSides("journaled front", "journaled back");
+		jmlIO.save(file, lesson);
+		jmlIO.reset();
+
+		// the lesson file is replaced without its journal
+		final Lesson other = new Lesson(false);
+		other.getRootCategory().addCard(new Card("other front", "other back"));
+		XmlBuilder.saveAsXMLFile(file, other);
+
+		final Lesson expected = new Lesson(false);
+		XmlBuilder.loadFromXMLFile(file, expected);
+		final Lesson loaded = new Lesson(false);
+		new JmlIO(null).load(file, loaded);
+		assertEquals(dumpLesson(expected), dumpLesson(loaded));
+
+		// the journal is left alone
+		assertTrue(LessonJournal.journalFile(file).exists());
+	}
+
+	@Test
+	public void testCategoryRenameAndRemove() throws Exception {
+		final File file = testFile("categories.jml");
+		Files.deleteIfExists(LessonJournal.journalFile(file).toPath());
+
+		final Lesson lesson = new Lesson(false);
+		final Category root = lesson.getRootCategory();
+		final Category parent = root.addCategoryChild(new Category("parent"));
+		final Category child = parent.addCategoryChild(new Category("child"));
+		final Category removed = root.addCategoryChild(new Category("removed"));
+		child.addCard(new Card("child front", "child back"), 1);
+		removed.addCard(new Card("removed front", "removed back"));
+		removed.addCategoryChild(new Category("nested")).addCard(
+				new Card("nested front", "nested back"));
+
+		final JmlIO jmlIO = new JmlIO(null);
+		jmlIO.save(file, lesson);
+		final byte[] snapshot = Files.readAllBytes(file.toPath());
+
+		// cards are put into categories by their path after the renames
+		parent.setName("renamed parent");
+		child.setName("renamed child");
+		child.addCard(new Card("added front", "added back"), 2);
+		removed.remove();
+
+		// a new category that takes the name of a removed one
+		root.addCategoryChild(new Category("removed")).addCard(
+				new Card("new front", "new back"));
+		Category.moveCard(child.getCards().get(0), parent);
+
+		jmlIO.save(file, lesson);
+		assertArrayEquals(snapshot, Files.readAllBytes(file.toPath()));
+		jmlIO.reset();
+
+		final Lesson loaded = new Lesson(false);
+		new JmlIO(null).load(file, loaded);
+		assertEquals(sortedLines(dumpLesson(lesson)),
+				sortedLines(dumpLesson(loaded)));
+	}
+
+	@Test
+	public void testSiblingsWithTheSameName() throws Exception {
+		final File file = testFile("siblings.jml");
+		Files.deleteIfExists(LessonJournal.journalFile(file).toPath());
+
+		final Lesson lesson = new Lesson(false);
+		final Category root = lesson.getRootCategory();
+		final Category first = root.addCategoryChild(new Category("dup"));
+		final Category second = root.addCategoryChild(new Category("dup"));
+		first.addCard(new Card("first front", "first back"));
+		second.addCard(new Card("second front", "second back"));
+
+		final JmlIO jmlIO = new JmlIO(null);
+		jmlIO.save(file, lesson);
+		final long emptyLength = LessonJournal.journalFile(file).length();
+
+		// the records of the second category would be applied to the first
+		// one, so these changes are saved as a whole
+		second.addCard(new Card("added front", "added back"));
+		assertSavedAsWhole(jmlIO, file, lesson, emptyLength);
+
+		second.setName("renamed");
+		assertSavedAsWhole(jmlIO, file, lesson, emptyLength);
+
+		root.addCategoryChild(new Category("renamed"));
+		assertSavedAsWhole(jmlIO, file, lesson, emptyLength);
+		second.remove();
+		assertSavedAsWhole(jmlIO, file, lesson, emptyLength);
+
+		// paths are unique again
+		first.addCard(new Card("journaled front", "journaled back"));
+		final byte[] snapshot = Files.readAllBytes(file.toPath());
+		jmlIO.save(file, lesson);
+		jmlIO.reset();
+		assertArrayEquals(snapshot, Files.readAllBytes(file.toPath()));
+
+		final Lesson loaded = new Lesson(false);
+		new JmlIO(null).load(file, loaded);
+		assertEquals(sortedLines(dumpLesson(lesson)),
+				sortedLines(dumpLesson(loaded)));
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+		final File source = resource("/picture.jml");
+		final File file = copyOf("/picture.jml", "compaction.jml");
+
+		MediaRepository.getInstance().clear();
+		final Lesson lesson = new Lesson(false);
+		XmlBuilder.loadFromXMLFile(file, lesson);
+		XmlBuilder.saveAsXMLFile(file, lesson);
+		final LessonJournal journal = LessonJournal.create(file, lesson);
+		journal.setCompactionThreshold(0);
+
+		lesson.getRootCategory().addCard(new Card("compacted", "card"), 2);
+		assertTrue(journal.append());
+		journal.awaitCompaction();
+
+		// the lesson file has all changes and the journal is empty
+		assertEquals(LessonJournal.journalFile(file).length(),
+				journal.getLength());
+		final Lesson compacted = new Lesson(false);
+		XmlBuilder.loadFromXMLFile(file, compacted);
+		assertEquals(sortedLines(dumpLesson(lesson)),
+				sortedLines(dumpLesson(compacted)));
+		assertArrayEquals(readImage(source, "images\\BerichtHandlers.gif"),
+				MediaRepository.getInstance().getImageItems().iterator()
+						.next().getBytes());
+
+		// images can't be journaled
+		MediaRepository.getInstance().addImage(
+				new ByteArrayInputStream(new byte[] { 1, 2, 3 }), "new.png");
+		assertFalse(journal.append());
+		journal.close();
+
+		MediaRepository.getInstance().clear();
+	}
+
+	@Test
+	public void testInterruptedCompaction() throws Exception {
+		final File file = copyOf("/AlgemeneOpleidingBankbedrijf.jml",
+				"interrupted.jml");
+		final File journalFile = LessonJournal.journalFile(file);
+		final File compacted = testFile("interrupted-compacted.jml");
+
+		final JmlIO jmlIO = new JmlIO(null);
+		final Lesson lesson = new Lesson(false);
+		jmlIO.load(file, lesson);
+		jmlIO.save(file, lesson);
+		final long headerLength = journalFile.length();
+
+		// the compacted lesson file contains the first change only
+		final List<Card> cards = lesson.getRootCategory().getCards();
+		cards.get(0).setSides("compacted front", "compacted back");
+		jmlIO.save(file, lesson);
+		final long start = journalFile.length();
+		XmlBuilder.saveAsXMLFile(compacted, lesson);
+
+		cards.get(1).setSides("appended front", "appended back");
+		jmlIO.save(file, lesson);
+		jmlIO.reset();
+		final byte[] records = Arrays.copyOfRange(
+				Files.readAllBytes(journalFile.toPath()), (int) headerLength,
+				(int) journalFile.length());
+
+		// the journal was replaced, but not the lesson file
+		LessonJournal.writeHeader(journalFile, file, compacted, start);
+		Files.write(journalFile.toPath(), records, StandardOpenOption.APPEND);
+		final byte[] journal = Files.readAllBytes(journalFile.toPath());
+
+		final Lesson old = new Lesson(false);
+		new JmlIO(null).load(file, old);
+		assertEquals(sortedLines(dumpLesson(lesson)),
+				sortedLines(dumpLesson(old)));
+
+		// the lesson file was replaced, but not the journal
+		Files.write(journalFile.toPath(), journal);
+		Files.move(compacted.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+
+		final Lesson replaced = new Lesson(false);
+		new JmlIO(null).load(file, replaced);
+		assertEquals(sortedLines(dumpLesson(lesson)),
+				sortedLines(dumpLesson(replaced)));
+		assertEquals(headerLength + records.length - (start - headerLength),
+				journalFile.length());
+	}
+
+	private static void assertSavedAsWhole(final JmlIO jmlIO,
+			final File file, final Lesson lesson, final long emptyLength)
+			throws Exception {
+		final byte[] snapshot = Files.readAllBytes(file.toPath());
+		jmlIO.save(file, lesson);
+		assertFalse(Arrays.equals(snapshot, Files.readAllBytes(file.toPath())));
+		assertEquals(emptyLength, LessonJournal.journalFile(file).length());
+	}
+
+	/**
+	 * @return a copy of given test resource without a journal.
+	 */
+	private static File copyOf(final String name, final String fileName)
+			throws Exception {
+		final File file = testFile(fileName);
+		Files.copy(resource(name).toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		Files.deleteIfExists(LessonJournal.journalFile(file).toPath());
+
+		return file;
+	}
+}
@@ -0,0 +1,271 @@
+package jmemorize.core.io;
+
+import static jmemorize.core.io.JmlTestFiles.dumpLesson;
+import static jmemorize.core.io.JmlTestFiles.readImage;
+import static jmemorize.core.io.JmlTestFiles.readLessonXml;
+import static jmemorize.core.io.JmlTestFiles.resource;
+import static jmemorize.core.io.JmlTestFiles.testFile;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import javax.swing.ImageIcon;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.media.MediaRepository;
+
+import org.junit.Test;
+
+public class XmlBuilderTest {
+
+	@Test
+	public void testStreamLoaderMatchesDom() throws Exception {
+		for (final String name : new String[] { "/picture.jml",
+				"/AlgemeneOpleidingBankbedrijf.jml" }) {
+			final File file = resource(name);
+
+			final Lesson domLesson = new Lesson(false);
+			XmlBuilder.loadFromXMLFile(file, domLesson, true);
+
+			final Lesson streamLesson = new Lesson(false);
+			XmlBuilder.loadFromXMLFile(file, streamLesson, false);
+
+			assertEquals(name, dumpLesson(domLesson), dumpLesson(streamLesson));
+			assertEquals(domLesson, streamLesson);
+		}
+	}
+
+	@Test
+	public void testStreamWriterMatchesDom() throws Exception {
+		final Lesson special = new Lesson(false);
+		final Category category = special.getRootCategory().addCategoryChild(
+				new Category("a&b<c>\"d'e"));
+		final Card card = new Card("tab\tline\nreturn\r&<>\"'",
+				"\u00e9\u20ac\ud83d\ude00 ]]>");
+		category.addCard(card, 2);
+		card.getFrontSide().setMedia(Arrays.asList("one.png", "two.png"));
+		special.getLearnHistory().addSummary(new Date(0), new Date(100000), 1,
+				2, 3, 4);
+
+		final List<Lesson> lessons = new ArrayList<Lesson>();
+		lessons.add(special);
+		for (final String name : new String[] { "/picture.jml",
+				"/AlgemeneOpleidingBankbedrijf.jml" }) {
+			final Lesson lesson = new Lesson(false);
+			XmlBuilder.loadFromXMLFile(resource(name), lesson);
+			lessons.add(lesson);
+		}
+
+		final File domFile = testFile("dom.jml");
+		final File streamFile = testFile("stream.jml");
+
+		for (final Lesson lesson : lessons) {
+			XmlBuilder.saveAsXMLFile(domFile, lesson, true);
+			XmlBuilder.saveAsXMLFile(streamFile, lesson, false);
+
+			assertEquals(new String(readLessonXml(domFile), "UTF-8"),
+					new String(readLessonXml(streamFile), "UTF-8"));
+			assertTrue(Arrays.equals(readLessonXml(domFile),
+					readLessonXml(streamFile)));
+
+			final Lesson loaded = new Lesson(false);
+			XmlBuilder.loadFromXMLFile(streamFile, loaded);
+			assertEquals(dumpLesson(lesson), dumpLesson(loaded));
+		}
+	}
+
+	@Test
+	public void testCardIdRoundTrip() throws Exception {
+		final Lesson lesson = new Lesson(false);
+		final Card first = new Card("front", "back");
+		final Card second = new Card("front", "back");
+		lesson.getRootCategory().addCard(first);
+		lesson.getRootCategory().addCard(second);
+
+		final File file = testFile("ids.jml");
+		XmlBuilder.saveAsXMLFile(file, lesson);
+
+		final Lesson loaded = new Lesson(false);
+		XmlBuilder.loadFromXMLFile(file, loaded);
+
+		final List<Card> cards = loaded.getRootCategory().getCards();
+		assertEquals(2, cards.size());
+		assertEquals(first.getId(), cards.get(0).getId());
+		assertEquals(second.getId(), cards.get(1).getId());
+		assertEquals(first, cards.get(0));
+		assertTrue(cards.get(0).contentEquals(cards.get(1)));
+		assertEquals(lesson, loaded);
+	}
+
+	@Test
+	public void testDuplicateIdsReplaced() throws Exception {
+		final File file = testFile("duplicate-ids.jml");
+		Files.write(file.toPath(), ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Lesson><Category name=\"All\"><Deck>"
+				+ "<Card Frontside=\"a\" Backside=\"b\" Id=\"7\"/><Card Frontside=\"c\" Backside=\"d\" Id=\"7\"/>"
+				+ "</Deck></Category></Lesson>").getBytes("UTF-8"));
+
+		final Lesson lesson = new Lesson(false);
+		XmlBuilder.loadFromXMLFile(file, lesson);
+
+		// the later card gets a new id
+		final List<Card> cards = lesson.getRootCategory().getCards();
+		assertEquals(7, cards.get(0).getId());
+		assertTrue(cards.get(1).getId() != 7);
+	}
+
+	@Test
+	public void testZipImagesReadOnDemand() throws Exception {
+		final File file = resource("/picture.jml");
+
+		final MediaRepository repository = MediaRepository.getInstance();
+		repository.clear();
+		XmlBuilder.loadFromXMLFile(file, new Lesson(false));
+
+		assertEquals(1, repository.getImageItems().size());
+		final byte[] bytes = repository.getImageItems().iterator().next()
+				.getBytes();
+
+		try (ZipFile zipFile = new ZipFile(file)) {
+			final ZipEntry entry = zipFile
+					.getEntry("images\\BerichtHandlers.gif");
+			assertEquals(entry.getSize(), bytes.length);
+		}
+
+		final ImageIcon image = repository.getImage("BerichtHandlers.gif");
+		assertTrue(image.getIconWidth() > 0);
+
+		repository.clear();
+	}
+
+	@Test
+	public void testSaveOverSourceArchive() throws Exception {
+		final File source = resource("/picture.jml");
+		final byte[] image = readImage(source, "images\\BerichtHandlers.gif");
+
+		final File file = testFile("inplace.jml");
+		Files.copy(source.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+
+		// the images are still read from the file while it is saved over
+		final MediaRepository repository = MediaRepository.getInstance();
+		repository.clear();
+		final JmlIO jmlIO = new JmlIO(null);
+		final Lesson lesson = new Lesson(false);
+		jmlIO.load(file, lesson);
+
+		// without a journal, every save writes the whole lesson
+		jmlIO.reset();
+		jmlIO.save(file, lesson);
+		jmlIO.reset();
+		jmlIO.save(file, lesson);
+
+		final String entryName = "images" + File.separator
+				+ "BerichtHandlers.gif";
+		assertArrayEquals(image, readImage(file, entryName));
+		assertArrayEquals(image, repository.getImageItems().iterator().next()
+				.getBytes());
+
+		XmlBuilder.saveAsXMLFile(file, lesson);
+		assertArrayEquals(image, readImage(file, entryName));
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+
+		repository.clear();
+	}
+
+	@Test
+	public void testDuplicateImagesStoredOnce() throws Exception {
+		final File source = resource("/picture.jml");
+		final byte[] image = readImage(source, "images\\BerichtHandlers.gif");
+
+		final MediaRepository repository = MediaRepository.getInstance();
+		repository.clear();
+		final Lesson lesson = new Lesson(false);
+		XmlBuilder.loadFromXMLFile(source, lesson);
+
+		// the same picture added to another card is found in the archive
+		final String id = repository.addImage(new ByteArrayInputStream(image),
+				"copy.gif");
+		assertEquals("BerichtHandlers.gif", id);
+		final Card card = new Card("front", "back");
+		card.getBackSide().setMedia(Arrays.asList(id));
+		lesson.getRootCategory().addCard(card);
+
+		final File file = testFile("duplicates.jml");
+		XmlBuilder.saveAsXMLFile(file, lesson);
+
+		try (ZipFile zipFile = new ZipFile(file)) {
+			assertEquals(2, zipFile.size());
+		}
+		assertEquals(1, repository.getDuplicates());
+		assertEquals(image.length, repository.getDuplicateBytes());
+
+		repository.clear();
+	}
+
+	@Test
+	public void testSavingMergedImagesLeavesCardsUnchanged() throws Exception {
+		final byte[] image = readImage(resource("/picture.jml"),
+				"images\\BerichtHandlers.gif");
+
+		// two cards with different images of the same bytes
+		final File source = testFile("merge-source.jml");
+		try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(
+				source))) {
+			out.putNextEntry(new ZipEntry("lesson.xml"));
+			out.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Lesson><Category name=\"All\"><Deck>"
+					+ "<Card Frontside=\"a\" Backside=\"b\" DateCreated=\"31-May-2012 21:50:57\" DateModified=\"31-May-2012 21:50:57\">"
+					+ "<Side><image id=\"a.gif\"/></Side><Side/></Card>"
+					+ "<Card Frontside=\"c\" Backside=\"d\" DateCreated=\"31-May-2012 21:50:57\" DateModified=\"31-May-2012 21:50:57\">"
+					+ "<Side><image id=\"b.gif\"/></Side><Side/></Card>"
+					+ "</Deck></Category></Lesson>").getBytes("UTF-8"));
+			for (final String name : new String[] { "a.gif", "b.gif" }) {
+				out.putNextEntry(new ZipEntry("images/" + name));
+				out.write(image);
+			}
+		}
+
+		final MediaRepository repository = MediaRepository.getInstance();
+		repository.clear();
+		final Lesson lesson = new Lesson(false);
+		XmlBuilder.loadFromXMLFile(source, lesson);
+		final Card card = lesson.getRootCategory().getCards().get(1);
+		final Date modified = card.getDateModified();
+
+		final File file = testFile("merged.jml");
+		XmlBuilder.saveAsXMLFile(file, lesson);
+
+		// the file refers to the kept image, the card to the one it had
+		try (ZipFile zipFile = new ZipFile(file)) {
+			assertEquals(2, zipFile.size());
+		}
+		assertEquals(Arrays.asList("b.gif"), card.getFrontSide().getMedia());
+		assertEquals(modified, card.getDateModified());
+		assertArrayEquals(image, repository.getImageItem("b.gif").getBytes());
+
+		repository.clear();
+		final Lesson loaded = new Lesson(false);
+		XmlBuilder.loadFromXMLFile(file, loaded);
+		final List<Card> cards = loaded.getRootCategory().getCards();
+		assertEquals(cards.get(0).getFrontSide().getMedia(), cards.get(1)
+				.getFrontSide().getMedia());
+		assertEquals(modified, cards.get(1).getDateModified());
+
+		repository.clear();
+	}
+}
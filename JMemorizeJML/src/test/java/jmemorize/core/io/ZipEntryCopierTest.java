@@ -0,0 +1,68 @@
+package jmemorize.core.io;
+
+import static jmemorize.core.io.JmlTestFiles.readImage;
+import static jmemorize.core.io.JmlTestFiles.resource;
+import static jmemorize.core.io.JmlTestFiles.testFile;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import jmemorize.core.Card;
+import jmemorize.core.Lesson;
+import jmemorize.core.media.MediaRepository;
+
+import org.junit.Test;
+
+public class ZipEntryCopierTest {
+
+	@Test
+	public void testImagesCopiedRaw() throws Exception {
+		final File source = resource("/picture.jml");
+
+		final MediaRepository repository = MediaRepository.getInstance();
+		repository.clear();
+		final Lesson lesson = new Lesson(false);
+		XmlBuilder.loadFromXMLFile(source, lesson);
+
+		final byte[] png = { (byte) 0x89, 'P', 'N', 'G', 0, 0, 0, 0, 0, 0 };
+		final String id = repository.addImage(new ByteArrayInputStream(png),
+				"new.png");
+		final Card card = new Card("front", "back");
+		card.getFrontSide().setMedia(Arrays.asList(id));
+		lesson.getRootCategory().addCard(card);
+
+		final File file = testFile("raw.jml");
+		XmlBuilder.saveAsXMLFile(file, lesson);
+
+		try (ZipFile original = new ZipFile(source);
+				ZipFile saved = new ZipFile(file)) {
+			final ZipEntry originalEntry = original
+					.getEntry("images\\BerichtHandlers.gif");
+			final ZipEntry copiedEntry = saved.getEntry("images"
+					+ File.separator + "BerichtHandlers.gif");
+			assertEquals(originalEntry.getMethod(), copiedEntry.getMethod());
+			assertEquals(originalEntry.getCompressedSize(),
+					copiedEntry.getCompressedSize());
+			assertEquals(originalEntry.getCrc(), copiedEntry.getCrc());
+
+			final ZipEntry newEntry = saved.getEntry("images" + File.separator
+					+ "new.png");
+			assertEquals(ZipEntry.STORED, newEntry.getMethod());
+			assertEquals(png.length, newEntry.getCompressedSize());
+
+			assertEquals(ZipEntry.DEFLATED, saved.getEntry("lesson.xml")
+					.getMethod());
+		}
+
+		assertArrayEquals(readImage(source, "images\\BerichtHandlers.gif"),
+				readImage(file, "images" + File.separator
+						+ "BerichtHandlers.gif"));
+
+		repository.clear();
+	}
+}
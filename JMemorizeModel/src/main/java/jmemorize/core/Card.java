@@ -20,6 +20,7 @@ package jmemorize.core;
 
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import jmemorize.core.CardSide.CardSideObserver;
 
@@ -33,26 +34,35 @@ public class Card implements Events, Cloneable {
 	public static final long ONE_DAY = 1000 * 60 * 60 * 24;
 	public static final boolean CLONE_DATES = Model.isDevel();
 
+	/**
+	 * Expiration time used for cards that have no expiration date.
+	 */
+	static final long NEVER = Long.MAX_VALUE;
+
+	private static final AtomicLong SERIALS = new AtomicLong();
+	private static final AtomicLong IDS = new AtomicLong();
+
+	// in-memory creation order, used to order cards with equal keys
+	private final long m_serial = SERIALS.incrementAndGet();
+
+	// stable identity of this card, which is saved with the lesson
+	private long m_id = createId();
+
+	// cached hash of the card texts, 0 if not yet computed
+	private int m_contentHash;
+
 	private Category m_category;
-	private int m_level;
 
 	// content
 	private CardSide m_frontSide;
 	private CardSide m_backSide;
 
-	// dates
-	private Date m_dateTested;
-	private Date m_dateExpired;
-	private Date m_dateCreated;
-	private Date m_dateModified;
-	private Date m_dateTouched; // this date is used internaly to order cards
-
-	// stats
-	private int m_testsTotal;
-	private int m_testsHit; // succesfull learn repetitions
-	private int m_frontHitsCorrect;
-	private int m_backHitsCorrect;
-	private int m_skipped;
+	// the level, dates and stats of this card are kept in the columns of the
+	// card store of its category tree, see CardStore for the columns. Cards
+	// that aren't part of a store keep them in m_detached instead
+	private CardStore m_store;
+	private int m_slot;
+	private long[] m_detached;
 
 	/**
 	 * Assumes formatted front- and backsides
@@ -80,10 +90,12 @@ public class Card implements Events, Cloneable {
 
 	public Card(final Date created, final CardSide frontSide,
 			final CardSide backSide) {
-		m_dateCreated = cloneDate(created);
-		m_dateModified = cloneDate(created);
-		m_dateTouched = cloneDate(created);
-		m_dateTested = null;
+		m_detached = CardStore.createDetached();
+
+		final long time = created.getTime();
+		setTime(CardStore.CREATED, time);
+		setTime(CardStore.MODIFIED, time);
+		setTime(CardStore.TOUCHED, time);
 
 		m_frontSide = frontSide;
 		m_backSide = backSide;
@@ -91,39 +103,33 @@ public class Card implements Events, Cloneable {
 		attachCardSideObservers();
 	}
 	
-	private Card(Category m_category, int m_level, CardSide m_frontSide, CardSide m_backSide, Date m_dateTested,
-			Date m_dateExpired, Date m_dateCreated, Date m_dateModified, Date m_dateTouched, int m_testsTotal,
-			int m_testsHit, int m_frontHitsCorrect, int m_backHitsCorrect, int m_skipped) {
-		super();
-		this.m_category = m_category;
-		this.m_level = m_level;
-		this.m_frontSide = m_frontSide;
-		this.m_backSide = m_backSide;
-		this.m_dateTested = m_dateTested;
-		this.m_dateExpired = m_dateExpired;
-		this.m_dateCreated = m_dateCreated;
-		this.m_dateModified = m_dateModified;
-		this.m_dateTouched = m_dateTouched;
-		this.m_testsTotal = m_testsTotal;
-		this.m_testsHit = m_testsHit;
-		this.m_frontHitsCorrect = m_frontHitsCorrect;
-		this.m_backHitsCorrect = m_backHitsCorrect;
-		this.m_skipped = m_skipped;
+	private Card(final Card card) {
+		m_detached = card.m_store != null ? card.m_store.detachedCopyOf(card.m_slot)
+				: card.m_detached.clone();
+
+		m_frontSide = card.m_frontSide;
+		m_backSide = card.m_backSide;
 	}
 	
+	/*
+	 * Copies are not part of any category until they are added to one.
+	 */
 	private Card createCard() {
-		return new Card( m_category, m_level, m_frontSide, m_backSide, m_dateTested, m_dateExpired, m_dateCreated,
-				m_dateModified, m_dateTouched, m_testsTotal, m_testsHit, m_frontHitsCorrect, m_backHitsCorrect, m_skipped);
+		return new Card(this);
 	}
 	
 	private Card createCard( final Date m_dateTested, final Date m_dateTouched) {
-		return new Card( m_category, m_level, m_frontSide, m_backSide, m_dateTested, m_dateExpired, m_dateCreated,
-				m_dateModified, m_dateTouched, m_testsTotal, m_testsHit, m_frontHitsCorrect, m_backHitsCorrect, m_skipped);
+		final Card card = new Card(this);
+		card.setTime(CardStore.TESTED, toTime(m_dateTested));
+		card.setTime(CardStore.TOUCHED, toTime(m_dateTouched));
+		return card;
 	}
 
 	private Card createCard( final int m_frontHitsCorrect, final int m_backHitsCorrect) {
-		return new Card( m_category, m_level, m_frontSide, m_backSide, m_dateTested, m_dateExpired, m_dateCreated,
-				m_dateModified, m_dateTouched, m_testsTotal, m_testsHit, m_frontHitsCorrect, m_backHitsCorrect, m_skipped);
+		final Card card = new Card(this);
+		card.setStat(CardStore.FRONT_HITS, m_frontHitsCorrect);
+		card.setStat(CardStore.BACK_HITS, m_backHitsCorrect);
+		return card;
 	}
 	
 	/*
@@ -131,16 +137,13 @@ public class Card implements Events, Cloneable {
 	 * 
 	 * @see java.lang.Object#equals(java.lang.Object)
 	 * 
-	 * Kept very simple for now.
+	 * Cards are equal if they have the same id. Use contentEquals to compare
+	 * the texts of cards.
 	 */
 	@Override
 	public boolean equals(final Object obj) {
 		if (obj instanceof Card) {
-			final Card other = (Card) obj;
-			return other.getBackSide().getText().getUnformatted()
-					.equals(getBackSide().getText().getUnformatted())
-					&& other.getFrontSide().getText().getUnformatted()
-							.equals(getFrontSide().getText().getUnformatted());
+			return ((Card) obj).m_id == m_id;
 		}
 
 		return false;
@@ -150,13 +153,76 @@ public class Card implements Events, Cloneable {
 	 * (non-Javadoc)
 	 * 
 	 * @see java.lang.Object#hashCode()
-	 * 
-	 * Kept very simple for now.
 	 */
 	@Override
 	public int hashCode() {
-		return (getBackSide().getText().getUnformatted() + getFrontSide()
-				.getText().getUnformatted()).hashCode();
+		return (int) (m_id ^ (m_id >>> 32));
+	}
+
+	/**
+	 * @return <code>true</code> if given card has the same unformatted front
+	 *         and back texts as this card, regardless of ids, dates and
+	 *         stats.
+	 */
+	public boolean contentEquals(final Card other) {
+		if (other == this) {
+			return true;
+		}
+
+		if (other == null || other.contentHashCode() != contentHashCode()) {
+			return false;
+		}
+
+		return other.getFrontSide().getText().getUnformatted()
+				.equals(getFrontSide().getText().getUnformatted())
+				&& other.getBackSide().getText().getUnformatted()
+						.equals(getBackSide().getText().getUnformatted());
+	}
+
+	/**
+	 * @return a hash code of the unformatted front and back texts that is
+	 *         consistent with {@link #contentEquals(Card)}. The hash is cached
+	 *         until the texts change.
+	 */
+	public int contentHashCode() {
+		int hash = m_contentHash;
+		if (hash == 0) {
+			hash = 31 * getFrontSide().getText().getUnformatted().hashCode()
+					+ getBackSide().getText().getUnformatted().hashCode();
+			m_contentHash = hash;
+		}
+
+		return hash;
+	}
+
+	/**
+	 * @return the id of this card. Ids are unique for all cards that were
+	 *         created or loaded in this VM and are saved with the lesson.
+	 */
+	public long getId() {
+		return m_id;
+	}
+
+	/**
+	 * @return a new id that no card that was created or loaded in this VM
+	 *         has, e.g. for a loaded card whose id another card already has.
+	 */
+	public static long createId() {
+		return IDS.incrementAndGet();
+	}
+
+	/**
+	 * Sets the id of this card. This is only meant to be used when loading
+	 * cards, before they are added to any category or collection.
+	 */
+	public void setId(final long id) {
+		m_id = id;
+
+		// make sure that new cards never reuse a loaded id
+		long last;
+		while ((last = IDS.get()) < id && !IDS.compareAndSet(last, id)) {
+			// retry
+		}
 	}
 
 	/**
@@ -185,11 +251,12 @@ public class Card implements Events, Cloneable {
 
 		m_frontSide.setText(front);
 		m_backSide.setText(back);
+		m_contentHash = 0;
 
 		if (m_category != null) {
-			m_dateModified = new Date();
+			setTime(CardStore.MODIFIED, System.currentTimeMillis());
 			m_category
-					.fireCardEvent(EDITED_EVENT, this, getCategory(), m_level);
+					.fireCardEvent(EDITED_EVENT, this, getCategory(), getLevel());
 		}
 	}
 
@@ -207,7 +274,7 @@ public class Card implements Events, Cloneable {
 	public int getLearnedAmount(final boolean frontside) {
 		// TODO move to CardSide class
 
-		return frontside ? m_frontHitsCorrect : m_backHitsCorrect;
+		return getStat(frontside ? CardStore.FRONT_HITS : CardStore.BACK_HITS);
 	}
 
 	/**
@@ -228,15 +295,15 @@ public class Card implements Events, Cloneable {
 		final Card card;
 		
 		if (frontside) {
-			m_frontHitsCorrect = amount;
-			card = createCard( amount, m_backHitsCorrect);
+			setStat(CardStore.FRONT_HITS, amount);
+			card = createCard( amount, getStat(CardStore.BACK_HITS));
 		} else {
-			m_backHitsCorrect = amount;
-			card = createCard( m_frontHitsCorrect, amount);
+			setStat(CardStore.BACK_HITS, amount);
+			card = createCard( getStat(CardStore.FRONT_HITS), amount);
 		}
 
 		if (m_category != null) {
-			m_category.fireCardEvent(DECK_EVENT, this, getCategory(), m_level);
+			m_category.fireCardEvent(DECK_EVENT, this, getCategory(), getLevel());
 		}
 		
 		return card;
@@ -279,14 +346,14 @@ public class Card implements Events, Cloneable {
 	 *         either passed or failed (skip doesn't count).
 	 */
 	public Date getDateTested() {
-		return cloneDate(m_dateTested);
+		return toDate(getTime(CardStore.TESTED));
 	}
 
 	public Card setDateTested(final Date date) {
 //		return createCard(date, date);
 
-		m_dateTested = cloneDate(date);
-		m_dateTouched = cloneDate(date);
+		setTime(CardStore.TESTED, toTime(date));
+		setTime(CardStore.TOUCHED, toTime(date));
 		
 		return this;
 	}
@@ -295,7 +362,7 @@ public class Card implements Events, Cloneable {
 	 * @return can be <code>null</code>.
 	 */
 	public Date getDateExpired() {
-		return cloneDate(m_dateExpired);
+		return toDate(getTime(CardStore.EXPIRED));
 	}
 
 	/**
@@ -305,28 +372,35 @@ public class Card implements Events, Cloneable {
 	public void setDateExpired(final Date date) // CHECK should this throw a
 												// event?
 	{
-		m_dateExpired = cloneDate(date);
+		final Category category = m_category;
+		if (category != null)
+			category.removeFromExpirationIndex(this);
+
+		setTime(CardStore.EXPIRED, toTime(date));
+
+		if (category != null)
+			category.addToExpirationIndex(this);
 	}
 
 	/**
 	 * @return the creation date. Is never <code>null</code>.
 	 */
 	public Date getDateCreated() {
-		return cloneDate(m_dateCreated);
+		return toDate(getTime(CardStore.CREATED));
 	}
 
 	public void setDateCreated(final Date date) {
 		if (date == null)
 			throw new NullPointerException();
 
-		m_dateCreated = cloneDate(date);
+		setTime(CardStore.CREATED, date.getTime());
 	}
 
 	/**
 	 * @return the modification date. Is never <code>null</code>.
 	 */
 	public Date getDateModified() {
-		return m_dateModified;
+		return toDate(getTime(CardStore.MODIFIED));
 	}
 
 	/**
@@ -334,11 +408,11 @@ public class Card implements Events, Cloneable {
 	 *            must be equal or after the creation date.
 	 */
 	public void setDateModified(final Date date) {
-		if (date.before(m_dateCreated))
+		if (date.getTime() < getTime(CardStore.CREATED))
 			throw new IllegalArgumentException(
 					"Modification date can't be before creation date.");
 
-		m_dateModified = date;
+		setTime(CardStore.MODIFIED, date.getTime());
 	}
 
 	/**
@@ -347,25 +421,25 @@ public class Card implements Events, Cloneable {
 	 *         by a global value that is unique for all categories and decks.
 	 */
 	public Date getDateTouched() {
-		return cloneDate(m_dateTouched);
+		return toDate(getTime(CardStore.TOUCHED));
 	}
 
 	public void setDateTouched(final Date date) {
-		m_dateTouched = cloneDate(date);
+		setTime(CardStore.TOUCHED, toTime(date));
 	}
 
 	/**
 	 * @return Number of times this card has been tested.
 	 */
 	public int getTestsTotal() {
-		return m_testsTotal;
+		return getStat(CardStore.TESTS_TOTAL);
 	}
 
 	/**
 	 * @return Number of times this card has been tested succesfully.
 	 */
 	public int getTestsPassed() {
-		return m_testsHit;
+		return getStat(CardStore.TESTS_HIT);
 	}
 
 	/**
@@ -373,30 +447,30 @@ public class Card implements Events, Cloneable {
 	 *         comparison to failed tests.
 	 */
 	public int getPassRatio() {
-		return (int) Math.round(100.0 * m_testsHit / m_testsTotal);
+		return (int) Math.round(100.0 * getTestsPassed() / getTestsTotal());
 	}
 
 	public void incStats(final int hit, final int total) {
-		m_testsTotal += total;
-		m_testsHit += hit;
+		setStat(CardStore.TESTS_TOTAL, getTestsTotal() + total);
+		setStat(CardStore.TESTS_HIT, getTestsPassed() + hit);
 	}
 
 	public void resetStats() {
-		m_testsTotal = 0;
-		m_testsHit = 0;
+		setStat(CardStore.TESTS_TOTAL, 0);
+		setStat(CardStore.TESTS_HIT, 0);
 
-		m_frontHitsCorrect = 0;
-		m_backHitsCorrect = 0;
+		setStat(CardStore.FRONT_HITS, 0);
+		setStat(CardStore.BACK_HITS, 0);
 
-		m_skipped = 0;
+		setStat(CardStore.SKIPPED, 0);
 	}
 
 	public int getSkippedAmount() {
-		return m_skipped;
+		return getStat(CardStore.SKIPPED);
 	}
 
 	public void setSkippedAmount(final int skipped) {
-		m_skipped = skipped;
+		setStat(CardStore.SKIPPED, skipped);
 	}
 
 	public Category getCategory() {
@@ -414,9 +488,8 @@ public class Card implements Events, Cloneable {
 	 * @return True if the card has expired.
 	 */
 	public boolean isExpired() {
-		final Date now = new Date();
-		return m_dateExpired != null
-				&& (m_dateExpired.before(now) || m_dateExpired.equals(now));
+		final long expired = getExpirationTime();
+		return expired != NEVER && expired <= System.currentTimeMillis();
 	}
 
 	/**
@@ -426,7 +499,8 @@ public class Card implements Events, Cloneable {
 	 * @return True if the card is learned.
 	 */
 	public boolean isLearned() {
-		return m_dateExpired != null && m_dateExpired.after(new Date());
+		final long expired = getExpirationTime();
+		return expired != NEVER && expired > System.currentTimeMillis();
 	}
 
 	/**
@@ -436,14 +510,30 @@ public class Card implements Events, Cloneable {
 	 * @return True if the card is unlearned.
 	 */
 	public boolean isUnlearned() {
-		return m_dateExpired == null;
+		return getExpirationTime() == NEVER;
+	}
+
+	/**
+	 * @return the expiration date in milliseconds or {@link #NEVER} if this
+	 *         card has no expiration date.
+	 */
+	long getExpirationTime() {
+		return getTime(CardStore.EXPIRED);
+	}
+
+	/**
+	 * @return a number that is unique for every card instance in this VM and
+	 *         that grows with the creation order of the cards.
+	 */
+	long getSerial() {
+		return m_serial;
 	}
 
 	/**
 	 * @return Returns the level.
 	 */
 	public int getLevel() {
-		return m_level;
+		return getStat(CardStore.LEVEL);
 	}
 
 	/**
@@ -451,7 +541,48 @@ public class Card implements Events, Cloneable {
 	 *            The level to set.
 	 */
 	protected void setLevel(final int level) {
-		m_level = level;
+		setStat(CardStore.LEVEL, level);
+	}
+
+	/**
+	 * Moves the scheduling state of this card into a slot of given store and
+	 * releases its old slot.
+	 */
+	void moveTo(final CardStore store) {
+		if (store == m_store)
+			return;
+
+		if (m_store == null) {
+			m_slot = store.copyOf(m_detached);
+			m_detached = null;
+		} else {
+			final int slot = store.copyOf(m_store, m_slot);
+			m_store.release(m_slot);
+			m_slot = slot;
+		}
+
+		m_store = store;
+	}
+
+	/**
+	 * Moves the scheduling state of this card out of its store and releases
+	 * its slot. Used for cards that are no longer part of any category.
+	 */
+	void detach() {
+		if (m_store == null)
+			return;
+
+		m_detached = m_store.detachedCopyOf(m_slot);
+		m_store.release(m_slot);
+		m_store = null;
+	}
+
+	/**
+	 * @return the store that currently holds the scheduling state of this
+	 *         card or <code>null</code> if the card is detached.
+	 */
+	CardStore getStore() {
+		return m_store;
 	}
 
 	/*
@@ -472,7 +603,7 @@ public class Card implements Events, Cloneable {
 	 */
 	public Card cloneWithoutProgress() {
 		try {
-			return new Card(m_dateCreated, (CardSide) m_frontSide.clone(),
+			return new Card(getDateCreated(), (CardSide) m_frontSide.clone(),
 					(CardSide) m_backSide.clone());
 		} catch (final CloneNotSupportedException e) {
 			assert false;
@@ -494,15 +625,17 @@ public class Card implements Events, Cloneable {
 			public void onImagesChanged(final CardSide cardSide,
 					final List<String> imageIDs) {
 				if (m_category != null) {
-					m_dateModified = new Date();
+					setTime(CardStore.MODIFIED, System.currentTimeMillis());
 					m_category.fireCardEvent(EDITED_EVENT, Card.this,
-							getCategory(), m_level);
+							getCategory(), getLevel());
 				}
 			}
 
 			@Override
 			public void onTextChanged(final CardSide cardSide,
 					final FormattedText text) {
+				m_contentHash = 0;
+
 				// already handled by set sides
 				// TODO handle event notfying here
 			}
@@ -512,15 +645,41 @@ public class Card implements Events, Cloneable {
 		m_backSide.addObserver(observer);
 	}
 
+	private long getTime(final int column) {
+		return m_store != null ? m_store.getLong(column, m_slot) : CardStore.getLong(m_detached, column);
+	}
+
+	private void setTime(final int column, final long time) {
+		if (m_store != null)
+			m_store.setLong(column, m_slot, time);
+		else
+			CardStore.setLong(m_detached, column, time);
+	}
+
+	private int getStat(final int column) {
+		return m_store != null ? m_store.getInt(column, m_slot) : CardStore.getInt(m_detached, column);
+	}
+
+	private void setStat(final int column, final int value) {
+		if (m_store != null)
+			m_store.setInt(column, m_slot, value);
+		else
+			CardStore.setInt(m_detached, column, value);
+	}
+
 	/**
-	 * @return clone of given date or <code>null</code> if given date was
+	 * @return the time of given date or {@link #NEVER} if given date was
 	 *         <code>null</code>.
 	 */
-	private Date cloneDate(final Date date) {
-		if (CLONE_DATES) {
-			return date == null ? null : (Date) date.clone();
-		}
+	private static long toTime(final Date date) {
+		return date == null ? NEVER : date.getTime();
+	}
 
-		return date;
+	/**
+	 * @return a new date for given time or <code>null</code> if given time
+	 *         was {@link #NEVER}.
+	 */
+	private static Date toDate(final long time) {
+		return time == NEVER ? null : new Date(time);
 	}
 }
@@ -0,0 +1,115 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The cards that were changed by a single bulk operation on categories, see
+ * {@link CategoryObserver#onCardsEvent(int, CardBatch)}. For every card the
+ * batch holds the same category and deck that a single card event would have
+ * carried.
+ */
+public final class CardBatch {
+	private Card[] m_cards;
+	private Category[] m_categories;
+	private int[] m_decks;
+	private int m_size;
+
+	CardBatch(final int capacity) {
+		m_cards = new Card[capacity];
+		m_categories = new Category[capacity];
+		m_decks = new int[capacity];
+	}
+
+	void add(final Card card, final Category category, final int deck) {
+		if (m_size == m_cards.length) {
+			final int capacity = Math.max(8, m_size * 2);
+			m_cards = Arrays.copyOf(m_cards, capacity);
+			m_categories = Arrays.copyOf(m_categories, capacity);
+			m_decks = Arrays.copyOf(m_decks, capacity);
+		}
+
+		m_cards[m_size] = card;
+		m_categories[m_size] = category;
+		m_decks[m_size] = deck;
+		m_size++;
+	}
+
+	/**
+	 * @return the number of cards in this batch.
+	 */
+	public int size() {
+		return m_size;
+	}
+
+	public boolean isEmpty() {
+		return m_size == 0;
+	}
+
+	/**
+	 * @return the card with given index.
+	 */
+	public Card getCard(final int index) {
+		checkIndex(index);
+		return m_cards[index];
+	}
+
+	/**
+	 * @return the category of the card with given index, as it would have been
+	 *         given to {@link CategoryObserver#onCardEvent}.
+	 */
+	public Category getCategory(final int index) {
+		checkIndex(index);
+		return m_categories[index];
+	}
+
+	/**
+	 * @return the deck that held the card with given index, when the event
+	 *         happened.
+	 */
+	public int getDeck(final int index) {
+		checkIndex(index);
+		return m_decks[index];
+	}
+
+	/**
+	 * @return a read-only list view of all cards in this batch.
+	 */
+	public List<Card> getCards() {
+		return new AbstractList<Card>() {
+			@Override
+			public Card get(final int index) {
+				return getCard(index);
+			}
+
+			@Override
+			public int size() {
+				return m_size;
+			}
+		};
+	}
+
+	private void checkIndex(final int index) {
+		if (index < 0 || index >= m_size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_size); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A search text that is prepared once for checking many cards, see
+ * {@link SearchTool#matcher(String, int, int, boolean)}.
+ *
+ * Matchers keep scratch space, so every thread has to use its own one. They
+ * can be used on any thread as long as the cards aren't edited at the same
+ * time.
+ */
+public abstract class CardMatcher implements Predicate<Card> {
+	private final int m_side;
+
+	/**
+	 * Finds cards that contain the search text.
+	 */
+	static final class Text extends CardMatcher {
+		private final String m_text;
+		private final boolean m_matchCase;
+
+		Text(final String text, final int side, final boolean matchCase) {
+			super(side);
+			m_text = matchCase ? text : FormattedText.fold(text);
+			m_matchCase = matchCase;
+		}
+
+		@Override
+		int distance(final FormattedText text) {
+			// folded texts are kept, so searching again doesn't allocate
+			final String searched = m_matchCase ? text.getUnformatted() : text
+					.getFolded();
+
+			return searched.indexOf(m_text) > -1 ? 0 : -1;
+		}
+	}
+
+	/**
+	 * Finds cards that contain a match of a regular expression. Unless case
+	 * has to match the expression ignores case, but not accents.
+	 */
+	static final class Regex extends CardMatcher {
+		private final Matcher m_matcher;
+
+		Regex(final String regex, final int side, final boolean matchCase) {
+			super(side);
+			final int flags = matchCase ? 0 : Pattern.CASE_INSENSITIVE
+					| Pattern.UNICODE_CASE;
+			m_matcher = Pattern.compile(regex, flags).matcher(""); //$NON-NLS-1$
+		}
+
+		@Override
+		int distance(final FormattedText text) {
+			return m_matcher.reset(text.getUnformatted()).find() ? 0 : -1;
+		}
+	}
+
+	/**
+	 * Finds cards that contain a text within a given Levenshtein distance of
+	 * the search text.
+	 */
+	static final class Fuzzy extends CardMatcher {
+		private final FuzzyPattern m_pattern;
+		private final boolean m_matchCase;
+
+		Fuzzy(final String text, final int maxDistance, final int side,
+				final boolean matchCase) {
+			super(side);
+			m_pattern = new FuzzyPattern(matchCase ? text
+					: FormattedText.fold(text), maxDistance);
+			m_matchCase = matchCase;
+		}
+
+		@Override
+		int distance(final FormattedText text) {
+			return m_pattern.distance(m_matchCase ? text.getUnformatted()
+					: text.getFolded());
+		}
+	}
+
+	CardMatcher(final int side) {
+		m_side = side;
+	}
+
+	/**
+	 * @return the number of characters that have to be changed at least so
+	 *         that a searched side of the card matches, or -1 if the card
+	 *         isn't found. Cards that match exactly have distance 0.
+	 */
+	public int distance(final Card card) {
+		int distance = -1;
+		if (m_side == SearchTool.FRONT_SIDE || m_side == SearchTool.BOTH_SIDES)
+			distance = distance(card.getFrontSide().getText());
+
+		if (distance != 0
+				&& (m_side == SearchTool.FLIP_SIDE || m_side == SearchTool.BOTH_SIDES)) {
+			final int backDistance = distance(card.getBackSide().getText());
+			if (distance < 0 || backDistance >= 0 && backDistance < distance)
+				distance = backDistance;
+		}
+
+		return distance;
+	}
+
+	/**
+	 * @return <code>true</code> if the card is found.
+	 */
+	@Override
+	public boolean test(final Card card) {
+		return distance(card) >= 0;
+	}
+
+	/**
+	 * @return the distance of given text of a card side, or -1 if it doesn't
+	 *         match.
+	 */
+	abstract int distance(FormattedText text);
+}
@@ -0,0 +1,245 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.ArrayDeque;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over the cards of a category that reads the decks of the
+ * category tree directly instead of copying them.
+ *
+ * The cards are traversed in the same order as returned by
+ * {@link Category#getCards()}: deck by deck, and for every deck the cards of
+ * the category itself before the cards of its child categories.
+ *
+ * The remaining cards are kept as a sequence of segments. A segment is either
+ * a range of a single local deck or a whole subtree at one deck level. The
+ * size of a subtree segment is known from the card counters of the category,
+ * which allows exact splits (SIZED and SUBSIZED) without visiting any card.
+ *
+ * The spliterator fails fast with a {@link ConcurrentModificationException} if
+ * cards or categories are added to or removed from the traversed category tree
+ * after the spliterator was created.
+ */
+class CardSpliterator implements Spliterator<Card> {
+	private static final class Segment {
+		private final Category m_category;
+		private final int m_level;
+		private final boolean m_subtree;
+		private final List<Card> m_deck;
+		private int m_from;
+		private final int m_to;
+
+		private Segment(final Category category, final int level) {
+			m_category = category;
+			m_level = level;
+			m_subtree = true;
+			m_deck = null;
+			m_from = 0;
+			m_to = 0;
+		}
+
+		private Segment(final List<Card> deck, final int from, final int to) {
+			m_category = null;
+			m_level = -1;
+			m_subtree = false;
+			m_deck = deck;
+			m_from = from;
+			m_to = to;
+		}
+
+		private long size() {
+			return m_subtree ? m_category.getSubtreeCardCount(m_level) : m_to - m_from;
+		}
+	}
+
+	private final Category m_root;
+	private final int m_expectedModCount;
+	private final Deque<Segment> m_segments;
+	private long m_size;
+
+	/**
+	 * Creates a spliterator over the cards of the given deck levels.
+	 *
+	 * @param subtree
+	 *            <code>true</code> if the cards of all child categories should
+	 *            be included, <code>false</code> for the local cards only.
+	 */
+	CardSpliterator(final Category root, final int fromLevel, final int toLevel, final boolean subtree) {
+		m_root = root;
+		m_expectedModCount = root.getModCount();
+		m_segments = new ArrayDeque<Segment>();
+
+		for (int level = fromLevel; level < toLevel; level++) {
+			if (subtree) {
+				add(new Segment(root, level));
+			} else {
+				addLocal(root, level);
+			}
+		}
+	}
+
+	private CardSpliterator(final Category root, final int expectedModCount, final Deque<Segment> segments,
+			final long size) {
+		m_root = root;
+		m_expectedModCount = expectedModCount;
+		m_segments = segments;
+		m_size = size;
+	}
+
+	@Override
+	public boolean tryAdvance(final Consumer<? super Card> action) {
+		checkForComodification();
+
+		Segment segment;
+		while ((segment = m_segments.peekFirst()) != null) {
+			if (segment.m_subtree) {
+				expandFirst();
+			} else if (segment.m_from < segment.m_to) {
+				final Card card = segment.m_deck.get(segment.m_from++);
+				m_size--;
+
+				action.accept(card);
+				return true;
+			} else {
+				m_segments.pollFirst();
+			}
+		}
+
+		return false;
+	}
+
+	@Override
+	public void forEachRemaining(final Consumer<? super Card> action) {
+		checkForComodification();
+
+		Segment segment;
+		while ((segment = m_segments.peekFirst()) != null) {
+			if (segment.m_subtree) {
+				expandFirst();
+				continue;
+			}
+
+			m_segments.pollFirst();
+			for (int i = segment.m_from; i < segment.m_to; i++) {
+				action.accept(segment.m_deck.get(i));
+			}
+			m_size -= segment.m_to - segment.m_from;
+		}
+
+		checkForComodification();
+	}
+
+	@Override
+	public Spliterator<Card> trySplit() {
+		checkForComodification();
+
+		// open up single subtrees until there is something to split
+		while (m_segments.size() == 1 && m_segments.peekFirst().m_subtree) {
+			expandFirst();
+		}
+
+		if (m_segments.isEmpty()) {
+			return null;
+		}
+
+		final Deque<Segment> prefix = new ArrayDeque<Segment>();
+		long prefixSize = 0;
+
+		if (m_segments.size() == 1) {
+			// split the range of a single deck
+			final Segment segment = m_segments.peekFirst();
+			final int count = segment.m_to - segment.m_from;
+			if (count < 2) {
+				return null;
+			}
+
+			final int mid = segment.m_from + count / 2;
+			prefix.add(new Segment(segment.m_deck, segment.m_from, mid));
+			prefixSize = mid - segment.m_from;
+			segment.m_from = mid;
+		} else {
+			// hand out leading segments that make up about half of the cards
+			final long half = m_size / 2;
+			while (m_segments.size() > 1 && (prefix.isEmpty() || prefixSize + m_segments.peekFirst().size() <= half)) {
+				final Segment segment = m_segments.pollFirst();
+				prefix.add(segment);
+				prefixSize += segment.size();
+			}
+		}
+
+		m_size -= prefixSize;
+		return new CardSpliterator(m_root, m_expectedModCount, prefix, prefixSize);
+	}
+
+	@Override
+	public long estimateSize() {
+		return m_size;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | SIZED | SUBSIZED | NONNULL;
+	}
+
+	/**
+	 * Replaces the first segment, which must be a subtree segment, by the
+	 * local deck of its category followed by the subtrees of its children.
+	 */
+	private void expandFirst() {
+		final Segment subtree = m_segments.pollFirst();
+		final List<Category> children = subtree.m_category.getChildList();
+
+		for (int i = children.size() - 1; i >= 0; i--) {
+			final Segment child = new Segment(children.get(i), subtree.m_level);
+			if (child.size() > 0) {
+				m_segments.addFirst(child);
+			}
+		}
+
+		final List<Card> deck = subtree.m_category.getDeck(subtree.m_level);
+		if (!deck.isEmpty()) {
+			m_segments.addFirst(new Segment(deck, 0, deck.size()));
+		}
+	}
+
+	private void add(final Segment segment) {
+		final long size = segment.size();
+		if (size > 0) {
+			m_segments.add(segment);
+			m_size += size;
+		}
+	}
+
+	private void addLocal(final Category category, final int level) {
+		final List<Card> deck = category.getDeck(level);
+		add(new Segment(deck, 0, deck.size()));
+	}
+
+	private void checkForComodification() {
+		if (m_root.getModCount() != m_expectedModCount) {
+			throw new ConcurrentModificationException();
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.Arrays;
+
+/**
+ * Holds the scheduling state of many cards in primitive columns, one array
+ * per value, instead of a few objects per card. A {@link Card} only keeps its
+ * store and its slot in this store.
+ *
+ * Every category tree owns one store at its root category, which is the
+ * store of the lesson for the root category of a lesson. Cards are moved to
+ * the store of the tree they are added to. Cards that aren't part of any
+ * category don't have a slot, they keep their values in a small array of
+ * their own, see {@link #createDetached()}, until they are added.
+ *
+ * Dates are kept as milliseconds, <code>null</code> dates as
+ * {@link Card#NEVER}.
+ */
+class CardStore {
+	// long columns
+	static final int TESTED = 0;
+	static final int EXPIRED = 1;
+	static final int CREATED = 2;
+	static final int MODIFIED = 3;
+	static final int TOUCHED = 4;
+	private static final int LONG_COLUMNS = 5;
+
+	// int columns
+	static final int LEVEL = 0;
+	static final int TESTS_TOTAL = 1;
+	static final int TESTS_HIT = 2;
+	static final int FRONT_HITS = 3;
+	static final int BACK_HITS = 4;
+	static final int SKIPPED = 5;
+	private static final int INT_COLUMNS = 6;
+
+	// the long columns followed by the int columns
+	private static final int DETACHED_SIZE = LONG_COLUMNS + INT_COLUMNS;
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private final long[][] m_longs = new long[LONG_COLUMNS][];
+	private final int[][] m_ints = new int[INT_COLUMNS][];
+
+	// slots below m_used have been handed out at least once
+	private int m_used;
+
+	// slots that have been released and can be reused
+	private int[] m_freeSlots = new int[0];
+	private int m_freeCount;
+
+	CardStore() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	CardStore(final int capacity) {
+		for (int i = 0; i < LONG_COLUMNS; i++) {
+			m_longs[i] = new long[capacity];
+		}
+
+		for (int i = 0; i < INT_COLUMNS; i++) {
+			m_ints[i] = new int[capacity];
+		}
+	}
+
+	/**
+	 * @return a new slot. All dates of the slot are {@link Card#NEVER} and all
+	 *         counters are 0.
+	 */
+	int allocate() {
+		final int slot;
+		if (m_freeCount > 0) {
+			slot = m_freeSlots[--m_freeCount];
+		} else {
+			if (m_used == capacity()) {
+				grow();
+			}
+
+			slot = m_used++;
+		}
+
+		for (int i = 0; i < LONG_COLUMNS; i++) {
+			m_longs[i][slot] = Card.NEVER;
+		}
+
+		for (int i = 0; i < INT_COLUMNS; i++) {
+			m_ints[i][slot] = 0;
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Releases the slot so that it can be handed out again.
+	 */
+	void release(final int slot) {
+		if (m_freeCount == m_freeSlots.length) {
+			m_freeSlots = Arrays.copyOf(m_freeSlots, Math.max(1, m_freeCount * 2));
+		}
+
+		m_freeSlots[m_freeCount++] = slot;
+	}
+
+	/**
+	 * Copies all values of given slot of given store into a new slot of this
+	 * store.
+	 *
+	 * @return the new slot.
+	 */
+	int copyOf(final CardStore store, final int slot) {
+		final int newSlot = allocate();
+
+		for (int i = 0; i < LONG_COLUMNS; i++) {
+			m_longs[i][newSlot] = store.m_longs[i][slot];
+		}
+
+		for (int i = 0; i < INT_COLUMNS; i++) {
+			m_ints[i][newSlot] = store.m_ints[i][slot];
+		}
+
+		return newSlot;
+	}
+
+	/**
+	 * Copies all values of given detached array into a new slot of this
+	 * store.
+	 *
+	 * @return the new slot.
+	 */
+	int copyOf(final long[] detached) {
+		final int slot = allocate();
+
+		for (int i = 0; i < LONG_COLUMNS; i++) {
+			m_longs[i][slot] = detached[i];
+		}
+
+		for (int i = 0; i < INT_COLUMNS; i++) {
+			m_ints[i][slot] = (int)detached[LONG_COLUMNS + i];
+		}
+
+		return slot;
+	}
+
+	/**
+	 * @return a detached array with a copy of all values of given slot.
+	 */
+	long[] detachedCopyOf(final int slot) {
+		final long[] detached = new long[DETACHED_SIZE];
+
+		for (int i = 0; i < LONG_COLUMNS; i++) {
+			detached[i] = m_longs[i][slot];
+		}
+
+		for (int i = 0; i < INT_COLUMNS; i++) {
+			detached[LONG_COLUMNS + i] = m_ints[i][slot];
+		}
+
+		return detached;
+	}
+
+	long getLong(final int column, final int slot) {
+		return m_longs[column][slot];
+	}
+
+	void setLong(final int column, final int slot, final long value) {
+		m_longs[column][slot] = value;
+	}
+
+	int getInt(final int column, final int slot) {
+		return m_ints[column][slot];
+	}
+
+	void setInt(final int column, final int slot, final int value) {
+		m_ints[column][slot] = value;
+	}
+
+	/**
+	 * @return the values of a card that isn't part of any store. All dates
+	 *         are {@link Card#NEVER} and all counters are 0. Use
+	 *         {@link #getLong(long[], int)} and {@link #getInt(long[], int)}
+	 *         and their setters with the column constants to access it.
+	 */
+	static long[] createDetached() {
+		final long[] detached = new long[DETACHED_SIZE];
+		Arrays.fill(detached, 0, LONG_COLUMNS, Card.NEVER);
+
+		return detached;
+	}
+
+	static long getLong(final long[] detached, final int column) {
+		return detached[column];
+	}
+
+	static void setLong(final long[] detached, final int column, final long value) {
+		detached[column] = value;
+	}
+
+	static int getInt(final long[] detached, final int column) {
+		return (int)detached[LONG_COLUMNS + column];
+	}
+
+	static void setInt(final long[] detached, final int column, final int value) {
+		detached[LONG_COLUMNS + column] = value;
+	}
+
+	/**
+	 * @return the number of slots that are currently in use.
+	 */
+	int size() {
+		return m_used - m_freeCount;
+	}
+
+	private int capacity() {
+		return m_ints[LEVEL].length;
+	}
+
+	private void grow() {
+		final int capacity = Math.max(DEFAULT_CAPACITY, capacity() * 2);
+
+		for (int i = 0; i < LONG_COLUMNS; i++) {
+			m_longs[i] = Arrays.copyOf(m_longs[i], capacity);
+		}
+
+		for (int i = 0; i < INT_COLUMNS; i++) {
+			m_ints[i] = Arrays.copyOf(m_ints[i], capacity);
+		}
+	}
+}
@@ -18,16 +18,33 @@
  */
 package jmemorize.core;
 
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import jmemorize.util.NaturalOrderComparator;
+import jmemorize.util.ObserverList;
 
 /**
  * A card category can hold a number of 0 to n decks. The cards in deck 0 are
@@ -47,40 +64,35 @@ import jmemorize.util.NaturalOrderComparator;
  * @author djemili
  */
 public class Category implements Events {
+	/**
+	 * Categories are equal only to themselves. Two categories with the same
+	 * name and parent are still different categories.
+	 */
 	@Override
 	public boolean equals(final Object object) {
-		final boolean fEquals;
-
-		if (object == null) {
-			fEquals = false;
-		} else if (object instanceof Category) {
-			final Category category = (Category) object;
-
-			if (getName().equals(category.getName())) {
-				if (getParent() == null) {
-					fEquals = category.getParent() == null;
-				} else if (category.getParent() == null) {
-					fEquals = false;
-				} else {
-					fEquals = getParent().equals(category.getParent());
-				}
-			} else {
-				fEquals = false;
-			}
-		} else {
-			fEquals = false;
-		}
-
-		return fEquals;
+		return this == object;
 	}
 
 	@Override
 	public int hashCode() {
-		return getName().hashCode();
+		return m_hashCode;
 	}
 
-	// TODO use CopyOnWriteArrayList in Java1.5
-	private List<CategoryObserver> m_observers = new ArrayList<CategoryObserver>();
+	@SuppressWarnings("unchecked")
+	private static final Comparator<String> NATURAL_ORDER = new NaturalOrderComparator();
+
+	// gives child keys with equal names the order in which they were added
+	private static final AtomicLong CHILD_KEY_SERIALS = new AtomicLong();
+
+	private static final AtomicInteger HASH_CODES = new AtomicInteger();
+
+	// spreads the consecutive hash codes over the whole int range
+	private static final int HASH_CODE_MIX = 0x9E3779B9;
+
+	private final int m_hashCode = HASH_CODES.getAndIncrement() * HASH_CODE_MIX;
+
+	private final ObserverList<CategoryObserver> m_observers = new ObserverList<CategoryObserver>(
+			new CategoryObserver[0]);
 
 	private String m_name;
 
@@ -89,7 +101,47 @@ public class Category implements Events {
 																	// lists
 
 	private Category m_parent;
-	private List<Category> m_childCategories = new LinkedList<Category>();
+
+	// the child categories in natural order of their names. Categories with
+	// equal names keep the order in which they were added
+	private final NavigableMap<ChildKey, Category> m_children = new TreeMap<ChildKey, Category>();
+
+	// the first child category for every child name
+	private final Map<String, Category> m_childrenByName = new HashMap<String, Category>();
+
+	// ordered list view of m_children, see ChildList
+	private final List<Category> m_childCategories = new ChildList();
+
+	// the key of this category in the children map of its parent
+	private ChildKey m_childKey;
+
+	// array of the child categories for index based access, null if stale
+	private Category[] m_childSnapshot;
+
+	// path and depth of this category, computed on first use. A valid path
+	// implies valid paths of all parents, see invalidatePaths
+	private String m_path;
+	private int m_depth = -1;
+
+	// number of cards per deck level in this category and all of its child
+	// categories. Kept up to date by addCardInternal/removeCardInternal and
+	// passed up to the parent, so that counting cards doesn't walk the tree.
+	private int[] m_subtreeCardCounts = new int[0];
+	private int m_subtreeCardCount;
+
+	// holds the scheduling state of all cards of this category tree. Only
+	// used by the root category, see getCardStore()
+	private CardStore m_cardStore;
+
+	// number of categories in this subtree, including this category
+	private int m_subtreeCategoryCount = 1;
+
+	// incremented on every structural change in this category or one of its
+	// child categories, used by the views to fail fast
+	private int m_modCount;
+
+	// local cards with an expiration date, ordered by that date
+	private final ExpirationIndex m_expirationIndex = new ExpirationIndex();
 
 	/**
 	 * Creates a new Category.
@@ -133,6 +185,7 @@ public class Category implements Events {
 		int level = card.getLevel();
 		Category category = card.getCategory();
 		removeCardInternal(card);
+		card.detach();
 
 		fireCardEvent(REMOVED_EVENT, card, category, level);
 	}
@@ -199,6 +252,142 @@ public class Category implements Events {
 		changeCardLevel(card, 0, null, null);
 	}
 
+	/*
+	 * Bulk card methods. These apply all changes first and then fire a single
+	 * batch event, see CategoryObserver#onCardsEvent.
+	 */
+
+	/**
+	 * Adds all cards to the deck with given level.
+	 * 
+	 * Fires a single ADDED_EVENT batch.
+	 */
+	public void addCards(Collection<Card> cards, int level) {
+		CardBatch batch = new CardBatch(cards.size());
+		for (Card card : cards) {
+			addCardInternal(card, level);
+			batch.add(card, this, level);
+		}
+
+		fireCardsEvent(ADDED_EVENT, batch);
+	}
+
+	/**
+	 * Adds all cards to this category, each one to the deck of its current
+	 * level. This is useful for pasting copies of cards.
+	 * 
+	 * Fires a single ADDED_EVENT batch.
+	 */
+	public void addCards(Collection<Card> cards) {
+		CardBatch batch = new CardBatch(cards.size());
+		for (Card card : cards) {
+			int level = card.getLevel();
+			addCardInternal(card, level);
+			batch.add(card, this, level);
+		}
+
+		fireCardsEvent(ADDED_EVENT, batch);
+	}
+
+	/**
+	 * Removes all cards from their associated decks. Cards that aren't part of
+	 * any category are ignored.
+	 * 
+	 * Fires a REMOVED_EVENT batch at the category of every card.
+	 */
+	public static void removeCards(Collection<Card> cards) {
+		CardBatch batch = createBatch(cards);
+		removeCardsInternal(batch);
+
+		for (int i = 0; i < batch.size(); i++) {
+			batch.getCard(i).detach();
+		}
+
+		for (CardBatch categoryBatch : splitByCategory(batch)) {
+			categoryBatch.getCategory(0).fireCardsEvent(REMOVED_EVENT, categoryBatch);
+		}
+	}
+
+	/**
+	 * Moves all cards to a new category, preserving all their fields and
+	 * levels.
+	 * 
+	 * Fires a MOVED_EVENT batch at every old category and at the new category.
+	 * 
+	 * @see #moveCard(Card, Category)
+	 */
+	public static void moveCards(Collection<Card> cards, Category newCategory) {
+		CardBatch batch = createBatch(cards);
+		removeCardsInternal(batch);
+
+		for (int i = 0; i < batch.size(); i++) {
+			newCategory.addCardInternal(batch.getCard(i), batch.getDeck(i));
+		}
+
+		for (CardBatch categoryBatch : splitByCategory(batch)) {
+			categoryBatch.getCategory(0).fireCardsEvent(MOVED_EVENT, categoryBatch);
+		}
+		newCategory.fireCardsEvent(MOVED_EVENT, batch);
+	}
+
+	/**
+	 * Moves all cards to the deck with given level, using the given dates as
+	 * new test and expiration dates. The cards stay in their categories.
+	 * 
+	 * Fires a DECK_EVENT batch at the category of every card.
+	 * 
+	 * @param testDate
+	 *            can be <code>null</code>.
+	 * @param expirationDate
+	 *            can be <code>null</code>.
+	 */
+	public static void changeLevels(Collection<Card> cards, int newLevel, Date testDate, Date expirationDate) {
+		CardBatch batch = createBatch(cards);
+		removeCardsInternal(batch);
+
+		Date touched = new Date();
+		for (int i = 0; i < batch.size(); i++) {
+			Card card = batch.getCard(i);
+			card.setDateTested(testDate);
+			card.setDateExpired(expirationDate);
+			card.setDateTouched(touched);
+			card.resetLearnedAmount();
+
+			batch.getCategory(i).addCardInternal(card, newLevel);
+		}
+
+		for (CardBatch categoryBatch : splitByCategory(batch)) {
+			categoryBatch.getCategory(0).fireCardsEvent(DECK_EVENT, categoryBatch);
+		}
+	}
+
+	/**
+	 * Resets all cards by moving them back to level 0 and deleting all their
+	 * stats.
+	 * 
+	 * Fires a DECK_EVENT batch at the category of every card.
+	 */
+	public static void resetCards(Collection<Card> cards) {
+		for (Card card : cards) {
+			card.resetStats();
+		}
+
+		changeLevels(cards, 0, null, null);
+	}
+
+	/**
+	 * Lets the observers know that the cards have been edited, for changes
+	 * that don't fire any events by themselves, like those to the stats and
+	 * dates of cards. Cards that aren't part of any category are ignored.
+	 * 
+	 * Fires an EDITED_EVENT batch at the category of every card.
+	 */
+	public static void fireCardsEdited(Collection<Card> cards) {
+		for (CardBatch categoryBatch : splitByCategory(createBatch(cards))) {
+			categoryBatch.getCategory(0).fireCardsEvent(EDITED_EVENT, categoryBatch);
+		}
+	}
+
 	/*
 	 * Card getter methods
 	 */
@@ -207,11 +396,11 @@ public class Category implements Events {
 	 * @return All cards of all decks in this category.
 	 */
 	public List<Card> getCards() {
-		List<Card> cardList = new ArrayList<Card>();
+		List<Card> cardList = new ArrayList<Card>(m_subtreeCardCount);
 
 		// get cards from all decks
 		for (int i = 0; i < m_decks.size(); i++) {
-			cardList.addAll(getCards(i));
+			collectCards(i, cardList);
 		}
 
 		return cardList;
@@ -221,13 +410,7 @@ public class Category implements Events {
 	 * @return The count of cards of all decks in this category.
 	 */
 	public int getCardCount() {
-		int count = 0;
-
-		// get cards from all decks
-		for (int i = 0; i < m_decks.size(); i++)
-			count += getCardCount(i);
-
-		return count;
+		return m_subtreeCardCount;
 	}
 
 	/**
@@ -247,12 +430,8 @@ public class Category implements Events {
 			return getCards();
 		}
 
-		// get cards in this category
-		List<Card> cardList = new ArrayList<Card>(m_decks.get(level));
-
-		// get cards in child categories
-		cardList.addAll(getChildCategories().stream().filter(child -> (child.getNumberOfDecks() > level))
-				.flatMap(c -> c.getCards(level).stream()).collect(Collectors.toList()));
+		List<Card> cardList = new ArrayList<Card>(getCardCount(level));
+		collectCards(level, cardList);
 
 		return cardList;
 	}
@@ -272,16 +451,7 @@ public class Category implements Events {
 		if (level == -1)
 			return getCardCount();
 
-		// get cards in this category
-		int count = m_decks.get(level).size();
-
-		// get cards in child categories
-		for (Category child : getChildCategories()) {
-			if (child.getNumberOfDecks() > level)
-				count += child.getCardCount(level);
-		}
-
-		return count;
+		return level < m_subtreeCardCounts.length ? m_subtreeCardCounts[level] : 0;
 	}
 
 	/**
@@ -289,7 +459,22 @@ public class Category implements Events {
 	 *         categories.
 	 */
 	public List<Card> getExpiredCards() {
-		return getCards().stream().filter(card -> card.isExpired()).collect(Collectors.toList());
+		return getExpiredCards(new Date());
+	}
+
+	/**
+	 * @return all cards of all decks in this category and its child categories
+	 *         that expire at or before the given date. Cards are returned deck
+	 *         by deck and in order of their expiration within a category.
+	 */
+	public List<Card> getExpiredCards(Date date) {
+		List<Card> expiredCards = new ArrayList<Card>();
+
+		for (int i = 0; i < getNumberOfDecks(); i++) {
+			collectExpiredCards(i, date.getTime(), expiredCards);
+		}
+
+		return expiredCards;
 	}
 
 	/**
@@ -297,16 +482,49 @@ public class Category implements Events {
 	 *         categories.
 	 */
 	public List<Card> getExpiredCards(int level) {
-		List<Card> expiredCards = getCards(level);
+		List<Card> expiredCards = new ArrayList<Card>();
+		collectExpiredCards(level, System.currentTimeMillis(), expiredCards);
 
-		for (Iterator<Card> it = expiredCards.iterator(); it.hasNext();) {
-			Card card = it.next();
-			if (!card.isExpired()) {
-				it.remove();
-			}
+		return expiredCards;
+	}
+
+	/**
+	 * @return the number of cards in this category and its child categories
+	 *         that expire at or before the given date.
+	 */
+	public int getExpiredCardCount(Date date) {
+		int count = 0;
+
+		for (int i = 0; i < getNumberOfDecks(); i++) {
+			count += getExpiredCardCount(i, date);
 		}
 
-		return expiredCards;
+		return count;
+	}
+
+	/**
+	 * @return the number of cards in given deck of this category and its child
+	 *         categories that expire at or before the given date.
+	 */
+	public int getExpiredCardCount(int level, Date date) {
+		int count = m_expirationIndex.countExpired(level, date.getTime());
+
+		for (Category child : m_childCategories) {
+			count += child.getExpiredCardCount(level, date);
+		}
+
+		return count;
+	}
+
+	/**
+	 * @return the earliest expiration date after the given date of all cards
+	 *         in this category and its child categories. <code>null</code> if
+	 *         no card expires after the given date.
+	 */
+	public Date getNextExpirationDate(Date date) {
+		long next = nextExpirationTime(date.getTime());
+
+		return next != Card.NEVER ? new Date(next) : null;
 	}
 
 	/**
@@ -314,13 +532,11 @@ public class Category implements Events {
 	 *         categories.
 	 */
 	public List<Card> getLearnedCards() {
-		List<Card> learnedCards = getCards();
+		List<Card> learnedCards = new ArrayList<Card>();
 
-		for (Iterator<Card> it = learnedCards.iterator(); it.hasNext();) {
-			Card card = it.next();
-			if (!card.isLearned()) {
-				it.remove();
-			}
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < getNumberOfDecks(); i++) {
+			collectLearnedCards(i, now, learnedCards);
 		}
 
 		return learnedCards;
@@ -334,17 +550,11 @@ public class Category implements Events {
 	 * @return all learned cards in deck with given level.
 	 */
 	public List<Card> getLearnedCards(int level) {
-		// level 0 decks have no learned cards
-		if (level == 0) {
-			return new ArrayList<Card>();
-		}
+		List<Card> learnedCards = new ArrayList<Card>();
 
-		List<Card> learnedCards = getCards(level);
-		for (Iterator<Card> it = learnedCards.iterator(); it.hasNext();) {
-			Card card = it.next();
-			if (!card.isLearned()) {
-				it.remove();
-			}
+		// level 0 decks have no learned cards
+		if (level != 0) {
+			collectLearnedCards(level, System.currentTimeMillis(), learnedCards);
 		}
 
 		return learnedCards;
@@ -367,9 +577,15 @@ public class Category implements Events {
 	 * @see #getLearnableCards(int)
 	 */
 	public List<Card> getLearnableCards() {
-		List<Card> learnableCards = new LinkedList<Card>();
-		for (int i = 0; i < getNumberOfDecks(); i++) {
-			learnableCards.addAll(getLearnableCards(i));
+		if (getNumberOfDecks() == 0) {
+			return new ArrayList<Card>();
+		}
+
+		List<Card> learnableCards = getCards(0);
+
+		long now = System.currentTimeMillis();
+		for (int i = 1; i < getNumberOfDecks(); i++) {
+			collectExpiredCards(i, now, learnableCards);
 		}
 
 		return learnableCards;
@@ -405,6 +621,38 @@ public class Category implements Events {
 		return m_decks.get(level);
 	}
 
+	/**
+	 * @return a read-only live view of all cards of all decks in this category
+	 *         and its child categories. The view doesn't copy any cards and
+	 *         iterates in the same order as {@link #getCards()}. Its iterators
+	 *         and spliterators fail fast if cards or categories are added or
+	 *         removed while iterating.
+	 */
+	public Collection<Card> getCardsView() {
+		return new CardsView(-1, true);
+	}
+
+	/**
+	 * @return a read-only live view of all cards in the given deck level in
+	 *         this category and its child categories. Returns a view of all
+	 *         decks if -1 is given as level.
+	 * 
+	 * @see #getCardsView()
+	 */
+	public Collection<Card> getCardsView(int level) {
+		return new CardsView(level, true);
+	}
+
+	/**
+	 * @return a read-only live view of all cards that are local to this
+	 *         category.
+	 * 
+	 * @see #getCardsView()
+	 */
+	public Collection<Card> getLocalCardsView() {
+		return new CardsView(-1, false);
+	}
+
 	/**
 	 * @return The number of decks of this category and its child categories.
 	 *         That means that no child categoriy can have more number of decks
@@ -419,42 +667,57 @@ public class Category implements Events {
 	 */
 
 	/**
-	 * @return Returns a unmodifiable list of the child categories.
+	 * @return Returns a unmodifiable list of the child categories, sorted by
+	 *         the natural order of their names. The list is a live view that
+	 *         reflects later changes to the child categories.
 	 */
 	public List<Category> getChildCategories() {
-		return Collections.unmodifiableList(m_childCategories);
+		return m_childCategories;
 	}
 
 	/**
 	 * @return the child category with given name. <code>null</code> if there is
-	 *         child category with given name.
+	 *         child category with given name. If there are several child
+	 *         categories with that name, the one that was added first.
 	 */
 	public Category getChildCategory(String name) {
-		for (Category category : m_childCategories) {
-			if (category.getName().equals(name))
-				return category;
+		return m_childrenByName.get(name);
+	}
+
+	/**
+	 * @return the number of child categories with given name.
+	 */
+	public int getChildCategoryCount(String name) {
+		int count = 0;
+		for (Category child : m_children.tailMap(new ChildKey(name, Long.MIN_VALUE), true).values()) {
+			if (NATURAL_ORDER.compare(name, child.m_name) != 0) {
+				break;
+			}
+
+			if (child.m_name.equals(name)) {
+				count++;
+			}
 		}
 
-		return null;
+		return count;
 	}
 
 	/**
-	 * Appends the category at end of category child list.
+	 * Adds the category to the child categories at the position given by the
+	 * natural order of its name. Categories with equal names keep the order in
+	 * which they were added.
 	 */
 	public Category addCategoryChild(Category category) {
 		category.m_parent = this;
+		category.invalidatePaths();
 
-		Comparator<String> comp = new NaturalOrderComparator();
-
-		int position = 0;
-		for (Category childCategory : m_childCategories) {
-			if (comp.compare(category.getName(), childCategory.getName()) < 0)
-				break;
-
-			position++;
+		addChildEntry(category);
+		if (category.m_cardStore != null) {
+			category.moveCardsTo(getCardStore());
+			category.m_cardStore = null;
 		}
-
-		m_childCategories.add(position, category);
+		adjustSubtreeCardCounts(category.m_subtreeCardCounts, 1);
+		adjustSubtreeCategoryCount(category.m_subtreeCategoryCount);
 
 		fireCategoryEvent(ADDED_EVENT, category);
 
@@ -469,10 +732,17 @@ public class Category implements Events {
 	public void remove() {
 		assert m_parent != null : "Root category can't be deleted"; //$NON-NLS-1$
 
-		m_parent.m_childCategories.remove(this);
+		m_parent.removeChildEntry(this);
+		m_parent.adjustSubtreeCardCounts(m_subtreeCardCounts, -1);
+		m_parent.adjustSubtreeCategoryCount(-m_subtreeCategoryCount);
+		if (m_subtreeCardCount > 0) {
+			m_cardStore = new CardStore(m_subtreeCardCount);
+			moveCardsTo(m_cardStore);
+		}
 
 		fireCategoryEvent(REMOVED_EVENT, this);
 		m_parent = null; // have to release parent AFTER firing event
+		invalidatePaths();
 	}
 
 	/**
@@ -510,7 +780,16 @@ public class Category implements Events {
 		assert newName != null;
 
 		if (!m_name.equals(newName)) {
-			m_name = newName;
+			// keep the children of the parent in order
+			if (m_parent != null) {
+				Category parent = m_parent;
+				parent.removeChildEntry(this);
+				m_name = newName;
+				parent.addChildEntry(this);
+			} else {
+				m_name = newName;
+			}
+			invalidatePaths();
 
 			fireCategoryEvent(EDITED_EVENT, this);
 		}
@@ -530,21 +809,30 @@ public class Category implements Events {
 	 *         part.
 	 */
 	public String getPath() {
-		return m_parent != null ? m_parent.getPath() + "/" + getName() : getName(); //$NON-NLS-1$
+		if (m_path == null) {
+			String path = m_parent != null ? m_parent.getPath() + "/" + getName() : getName(); //$NON-NLS-1$
+			m_path = path.intern();
+		}
+
+		return m_path;
 	}
 
 	/**
 	 * @return Number of hops from this node to root.
 	 */
 	public int getDepth() {
-		return getDepth(0);
+		if (m_depth < 0) {
+			m_depth = m_parent == null ? 0 : m_parent.getDepth() + 1;
+		}
+
+		return m_depth;
 	}
 
 	/**
 	 * @return Number of hops from this node to root.
 	 */
 	public int getDepth(final int depth) {
-		return m_parent == null ? depth : m_parent.getDepth(depth + 1);
+		return getDepth() + depth;
 	}
 
 	/**
@@ -563,6 +851,15 @@ public class Category implements Events {
 		return list;
 	}
 
+	/**
+	 * @return a read-only live view of this category and all of its child
+	 *         categories and their childs etc. in the same order as
+	 *         {@link #getSubtreeList()}, but without copying.
+	 */
+	public Collection<Category> getSubtreeView() {
+		return new SubtreeView();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -606,6 +903,162 @@ public class Category implements Events {
 		return clonedCategory;
 	}
 
+	/**
+	 * Orders child categories by the natural order of their names and, for
+	 * equal names, by the order in which they were added.
+	 */
+	private static final class ChildKey implements Comparable<ChildKey> {
+		private final String m_name;
+		private final long m_serial;
+
+		ChildKey(String name, long serial) {
+			m_name = name;
+			m_serial = serial;
+		}
+
+		@Override
+		public int compareTo(ChildKey other) {
+			int result = NATURAL_ORDER.compare(m_name, other.m_name);
+			if (result != 0) {
+				return result;
+			}
+
+			return Long.compare(m_serial, other.m_serial);
+		}
+	}
+
+	/**
+	 * Read-only list view of the ordered child categories. Iterating walks
+	 * the children map directly, index based access uses an array snapshot
+	 * that is rebuilt after the children have changed.
+	 */
+	private class ChildList extends AbstractList<Category> {
+		@Override
+		public Category get(int index) {
+			Category[] children = m_childSnapshot;
+			if (children == null) {
+				children = m_children.values().toArray(new Category[m_children.size()]);
+				m_childSnapshot = children;
+			}
+
+			return children[index];
+		}
+
+		@Override
+		public int size() {
+			return m_children.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return m_children.isEmpty();
+		}
+
+		@Override
+		public Iterator<Category> iterator() {
+			return Collections.unmodifiableCollection(m_children.values()).iterator();
+		}
+	}
+
+	/**
+	 * Read-only view of the cards of this category that is backed by the
+	 * decks.
+	 */
+	private class CardsView extends AbstractCollection<Card> {
+		private final int m_level;
+		private final boolean m_subtree;
+
+		CardsView(int level, boolean subtree) {
+			m_level = level;
+			m_subtree = subtree;
+		}
+
+		@Override
+		public int size() {
+			if (m_subtree) {
+				return getCardCount(m_level);
+			}
+
+			int size = 0;
+			for (int i = fromLevel(); i < toLevel(); i++) {
+				size += getDeck(i).size();
+			}
+
+			return size;
+		}
+
+		@Override
+		public Iterator<Card> iterator() {
+			return Spliterators.iterator(spliterator());
+		}
+
+		@Override
+		public Spliterator<Card> spliterator() {
+			return new CardSpliterator(Category.this, fromLevel(), toLevel(), m_subtree);
+		}
+
+		private int fromLevel() {
+			return m_level == -1 ? 0 : m_level;
+		}
+
+		private int toLevel() {
+			return m_level == -1 ? getNumberOfDecks() : Math.min(m_level + 1, getNumberOfDecks());
+		}
+	}
+
+	/**
+	 * Read-only view of this category and all of its child categories in
+	 * depth first order.
+	 */
+	private class SubtreeView extends AbstractCollection<Category> {
+		@Override
+		public int size() {
+			return m_subtreeCategoryCount;
+		}
+
+		@Override
+		public Iterator<Category> iterator() {
+			return new Iterator<Category>() {
+				private final int m_expectedModCount = m_modCount;
+				private final Deque<Iterator<Category>> m_stack = new ArrayDeque<Iterator<Category>>();
+				private Category m_next = Category.this;
+
+				@Override
+				public boolean hasNext() {
+					return m_next != null;
+				}
+
+				@Override
+				public Category next() {
+					if (m_modCount != m_expectedModCount) {
+						throw new ConcurrentModificationException();
+					}
+
+					if (m_next == null) {
+						throw new NoSuchElementException();
+					}
+
+					Category category = m_next;
+					if (!category.m_childCategories.isEmpty()) {
+						m_stack.push(category.m_childCategories.iterator());
+					}
+
+					m_next = null;
+					while (m_next == null && !m_stack.isEmpty()) {
+						Iterator<Category> it = m_stack.peek();
+						if (it.hasNext()) {
+							m_next = it.next();
+						} else {
+							m_stack.pop();
+						}
+					}
+
+					return category;
+				}
+			};
+		}
+	}
+
 	void fireCardEvent(int type, Card card, Category category, int deck) {
 		if (type != EDITED_EVENT) {
 			adjustNumberOfDecks();
@@ -615,12 +1068,27 @@ public class Category implements Events {
 			m_parent.fireCardEvent(type, card, category, deck);
 		}
 
-		List<CategoryObserver> observersCopy = new ArrayList<CategoryObserver>(m_observers);
-		for (CategoryObserver observer : observersCopy) {
+		for (CategoryObserver observer : m_observers.snapshot()) {
 			observer.onCardEvent(type, card, category, deck);
 		}
 	}
 
+	void fireCardsEvent(int type, CardBatch batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		adjustNumberOfDecks();
+
+		if (m_parent != null) {
+			m_parent.fireCardsEvent(type, batch);
+		}
+
+		for (CategoryObserver observer : m_observers.snapshot()) {
+			observer.onCardsEvent(type, batch);
+		}
+	}
+
 	void fireCategoryEvent(int type, Category category) {
 		adjustNumberOfDecks();
 
@@ -628,8 +1096,7 @@ public class Category implements Events {
 			m_parent.fireCategoryEvent(type, category);
 		}
 
-		List<CategoryObserver> observersCopy = new ArrayList<CategoryObserver>(m_observers);
-		for (CategoryObserver observer : observersCopy) {
+		for (CategoryObserver observer : m_observers.snapshot()) {
 			observer.onCategoryEvent(type, category);
 		}
 	}
@@ -645,7 +1112,9 @@ public class Category implements Events {
 
 		List<Card> cards = m_decks.get(level);
 		cards.add(card);
+		adjustSubtreeCardCount(level, 1);
 
+		card.moveTo(getCardStore());
 		card.setCategory(this);
 		card.setLevel(level);
 
@@ -655,6 +1124,144 @@ public class Category implements Events {
 
 		if (level == 0)
 			card.setDateExpired(null);
+
+		addToExpirationIndex(card);
+	}
+
+	/**
+	 * @return the card store of this category tree, which is owned by its
+	 *         root category.
+	 */
+	CardStore getCardStore() {
+		Category root = this;
+		while (root.m_parent != null) {
+			root = root.m_parent;
+		}
+
+		if (root.m_cardStore == null) {
+			root.m_cardStore = new CardStore();
+		}
+
+		return root.m_cardStore;
+	}
+
+	/**
+	 * Moves the scheduling state of all cards of this subtree into given
+	 * store.
+	 */
+	private void moveCardsTo(CardStore store) {
+		for (List<Card> deck : m_decks) {
+			for (Card card : deck) {
+				card.moveTo(store);
+			}
+		}
+
+		for (Category child : m_childCategories) {
+			child.moveCardsTo(store);
+		}
+	}
+
+	/**
+	 * Forgets the cached paths and depths of this category and all of its
+	 * child categories.
+	 */
+	private void invalidatePaths() {
+		// children can only have cached paths if their parent has one
+		if (m_path == null && m_depth < 0) {
+			return;
+		}
+
+		m_path = null;
+		m_depth = -1;
+		for (Category child : m_childCategories) {
+			child.invalidatePaths();
+		}
+	}
+
+	/**
+	 * Inserts the category into the ordered children of this category and
+	 * into the name index.
+	 */
+	private void addChildEntry(Category category) {
+		category.m_childKey = new ChildKey(category.m_name, CHILD_KEY_SERIALS.getAndIncrement());
+		m_children.put(category.m_childKey, category);
+		m_childSnapshot = null;
+
+		if (!m_childrenByName.containsKey(category.m_name)) {
+			m_childrenByName.put(category.m_name, category);
+		}
+	}
+
+	/**
+	 * Removes the category from the ordered children of this category and from
+	 * the name index.
+	 */
+	private void removeChildEntry(Category category) {
+		m_children.remove(category.m_childKey);
+		m_childSnapshot = null;
+
+		String name = category.m_name;
+		if (m_childrenByName.get(name) == category) {
+			// another child with the same name takes its place
+			m_childrenByName.remove(name);
+			for (Category child : m_children.tailMap(new ChildKey(name, Long.MIN_VALUE), true).values()) {
+				if (NATURAL_ORDER.compare(name, child.m_name) != 0) {
+					break;
+				}
+
+				if (child.m_name.equals(name)) {
+					m_childrenByName.put(name, child);
+					break;
+				}
+			}
+		}
+
+		category.m_childKey = null;
+	}
+
+	/**
+	 * @return the modification count of this subtree.
+	 */
+	int getModCount() {
+		return m_modCount;
+	}
+
+	/**
+	 * @return the raw card counter of given level of this subtree.
+	 */
+	int getSubtreeCardCount(int level) {
+		return level < m_subtreeCardCounts.length ? m_subtreeCardCounts[level] : 0;
+	}
+
+	/**
+	 * @return the deck with given level or an empty list if there is none.
+	 *         The deck is returned as is and must not be modified.
+	 */
+	List<Card> getDeck(int level) {
+		return level < m_decks.size() ? m_decks.get(level) : Collections.<Card> emptyList();
+	}
+
+	/**
+	 * @return the ordered list of child categories.
+	 */
+	List<Category> getChildList() {
+		return m_childCategories;
+	}
+
+	/**
+	 * Indexes the card by its current expiration date and level. Must only be
+	 * called for cards local to this category.
+	 */
+	void addToExpirationIndex(Card card) {
+		m_expirationIndex.add(card);
+	}
+
+	/**
+	 * Removes the card from the expiration index. Needs to be called before
+	 * the expiration date or the level of a local card changes.
+	 */
+	void removeFromExpirationIndex(Card card) {
+		m_expirationIndex.remove(card);
 	}
 
 	/**
@@ -665,14 +1272,83 @@ public class Category implements Events {
 		if (cat == this) {
 			int level = card.getLevel();
 			List<Card> cards = m_decks.get(level);
-			cards.remove(card);
+			if (cards.remove(card)) {
+				adjustSubtreeCardCount(level, -1);
+			}
 
+			removeFromExpirationIndex(card);
 			card.setCategory(null);
 		} else {
 			cat.removeCardInternal(card);
 		}
 	}
 
+	/**
+	 * @return a batch of all given cards that are part of a category, with
+	 *         their current categories and levels. Every card is only added
+	 *         once.
+	 */
+	private static CardBatch createBatch(Collection<Card> cards) {
+		CardBatch batch = new CardBatch(cards.size());
+		Set<Card> added = Collections.newSetFromMap(new IdentityHashMap<Card, Boolean>());
+
+		for (Card card : cards) {
+			if (card.getCategory() != null && added.add(card)) {
+				batch.add(card, card.getCategory(), card.getLevel());
+			}
+		}
+
+		return batch;
+	}
+
+	/**
+	 * @return one batch for every category of the given batch, in the order in
+	 *         which the categories first appear in the batch.
+	 */
+	private static List<CardBatch> splitByCategory(CardBatch batch) {
+		Map<Category, CardBatch> batches = new IdentityHashMap<Category, CardBatch>();
+		List<CardBatch> ordered = new ArrayList<CardBatch>();
+
+		for (int i = 0; i < batch.size(); i++) {
+			Category category = batch.getCategory(i);
+			CardBatch categoryBatch = batches.get(category);
+			if (categoryBatch == null) {
+				categoryBatch = new CardBatch(4);
+				batches.put(category, categoryBatch);
+				ordered.add(categoryBatch);
+			}
+
+			categoryBatch.add(batch.getCard(i), category, batch.getDeck(i));
+		}
+
+		return ordered;
+	}
+
+	/**
+	 * Removes all cards of the batch from their categories without emitting
+	 * any events. Every deck is only walked once, no matter how many of its
+	 * cards are removed.
+	 */
+	private static void removeCardsInternal(CardBatch batch) {
+		for (CardBatch categoryBatch : splitByCategory(batch)) {
+			Category category = categoryBatch.getCategory(0);
+
+			Set<Card> removed = Collections.newSetFromMap(new IdentityHashMap<Card, Boolean>());
+			for (int i = 0; i < categoryBatch.size(); i++) {
+				Card card = categoryBatch.getCard(i);
+				removed.add(card);
+
+				category.removeFromExpirationIndex(card);
+				category.adjustSubtreeCardCount(card.getLevel(), -1);
+				card.setCategory(null);
+			}
+
+			for (List<Card> deck : category.m_decks) {
+				deck.removeIf(removed::contains);
+			}
+		}
+	}
+
 	/**
 	 * Changes the deck level of card and fires a DECK_EVENT.
 	 */
@@ -693,6 +1369,95 @@ public class Category implements Events {
 		category.fireCardEvent(DECK_EVENT, card, category, level);
 	}
 
+	/**
+	 * Adds delta to the card counter of given level in this category and all
+	 * of its parents.
+	 */
+	private void adjustSubtreeCardCount(int level, int delta) {
+		for (Category category = this; category != null; category = category.m_parent) {
+			if (category.m_subtreeCardCounts.length <= level) {
+				category.m_subtreeCardCounts = Arrays.copyOf(category.m_subtreeCardCounts, level + 1);
+			}
+
+			category.m_subtreeCardCounts[level] += delta;
+			category.m_subtreeCardCount += delta;
+			category.m_modCount++;
+		}
+	}
+
+	/**
+	 * Adds delta to the category counter of this category and all of its
+	 * parents.
+	 */
+	private void adjustSubtreeCategoryCount(int delta) {
+		for (Category category = this; category != null; category = category.m_parent) {
+			category.m_subtreeCategoryCount += delta;
+			category.m_modCount++;
+		}
+	}
+
+	/**
+	 * Adds (sign 1) or subtracts (sign -1) the per level card counts of a
+	 * whole child subtree to this category and all of its parents.
+	 */
+	private void adjustSubtreeCardCounts(int[] counts, int sign) {
+		for (int level = 0; level < counts.length; level++) {
+			if (counts[level] != 0) {
+				adjustSubtreeCardCount(level, sign * counts[level]);
+			}
+		}
+	}
+
+	/**
+	 * Appends all cards of given level in this category and its child
+	 * categories that expire at or before given time to the given list.
+	 */
+	private void collectExpiredCards(int level, long time, List<Card> cardList) {
+		m_expirationIndex.collectExpired(level, time, cardList);
+
+		for (Category child : m_childCategories) {
+			child.collectExpiredCards(level, time, cardList);
+		}
+	}
+
+	/**
+	 * Appends all cards of given level in this category and its child
+	 * categories that expire after given time to the given list.
+	 */
+	private void collectLearnedCards(int level, long time, List<Card> cardList) {
+		m_expirationIndex.collectLearned(level, time, cardList);
+
+		for (Category child : m_childCategories) {
+			child.collectLearnedCards(level, time, cardList);
+		}
+	}
+
+	private long nextExpirationTime(long time) {
+		long next = m_expirationIndex.nextExpiration(time);
+
+		for (Category child : m_childCategories) {
+			next = Math.min(next, child.nextExpirationTime(time));
+		}
+
+		return next;
+	}
+
+	/**
+	 * Appends all cards of given level in this category and its child
+	 * categories to the given list.
+	 */
+	private void collectCards(int level, List<Card> cardList) {
+		if (level >= m_decks.size()) {
+			return;
+		}
+
+		cardList.addAll(m_decks.get(level));
+
+		for (Category child : m_childCategories) {
+			child.collectCards(level, cardList);
+		}
+	}
+
 	private void adjustNumberOfDecks() {
 		// find child category with most decks
 		int maxChildDecks = 0;
@@ -39,6 +39,27 @@ public interface CategoryObserver extends Events
      */
     void onCardEvent(int type, Card card, Category category, int deck);
     
+    /**
+     * Gets notified when a bulk operation changed many cards at once in the
+     * observed category or in one of its child categories, see i.e.
+     * {@link Category#removeCards(java.util.Collection)}. The batch is only
+     * delivered after all cards have been changed.
+     * 
+     * The default implementation calls {@link #onCardEvent} for every card in
+     * the batch. Observers that only need to refresh once should override it.
+     * 
+     * @param type Either ADDED_EVENT, REMOVED_EVENT, MOVED_EVENT, DECK_EVENT
+     * or EDITED_EVENT.
+     * @param batch The changed cards with their categories and decks.
+     */
+    default void onCardsEvent(int type, CardBatch batch)
+    {
+        for (int i = 0; i < batch.size(); i++)
+        {
+            onCardEvent(type, batch.getCard(i), batch.getCategory(i), batch.getDeck(i));
+        }
+    }
+    
     /**
      * Gets notified when a category event happens in the observed category or
      * in one of its child categories.
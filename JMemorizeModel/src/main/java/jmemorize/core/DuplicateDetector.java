@@ -0,0 +1,401 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Finds cards that are likely duplicates of each other, even if their texts
+ * differ a little, without comparing every card with every other card.
+ *
+ * The folded texts of both sides of a card (see
+ * {@link FormattedText#getFolded()}) are cut into overlapping sequences of
+ * three characters. The similarity of two cards is the share of sequences
+ * that they have in common (their Jaccard similarity). Every card gets a
+ * MinHash signature: the smallest hash of its sequences for each of 64 hash
+ * functions. Two signatures agree on a hash function with a probability that
+ * equals the similarity of the cards.
+ *
+ * The signatures are cut into 16 bands of 4 hashes, and only cards that agree
+ * on a whole band are compared (locality-sensitive hashing). Cards with a
+ * similarity of 0.7 are compared with a probability of 99%, cards with a
+ * similarity of 0.3 with a probability of 12%. Comparisons estimate the
+ * similarity from the whole signatures. Similar cards are joined into
+ * clusters, so a cluster can contain cards that are only similar through
+ * other cards of it.
+ *
+ * Finding the cards that agree on a band takes a sort, and every card is
+ * compared with a bounded number of others, so the time grows with the
+ * number of cards times its logarithm.
+ */
+public class DuplicateDetector {
+	public static final double DEFAULT_THRESHOLD = 0.7;
+
+	private static final int SHINGLE_LENGTH = 3;
+	private static final long SHINGLE_MASK = (1L << 16 * SHINGLE_LENGTH) - 1;
+
+	private static final int BANDS = 16;
+	private static final int ROWS = 4;
+	private static final int HASHES = BANDS * ROWS;
+
+	// a card is compared with at most this many cards that agree with it on a
+	// band, which bounds the work for large groups of similar cards
+	private static final int MAX_COMPARISONS = 32;
+
+	// the same hash functions for every detector, so results are repeatable
+	private static final long[] FACTORS = new long[HASHES];
+	private static final long[] OFFSETS = new long[HASHES];
+	static {
+		final Random random = new Random(4711);
+		for (int i = 0; i < HASHES; i++) {
+			FACTORS[i] = random.nextLong() | 1;
+			OFFSETS[i] = random.nextLong();
+		}
+	}
+
+	/**
+	 * The hashes of the shingles of one card, reused for all cards.
+	 */
+	private static final class Shingles {
+		private long[] m_hashes = new long[64];
+		private int m_count;
+
+		void clear() {
+			m_count = 0;
+		}
+
+		/**
+		 * Adds the shingles of the text of a card side. Texts that are shorter
+		 * than a shingle are one shingle.
+		 */
+		void add(final String text, final int side) {
+			long shingle = 0;
+			for (int i = 0; i < text.length(); i++) {
+				shingle = (shingle << 16 | text.charAt(i)) & SHINGLE_MASK;
+
+				if (i >= SHINGLE_LENGTH - 1)
+					add(shingle, side);
+			}
+
+			if (text.length() < SHINGLE_LENGTH)
+				add(shingle | (long) text.length() << 48, side);
+		}
+
+		private void add(final long shingle, final int side) {
+			if (m_count == m_hashes.length)
+				m_hashes = Arrays.copyOf(m_hashes, m_count * 2);
+
+			// the same text on the front and on the back are different
+			// shingles
+			m_hashes[m_count++] = mix(shingle ^ (long) side << 62);
+		}
+	}
+
+	private final double m_threshold;
+
+	public DuplicateDetector() {
+		this(DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * @param threshold
+	 *            the similarity between 0 and 1 from which on cards are
+	 *            considered duplicates.
+	 */
+	public DuplicateDetector(final double threshold) {
+		m_threshold = threshold;
+	}
+
+	/**
+	 * @return the clusters of two or more cards that are likely duplicates of
+	 *         each other. The cards of a cluster and the clusters are in the
+	 *         order of the given cards.
+	 */
+	public List<List<Card>> findDuplicates(final Collection<Card> cards) {
+		final Card[] array = cards.toArray(new Card[cards.size()]);
+
+		return collectClusters(array, cluster(array), -1);
+	}
+
+	/**
+	 * Finds the duplicates of cards that are about to be imported into a
+	 * lesson, or that just have been.
+	 * 
+	 * @param existing
+	 *            the cards of the lesson. Incoming cards among them are
+	 *            ignored.
+	 * @return the clusters that contain at least one incoming and one
+	 *         existing card. The incoming cards of a cluster come first.
+	 */
+	public List<List<Card>> findDuplicates(final Collection<Card> incoming,
+			final Collection<Card> existing) {
+		final Map<Card, Boolean> incomingCards = new IdentityHashMap<Card, Boolean>();
+		final List<Card> cards = new ArrayList<Card>(incoming.size()
+				+ existing.size());
+		for (final Card card : incoming) {
+			if (incomingCards.put(card, Boolean.TRUE) == null)
+				cards.add(card);
+		}
+
+		final int incomingCount = cards.size();
+		for (final Card card : existing) {
+			if (!incomingCards.containsKey(card))
+				cards.add(card);
+		}
+
+		final Card[] array = cards.toArray(new Card[cards.size()]);
+
+		return collectClusters(array, cluster(array), incomingCount);
+	}
+
+	/**
+	 * Merges every cluster into the card of it that has the highest level,
+	 * and removes the other cards from their categories. Cards that are part
+	 * of a category are kept before cards that aren't, so merging incoming
+	 * cards into a lesson never takes a card out of it. The kept card gets
+	 * the test counts of all cards of the cluster, the earliest creation date
+	 * and the latest test date.
+	 * 
+	 * Fires a REMOVED_EVENT batch for the removed cards and an EDITED_EVENT
+	 * batch for the kept cards.
+	 * 
+	 * @return the kept cards, one for each cluster.
+	 */
+	public static List<Card> merge(final List<List<Card>> clusters) {
+		final List<Card> keptCards = new ArrayList<Card>(clusters.size());
+		final List<Card> removedCards = new ArrayList<Card>();
+
+		for (final List<Card> cluster : clusters) {
+			Card kept = cluster.get(0);
+			for (final Card card : cluster) {
+				if (isBetterToKeep(card, kept))
+					kept = card;
+			}
+
+			for (final Card card : cluster) {
+				if (card == kept)
+					continue;
+
+				kept.incStats(card.getTestsPassed(), card.getTestsTotal());
+				if (card.getDateCreated().before(kept.getDateCreated()))
+					kept.setDateCreated(card.getDateCreated());
+
+				final Date tested = card.getDateTested();
+				if (tested != null
+						&& (kept.getDateTested() == null || tested.after(kept
+								.getDateTested())))
+					kept.setDateTested(tested);
+
+				removedCards.add(card);
+			}
+
+			keptCards.add(kept);
+		}
+
+		Category.removeCards(removedCards);
+		Category.fireCardsEdited(keptCards);
+
+		return keptCards;
+	}
+
+	private static boolean isBetterToKeep(final Card card, final Card kept) {
+		if ((card.getCategory() != null) != (kept.getCategory() != null))
+			return card.getCategory() != null;
+
+		return card.getLevel() > kept.getLevel()
+				|| card.getLevel() == kept.getLevel()
+				&& card.getTestsTotal() > kept.getTestsTotal();
+	}
+
+	/**
+	 * @return the parent of every card in a forest whose trees are the
+	 *         clusters. Roots are their own parents.
+	 */
+	private int[] cluster(final Card[] cards) {
+		final int[] signatures = new int[cards.length * HASHES];
+		final Shingles shingles = new Shingles();
+		for (int i = 0; i < cards.length; i++) {
+			sign(cards[i], shingles, signatures, i * HASHES);
+		}
+
+		final int[] parents = new int[cards.length];
+		for (int i = 0; i < parents.length; i++) {
+			parents[i] = i;
+		}
+
+		// the hash of a band in the upper half and the card in the lower half,
+		// so that sorting brings the cards of a band hash together
+		final long[] keys = new long[cards.length];
+		for (int band = 0; band < BANDS; band++) {
+			for (int i = 0; i < cards.length; i++) {
+				keys[i] = (long) hashBand(signatures, i * HASHES + band * ROWS) << 32
+						| i;
+			}
+			Arrays.sort(keys);
+
+			int start = 0;
+			for (int k = 1; k < keys.length; k++) {
+				if ((int) (keys[k] >>> 32) != (int) (keys[start] >>> 32)) {
+					start = k;
+					continue;
+				}
+
+				final int card = (int) keys[k];
+				for (int j = k - 1; j >= Math.max(start, k - MAX_COMPARISONS); j--) {
+					final int other = (int) keys[j];
+					if (find(parents, card) != find(parents, other)
+							&& estimate(signatures, card, other) >= m_threshold)
+						union(parents, card, other);
+				}
+			}
+		}
+
+		return parents;
+	}
+
+	/**
+	 * Adds the shingles of both sides of the card and computes its MinHash
+	 * signature into given array.
+	 */
+	private static void sign(final Card card, final Shingles shingles,
+			final int[] signatures, final int offset) {
+		shingles.clear();
+		shingles.add(card.getFrontSide().getText().getFolded(), 0);
+		shingles.add(card.getBackSide().getText().getFolded(), 1);
+
+		// one hash function after the other, so that the minimum stays in a
+		// register instead of being stored for every shingle
+		final long[] hashes = shingles.m_hashes;
+		final int count = shingles.m_count;
+		for (int i = 0; i < HASHES; i++) {
+			final long factor = FACTORS[i];
+			final long addend = OFFSETS[i];
+
+			int min = Integer.MAX_VALUE;
+			for (int j = 0; j < count; j++) {
+				min = Math.min(min, (int) ((hashes[j] * factor + addend) >>> 32));
+			}
+			signatures[offset + i] = min;
+		}
+	}
+
+	/**
+	 * @return the share of hashes in which the signatures of the two cards
+	 *         agree.
+	 */
+	private static double estimate(final int[] signatures, final int card,
+			final int other) {
+		int equal = 0;
+		for (int i = 0; i < HASHES; i++) {
+			if (signatures[card * HASHES + i] == signatures[other * HASHES + i])
+				equal++;
+		}
+
+		return (double) equal / HASHES;
+	}
+
+	private static int hashBand(final int[] signatures, final int offset) {
+		long hash = 0;
+		for (int i = 0; i < ROWS; i++) {
+			hash = hash * 31 + signatures[offset + i];
+		}
+
+		return (int) mix(hash);
+	}
+
+	/**
+	 * @return the bits of given value mixed, so that similar values get
+	 *         unrelated hashes (the finalizer of MurmurHash3).
+	 */
+	private static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+
+		return value;
+	}
+
+	private static int find(final int[] parents, int card) {
+		while (parents[card] != card) {
+			// halve the path on the way
+			parents[card] = parents[parents[card]];
+			card = parents[card];
+		}
+
+		return card;
+	}
+
+	private static void union(final int[] parents, final int card,
+			final int other) {
+		final int root = find(parents, card);
+		final int otherRoot = find(parents, other);
+
+		// the root is the earliest card, so clusters keep the given order
+		if (root < otherRoot)
+			parents[otherRoot] = root;
+		else
+			parents[root] = otherRoot;
+	}
+
+	/**
+	 * @param incomingCount
+	 *            the number of cards at the start of the array that are
+	 *            incoming, or -1 if all clusters are wanted.
+	 */
+	private static List<List<Card>> collectClusters(final Card[] cards,
+			final int[] parents, final int incomingCount) {
+		final int[] sizes = new int[cards.length];
+		final int[] incoming = new int[cards.length];
+		for (int i = 0; i < cards.length; i++) {
+			final int root = find(parents, i);
+			sizes[root]++;
+			if (i < incomingCount)
+				incoming[root]++;
+		}
+
+		// the root of a cluster is its first card, so clusters are created
+		// before cards are added to them
+		final List<List<Card>> clusters = new ArrayList<List<Card>>();
+		final int[] clusterIndexes = new int[cards.length];
+		for (int i = 0; i < cards.length; i++) {
+			final int root = find(parents, i);
+			if (sizes[root] < 2
+					|| incomingCount >= 0
+					&& (incoming[root] == 0 || incoming[root] == sizes[root]))
+				continue;
+
+			if (root == i) {
+				clusterIndexes[root] = clusters.size();
+				clusters.add(new ArrayList<Card>(sizes[root]));
+			}
+			clusters.get(clusterIndexes[root]).add(cards[i]);
+		}
+
+		return clusters;
+	}
+}
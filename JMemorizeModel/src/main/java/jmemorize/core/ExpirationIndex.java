@@ -0,0 +1,390 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Holds the local cards of a single category ordered by their expiration
+ * date, one sorted run per deck level. Cards without expiration date (i.e.
+ * unlearned cards) are not part of the index.
+ *
+ * Cards with the same expiration date are ordered by their creation order,
+ * which is also the order in which they are usually appended to their deck.
+ *
+ * The index is maintained by {@link Category} and must be updated before the
+ * expiration date or the level of an indexed card changes.
+ *
+ * The number of expired cards of every level is kept for the time it was last
+ * asked for. Asking again for the same or a later time only looks at the
+ * cards that expired in between, so the due counts that are shown on every
+ * repaint don't walk all expired cards.
+ */
+class ExpirationIndex {
+	/**
+	 * Pending additions up to this count are inserted one by one into the
+	 * sorted run, larger amounts are sorted and merged into it.
+	 */
+	private static final int INSERTION_LIMIT = 16;
+
+	/**
+	 * The cards of one level and the number of them that expire at or before
+	 * the time of the last count.
+	 *
+	 * The expiration times and serials are held in primitive columns next to
+	 * the cards, so that queries and binary searches don't have to go through
+	 * the cards or allocate keys. The first m_sorted entries are ordered by
+	 * time and serial, the entries behind them are additions that are sorted
+	 * in lazily. Removed entries are only marked by clearing their card and
+	 * dropped when the run is rewritten.
+	 */
+	private static final class Level {
+		private long[] m_times = new long[8];
+		private long[] m_serials = new long[8];
+		private Card[] m_cards = new Card[8];
+		private int m_size;
+		private int m_sorted;
+		private int m_removed;
+
+		private long m_countedTime = Long.MIN_VALUE;
+		private int m_expiredCount;
+
+		void put(final Card card, final long time) {
+			if (m_size == m_cards.length) {
+				final int capacity = m_size * 2;
+				m_times = Arrays.copyOf(m_times, capacity);
+				m_serials = Arrays.copyOf(m_serials, capacity);
+				m_cards = Arrays.copyOf(m_cards, capacity);
+			}
+
+			m_times[m_size] = time;
+			m_serials[m_size] = card.getSerial();
+			m_cards[m_size] = card;
+			m_size++;
+
+			if (time <= m_countedTime)
+				m_expiredCount++;
+		}
+
+		void remove(final Card card, final long time) {
+			sort();
+
+			for (int i = lowerBound(time, card.getSerial()); i < m_sorted && m_times[i] == time
+				&& m_serials[i] == card.getSerial(); i++) {
+				if (m_cards[i] == card) {
+					m_cards[i] = null;
+					m_removed++;
+
+					if (time <= m_countedTime)
+						m_expiredCount--;
+
+					if (m_removed * 2 > m_size)
+						compact();
+
+					return;
+				}
+			}
+		}
+
+		int countExpired(final long time) {
+			sort();
+
+			if (time > m_countedTime) {
+				m_expiredCount += countLive(upperBound(m_countedTime), upperBound(time));
+			} else if (time < m_countedTime) {
+				m_expiredCount -= countLive(upperBound(time), upperBound(m_countedTime));
+			}
+			m_countedTime = time;
+
+			return m_expiredCount;
+		}
+
+		void collect(final int from, final int to, final List<Card> cards) {
+			for (int i = from; i < to; i++) {
+				if (m_cards[i] != null)
+					cards.add(m_cards[i]);
+			}
+		}
+
+		/**
+		 * @return the index of the first live entry at or after given index or
+		 *         the size if there is none.
+		 */
+		int nextLive(int i) {
+			while (i < m_size && m_cards[i] == null) {
+				i++;
+			}
+
+			return i;
+		}
+
+		private int countLive(final int from, final int to) {
+			int count = 0;
+			for (int i = from; i < to; i++) {
+				if (m_cards[i] != null)
+					count++;
+			}
+
+			return count;
+		}
+
+		/**
+		 * @return the index of the first sorted entry that doesn't order before
+		 *         given time and serial.
+		 */
+		private int lowerBound(final long time, final long serial) {
+			int low = 0;
+			int high = m_sorted;
+
+			while (low < high) {
+				final int mid = (low + high) >>> 1;
+				if (compare(m_times[mid], m_serials[mid], time, serial) < 0)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+
+			return low;
+		}
+
+		/**
+		 * @return the index of the first sorted entry that expires after given
+		 *         time.
+		 */
+		int upperBound(final long time) {
+			int low = 0;
+			int high = m_sorted;
+
+			while (low < high) {
+				final int mid = (low + high) >>> 1;
+				if (m_times[mid] <= time)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+
+			return low;
+		}
+
+		/**
+		 * Sorts pending additions into the sorted run.
+		 */
+		void sort() {
+			final int pending = m_size - m_sorted;
+			if (pending == 0)
+				return;
+
+			if (pending <= INSERTION_LIMIT) {
+				for (int i = m_sorted; i < m_size; i++) {
+					insert(i);
+				}
+			} else {
+				merge();
+			}
+		}
+
+		private void insert(final int i) {
+			final long time = m_times[i];
+			final long serial = m_serials[i];
+			final Card card = m_cards[i];
+
+			final int pos = lowerBound(time, serial);
+			System.arraycopy(m_times, pos, m_times, pos + 1, i - pos);
+			System.arraycopy(m_serials, pos, m_serials, pos + 1, i - pos);
+			System.arraycopy(m_cards, pos, m_cards, pos + 1, i - pos);
+
+			m_times[pos] = time;
+			m_serials[pos] = serial;
+			m_cards[pos] = card;
+			m_sorted++;
+		}
+
+		private void merge() {
+			final int[] order = new int[m_size - m_sorted];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = m_sorted + i;
+			}
+			mergeSort(order, new int[order.length], 0, order.length);
+
+			final int capacity = Math.max(8, m_size - m_removed);
+			final long[] times = new long[capacity];
+			final long[] serials = new long[capacity];
+			final Card[] cards = new Card[capacity];
+
+			int size = 0;
+			int i = 0;
+			int j = 0;
+			while (i < m_sorted || j < order.length) {
+				final int next;
+				if (j == order.length || i < m_sorted && compare(m_times[i], m_serials[i], m_times[order[j]],
+					m_serials[order[j]]) <= 0) {
+					next = i++;
+				} else {
+					next = order[j++];
+				}
+
+				if (m_cards[next] != null) {
+					times[size] = m_times[next];
+					serials[size] = m_serials[next];
+					cards[size] = m_cards[next];
+					size++;
+				}
+			}
+
+			m_times = times;
+			m_serials = serials;
+			m_cards = cards;
+			m_size = size;
+			m_sorted = size;
+			m_removed = 0;
+		}
+
+		/**
+		 * Drops the removed entries of the sorted run.
+		 */
+		private void compact() {
+			int size = 0;
+			for (int i = 0; i < m_size; i++) {
+				if (m_cards[i] != null) {
+					m_times[size] = m_times[i];
+					m_serials[size] = m_serials[i];
+					m_cards[size] = m_cards[i];
+					size++;
+				}
+			}
+
+			Arrays.fill(m_cards, size, m_size, null);
+			m_size = size;
+			m_sorted = size;
+			m_removed = 0;
+		}
+
+		private void mergeSort(final int[] order, final int[] temp, final int from, final int to) {
+			if (to - from < 2)
+				return;
+
+			final int mid = (from + to) >>> 1;
+			mergeSort(order, temp, from, mid);
+			mergeSort(order, temp, mid, to);
+
+			System.arraycopy(order, from, temp, from, to - from);
+			int i = from;
+			int j = mid;
+			for (int k = from; k < to; k++) {
+				if (j == to || i < mid && compare(m_times[temp[i]], m_serials[temp[i]], m_times[temp[j]],
+					m_serials[temp[j]]) <= 0) {
+					order[k] = temp[i++];
+				} else {
+					order[k] = temp[j++];
+				}
+			}
+		}
+	}
+
+	private final List<Level> m_levels = new ArrayList<Level>();
+
+	/**
+	 * Adds the card to the index. Does nothing if the card has no expiration
+	 * date.
+	 */
+	void add(final Card card) {
+		final long time = card.getExpirationTime();
+		if (time == Card.NEVER)
+			return;
+
+		final int level = card.getLevel();
+		while (m_levels.size() <= level) {
+			m_levels.add(new Level());
+		}
+
+		m_levels.get(level).put(card, time);
+	}
+
+	/**
+	 * Removes the card from the index, using its current level and expiration
+	 * date.
+	 */
+	void remove(final Card card) {
+		final long time = card.getExpirationTime();
+		final int level = card.getLevel();
+
+		if (time != Card.NEVER && level < m_levels.size())
+			m_levels.get(level).remove(card, time);
+	}
+
+	/**
+	 * Appends all cards of given level that expire at or before given time.
+	 * The cards are appended in order of their expiration.
+	 */
+	void collectExpired(final int level, final long time, final List<Card> cards) {
+		if (level < m_levels.size()) {
+			final Level entries = m_levels.get(level);
+			entries.sort();
+			entries.collect(0, entries.upperBound(time), cards);
+		}
+	}
+
+	/**
+	 * Appends all cards of given level that expire after given time. The
+	 * cards are appended in order of their expiration.
+	 */
+	void collectLearned(final int level, final long time, final List<Card> cards) {
+		if (level < m_levels.size()) {
+			final Level entries = m_levels.get(level);
+			entries.sort();
+			entries.collect(entries.upperBound(time), entries.m_size, cards);
+		}
+	}
+
+	/**
+	 * @return the number of cards of given level that expire at or before
+	 *         given time. Takes time in the number of cards that expired
+	 *         between given time and the time of the last count.
+	 */
+	int countExpired(final int level, final long time) {
+		return level < m_levels.size() ? m_levels.get(level).countExpired(time) : 0;
+	}
+
+	/**
+	 * @return the earliest expiration time of all indexed cards that is after
+	 *         given time or {@link Long#MAX_VALUE} if there is none.
+	 */
+	long nextExpiration(final long time) {
+		long next = Long.MAX_VALUE;
+
+		for (final Level level : m_levels) {
+			level.sort();
+
+			final int i = level.nextLive(level.upperBound(time));
+			if (i < level.m_size && level.m_times[i] < next)
+				next = level.m_times[i];
+		}
+
+		return next;
+	}
+
+	private static int compare(final long time, final long serial, final long otherTime, final long otherSerial) {
+		if (time != otherTime)
+			return time < otherTime ? -1 : 1;
+
+		return Long.compare(serial, otherSerial);
+	}
+}
@@ -18,6 +18,7 @@
  */
 package jmemorize.core;
 
+import java.text.Normalizer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -68,6 +69,8 @@ public class FormattedText implements Cloneable
     public static final FormattedText EMPTY = FormattedText.unformatted("");
     
     private static final String  TAGS = "<(/?(b|i|u|sub|sup)?)>";
+    private static final Pattern TAGS_PATTERN = Pattern.compile(TAGS);
+    private static final Pattern IMAGE_PATTERN = Pattern.compile("<img .*?/>");
     private static final Pattern TEXT_PATTERN = Pattern.compile(
         "(.*?)<(/?(b|i|u|sub|sup)?)>", Pattern.DOTALL);
     
@@ -75,6 +78,9 @@ public class FormattedText implements Cloneable
     
     private String                     m_formattedText;
     private String                     m_unformattedText;
+    
+    // computed on first use, see getFolded
+    private String                     m_foldedText;
 
     private static Map<String, Object> stylesMap = new HashMap<String, Object>();
     
@@ -87,7 +93,12 @@ public class FormattedText implements Cloneable
     {
         final FormattedText text = new FormattedText();
         text.m_formattedText = formatted;
-        text.m_unformattedText = unescape(formatted.replaceAll(TAGS, "").replaceAll("<img .*?/>", ""));
+        
+        // most texts have no tags at all
+        final String untagged = formatted.indexOf('<') < 0 ? formatted :
+            IMAGE_PATTERN.matcher(TAGS_PATTERN.matcher(formatted)
+                .replaceAll("")).replaceAll("");
+        text.m_unformattedText = unescape(untagged);
         
         return text;
     }
@@ -149,6 +160,65 @@ public class FormattedText implements Cloneable
         return m_unformattedText;
     }
     
+    /**
+     * @return the unformatted text in lower case and without accents, see
+     * {@link #fold(String)}. It is computed on first use and kept, texts are
+     * immutable.
+     */
+    public String getFolded()
+    {
+        String folded = m_foldedText;
+        if (folded == null)
+        {
+            folded = fold(m_unformattedText);
+            m_foldedText = folded;
+        }
+        
+        return folded;
+    }
+    
+    /**
+     * Converts a text to lower case in the default locale and removes all
+     * accents and other combining marks, so that texts can be compared
+     * regardless of case and accents.
+     */
+    public static String fold(final String text)
+    {
+        final String lowerCase = text.toLowerCase();
+        
+        // most texts don't have any accents
+        boolean ascii = true;
+        for (int i = 0; i < lowerCase.length() && ascii; i++)
+        {
+            ascii = lowerCase.charAt(i) < 0x80;
+        }
+        
+        if (ascii)
+            return lowerCase;
+        
+        final String decomposed = Normalizer.normalize(lowerCase, Normalizer.Form.NFD);
+        final StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++)
+        {
+            final char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK)
+                folded.append(c);
+        }
+        
+        return folded.toString();
+    }
+    
+    /**
+     * Converts a text to lower case in the default locale and to its
+     * composed form, so that texts can be compared regardless of case and of
+     * how their accents are encoded. Unlike {@link #fold(String)} the accents
+     * are kept.
+     */
+    public static String foldCase(final String text)
+    {
+        return Normalizer.normalize(text.toLowerCase(), Normalizer.Form.NFC);
+    }
+    
     // TODO rename to toStyledDocument
     public StyledDocument getDocument()
     {
@@ -308,6 +378,9 @@ public class FormattedText implements Cloneable
     
     private static String unescape(final String text)
     {
+        if (text.indexOf('&') < 0)
+            return text;
+        
         return text.replaceAll("&lt;", "<").replaceAll("&gt;", ">");
     }
 
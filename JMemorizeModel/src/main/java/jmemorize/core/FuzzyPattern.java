@@ -0,0 +1,171 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.Arrays;
+
+/**
+ * A text that is prepared for finding the part of other texts that is most
+ * similar to it. Similarity is measured as the Levenshtein distance, the
+ * number of characters that have to be inserted, deleted or replaced.
+ *
+ * For texts of up to 64 characters the positions of every character are
+ * stored as a bit mask, so that a whole column of the distance matrix is
+ * computed with a few operations on a long (Myers' bit-parallel algorithm).
+ * Longer texts compute the matrix one cell at a time. Either way the work is
+ * only done once per text and not once per compared text.
+ *
+ * A pattern keeps scratch space and must only be used by one thread at a
+ * time.
+ */
+final class FuzzyPattern {
+	private final String m_text;
+	private final int m_maxDistance;
+
+	// the positions of every character in the text, as bits
+	private final long[] m_asciiMasks = new long[0x80];
+	private final char[] m_chars;
+	private final long[] m_masks;
+
+	// one column of the distance matrix, for texts that don't fit in a long
+	private final int[] m_column;
+
+	/**
+	 * @param maxDistance
+	 *            the largest distance that counts as a match.
+	 */
+	FuzzyPattern(final String text, final int maxDistance) {
+		m_text = text;
+		m_maxDistance = maxDistance;
+
+		if (text.length() > Long.SIZE) {
+			m_chars = new char[0];
+			m_masks = new long[0];
+			m_column = new int[text.length() + 1];
+			return;
+		}
+
+		// the characters outside of ASCII are looked up by binary search
+		final char[] chars = text.toCharArray();
+		Arrays.sort(chars);
+		int count = 0;
+		for (int i = 0; i < chars.length; i++) {
+			if (chars[i] >= m_asciiMasks.length
+					&& (count == 0 || chars[count - 1] != chars[i]))
+				chars[count++] = chars[i];
+		}
+		m_chars = Arrays.copyOf(chars, count);
+		m_masks = new long[count];
+
+		for (int i = 0; i < text.length(); i++) {
+			final char c = text.charAt(i);
+			if (c < m_asciiMasks.length)
+				m_asciiMasks[c] |= 1L << i;
+			else
+				m_masks[Arrays.binarySearch(m_chars, c)] |= 1L << i;
+		}
+
+		m_column = null;
+	}
+
+	/**
+	 * @return the smallest distance between the pattern and any part of given
+	 *         text, or -1 if it is larger than the largest distance that
+	 *         counts as a match.
+	 */
+	int distance(final String text) {
+		final int distance = m_column == null ? bitParallelDistance(text)
+				: matrixDistance(text);
+
+		return distance <= m_maxDistance ? distance : -1;
+	}
+
+	private int bitParallelDistance(final String text) {
+		final int length = m_text.length();
+		if (length == 0)
+			return 0;
+
+		// bit i of the vertical deltas is set if the distance of the pattern
+		// up to character i is one more (pv) or one less (mv) than up to the
+		// character before it
+		final long last = 1L << (length - 1);
+		long pv = -1L;
+		long mv = 0;
+		int distance = length;
+		int best = length;
+
+		for (int i = 0; i < text.length() && best > 0; i++) {
+			final long eq = getMask(text.charAt(i));
+			final long xv = eq | mv;
+			final long xh = (((eq & pv) + pv) ^ pv) | eq;
+			long ph = mv | ~(xh | pv);
+			long mh = pv & xh;
+
+			if ((ph & last) != 0)
+				distance++;
+			else if ((mh & last) != 0)
+				distance--;
+
+			// a match can start anywhere, so the first row is all zeros
+			ph <<= 1;
+			mh <<= 1;
+			pv = mh | ~(xv | ph);
+			mv = ph & xv;
+
+			best = Math.min(best, distance);
+		}
+
+		return best;
+	}
+
+	private int matrixDistance(final String text) {
+		final int length = m_text.length();
+		final int[] column = m_column;
+		for (int i = 0; i <= length; i++) {
+			column[i] = i;
+		}
+
+		int best = length;
+		for (int j = 0; j < text.length() && best > 0; j++) {
+			final char c = text.charAt(j);
+
+			// column[0] stays zero because a match can start anywhere
+			int diagonal = 0;
+			for (int i = 1; i <= length; i++) {
+				final int left = column[i];
+				final int cost = m_text.charAt(i - 1) == c ? 0 : 1;
+				column[i] = Math.min(diagonal + cost,
+						Math.min(left, column[i - 1]) + 1);
+				diagonal = left;
+			}
+
+			best = Math.min(best, column[length]);
+		}
+
+		return best;
+	}
+
+	private long getMask(final char c) {
+		if (c < m_asciiMasks.length)
+			return m_asciiMasks[c];
+
+		final int index = Arrays.binarySearch(m_chars, c);
+		return index >= 0 ? m_masks[index] : 0;
+	}
+}
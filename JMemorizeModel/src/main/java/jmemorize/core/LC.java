@@ -189,6 +189,10 @@ public interface LC
 
     public static final String MATCH_CASE                             = "FindTool.MATCH_CASE";
     public static final String BOTH_SIDES                             = "FindTool.BOTH_SIDES";
+    public static final String SEARCH_MODE                            = "FindTool.MODE";
+    public static final String SEARCH_MODE_TEXT                       = "FindTool.MODE_TEXT";
+    public static final String SEARCH_MODE_REGEX                      = "FindTool.MODE_REGEX";
+    public static final String SEARCH_MODE_FUZZY                      = "FindTool.MODE_FUZZY";
 
     // -- MainFrame --------
 
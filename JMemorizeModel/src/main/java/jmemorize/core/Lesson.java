@@ -20,6 +20,7 @@ package jmemorize.core;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import jmemorize.core.learn.LearnHistory;
@@ -34,6 +35,9 @@ public class Lesson implements CategoryObserver {
 	private Category m_rootCategory;
 	private final LearnHistory m_learnHistory = new LearnHistory();
 
+	// built on first use
+	private SearchIndex m_searchIndex;
+
 	private String title;
 
 	public Lesson(final boolean canSave) {
@@ -53,6 +57,35 @@ public class Lesson implements CategoryObserver {
 		return m_learnHistory;
 	}
 
+	/**
+	 * @return the search index of all cards of this lesson. It is built on
+	 *         the first call and kept up to date from then on. An index that
+	 *         has been prepared might not be finished yet, see
+	 *         {@link SearchIndex#isFinished()}.
+	 */
+	public SearchIndex getSearchIndex() {
+		if (m_searchIndex == null) {
+			m_searchIndex = new SearchIndex(m_rootCategory);
+		}
+
+		return m_searchIndex;
+	}
+
+	/**
+	 * Creates the search index of this lesson without building it, so that
+	 * it can be built on another thread, see
+	 * {@link SearchIndex#prepare(Category)}.
+	 * 
+	 * @return the new index, or <code>null</code> if there already is one.
+	 */
+	public SearchIndex prepareSearchIndex() {
+		if (m_searchIndex != null)
+			return null;
+
+		m_searchIndex = SearchIndex.prepare(m_rootCategory);
+		return m_searchIndex;
+	}
+
 	/**
 	 * @return <code>true</code> if saving is needed for this lesson.
 	 */
@@ -85,6 +118,16 @@ public class Lesson implements CategoryObserver {
 		}
 	}
 
+	/*
+	 * @see jmemorize.core.CategoryObserver
+	 */
+	@Override
+	public void onCardsEvent(final int type, final CardBatch batch) {
+		if (type != EXPIRED_EVENT) {
+			setCanSave(true);
+		}
+	}
+
 	/**
 	 * Returns a clone of this lesson. The clone contains all cards and
 	 * categories of the original lesson, but has all cards reset to have no
@@ -103,8 +146,18 @@ public class Lesson implements CategoryObserver {
 	public boolean equals(final Object obj) {
 		if (obj instanceof Lesson) {
 			final Lesson other = (Lesson) obj;
-			return other.getRootCategory().getCards()
-					.equals(getRootCategory().getCards());
+			final List<Card> cards = getRootCategory().getCards();
+			final List<Card> otherCards = other.getRootCategory().getCards();
+
+			if (cards.size() != otherCards.size())
+				return false;
+
+			for (int i = 0; i < cards.size(); i++) {
+				if (!cards.get(i).contentEquals(otherCards.get(i)))
+					return false;
+			}
+
+			return true;
 		}
 
 		return false;
@@ -117,7 +170,13 @@ public class Lesson implements CategoryObserver {
 	 */
 	@Override
 	public int hashCode() {
-		return getRootCategory().hashCode();
+		// consistent with equals, which compares the contents of the cards
+		int hash = 1;
+		for (final Card card : getRootCategory().getCardsView()) {
+			hash = 31 * hash + card.contentHashCode();
+		}
+
+		return hash;
 	}
 
 	/*
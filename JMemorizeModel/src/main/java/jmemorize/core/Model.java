@@ -202,6 +202,14 @@ public class Model {
 		fireLessonModified(m_lesson);
 	}
 
+	/*
+	 * (non-Javadoc) Declared in jmemorize.core.CategoryObserver
+	 */
+	public void onCardsEvent(final int type, final CardBatch batch) {
+		// once for the whole batch, not for every card
+		fireLessonModified(m_lesson);
+	}
+
 	/*
 	 * (non-Javadoc) Declared in jmemorize.core.CategoryObserver
 	 */
@@ -0,0 +1,618 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * An inverted index of the unformatted texts of all cards of a category tree,
+ * which finds the same cards as {@link SearchTool#search} without looking at
+ * every card.
+ *
+ * Every sequence of three characters of the folded text of a card side (see
+ * {@link FormattedText#fold(String)}) is mapped to the cards that contain it.
+ * The characters are folded one by one, so the same index serves searches
+ * with and without matching case. A search only checks the cards that contain
+ * all sequences of the search text. Search texts that are shorter than that
+ * are searched in all cards. Fuzzy searches check the cards that contain
+ * enough of the sequences, and regular expressions are checked against all
+ * cards.
+ *
+ * The index observes the root category and is kept up to date when cards are
+ * added, removed or edited. Like categories it isn't thread-safe, except that
+ * an index created by {@link #prepare(Category)} can be built on another
+ * thread.
+ */
+public class SearchIndex implements CategoryObserver {
+	// length of the indexed character sequences
+	private static final int GRAM_LENGTH = 3;
+	private static final long GRAM_MASK = (1L << 16 * GRAM_LENGTH) - 1;
+
+	// removed cards are only dropped from the posting lists when the index
+	// is rebuilt, which happens when they are the majority
+	private static final int MIN_REBUILD_REMOVALS = 1024;
+
+	/**
+	 * The ordinals of the cards that contain a gram, in ascending order. Stored
+	 * as differences to the previous ordinal, seven bits per byte.
+	 */
+	private static final class Postings {
+		private byte[] m_bytes = new byte[4];
+		private int m_length;
+		private int m_size;
+		private int m_last = -1;
+
+		void add(final int ordinal) {
+			if (ordinal == m_last)
+				return;
+
+			if (m_length + 5 > m_bytes.length)
+				m_bytes = Arrays.copyOf(m_bytes, m_bytes.length * 2);
+
+			int delta = ordinal - m_last;
+			while (delta >= 0x80) {
+				m_bytes[m_length++] = (byte) (delta | 0x80);
+				delta >>>= 7;
+			}
+			m_bytes[m_length++] = (byte) delta;
+
+			m_last = ordinal;
+			m_size++;
+		}
+
+		int[] toArray() {
+			final int[] ordinals = new int[m_size];
+
+			int ordinal = -1;
+			int pos = 0;
+			for (int i = 0; i < m_size; i++) {
+				int delta = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = m_bytes[pos++];
+					delta |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+
+				ordinal += delta;
+				ordinals[i] = ordinal;
+			}
+
+			return ordinals;
+		}
+
+		/**
+		 * Adds one to the counts of all ordinals in this list.
+		 */
+		void count(final int[] counts) {
+			int ordinal = -1;
+			int pos = 0;
+			for (int i = 0; i < m_size; i++) {
+				int delta = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = m_bytes[pos++];
+					delta |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+
+				ordinal += delta;
+				counts[ordinal]++;
+			}
+		}
+
+		/**
+		 * Keeps the first ordinals of given array that are in this list.
+		 * 
+		 * @return the number of ordinals kept.
+		 */
+		int retain(final int[] ordinals, final int count) {
+			int kept = 0;
+			int next = 0;
+
+			int ordinal = -1;
+			int pos = 0;
+			for (int i = 0; i < m_size && next < count; i++) {
+				int delta = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = m_bytes[pos++];
+					delta |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+
+				ordinal += delta;
+				while (next < count && ordinals[next] < ordinal) {
+					next++;
+				}
+				if (next < count && ordinals[next] == ordinal) {
+					ordinals[kept++] = ordinal;
+					next++;
+				}
+			}
+
+			return kept;
+		}
+	}
+
+	private final Category m_root;
+
+	// ordinals grow with the order in which cards were indexed
+	private final Map<Card, Integer> m_ordinals = new IdentityHashMap<Card, Integer>();
+
+	// the indexed cards by ordinal, null for removed cards
+	private Card[] m_cards = new Card[64];
+	private int m_cardCount;
+	private int m_removedCount;
+
+	private final Map<Long, Postings> m_frontGrams = new HashMap<Long, Postings>();
+	private final Map<Long, Postings> m_backGrams = new HashMap<Long, Postings>();
+
+	// cards with texts that are folded differently as a whole than one
+	// character after the other, e.g. because of a final sigma. Their grams
+	// may differ from the ones of the search text, so they are always checked
+	private final BitSet m_irregular = new BitSet();
+
+	// the folded form of every character, see fold. The folded form of an
+	// ASCII character depends on the locale, e.g. for the Turkish I
+	private final char[] m_foldedAscii = new char[0x80];
+	private final Map<Integer, String> m_foldedCodePoints = new HashMap<Integer, String>();
+
+	// the cards that build has to index, null once it has
+	private List<Card> m_unbuilt;
+
+	// the changes to the category tree until the index is built, null once
+	// they have been applied
+	private List<Runnable> m_pending = new ArrayList<Runnable>();
+
+	/**
+	 * Indexes all cards of given category tree and keeps the index up to date
+	 * from then on.
+	 */
+	public SearchIndex(final Category root) {
+		this(root, new ArrayList<Card>(root.getCardsView()));
+
+		build();
+		finish();
+	}
+
+	private SearchIndex(final Category root, final List<Card> cards) {
+		m_root = root;
+		m_unbuilt = cards;
+
+		for (char c = 0; c < m_foldedAscii.length; c++) {
+			m_foldedAscii[c] = FormattedText.fold(String.valueOf(c)).charAt(0);
+		}
+
+		root.addObserver(this);
+	}
+
+	/**
+	 * Creates an index of given category tree that is still empty, so that
+	 * the cards can be indexed on another thread. {@link #build()} indexes
+	 * the cards the tree has now and can be called on any thread. The
+	 * changes to the tree until then are recorded and applied by
+	 * {@link #finish()}, which has to be called on the thread that changes
+	 * the tree once build is done. Until then, all cards are candidates of
+	 * every search.
+	 */
+	public static SearchIndex prepare(final Category root) {
+		return new SearchIndex(root, new ArrayList<Card>(root.getCardsView()));
+	}
+
+	/**
+	 * Indexes the cards of a prepared index.
+	 * 
+	 * @see #prepare(Category)
+	 */
+	public void build() {
+		for (final Card card : m_unbuilt) {
+			add(card);
+		}
+
+		m_unbuilt = null;
+	}
+
+	/**
+	 * Applies the changes to the category tree since the index was prepared,
+	 * after which the index can be searched.
+	 * 
+	 * @see #prepare(Category)
+	 */
+	public void finish() {
+		final List<Runnable> pending = m_pending;
+		m_pending = null;
+
+		for (final Runnable change : pending) {
+			change.run();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the index has been built and finished and
+	 *         can be searched.
+	 */
+	public boolean isFinished() {
+		return m_pending == null;
+	}
+
+	/**
+	 * Finds the cards of a category and its child categories that contain
+	 * given text, like {@link SearchTool#search} does. The cards are returned
+	 * in the order in which they were indexed.
+	 * 
+	 * @param side
+	 *            {@link SearchTool#FRONT_SIDE}, {@link SearchTool#FLIP_SIDE}
+	 *            or {@link SearchTool#BOTH_SIDES}.
+	 * @param category
+	 *            the category to search in. Has to be part of the indexed
+	 *            category tree.
+	 */
+	public List<Card> search(final String text, final int side,
+			final boolean matchCase, final Category category) {
+		return search(text, SearchTool.TEXT_MODE, side, matchCase, category);
+	}
+
+	/**
+	 * Finds the cards of a category and its child categories that match
+	 * given text in given mode, like {@link SearchTool#search} does. In fuzzy
+	 * mode the cards with the fewest differences come first, otherwise they
+	 * are in the order in which they were indexed.
+	 * 
+	 * @throws PatternSyntaxException
+	 *             if the text isn't a valid regular expression in regex mode.
+	 */
+	public List<Card> search(final String text, final int mode,
+			final int side, final boolean matchCase, final Category category) {
+		final CardMatcher matcher = SearchTool.matcher(text, mode, side,
+				matchCase);
+
+		return SearchTool.search(matcher, getCandidates(text, mode, side,
+				matchCase, category));
+	}
+
+	/**
+	 * Finds the cards that {@link #search} has to check, without checking
+	 * them. Checking is left to the caller, which can do it on another thread
+	 * because the returned list isn't changed by the index.
+	 * 
+	 * @return a new list with all cards of the category and its child
+	 *         categories that could contain given text, in the order in which
+	 *         they were indexed.
+	 */
+	public List<Card> getCandidates(final String text, final int side,
+			final boolean matchCase, final Category category) {
+		return getCandidates(text, SearchTool.TEXT_MODE, side, matchCase,
+				category);
+	}
+
+	/**
+	 * Finds the cards that {@link #search} has to check in given mode.
+	 * Regular expressions can match any card. Cards that are found by a
+	 * fuzzy search share most sequences of three characters with the search
+	 * text, all but three for every character of it that has been changed.
+	 * This only holds when case is ignored.
+	 * 
+	 * @see #getCandidates(String, int, boolean, Category)
+	 */
+	public List<Card> getCandidates(final String text, final int mode,
+			final int side, final boolean matchCase, final Category category) {
+		if (!isFinished())
+			return new ArrayList<Card>(category.getCardsView());
+
+		final BitSet candidates = (BitSet) m_irregular.clone();
+
+		if (mode == SearchTool.TEXT_MODE
+				|| mode == SearchTool.FUZZY_MODE
+				&& SearchTool.getMaxDistance(text) == 0) {
+			// texts that match case contain the text folded character by
+			// character, except for halves of surrogate pairs at its ends
+			final String grams = matchCase ? fold(trimSurrogates(text))
+					: FormattedText.fold(text);
+			if (grams.length() < GRAM_LENGTH)
+				return new ArrayList<Card>(category.getCardsView());
+
+			if (side == SearchTool.FRONT_SIDE || side == SearchTool.BOTH_SIDES)
+				addCandidates(grams, m_frontGrams, candidates);
+			if (side == SearchTool.FLIP_SIDE || side == SearchTool.BOTH_SIDES)
+				addCandidates(grams, m_backGrams, candidates);
+		} else if (mode == SearchTool.FUZZY_MODE && !matchCase) {
+			// folding changes the length of some characters, so the distance
+			// only carries over to the grams when case is ignored
+			final String grams = FormattedText.fold(text);
+			final int minShared = grams.length() - GRAM_LENGTH + 1
+					- GRAM_LENGTH * SearchTool.getMaxDistance(text);
+			if (minShared <= 0)
+				return new ArrayList<Card>(category.getCardsView());
+
+			if (side == SearchTool.FRONT_SIDE || side == SearchTool.BOTH_SIDES)
+				addFuzzyCandidates(grams, minShared, m_frontGrams, candidates);
+			if (side == SearchTool.FLIP_SIDE || side == SearchTool.BOTH_SIDES)
+				addFuzzyCandidates(grams, minShared, m_backGrams, candidates);
+		} else {
+			return new ArrayList<Card>(category.getCardsView());
+		}
+
+		final List<Card> cards = new ArrayList<Card>(
+				candidates.cardinality());
+		for (int i = candidates.nextSetBit(0); i >= 0; i = candidates
+				.nextSetBit(i + 1)) {
+			final Card card = m_cards[i];
+			if (card != null && isInSubtree(card, category))
+				cards.add(card);
+		}
+
+		return cards;
+	}
+
+	/*
+	 * @see jmemorize.core.CategoryObserver
+	 */
+	@Override
+	public void onCardEvent(final int type, final Card card,
+			final Category category, final int deck) {
+		if (!isFinished()) {
+			m_pending.add(() -> onCardEvent(type, card, category, deck));
+			return;
+		}
+
+		switch (type) {
+		case ADDED_EVENT:
+		case EDITED_EVENT:
+			add(card);
+			break;
+		case REMOVED_EVENT:
+			remove(card);
+			break;
+		}
+	}
+
+	/*
+	 * @see jmemorize.core.CategoryObserver
+	 */
+	@Override
+	public void onCategoryEvent(final int type, final Category category) {
+		if (type != ADDED_EVENT && type != REMOVED_EVENT)
+			return;
+
+		if (!isFinished()) {
+			// the cards of the category when the event was fired
+			final List<Card> cards = new ArrayList<Card>(
+					category.getCardsView());
+			m_pending.add(() -> onCategoryEvent(type, cards));
+		} else {
+			onCategoryEvent(type, category.getCardsView());
+		}
+	}
+
+	private void onCategoryEvent(final int type, final Collection<Card> cards) {
+		for (final Card card : cards) {
+			if (type == ADDED_EVENT)
+				add(card);
+			else
+				remove(card);
+		}
+	}
+
+	/**
+	 * Indexes the card, or indexes it again if it has been edited.
+	 */
+	private void add(final Card card) {
+		remove(card);
+
+		if (m_cardCount == m_cards.length)
+			m_cards = Arrays.copyOf(m_cards, m_cards.length * 2);
+
+		final int ordinal = m_cardCount++;
+		m_cards[ordinal] = card;
+		m_ordinals.put(card, ordinal);
+
+		addGrams(card.getFrontSide(), ordinal, m_frontGrams);
+		addGrams(card.getBackSide(), ordinal, m_backGrams);
+	}
+
+	private void remove(final Card card) {
+		final Integer ordinal = m_ordinals.remove(card);
+		if (ordinal == null)
+			return;
+
+		m_cards[ordinal] = null;
+		m_irregular.clear(ordinal);
+		m_removedCount++;
+
+		if (m_removedCount >= MIN_REBUILD_REMOVALS
+				&& m_removedCount * 2 > m_cardCount)
+			rebuild();
+	}
+
+	/**
+	 * Indexes all cards again, without the removed ones.
+	 */
+	private void rebuild() {
+		final Card[] cards = Arrays.copyOf(m_cards, m_cardCount);
+
+		m_ordinals.clear();
+		m_cards = new Card[Math.max(64, cards.length - m_removedCount)];
+		m_cardCount = 0;
+		m_removedCount = 0;
+		m_frontGrams.clear();
+		m_backGrams.clear();
+		m_irregular.clear();
+
+		for (final Card card : cards) {
+			if (card != null)
+				add(card);
+		}
+	}
+
+	private void addGrams(final CardSide side, final int ordinal,
+			final Map<Long, Postings> grams) {
+		final FormattedText sideText = side.getText();
+		final String text = fold(sideText.getUnformatted());
+		if (!text.equals(sideText.getFolded()))
+			m_irregular.set(ordinal);
+
+		long gram = 0;
+		for (int i = 0; i < text.length(); i++) {
+			gram = nextGram(gram, text.charAt(i));
+
+			if (i >= GRAM_LENGTH - 1) {
+				Postings postings = grams.get(gram);
+				if (postings == null) {
+					postings = new Postings();
+					grams.put(gram, postings);
+				}
+
+				postings.add(ordinal);
+			}
+		}
+	}
+
+	/**
+	 * Sets the ordinals of the cards that contain all grams of given text.
+	 */
+	private static void addCandidates(final String text,
+			final Map<Long, Postings> grams, final BitSet candidates) {
+		final Postings[] postings = new Postings[text.length() - GRAM_LENGTH
+				+ 1];
+
+		long gram = 0;
+		for (int i = 0; i < text.length(); i++) {
+			gram = nextGram(gram, text.charAt(i));
+
+			if (i >= GRAM_LENGTH - 1) {
+				final Postings gramPostings = grams.get(gram);
+				if (gramPostings == null)
+					return;
+
+				postings[i - GRAM_LENGTH + 1] = gramPostings;
+			}
+		}
+
+		// start with the rarest gram
+		Arrays.sort(postings, (a, b) -> Integer.compare(a.m_size, b.m_size));
+
+		final int[] ordinals = postings[0].toArray();
+		int count = ordinals.length;
+		for (int i = 1; i < postings.length && count > 0; i++) {
+			if (postings[i] != postings[i - 1])
+				count = postings[i].retain(ordinals, count);
+		}
+
+		for (int i = 0; i < count; i++) {
+			candidates.set(ordinals[i]);
+		}
+	}
+
+	/**
+	 * Sets the ordinals of the cards that contain at least given number of
+	 * the grams of given text. Grams that occur more than once in the text
+	 * are counted as often.
+	 */
+	private void addFuzzyCandidates(final String text, final int minShared,
+			final Map<Long, Postings> grams, final BitSet candidates) {
+		final int[] counts = new int[m_cardCount];
+
+		long gram = 0;
+		for (int i = 0; i < text.length(); i++) {
+			gram = nextGram(gram, text.charAt(i));
+
+			if (i >= GRAM_LENGTH - 1) {
+				final Postings gramPostings = grams.get(gram);
+				if (gramPostings != null)
+					gramPostings.count(counts);
+			}
+		}
+
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] >= minShared)
+				candidates.set(i);
+		}
+	}
+
+	/**
+	 * @return the gram that ends with given character and starts with the
+	 *         last characters of given gram.
+	 */
+	private static long nextGram(final long gram, final char c) {
+		return (gram << 16 | c) & GRAM_MASK;
+	}
+
+	/**
+	 * Folds given text one character after the other. If a text contains
+	 * another one, its folded form contains the folded form of the other one.
+	 */
+	private String fold(final String text) {
+		final StringBuilder folded = new StringBuilder(text.length());
+		for (int i = 0; i < text.length();) {
+			final int codePoint = text.codePointAt(i);
+			if (codePoint < m_foldedAscii.length) {
+				folded.append(m_foldedAscii[codePoint]);
+			} else {
+				String foldedCodePoint = m_foldedCodePoints.get(codePoint);
+				if (foldedCodePoint == null) {
+					foldedCodePoint = FormattedText.fold(new String(
+							Character.toChars(codePoint)));
+					m_foldedCodePoints.put(codePoint, foldedCodePoint);
+				}
+
+				folded.append(foldedCodePoint);
+			}
+
+			i += Character.charCount(codePoint);
+		}
+
+		return folded.toString();
+	}
+
+	private static String trimSurrogates(final String text) {
+		int start = 0;
+		int end = text.length();
+		if (end > 0 && Character.isLowSurrogate(text.charAt(0)))
+			start++;
+		if (end > start && Character.isHighSurrogate(text.charAt(end - 1)))
+			end--;
+
+		return text.substring(start, end);
+	}
+
+	private boolean isInSubtree(final Card card, final Category category) {
+		if (category == m_root)
+			return true;
+
+		for (Category parent = card.getCategory(); parent != null; parent = parent
+				.getParent()) {
+			if (parent == category)
+				return true;
+		}
+
+		return false;
+	}
+}
@@ -18,10 +18,14 @@
  */
 package jmemorize.core;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.PatternSyntaxException;
 
 /**
+ * Finds cards by their texts. The search text is either searched as it is,
+ * as a regular expression or with some spelling mistakes allowed.
+ * 
  * @author djemili
  */
 public class SearchTool
@@ -30,39 +34,137 @@ public class SearchTool
     public final static int FLIP_SIDE  = 1;
     public final static int BOTH_SIDES = 2;
     
-    public static List<Card> search(String text, final int side, final boolean matchCase, final List<Card> cards)
+    public final static int TEXT_MODE  = 0;
+    public final static int REGEX_MODE = 1;
+    public final static int FUZZY_MODE = 2;
+    
+    /**
+     * @return the cards with given text on given side. Unless case has to
+     * match, case and accents are ignored.
+     */
+    public static List<Card> search(final String text, final int side, final boolean matchCase, final Iterable<Card> cards)
     {
-        final List<Card> foundCards = new LinkedList<Card>();
-        for (final Card card : cards)
+        return search(text, TEXT_MODE, side, matchCase, cards);
+    }
+    
+    /**
+     * @param mode {@link #TEXT_MODE}, {@link #REGEX_MODE} or
+     * {@link #FUZZY_MODE}.
+     * @return the cards that match given text on given side. In fuzzy mode
+     * the cards with the fewest differences come first, otherwise they are in
+     * the given order.
+     * @throws PatternSyntaxException if the text isn't a valid regular
+     * expression in regex mode.
+     */
+    public static List<Card> search(final String text, final int mode, final int side, final boolean matchCase,
+        final Iterable<Card> cards)
+    {
+        return search(matcher(text, mode, side, matchCase), cards);
+    }
+    
+    /**
+     * @return a test that is true for the cards that {@link #search} finds
+     * with the same arguments.
+     */
+    public static CardMatcher matcher(final String text, final int side, final boolean matchCase)
+    {
+        return matcher(text, TEXT_MODE, side, matchCase);
+    }
+    
+    /**
+     * Prepares a search text for checking many cards. Regular expressions are
+     * compiled and fuzzy texts are turned into bit masks here, not for every
+     * card.
+     * 
+     * @throws PatternSyntaxException if the text isn't a valid regular
+     * expression in regex mode.
+     */
+    public static CardMatcher matcher(final String text, final int mode, final int side, final boolean matchCase)
+    {
+        switch (mode)
         {
-            String frontSide = card.getFrontSide().getText().getUnformatted();
-            String flipSide  = card.getBackSide().getText().getUnformatted();
-            
-            if (!matchCase)
-            {
-                text      = text.toLowerCase();
-                frontSide = frontSide.toLowerCase();
-                flipSide  = flipSide.toLowerCase();
-            }
-            
-            if (side == FRONT_SIDE || side == BOTH_SIDES)
+        case REGEX_MODE:
+            return new CardMatcher.Regex(text, side, matchCase);
+        case FUZZY_MODE:
+            // short texts have to match exactly, which is a lot faster to check
+            final int maxDistance = getMaxDistance(text);
+            if (maxDistance > 0)
             {
-                if (frontSide.indexOf(text) > -1)
-                {
-                    foundCards.add(card);
-                    continue;
-                }
+                return new CardMatcher.Fuzzy(text, maxDistance, side, matchCase);
             }
             
-            if (side == FLIP_SIDE || side == BOTH_SIDES)
+            return new CardMatcher.Text(text, side, matchCase);
+        default:
+            return new CardMatcher.Text(text, side, matchCase);
+        }
+    }
+    
+    /**
+     * @return the number of spelling mistakes that a fuzzy search for given
+     * text allows. Short texts have to match exactly, medium ones can have
+     * one mistake and long ones two.
+     */
+    public static int getMaxDistance(final String text)
+    {
+        if (text.length() <= 2)
+        {
+            return 0;
+        }
+        
+        return text.length() <= 5 ? 1 : 2;
+    }
+    
+    /**
+     * @return <code>true</code> if every text that contains given text also
+     * contains the previous text. The cards found for the text are then a
+     * subset of the ones found for the previous text, and only those have to
+     * be searched again.
+     */
+    public static boolean refines(final String text, final String previousText, final boolean matchCase)
+    {
+        if (matchCase)
+        {
+            return text.contains(previousText);
+        }
+        
+        // folding can change characters next to each other, so compare the
+        // folded forms instead of the texts
+        return FormattedText.fold(text).contains(FormattedText.fold(previousText));
+    }
+    
+    /**
+     * @return the cards that match, with the smallest distance first.
+     */
+    static List<Card> search(final CardMatcher matcher, final Iterable<Card> cards)
+    {
+        // the distances are small, so cards are sorted by putting them into
+        // one list per distance
+        final List<List<Card>> foundCards = new ArrayList<List<Card>>();
+        for (final Card card : cards)
+        {
+            final int distance = matcher.distance(card);
+            if (distance >= 0)
             {
-                if (flipSide.indexOf(text) > -1)
+                while (foundCards.size() <= distance)
                 {
-                    foundCards.add(card);
+                    foundCards.add(new ArrayList<Card>());
                 }
+                
+                foundCards.get(distance).add(card);
             }
         }
         
-        return foundCards;
+        if (foundCards.size() == 1)
+        {
+            return foundCards.get(0);
+        }
+        
+        final List<Card> rankedCards = new ArrayList<Card>();
+        for (final List<Card> distanceCards : foundCards)
+        {
+            rankedCards.addAll(distanceCards);
+        }
+        
+        return rankedCards;
     }
 }
@@ -19,6 +19,7 @@
 package jmemorize.core.learn;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -795,7 +796,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession {
 		if (!learnUnlearnedCards && !learnExpiredCards)
 			cards.addAll(selectedCards);
 
-		final List<Integer> levels = new LinkedList<Integer>();
+		final BitSet levelSet = new BitSet();
 		final int cardsSize = cards.size();
         final List<CardInfo> cardInfos = new ArrayList<CardInfo>(cardsSize);
 		m_cardsInfoMap.clear();
@@ -806,9 +807,12 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession {
 
 			m_cardsInfoMap.put(card, cardInfo);
 
-			final int level = card.getLevel();
-            if (!levels.contains(level))
-				levels.add(level);
+			levelSet.set(cardInfo.getLevel());
+		}
+
+		final int[] levels = new int[levelSet.cardinality()];
+		for (int i = 0, level = levelSet.nextSetBit(0); level >= 0; level = levelSet.nextSetBit(level + 1)) {
+			levels[i++] = level;
 		}
 
 		// shuffle random cards
@@ -817,7 +821,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession {
 
 		final List<CardInfo> shuffledCardInfos = new ArrayList<CardInfo>(
 				shuffledCardsCount);
-		final int size = levels.size();
+		final int size = levels.length;
         if (size > 1) {
 			for (int i = 0; i < shuffledCardsCount; i++) {
 				final int randIndex = m_rand.nextInt(cardInfos.size());
@@ -831,7 +835,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession {
 				if (randLevel >= cardInfo.getLevel())
 					randLevel++;
 
-				cardInfo.setLevel(levels.get(randLevel));
+				cardInfo.setLevel(levels[randLevel]);
 			}
 		}
 
@@ -23,23 +23,40 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 import javax.swing.ImageIcon;
 
 public class MediaRepository {
 	private static final int MAX_CACHED_IMAGES = 10;
 
+	// set this system property to the number of bytes media items that can
+	// be read again from their source may keep in memory
+	public static final String BYTE_BUDGET_PROPERTY = "jmemorize.media.byteBudget"; //$NON-NLS-1$
+
+	private static final long DEFAULT_BYTE_BUDGET = 32L * 1024 * 1024;
+
 	public static final String MEDIA_ID_PREFIX = "::";
 
 	private static MediaRepository m_instance;
@@ -47,16 +64,72 @@ public class MediaRepository {
 	private final Map<String, ImageItem> m_mediaMap = new HashMap<String, ImageItem>();
 	private final LinkedList<ImageIcon> m_imageCache = new LinkedList<ImageIcon>();
 
+	// items whose bytes are in memory but could be read again from their
+	// source, least recently used first
+	private final LinkedHashMap<MediaItem, Boolean> m_loadedItems = new LinkedHashMap<MediaItem, Boolean>(
+			16, 0.75f, true);
+	private long m_loadedBytes;
+	private long m_byteBudget = Long.getLong(BYTE_BUDGET_PROPERTY,
+			DEFAULT_BYTE_BUDGET);
+
+	// the SHA-256 digests of all items whose bytes were read at least once
+	private final Map<ByteBuffer, ImageItem> m_itemsByDigest = new HashMap<ByteBuffer, ImageItem>();
+
+	// the IDs of images that turned out to have the same bytes as another
+	// image, mapped to the ID of that image
+	private final Map<String, String> m_aliases = new HashMap<String, String>();
+	private int m_duplicates;
+	private long m_duplicateBytes;
+
 	private static final Pattern FILE_PATTERN = Pattern.compile("(.*)_(\\d+)");
 
+	/**
+	 * The place the bytes of a media item can be read from when they are
+	 * needed, e.g. an entry of the archive a lesson was loaded from.
+	 */
+	public interface MediaSource {
+		/**
+		 * @return a new stream over all bytes of the media item. The caller
+		 *         closes it.
+		 */
+		InputStream open() throws IOException;
+
+		/**
+		 * @return the number of bytes of the media item or -1 if it isn't
+		 *         known without reading them.
+		 */
+		default long length() {
+			return -1;
+		}
+
+		/**
+		 * @return the CRC-32 of the bytes of the media item or -1 if it isn't
+		 *         known without reading them.
+		 */
+		default long crc() {
+			return -1;
+		}
+	}
+
 	/**
 	 * The base class for all media types that can be associated with a card.
 	 */
 	public class MediaItem {
 		private final String m_sourceFile;
-		private final byte[] m_bytes;
 		private final String m_id;
 
+		// null if the bytes were only given as stream
+		private MediaSource m_source;
+
+		// null until read from m_source or after they were dropped again
+		private byte[] m_bytes;
+
+		// the SHA-256 digest, CRC-32 and number of the bytes, null and -1
+		// until they were read once
+		byte[] m_digest;
+		long m_crc = -1;
+		long m_length = -1;
+
 		public MediaItem(final InputStream in, final String filename)
 				throws IOException {
 			m_sourceFile = filename;
@@ -64,6 +137,16 @@ public class MediaRepository {
 			m_bytes = readFile(in);
 		}
 
+		/**
+		 * Creates an item whose bytes are only read from given source when
+		 * they are first asked for.
+		 */
+		public MediaItem(final MediaSource source, final String filename) {
+			m_sourceFile = filename;
+			m_id = createId(filename);
+			m_source = source;
+		}
+
 		public String getId() {
 			return m_id;
 		}
@@ -72,8 +155,96 @@ public class MediaRepository {
 			return m_sourceFile;
 		}
 
+		/**
+		 * @return the source the bytes of this item are read from or
+		 *         <code>null</code> if they are only held in memory.
+		 */
+		public MediaSource getSource() {
+			synchronized (MediaRepository.this) {
+				return m_source;
+			}
+		}
+
+		/**
+		 * Reads the bytes of this item from given source from now on, e.g.
+		 * after they were saved there. The source must give the same bytes.
+		 */
+		public void setSource(final MediaSource source) {
+			synchronized (MediaRepository.this) {
+				m_source = source;
+
+				if (m_bytes != null && !m_loadedItems.containsKey(this)) {
+					loaded(this);
+				}
+			}
+		}
+
+		/**
+		 * Items with a source only keep their bytes in memory as long as the
+		 * byte budget of the repository allows.
+		 * 
+		 * @throws UncheckedIOException
+		 *             if the bytes couldn't be read from the source of this
+		 *             item.
+		 */
 		public byte[] getBytes() {
-			return m_bytes;
+			synchronized (MediaRepository.this) {
+				if (m_bytes == null) {
+					try (InputStream in = m_source.open()) {
+						m_bytes = readFile(in);
+					} catch (final IOException e) {
+						throw new UncheckedIOException(e);
+					}
+
+					loaded(this);
+					digested(this);
+				} else if (m_source != null) {
+					m_loadedItems.get(this); // mark as recently used
+				}
+
+				return m_bytes;
+			}
+		}
+
+		/**
+		 * Writes all bytes of this item to given stream. If they aren't in
+		 * memory, they are copied from the source without being kept.
+		 */
+		public void writeTo(final OutputStream out) throws IOException {
+			synchronized (MediaRepository.this) {
+				if (m_bytes != null) {
+					out.write(m_bytes);
+					return;
+				}
+
+				if (m_digest != null) {
+					try (InputStream in = m_source.open()) {
+						copy(in, out);
+					}
+				} else {
+					streamDigest(out);
+				}
+			}
+		}
+
+		/**
+		 * @return the number of bytes of this item or -1 if it isn't known
+		 *         without reading them.
+		 */
+		public long getLength() {
+			synchronized (MediaRepository.this) {
+				return m_length >= 0 ? m_length : m_source.length();
+			}
+		}
+
+		/**
+		 * @return the CRC-32 of the bytes of this item or -1 if it isn't known
+		 *         without reading them.
+		 */
+		public long getCrc() {
+			synchronized (MediaRepository.this) {
+				return m_crc >= 0 ? m_crc : m_source.crc();
+			}
 		}
 
 		@Override
@@ -86,7 +257,7 @@ public class MediaRepository {
 			final String extension = filename.substring(dotPos);
 			String purename = filename.substring(0, dotPos);
 
-			while (getKeys().contains(purename + extension)) {
+			while (isUsedId(purename + extension)) {
 				int num = 0;
 
 				final Matcher m = FILE_PATTERN.matcher(purename);
@@ -103,17 +274,75 @@ public class MediaRepository {
 			return purename + extension;
 		}
 
+		/**
+		 * Computes the digest of this item, reading the bytes from its source
+		 * if it isn't known yet. The bytes aren't kept.
+		 * 
+		 * @return <code>false</code> if the bytes couldn't be read.
+		 */
+		boolean ensureDigest() {
+			if (m_digest != null)
+				return true;
+
+			try {
+				streamDigest(new OutputStream() {
+					@Override
+					public void write(final int b) {
+					}
+
+					@Override
+					public void write(final byte[] b, final int off,
+							final int len) {
+					}
+				});
+				return true;
+			} catch (final IOException e) {
+				return false;
+			}
+		}
+
+		private void streamDigest(final OutputStream out) throws IOException {
+			final CRC32 crc = new CRC32();
+			try (DigestInputStream in = new DigestInputStream(
+					new CheckedInputStream(m_source.open(), crc), newDigest())) {
+				m_length = copy(in, out);
+				m_digest = in.getMessageDigest().digest();
+				m_crc = crc.getValue();
+			}
+
+			digested(this);
+		}
+
+		/**
+		 * Reads all bytes of given stream and computes their digest on the
+		 * way.
+		 */
 		private byte[] readFile(final InputStream in) throws IOException {
+			final CRC32 crc = new CRC32();
+			final DigestInputStream digestIn = new DigestInputStream(
+					new CheckedInputStream(in, crc), newDigest());
 			final ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+			copy(digestIn, bytesOut);
 
-			final byte[] bytes = new byte[1024];
+			m_digest = digestIn.getMessageDigest().digest();
+			m_crc = crc.getValue();
+			m_length = bytesOut.size();
+
+			return bytesOut.toByteArray();
+		}
+
+		private long copy(final InputStream in, final OutputStream out)
+				throws IOException {
+			final byte[] bytes = new byte[8192];
+			long length = 0;
 			int numRead = 0;
 
 			while ((numRead = in.read(bytes, 0, bytes.length)) >= 0) {
-				bytesOut.write(bytes, 0, numRead);
+				out.write(bytes, 0, numRead);
+				length += numRead;
 			}
 
-			return bytesOut.toByteArray();
+			return length;
 		}
 	}
 
@@ -123,6 +352,10 @@ public class MediaRepository {
 			super(in, filename);
 		}
 
+		public ImageItem(final MediaSource source, final String filename) {
+			super(source, filename);
+		}
+
 		public ImageIcon getImage() {
 			final ImageIcon image = new ImageIcon(getBytes());
 			image.setDescription(MEDIA_ID_PREFIX + getId());
@@ -144,13 +377,37 @@ public class MediaRepository {
 		return m_mediaMap.keySet();
 	}
 
+	/**
+	 * @return the ID of the image that is stored for given ID. It differs
+	 *         from given ID if the image turned out to have the same bytes as
+	 *         another image.
+	 */
+	public synchronized String resolveId(String id) {
+		String target;
+		while ((target = m_aliases.get(id)) != null) {
+			id = target;
+		}
+
+		return id;
+	}
+
 	public Collection<ImageItem> getImageItems() // TODO dont give imageItem to
 													// outside
 	{
 		return m_mediaMap.values();
 	}
 
-	public ImageIcon getImage(final String imageId) {
+	/**
+	 * @return the item of the image with given ID or <code>null</code> if
+	 *         there is no such image.
+	 */
+	public synchronized ImageItem getImageItem(final String imageId) {
+		return m_mediaMap.get(resolveId(imageId));
+	}
+
+	public ImageIcon getImage(String imageId) {
+		imageId = resolveId(imageId);
+
 		for (final ImageIcon icon : m_imageCache) {
 			if (equals(icon, imageId)) {
 				m_imageCache.remove(icon);
@@ -175,16 +432,47 @@ public class MediaRepository {
 		return icon;
 	}
 
-	public String addImage(final InputStream in, final String filename)
-			throws IOException {
-		// TOOD check if image already in our map
-		// for (ImageItem item : m_imageMap.values())
-		// {
-		// if (item.getFile().equals(filename))
-		// return item.getId();
-		// }
-
+	/**
+	 * If the repository already has an image with the same bytes, no new
+	 * image is added.
+	 * 
+	 * @return the ID of the new image or of the image with the same bytes.
+	 */
+	public synchronized String addImage(final InputStream in,
+			final String filename) throws IOException {
 		final ImageItem item = new ImageItem(in, filename);
+
+		// only images of the same length and CRC can have the same bytes, so
+		// only those are read to find out
+		for (final ImageItem other : m_mediaMap.values()) {
+			if (other.m_digest == null && maybeSame(other, item))
+				other.ensureDigest();
+		}
+
+		final ImageItem same = m_itemsByDigest.get(ByteBuffer
+				.wrap(item.m_digest));
+		if (same != null) {
+			m_duplicates++;
+			m_duplicateBytes += item.m_length;
+
+			return same.getId();
+		}
+
+		final String id = item.getId();
+		m_mediaMap.put(id, item);
+		digested(item);
+
+		return id;
+	}
+
+	/**
+	 * Adds an image whose bytes aren't read before they are needed.
+	 * 
+	 * @return the ID of the new image.
+	 */
+	public synchronized String addImage(final MediaSource source,
+			final String filename) {
+		final ImageItem item = new ImageItem(source, filename);
 		final String id = item.getId();
 		m_mediaMap.put(id, item);
 
@@ -241,14 +529,133 @@ public class MediaRepository {
 	/**
 	 * Retains all images with given IDs. All other images are removed.
 	 */
-	public void retain(final Set<String> retainIDs) {
+	public synchronized void retain(final Set<String> retainIDs) {
 		final Set<String> toBeRemoved = new HashSet<String>(m_mediaMap.keySet());
 
 		for (final String id : retainIDs)
-			toBeRemoved.remove(id);
+			toBeRemoved.remove(resolveId(id));
+
+		for (final String id : toBeRemoved) {
+			final ImageItem item = m_mediaMap.remove(id);
+			unloaded(item);
+
+			if (item.m_digest != null)
+				m_itemsByDigest.remove(ByteBuffer.wrap(item.m_digest));
+		}
+
+		final Iterator<String> it = m_aliases.keySet().iterator();
+		while (it.hasNext()) {
+			if (!m_mediaMap.containsKey(resolveId(it.next())))
+				it.remove();
+		}
+	}
+
+	/**
+	 * Lets all images that are known to have the same bytes as another image
+	 * resolve to that image, so that the bytes are only stored once. The IDs
+	 * of the removed images are still resolved by {@link #resolveId(String)}
+	 * and {@link #getImage(String)}.
+	 * 
+	 * @return the number of removed images.
+	 */
+	public synchronized int mergeDuplicates() {
+		// only images of the same length and CRC can have the same bytes, so
+		// only those are read to find out
+		final Map<Long, List<ImageItem>> itemsByLength = new HashMap<Long, List<ImageItem>>();
+		for (final ImageItem item : m_mediaMap.values()) {
+			final long length = item.getLength();
+			if (length < 0)
+				continue;
+
+			List<ImageItem> sameLength = itemsByLength.get(length);
+			if (sameLength == null) {
+				sameLength = new ArrayList<ImageItem>(1);
+				itemsByLength.put(length, sameLength);
+			}
+
+			for (final ImageItem other : sameLength) {
+				if ((item.m_digest == null || other.m_digest == null)
+						&& maybeSame(item, other)) {
+					item.ensureDigest();
+					other.ensureDigest();
+				}
+			}
+
+			sameLength.add(item);
+		}
+
+		int merged = 0;
+
+		final Iterator<ImageItem> it = m_mediaMap.values().iterator();
+		while (it.hasNext()) {
+			final ImageItem item = it.next();
+			if (item.m_digest == null)
+				continue;
+
+			final ImageItem same = m_itemsByDigest.putIfAbsent(
+					ByteBuffer.wrap(item.m_digest), item);
+			if (same != null && same != item) {
+				it.remove();
+				unloaded(item);
+				m_aliases.put(item.getId(), same.getId());
+
+				m_duplicates++;
+				m_duplicateBytes += item.m_length;
+				merged++;
+			}
+		}
+
+		return merged;
+	}
+
+	/**
+	 * @return the number of images that resolve to another image with the
+	 *         same bytes, since the repository was last cleared.
+	 */
+	public synchronized int getDuplicates() {
+		return m_duplicates;
+	}
+
+	/**
+	 * @return the number of bytes that didn't have to be stored because
+	 *         images had the same bytes as another image.
+	 */
+	public synchronized long getDuplicateBytes() {
+		return m_duplicateBytes;
+	}
 
-		for (final String id : toBeRemoved)
-			m_mediaMap.remove(id);
+	/**
+	 * @return a line about the number of images and the bytes they take,
+	 *         e.g. for logging.
+	 */
+	public synchronized String getSummary() {
+		return String.format(
+				"%d images, %d bytes in memory, %d duplicates with %d bytes saved", //$NON-NLS-1$
+				m_mediaMap.size(), m_loadedBytes, m_duplicates,
+				m_duplicateBytes);
+	}
+
+	/**
+	 * Sets the number of bytes that items which can read their bytes again
+	 * from their source may keep in memory together. The bytes of the least
+	 * recently used items are dropped first. The bytes of the last item
+	 * that was read are always kept, even if there are more of them.
+	 */
+	public synchronized void setByteBudget(final long bytes) {
+		m_byteBudget = bytes;
+		dropBytesOverBudget();
+	}
+
+	public synchronized long getByteBudget() {
+		return m_byteBudget;
+	}
+
+	/**
+	 * @return the number of bytes held in memory by items that could read
+	 *         them again from their source.
+	 */
+	public synchronized long getLoadedBytes() {
+		return m_loadedBytes;
 	}
 
 	public static boolean equals(final ImageIcon image, final String id) {
@@ -294,8 +701,80 @@ public class MediaRepository {
 		return images;
 	}
 
-	public void clear() {
+	public synchronized void clear() {
 		m_mediaMap.clear();
+		m_loadedItems.clear();
+		m_loadedBytes = 0;
+
+		m_itemsByDigest.clear();
+		m_aliases.clear();
+		m_duplicates = 0;
+		m_duplicateBytes = 0;
+	}
+
+	private boolean isUsedId(final String id) {
+		return m_mediaMap.containsKey(id) || m_aliases.containsKey(id);
+	}
+
+	/**
+	 * Remembers the digest of given item, unless there already is another
+	 * item with the same digest.
+	 */
+	private void digested(final MediaItem item) {
+		final ImageItem imageItem = m_mediaMap.get(item.getId());
+
+		if (imageItem == item)
+			m_itemsByDigest.putIfAbsent(ByteBuffer.wrap(item.m_digest),
+					imageItem);
+	}
+
+	/**
+	 * @return <code>false</code> if the two items are known to have different
+	 *         bytes without reading them.
+	 */
+	private static boolean maybeSame(final MediaItem item,
+			final MediaItem other) {
+		final long length = item.getLength();
+		if (length < 0 || length != other.getLength())
+			return false;
+
+		final long crc = item.getCrc();
+		final long otherCrc = other.getCrc();
+
+		return crc < 0 || otherCrc < 0 || crc == otherCrc;
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+		} catch (final NoSuchAlgorithmException e) {
+			// every Java platform has to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void loaded(final MediaItem item) {
+		m_loadedItems.put(item, Boolean.TRUE);
+		m_loadedBytes += item.m_bytes.length;
+
+		dropBytesOverBudget();
+	}
+
+	private void unloaded(final MediaItem item) {
+		if (m_loadedItems.remove(item) != null)
+			m_loadedBytes -= item.m_bytes.length;
+	}
+
+	private void dropBytesOverBudget() {
+		final Iterator<MediaItem> it = m_loadedItems.keySet().iterator();
+
+		while (m_loadedBytes > m_byteBudget && m_loadedItems.size() > 1) {
+			final MediaItem item = it.next();
+			it.remove();
+
+			m_loadedBytes -= item.m_bytes.length;
+			item.m_bytes = null;
+		}
 	}
 
 	private MediaRepository() // singleton
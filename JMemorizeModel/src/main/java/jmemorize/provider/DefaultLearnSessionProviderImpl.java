@@ -24,7 +24,6 @@ import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.URL;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Observable;
 import java.util.Properties;
@@ -34,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jmemorize.core.Card;
+import jmemorize.core.CardBatch;
 import jmemorize.core.Category;
 import jmemorize.core.Lesson;
 import jmemorize.core.LessonObserver;
@@ -45,6 +45,7 @@ import jmemorize.core.learn.LearnSession;
 import jmemorize.core.learn.LearnSessionObserver;
 import jmemorize.core.learn.LearnSettings;
 import jmemorize.core.media.MediaRepository;
+import jmemorize.util.ObserverList;
 import jmemorize.util.RecentItems;
 
 /**
@@ -74,9 +75,12 @@ public class DefaultLearnSessionProviderImpl extends Observable implements
 	private int m_runningSessions = 0;
 
 	// observers
-	private final List<LessonObserver> m_lessonObservers = new LinkedList<LessonObserver>();
-	private final List<LearnSessionObserver> m_learnSessionObservers = new LinkedList<LearnSessionObserver>();
-	private final List<ProgramEndObserver> m_programEndObservers = new LinkedList<ProgramEndObserver>();
+	private final ObserverList<LessonObserver> m_lessonObservers = new ObserverList<LessonObserver>(
+			new LessonObserver[0]);
+	private final ObserverList<LearnSessionObserver> m_learnSessionObservers = new ObserverList<LearnSessionObserver>(
+			new LearnSessionObserver[0]);
+	private final ObserverList<ProgramEndObserver> m_programEndObservers = new ObserverList<ProgramEndObserver>(
+			new ProgramEndObserver[0]);
 
 	// simple logging support
 	private static Throwable m_lastLoggedThrowable;
@@ -210,7 +214,7 @@ public class DefaultLearnSessionProviderImpl extends Observable implements
 	 * Notifies all program end observers and exists the application.
 	 */
 	public void exit() {
-		for (final ProgramEndObserver observer : m_programEndObservers) {
+		for (final ProgramEndObserver observer : m_programEndObservers.snapshot()) {
 			observer.onProgramEnd();
 		}
 
@@ -229,7 +233,7 @@ public class DefaultLearnSessionProviderImpl extends Observable implements
 
 		m_runningSessions++;
 
-		for (final LearnSessionObserver observer : m_learnSessionObservers) {
+		for (final LearnSessionObserver observer : m_learnSessionObservers.snapshot()) {
 			observer.sessionStarted(session);
 		}
 
@@ -253,7 +257,7 @@ public class DefaultLearnSessionProviderImpl extends Observable implements
 							.getRelearnedCards().size());
 		}
 
-		for (final LearnSessionObserver observer : m_learnSessionObservers) {
+		for (final LearnSessionObserver observer : m_learnSessionObservers.snapshot()) {
 			observer.sessionEnded(session);
 		}
 	}
@@ -305,6 +309,15 @@ public class DefaultLearnSessionProviderImpl extends Observable implements
 		fireLessonModified(m_lesson);
 	}
 
+	/*
+	 * (non-Javadoc) Declared in jmemorize.core.CategoryObserver
+	 */
+	@Override
+	public void onCardsEvent(final int type, final CardBatch batch) {
+		// once for the whole batch, not for every card
+		fireLessonModified(m_lesson);
+	}
+
 	/*
 	 * (non-Javadoc) Declared in jmemorize.core.CategoryObserver
 	 */
@@ -388,7 +401,7 @@ public class DefaultLearnSessionProviderImpl extends Observable implements
 	protected void fireLessonLoaded(final Lesson lesson) {
 		lesson.getRootCategory().addObserver(this);
 
-		for (final LessonObserver observer : m_lessonObservers) {
+		for (final LessonObserver observer : m_lessonObservers.snapshot()) {
 			observer.lessonLoaded(lesson);
 		}
 	}
@@ -396,14 +409,14 @@ public class DefaultLearnSessionProviderImpl extends Observable implements
 	protected void fireLessonClosed(final Lesson lesson) {
 		lesson.getRootCategory().removeObserver(this);
 
-		for (final LessonObserver observer : m_lessonObservers) {
+		for (final LessonObserver observer : m_lessonObservers.snapshot()) {
 			observer.lessonClosed(lesson);
 		}
 	}
 
 	private void fireLessonModified(final Lesson lesson) {
 		if (lesson.canSave()) {
-			for (final LessonObserver observer : m_lessonObservers) {
+			for (final LessonObserver observer : m_lessonObservers.snapshot()) {
 				observer.lessonModified(lesson);
 			}
 		}
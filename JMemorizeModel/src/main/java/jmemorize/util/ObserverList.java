@@ -0,0 +1,111 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.util;
+
+import java.util.Arrays;
+
+/**
+ * A list of observers that is meant to be iterated far more often than it is
+ * changed.
+ *
+ * The observers are kept in an array that is replaced as a whole whenever an
+ * observer is added or removed. Notifying the observers just walks the
+ * current array, which doesn't allocate anything. Observers can safely be
+ * added or removed while the observers are notified. Such changes only take
+ * effect for the next notification.
+ *
+ * <pre>
+ * for (MyObserver observer : m_observers.snapshot())
+ *     observer.onEvent();
+ * </pre>
+ *
+ * @param <T> the observer type.
+ */
+public class ObserverList<T>
+{
+    private volatile T[] m_observers;
+
+    /**
+     * @param empty an empty array of the observer type. It is used as template
+     * for all further arrays.
+     */
+    public ObserverList(T[] empty)
+    {
+        if (empty.length != 0)
+            throw new IllegalArgumentException("Array has to be empty."); //$NON-NLS-1$
+
+        m_observers = empty;
+    }
+
+    /**
+     * Adds the observer to the end of the list. An observer that is added
+     * twice will also be notified twice.
+     */
+    public synchronized void add(T observer)
+    {
+        T[] observers = m_observers;
+        T[] newObservers = Arrays.copyOf(observers, observers.length + 1);
+        newObservers[observers.length] = observer;
+
+        m_observers = newObservers;
+    }
+
+    /**
+     * Removes the first occurrence of given observer.
+     *
+     * @return <code>true</code> if the observer was part of this list.
+     */
+    public synchronized boolean remove(T observer)
+    {
+        T[] observers = m_observers;
+        for (int i = 0; i < observers.length; i++)
+        {
+            if (observer.equals(observers[i]))
+            {
+                T[] newObservers = Arrays.copyOf(observers, observers.length - 1);
+                System.arraycopy(observers, i + 1, newObservers, i,
+                    observers.length - i - 1);
+
+                m_observers = newObservers;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the observers at the time of the call. The returned array is
+     * shared and must not be modified.
+     */
+    public T[] snapshot()
+    {
+        return m_observers;
+    }
+
+    public int size()
+    {
+        return m_observers.length;
+    }
+
+    public boolean isEmpty()
+    {
+        return m_observers.length == 0;
+    }
+}
@@ -72,7 +72,7 @@ public class CardTest {
 
 			final Date dateModified = card.getDateModified();
 			assertEquals(now2, dateModified);
-			assertTrue(now2 == dateModified);
+			assertTrue(now2 != dateModified);
 		}
 
 		{
@@ -129,7 +129,47 @@ public class CardTest {
 	public void equalsCards() {
 		final Card firstCard = new Card("0", "0");
 		final Card secondCard = new Card("0", "0");
-		assertEquals(firstCard, secondCard);
+		assertTrue(firstCard.contentEquals(secondCard));
+		assertEquals(firstCard.contentHashCode(), secondCard.contentHashCode());
+
+		// cards with the same texts are still different cards
+		assertFalse(firstCard.equals(secondCard));
+		assertTrue(firstCard.getId() != secondCard.getId());
+	}
+
+	@Test
+	public void testContentHashCode() {
+		final Card card = new Card("0", "0");
+		final Card other = new Card("1", "1");
+		final int hash = card.contentHashCode();
+		assertFalse(card.contentEquals(other));
+
+		card.setSides("1", "1");
+		assertTrue(card.contentEquals(other));
+		assertEquals(other.contentHashCode(), card.contentHashCode());
+		assertFalse(hash == card.contentHashCode());
+
+		// the hash is also invalidated when a card side is changed directly
+		card.getFrontSide().setText(FormattedText.unformatted("2"));
+		assertFalse(card.contentEquals(other));
+	}
+
+	@Test
+	public void testId() {
+		final Card card = new Card("0", "0");
+		final int hash = card.hashCode();
+
+		final Map<Card, Boolean> cards = new HashMap<Card, Boolean>();
+		cards.put(card, Boolean.TRUE);
+
+		card.setSides("1", "1");
+		assertEquals(hash, card.hashCode());
+		assertTrue(cards.containsKey(card));
+
+		// ids that are set by loaders are never given to new cards
+		final Card loaded = new Card("2", "2");
+		loaded.setId(card.getId() + 1000);
+		assertTrue(new Card("3", "3").getId() > loaded.getId());
 	}
 
 	@Test
@@ -301,17 +341,17 @@ public class CardTest {
 		final Card card2 = new Card(then, "front", "back");
 
 		assertFalse(now.equals(then));
-		assertTrue(card1.equals(card2));
+		assertTrue(card1.contentEquals(card2));
 		assertFalse(card1.equals(then));
 
 		final Category category = new Category("category");
 		card1.setCategory(category);
 
-		assertTrue(card1.equals(card2));
+		assertTrue(card1.contentEquals(card2));
 
 		card2.setCategory(category);
 
-		assertTrue(card1.equals(card2));
+		assertTrue(card1.contentEquals(card2));
 	}
 
 	@Test
@@ -320,7 +360,8 @@ public class CardTest {
 		final Card card = new Card(now, "front", "back");
 		final Card clone = (Card) card.clone();
 
-		assertEquals(card, clone);
+		assertTrue(card.contentEquals(clone));
+		assertFalse(card.equals(clone));
 	}
 
 	@Test
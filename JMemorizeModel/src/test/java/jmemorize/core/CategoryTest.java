@@ -1,10 +1,444 @@
 package jmemorize.core;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.StreamSupport;
+
 import org.junit.Test;
 
 public class CategoryTest {
 	@Test
 	public void testRaiseCardLevel() {
-		
+
+	}
+
+	@Test
+	public void testCardCounts() {
+		final Category root = new Category("root");
+		final Category child = new Category("child");
+		final Category grandChild = new Category("grandChild");
+
+		root.addCategoryChild(child);
+		root.addCard(new Card("0", "0"));
+		child.addCard(new Card("1", "1"));
+		grandChild.addCard(new Card("2", "2"));
+		grandChild.addCard(new Card("3", "3"), 1);
+
+		assertEquals(2, grandChild.getCardCount());
+		assertEquals(1, child.getCardCount());
+		assertEquals(2, root.getCardCount());
+
+		child.addCategoryChild(grandChild);
+
+		assertEquals(4, root.getCardCount());
+		assertEquals(3, root.getCardCount(0));
+		assertEquals(1, root.getCardCount(1));
+		assertEquals(2, child.getCardCount(0));
+		assertEquals(root.getCards(0).size(), root.getCardCount(0));
+
+		final Card card = grandChild.getCards(0).get(0);
+		Category.raiseCardLevel(card, new Date(), new Date());
+
+		assertEquals(2, root.getCardCount(0));
+		assertEquals(2, root.getCardCount(1));
+		assertEquals(1, child.getCardCount(0));
+		assertEquals(2, grandChild.getCardCount(1));
+
+		Category.moveCard(card, root);
+
+		assertEquals(1, grandChild.getCardCount(1));
+		assertEquals(1, child.getCardCount(1));
+		assertEquals(2, root.getCardCount(1));
+
+		root.removeCard(card);
+
+		assertEquals(3, root.getCardCount());
+		assertEquals(1, root.getCardCount(1));
+
+		grandChild.remove();
+
+		assertEquals(2, root.getCardCount());
+		assertEquals(2, root.getCardCount(0));
+		assertEquals(0, root.getCardCount(1));
+		assertEquals(0, child.getCardCount(1));
+		assertEquals(root.getCards().size(), root.getCardCount());
+	}
+
+	@Test
+	public void testExpirationIndex() {
+		final long now = System.currentTimeMillis();
+		final Category root = new Category("root");
+		final Category child = new Category("child");
+		root.addCategoryChild(child);
+
+		final Card unlearned = new Card("0", "0");
+		final Card expired = new Card("1", "1");
+		final Card dueSoon = new Card("2", "2");
+		final Card dueLater = new Card("3", "3");
+
+		root.addCard(unlearned);
+		expired.setDateExpired(new Date(now - Card.ONE_DAY));
+		root.addCard(expired, 1);
+		dueLater.setDateExpired(new Date(now + 2 * Card.ONE_DAY));
+		child.addCard(dueLater, 2);
+		dueSoon.setDateExpired(new Date(now + Card.ONE_DAY));
+		child.addCard(dueSoon, 1);
+
+		assertEquals(Arrays.asList(expired), root.getExpiredCards());
+		assertEquals(Arrays.asList(dueSoon, dueLater), root.getLearnedCards());
+		assertEquals(Arrays.asList(unlearned, expired), root.getLearnableCards());
+		assertEquals(Arrays.asList(dueSoon), root.getLearnedCards(1));
+		assertEquals(1, root.getExpiredCardCount(new Date(now)));
+		assertEquals(2, root.getExpiredCardCount(new Date(now + Card.ONE_DAY)));
+		assertEquals(2, root.getExpiredCardCount(1, new Date(now + Card.ONE_DAY)));
+		assertEquals(0, child.getExpiredCardCount(new Date(now)));
+		assertEquals(new Date(now + Card.ONE_DAY), root.getNextExpirationDate(new Date(now)));
+		assertEquals(new Date(now + 2 * Card.ONE_DAY), child.getNextExpirationDate(new Date(now + Card.ONE_DAY)));
+		assertNull(root.getNextExpirationDate(new Date(now + 2 * Card.ONE_DAY)));
+
+		// changing the expiration of an indexed card has to update the index
+		dueLater.setDateExpired(new Date(now - 1));
+		assertEquals(Arrays.asList(expired, dueLater), root.getExpiredCards());
+		assertEquals(2, root.getExpiredCardCount(new Date(now)));
+		assertEquals(3, root.getExpiredCardCount(new Date(now + Card.ONE_DAY)));
+		assertEquals(2, root.getExpiredCardCount(new Date(now)));
+
+		Category.raiseCardLevel(expired, new Date(now), new Date(now + 3 * Card.ONE_DAY));
+		assertEquals(Arrays.asList(dueLater), root.getExpiredCards());
+		assertEquals(Arrays.asList(dueSoon, expired), root.getLearnedCards());
+
+		root.removeCard(dueLater);
+		assertEquals(0, root.getExpiredCardCount(new Date(now)));
+	}
+
+	@Test
+	public void testExpirationIndexBatch() {
+		final long now = System.currentTimeMillis();
+		final Category root = new Category("root");
+
+		final List<Card> cards = new ArrayList<Card>();
+		for (int i = 0; i < 100; i++) {
+			final Card card = new Card("front " + i, "back");
+			card.setDateExpired(new Date(now - (i % 10) * Card.ONE_DAY));
+			cards.add(card);
+		}
+		root.addCards(cards, 1);
+
+		final List<Card> expected = new ArrayList<Card>();
+		for (int day = 9; day >= 0; day--) {
+			for (int i = day; i < cards.size(); i += 10) {
+				expected.add(cards.get(i));
+			}
+		}
+		assertEquals(expected, root.getExpiredCards());
+		assertEquals(50, root.getExpiredCardCount(new Date(now - 5 * Card.ONE_DAY)));
+		assertEquals(new Date(now - 4 * Card.ONE_DAY), root.getNextExpirationDate(new Date(now - 5 * Card.ONE_DAY)));
+
+		final List<Card> removed = new ArrayList<Card>();
+		for (int i = 0; i < cards.size(); i += 2) {
+			removed.add(cards.get(i));
+		}
+		Category.removeCards(removed);
+		expected.removeAll(removed);
+
+		assertEquals(expected, root.getExpiredCards());
+		assertEquals(30, root.getExpiredCardCount(new Date(now - 5 * Card.ONE_DAY)));
+		assertEquals(new Date(now - 3 * Card.ONE_DAY), root.getNextExpirationDate(new Date(now - 5 * Card.ONE_DAY)));
+	}
+
+	@Test
+	public void testCardsView() {
+		final Category root = new Category("root");
+		final Category child = new Category("child");
+		final Category grandChild = new Category("grandChild");
+		root.addCategoryChild(child);
+		child.addCategoryChild(grandChild);
+
+		for (int i = 0; i < 30; i++) {
+			final Category category = i % 3 == 0 ? root : i % 3 == 1 ? child : grandChild;
+			category.addCard(new Card("front" + i, "back" + i), i % 4);
+		}
+
+		assertEquals(root.getCards(), new ArrayList<Card>(root.getCardsView()));
+		assertEquals(root.getCards(2), new ArrayList<Card>(root.getCardsView(2)));
+		assertEquals(child.getCards(), new ArrayList<Card>(child.getCardsView()));
+		assertEquals(root.getLocalCards(), new ArrayList<Card>(root.getLocalCardsView()));
+		assertEquals(30, root.getCardsView().size());
+		assertEquals(root.getCards(1).size(), root.getCardsView(1).size());
+		assertEquals(0, root.getCardsView(10).size());
+		assertEquals(root.getLocalCards().size(), root.getLocalCardsView().size());
+
+		assertEquals(root.getSubtreeList(), new ArrayList<Category>(root.getSubtreeView()));
+		assertEquals(3, root.getSubtreeView().size());
+
+		// the spliterator has to split without losing or reordering cards
+		final Spliterator<Card> spliterator = root.getCardsView().spliterator();
+		assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+
+		final Spliterator<Card> prefix = spliterator.trySplit();
+		assertEquals(30, prefix.estimateSize() + spliterator.estimateSize());
+
+		final List<Card> cards = new ArrayList<Card>();
+		prefix.forEachRemaining(cards::add);
+		spliterator.forEachRemaining(cards::add);
+		assertEquals(root.getCards(), cards);
+
+		assertEquals(30, StreamSupport.stream(root.getCardsView().spliterator(), true).count());
+		assertEquals(10, StreamSupport.stream(root.getCardsView().spliterator(), true)
+			.filter(card -> card.getCategory() == grandChild).count());
+	}
+
+	@Test
+	public void testCardsViewFailsFast() {
+		final Category root = new Category("root");
+		final Category child = new Category("child");
+		root.addCategoryChild(child);
+		root.addCard(new Card("0", "0"));
+		child.addCard(new Card("1", "1"));
+
+		final Iterator<Card> cards = root.getCardsView().iterator();
+		cards.next();
+		child.addCard(new Card("2", "2"));
+
+		try {
+			cards.next();
+			fail();
+		} catch (final ConcurrentModificationException e) {
+			// expected
+		}
+
+		final Iterator<Category> categories = root.getSubtreeView().iterator();
+		categories.next();
+		child.addCategoryChild(new Category("grandChild"));
+
+		try {
+			categories.next();
+			fail();
+		} catch (final ConcurrentModificationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCardStore() {
+		final Date expired = new Date(System.currentTimeMillis() - Card.ONE_DAY);
+		final Category root = new Category("root");
+		final Category child = new Category("child");
+
+		final Card card0 = new Card("0", "0");
+		final Card card1 = new Card("1", "1");
+		card1.setDateExpired(expired);
+		card1.incStats(1, 2);
+
+		// cards that aren't part of a category don't hold a slot
+		assertNull(card0.getStore());
+		assertEquals(2, card1.getTestsTotal());
+
+		root.addCard(card0);
+		child.addCard(card1, 2);
+		assertNotSame(root.getCardStore(), card1.getStore());
+
+		// adding the child moves its cards into the store of the root
+		root.addCategoryChild(child);
+		assertSame(root.getCardStore(), card0.getStore());
+		assertSame(root.getCardStore(), card1.getStore());
+		assertEquals(2, root.getCardStore().size());
+		assertEquals(2, card1.getLevel());
+		assertEquals(expired, card1.getDateExpired());
+		assertEquals(1, card1.getTestsPassed());
+		assertEquals(2, card1.getTestsTotal());
+		assertEquals(Arrays.asList(card1), root.getExpiredCards());
+
+		// removed cards and categories release their slots
+		root.removeCard(card0);
+		assertEquals(1, root.getCardStore().size());
+		assertNull(card0.getStore());
+		assertEquals(0, card0.getLevel());
+
+		child.remove();
+		assertEquals(0, root.getCardStore().size());
+		assertSame(child.getCardStore(), card1.getStore());
+		assertEquals(expired, card1.getDateExpired());
+
+		// released slots are reused
+		root.addCard(card0);
+		assertEquals(1, root.getCardStore().size());
+	}
+
+	@Test
+	public void testBulkOperations() {
+		final Category root = new Category("root");
+		final Category child = new Category("child");
+		final Category other = new Category("other");
+		root.addCategoryChild(child);
+		root.addCategoryChild(other);
+
+		final List<Card> cards = new ArrayList<Card>();
+		for (int i = 0; i < 6; i++) {
+			cards.add(new Card("front" + i, "back" + i));
+		}
+
+		// an observer that only handles single card events gets the batch
+		// expanded into single events
+		final List<Card> added = new ArrayList<Card>();
+		final List<Integer> batchSizes = new ArrayList<Integer>();
+		root.addObserver(new CategoryObserver() {
+			@Override
+			public void onCardEvent(final int type, final Card card, final Category category, final int deck) {
+				if (type == Events.ADDED_EVENT)
+					added.add(card);
+			}
+
+			@Override
+			public void onCategoryEvent(final int type, final Category category) {
+			}
+		});
+		other.addObserver(new CategoryObserver() {
+			@Override
+			public void onCardEvent(final int type, final Card card, final Category category, final int deck) {
+				fail();
+			}
+
+			@Override
+			public void onCardsEvent(final int type, final CardBatch batch) {
+				batchSizes.add(batch.size());
+			}
+
+			@Override
+			public void onCategoryEvent(final int type, final Category category) {
+			}
+		});
+
+		child.addCards(cards.subList(0, 4), 0);
+		other.addCards(cards.subList(4, 6), 0);
+		assertEquals(cards, added);
+		assertEquals(Arrays.asList(2), batchSizes);
+		assertEquals(6, root.getCardCount());
+
+		Category.moveCards(cards.subList(2, 4), other);
+		assertEquals(cards.subList(0, 2), child.getCards());
+		assertEquals(4, other.getCardCount());
+		assertEquals(Arrays.asList(2, 2), batchSizes);
+
+		Category.changeLevels(Arrays.asList(cards.get(0), cards.get(4)), 2, new Date(), new Date());
+		assertEquals(2, root.getCardCount(2));
+		assertEquals(1, other.getCardCount(2));
+		assertEquals(2, cards.get(4).getLevel());
+		assertEquals(Arrays.asList(2, 2, 1), batchSizes);
+
+		Category.removeCards(Arrays.asList(cards.get(0), cards.get(1), cards.get(4)));
+		assertEquals(3, root.getCardCount());
+		assertEquals(0, child.getCardCount());
+		assertEquals(0, root.getCardCount(2));
+		assertNull(cards.get(4).getCategory());
+		assertEquals(Arrays.asList(2, 2, 1, 1), batchSizes);
+
+		Category.resetCards(other.getCards());
+		assertEquals(3, other.getCardCount(0));
+		assertEquals(Arrays.asList(2, 2, 1, 1, 3), batchSizes);
+	}
+
+	@Test
+	public void testChildCategories() {
+		final Category root = new Category("root");
+		final Category cat10 = root.addCategoryChild(new Category("cat10"));
+		final Category cat2 = root.addCategoryChild(new Category("cat2"));
+		final Category first = root.addCategoryChild(new Category("dup"));
+		final Category second = root.addCategoryChild(new Category("dup"));
+		final Category cat1 = root.addCategoryChild(new Category("cat1"));
+
+		final List<Category> children = root.getChildCategories();
+		assertEquals(Arrays.asList("cat1", "cat2", "cat10", "dup", "dup"), names(children));
+		assertSame(first, children.get(3));
+		assertSame(second, children.get(4));
+
+		assertSame(cat2, root.getChildCategory("cat2"));
+		assertSame(first, root.getChildCategory("dup"));
+		assertNull(root.getChildCategory("cat3"));
+		assertEquals(2, root.getChildCategoryCount("dup"));
+		assertEquals(1, root.getChildCategoryCount("cat2"));
+		assertEquals(0, root.getChildCategoryCount("cat3"));
+
+		first.remove();
+		assertSame(second, root.getChildCategory("dup"));
+		assertEquals(1, root.getChildCategoryCount("dup"));
+		assertEquals(4, children.size());
+
+		// renamed categories move to their new position
+		cat10.setName("cat0");
+		assertEquals(Arrays.asList("cat0", "cat1", "cat2", "dup"), names(children));
+		assertSame(cat10, root.getChildCategory("cat0"));
+		assertNull(root.getChildCategory("cat10"));
+		assertSame(cat1, children.get(1));
+
+		try {
+			children.remove(0);
+			fail();
+		} catch (final UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testPaths() {
+		final Category root = new Category("root");
+		final Category child = root.addCategoryChild(new Category("child"));
+		final Category grandChild = child.addCategoryChild(new Category("grandChild"));
+
+		assertEquals("root/child/grandChild", grandChild.getPath());
+		assertSame(grandChild.getPath(), grandChild.getPath());
+		assertEquals(2, grandChild.getDepth());
+		assertEquals(5, grandChild.getDepth(3));
+
+		// renaming changes the paths of the whole subtree
+		child.setName("renamed");
+		assertEquals("root/renamed", child.getPath());
+		assertEquals("root/renamed/grandChild", grandChild.getPath());
+
+		// moving too
+		final Category other = root.addCategoryChild(new Category("other"));
+		child.remove();
+		assertEquals("renamed/grandChild", grandChild.getPath());
+		assertEquals(1, grandChild.getDepth());
+
+		other.addCategoryChild(child);
+		assertEquals("root/other/renamed/grandChild", grandChild.getPath());
+		assertEquals(3, grandChild.getDepth());
+	}
+
+	@Test
+	public void testIdentityEquals() {
+		final Category root = new Category("root");
+		final Category first = root.addCategoryChild(new Category("child"));
+		final Category second = root.addCategoryChild(new Category("child"));
+
+		assertTrue(first.equals(first));
+		assertFalse(first.equals(second));
+
+		final int hashCode = first.hashCode();
+		first.setName("renamed");
+		assertEquals(hashCode, first.hashCode());
+	}
+
+	private static List<String> names(final List<Category> categories) {
+		final List<String> names = new ArrayList<String>();
+		for (final Category category : categories) {
+			names.add(category.getName());
+		}
+
+		return names;
 	}
 }
@@ -0,0 +1,178 @@
+package jmemorize.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class DuplicateDetectorTest {
+	private static final String[] SYLLABLES = { "ka", "lo", "mi", "ne", "su", "ta", "ri", "po", "ve", "da", "gu",
+			"zo", "bar", "ten", "lis", "mon", "qua", "sch", "ij", "aan" };
+
+	@Test
+	public void testFindDuplicates() {
+		final Card dog = new Card("der Hund", "the dog");
+		final Card cat = new Card("die Katze", "the cat");
+		final Card dogCase = new Card("Der Hund", "The dog");
+		final Card vocabulary = new Card("der Wortschatz, die Wortschätze", "the vocabulary");
+		final Card vocabularyTypo = new Card("der Wortschatz, die Wortschatze", "the vocabulary");
+		final Card flipped = new Card("the dog", "der Hund");
+
+		final List<List<Card>> clusters = new DuplicateDetector().findDuplicates(Arrays.asList(dog, cat, dogCase,
+				vocabulary, flipped, vocabularyTypo));
+
+		assertEquals(Arrays.asList(Arrays.asList(dog, dogCase), Arrays.asList(vocabulary, vocabularyTypo)), clusters);
+	}
+
+	@Test
+	public void testIncoming() {
+		final Card dog = new Card("der Hund", "the dog");
+		final Card cat = new Card("die Katze", "the cat");
+		final Card incomingDog = new Card("der Hund", "the dog");
+		final Card incomingHorse = new Card("das Pferd", "the horse");
+		final Card otherIncomingHorse = new Card("das Pferd", "the horse");
+
+		final List<Card> incoming = Arrays.asList(incomingDog, incomingHorse, otherIncomingHorse);
+		final List<Card> existing = Arrays.asList(dog, cat, incomingDog);
+
+		// only duplicates between both are reported, incoming cards first
+		assertEquals(Collections.singletonList(Arrays.asList(incomingDog, dog)),
+				new DuplicateDetector().findDuplicates(incoming, existing));
+		assertEquals(Collections.emptyList(),
+				new DuplicateDetector().findDuplicates(Collections.<Card> emptyList(), existing));
+	}
+
+	@Test
+	public void testMerge() {
+		final Category category = new Category("category");
+		final Date created = new Date(1322307496000L);
+		final Card learned = new Card(created, "der Hund", "the dog");
+		final Card older = new Card(new Date(created.getTime() - 1000), "Der Hund", "the dog");
+		category.addCard(learned, 2);
+		category.addCard(older, 0);
+
+		learned.incStats(2, 3);
+		learned.setDateTested(created);
+		older.incStats(1, 1);
+
+		final List<Integer> events = new ArrayList<Integer>();
+		category.addObserver(new CategoryObserver() {
+			@Override
+			public void onCardEvent(final int type, final Card card, final Category category, final int deck) {
+				fail();
+			}
+
+			@Override
+			public void onCardsEvent(final int type, final CardBatch batch) {
+				events.add(type);
+				if (type == Events.EDITED_EVENT)
+					assertSame(learned, batch.getCard(0));
+			}
+
+			@Override
+			public void onCategoryEvent(final int type, final Category category) {
+			}
+		});
+
+		final List<List<Card>> clusters = new DuplicateDetector().findDuplicates(category.getCards());
+		assertEquals(Collections.singletonList(learned), DuplicateDetector.merge(clusters));
+
+		// the observers know about the changed stats of the kept card
+		assertEquals(Arrays.asList(Events.REMOVED_EVENT, Events.EDITED_EVENT), events);
+
+		assertEquals(Collections.singletonList(learned), category.getCards());
+		assertNull(older.getCategory());
+		assertSame(category, learned.getCategory());
+		assertEquals(2, learned.getLevel());
+		assertEquals(4, learned.getTestsTotal());
+		assertEquals(3, learned.getTestsPassed());
+		assertEquals(older.getDateCreated(), learned.getDateCreated());
+		assertEquals(created, learned.getDateTested());
+	}
+
+	@Test
+	public void testMergeIncoming() {
+		final Category category = new Category("category");
+		final Card existing = new Card("der Hund", "the dog");
+		category.addCard(existing, 0);
+		existing.incStats(0, 1);
+
+		// the incoming card has the higher level, but isn't part of the lesson
+		final Card incoming = new Card("der Hund", "the dog");
+		new Category("imported").addCard(incoming, 3);
+		incoming.getCategory().removeCard(incoming);
+		incoming.incStats(2, 2);
+
+		final List<List<Card>> clusters = new DuplicateDetector().findDuplicates(Collections.singletonList(incoming),
+				category.getCards());
+		assertEquals(Collections.singletonList(existing), DuplicateDetector.merge(clusters));
+
+		assertEquals(Collections.singletonList(existing), category.getCards());
+		assertSame(category, existing.getCategory());
+		assertEquals(3, existing.getTestsTotal());
+		assertEquals(2, existing.getTestsPassed());
+	}
+
+	@Test
+	public void testManyCards() {
+		final Random random = new Random(4711);
+		final List<Card> cards = new ArrayList<Card>();
+		for (int i = 0; i < 20000; i++) {
+			cards.add(new Card(createText(random, 3), createText(random, 6)));
+		}
+
+		// every hundredth card gets a copy with one more character
+		final Set<Set<Card>> planted = new HashSet<Set<Card>>();
+		for (int i = 0; i < 20000; i += 100) {
+			final Card card = cards.get(i);
+			final Card copy = new Card(card.getFrontSide().getText().getUnformatted(),
+					card.getBackSide().getText().getUnformatted() + "s");
+			cards.add(copy);
+			planted.add(new HashSet<Card>(Arrays.asList(card, copy)));
+		}
+		Collections.shuffle(cards, random);
+
+		final Set<Set<Card>> found = new HashSet<Set<Card>>();
+		for (final List<Card> cluster : new DuplicateDetector().findDuplicates(cards)) {
+			found.add(new HashSet<Card>(cluster));
+		}
+
+		assertEquals(planted, found);
+	}
+
+	@Test
+	public void testThreshold() {
+		final Card card = new Card("abcdefghij", "klmnopqrst");
+		final Card similar = new Card("abcdefghij", "klmnopqXYZ");
+
+		assertTrue(new DuplicateDetector(0.3).findDuplicates(Arrays.asList(card, similar)).size() == 1);
+		assertTrue(new DuplicateDetector(0.95).findDuplicates(Arrays.asList(card, similar)).isEmpty());
+	}
+
+	private static String createText(final Random random, final int words) {
+		final StringBuilder text = new StringBuilder();
+		for (int i = 0; i < words; i++) {
+			if (i > 0) {
+				text.append(' ');
+			}
+
+			for (int j = 0; j < 2 + random.nextInt(3); j++) {
+				text.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+			}
+		}
+
+		return text.toString();
+	}
+}
@@ -102,4 +102,24 @@ public class FormattedTextTest {
 		assertEquals(0, document.getStartPosition().getOffset());
 		assertEquals(8, document.getLength());
 	}
+
+	@Test
+	public void testFolded() {
+		final FormattedText text = FormattedText.formatted("<b>Crème</b> Brûlée &lt;NAÏVE&gt;");
+		assertEquals("creme brulee <naive>", text.getFolded());
+		assertTrue(text.getFolded() == text.getFolded());
+
+		// decomposed accents and plain ASCII
+		assertEquals("creme", FormattedText.fold("Cre\u0301me"));
+		assertEquals("hallo", FormattedText.fold("HaLLo"));
+		assertTrue(FormattedText.unformatted("hallo").getFolded() == FormattedText.unformatted("hallo").getUnformatted());
+	}
+
+	@Test
+	public void testFoldCase() {
+		// accents are kept, however they are encoded
+		assertEquals("cr\u00e8me", FormattedText.foldCase("CR\u00c8ME"));
+		assertEquals(FormattedText.foldCase("Cr\u00e8me"), FormattedText.foldCase("Cre\u0300me"));
+		assertFalse(FormattedText.foldCase("creme").equals(FormattedText.foldCase("cr\u00e8me")));
+	}
 }
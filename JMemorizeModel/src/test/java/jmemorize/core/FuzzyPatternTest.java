@@ -0,0 +1,69 @@
+package jmemorize.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FuzzyPatternTest {
+	private static final char[] CHARS = { 'a', 'b', 'c', 'é', 'ß', 'Ж' };
+
+	@Test
+	public void testDistance() {
+		final FuzzyPattern pattern = new FuzzyPattern("vocabulary", 2);
+		assertEquals(0, pattern.distance("my vocabulary list"));
+		assertEquals(1, pattern.distance("vocabulery"));
+		// swapped characters are two changes
+		assertEquals(2, pattern.distance("vocabluary, no"));
+		assertEquals(2, pattern.distance("vokabular"));
+		assertEquals(-1, pattern.distance("vokabel"));
+		assertEquals(-1, pattern.distance(""));
+
+		assertEquals(0, new FuzzyPattern("", 0).distance("anything"));
+	}
+
+	@Test
+	public void testMatchesMatrix() {
+		final Random random = new Random(4711);
+		for (int i = 0; i < 2000; i++) {
+			// around the length of a long
+			final String text = createText(random, 1 + random.nextInt(80));
+			final String other = createText(random, random.nextInt(100));
+
+			final FuzzyPattern pattern = new FuzzyPattern(text, Integer.MAX_VALUE);
+			assertEquals(text + " in " + other, distance(text, other), pattern.distance(other));
+		}
+	}
+
+	/**
+	 * @return the distance between the text and its closest part of the other
+	 *         text, computed with the whole matrix.
+	 */
+	private static int distance(final String text, final String other) {
+		final int[][] d = new int[text.length() + 1][other.length() + 1];
+		for (int i = 1; i <= text.length(); i++) {
+			d[i][0] = i;
+			for (int j = 1; j <= other.length(); j++) {
+				final int cost = text.charAt(i - 1) == other.charAt(j - 1) ? 0 : 1;
+				d[i][j] = Math.min(d[i - 1][j - 1] + cost, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+			}
+		}
+
+		int best = text.length();
+		for (int j = 0; j <= other.length(); j++) {
+			best = Math.min(best, d[text.length()][j]);
+		}
+
+		return best;
+	}
+
+	private static String createText(final Random random, final int length) {
+		final StringBuilder text = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			text.append(CHARS[random.nextInt(CHARS.length)]);
+		}
+
+		return text.toString();
+	}
+}
@@ -34,7 +34,7 @@ public class LessonTest {
         {
             final Lesson clone = Lesson.cloneLesson(category1);
 
-            assertEquals(lesson.getRootCategory(), clone.getRootCategory());
+            assertEquals(lesson.getRootCategory().getPath(), clone.getRootCategory().getPath());
             assertEquals(0, clone.getRootCategory().getLocalCards().size());
             final Category childCategory = clone.getRootCategory().getChildCategory("category1");
             assertNotNull(childCategory);
@@ -48,7 +48,7 @@ public class LessonTest {
         {
             final Lesson clone = Lesson.cloneLesson(category1, category3);
 
-            assertEquals(lesson.getRootCategory(), clone.getRootCategory());
+            assertEquals(lesson.getRootCategory().getPath(), clone.getRootCategory().getPath());
             assertEquals(0, clone.getRootCategory().getLocalCards().size());
             {
                 final Category childCategory = clone.getRootCategory().getChildCategory("category1");
@@ -110,12 +110,14 @@ public class LessonTest {
             final Lesson clone = lesson.cloneWithoutProgress();
 
             assertEquals(clone, lesson);
+            assertEquals(clone.hashCode(), lesson.hashCode());
         }
 
         {
             final Lesson clone = Lesson.cloneLesson(rootCategory, category1, category2, category3);
 
             assertEquals(clone, lesson);
+            assertEquals(clone.hashCode(), lesson.hashCode());
         }
     }
 
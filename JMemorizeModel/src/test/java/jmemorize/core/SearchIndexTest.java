@@ -0,0 +1,198 @@
+package jmemorize.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SearchIndexTest {
+	// includes characters that change their length or their neighbours
+	// when converted to lower case
+	private static final String[] PARTS = { "ka", "Lo", "MI", "ne", "su ", "İs", "Σα", "ος", "𐐀x",
+			"𐐨y", "ß", "K", "é", "É", "e\u0301", "\u0301", "Ça", "ﬁ" };
+
+	@Test
+	public void testMatchesSearchTool() {
+		final Random random = new Random(4711);
+		final Lesson lesson = new Lesson(false);
+		final Category root = lesson.getRootCategory();
+		final List<Category> categories = new ArrayList<Category>();
+		categories.add(root);
+		for (int i = 0; i < 4; i++) {
+			final Category child = root.addCategoryChild(new Category("child" + i));
+			categories.add(child);
+			categories.add(child.addCategoryChild(new Category("grandchild" + i)));
+		}
+
+		for (int i = 0; i < 200; i++) {
+			addCard(categories.get(random.nextInt(categories.size())), random);
+		}
+
+		final SearchIndex index = lesson.getSearchIndex();
+		assertSearches(index, categories, random);
+
+		for (int round = 0; round < 20; round++) {
+			final List<Card> cards = root.getCards();
+			for (int i = 0; i < 20; i++) {
+				final Card card = cards.get(random.nextInt(cards.size()));
+				switch (random.nextInt(4)) {
+				case 0:
+					card.setSides(FormattedText.unformatted(createText(random)),
+							FormattedText.unformatted(createText(random)));
+					break;
+				case 1:
+					if (card.getCategory() != null)
+						card.getCategory().removeCard(card);
+					break;
+				case 2:
+					if (card.getCategory() != null)
+						Category.moveCard(card, categories.get(random.nextInt(categories.size())));
+					break;
+				default:
+					addCard(categories.get(random.nextInt(categories.size())), random);
+				}
+			}
+
+			assertSearches(index, categories, random);
+		}
+
+		// categories that are added with their cards or removed
+		final Category detached = new Category("detached");
+		for (int i = 0; i < 20; i++) {
+			addCard(detached, random);
+		}
+		root.addCategoryChild(detached);
+		categories.add(detached);
+		assertSearches(index, categories, random);
+
+		final Category removed = categories.remove(1);
+		removed.remove();
+		categories.remove(removed.getChildCategories().get(0));
+		assertSearches(index, categories, random);
+	}
+
+	@Test
+	public void testRebuild() {
+		final Lesson lesson = new Lesson(false);
+		final Category root = lesson.getRootCategory();
+		final SearchIndex index = lesson.getSearchIndex();
+
+		final List<Card> cards = new ArrayList<Card>();
+		for (int i = 0; i < 5000; i++) {
+			final Card card = new Card("card " + i, "back");
+			root.addCard(card);
+			cards.add(card);
+		}
+
+		// removing most cards drops them from the posting lists
+		Category.removeCards(cards.subList(0, 4000));
+		assertEquals(Collections.singletonList(cards.get(4711)),
+				index.search("card 4711", SearchTool.FRONT_SIDE, true, root));
+		assertEquals(1000, index.search("back", SearchTool.FLIP_SIDE, true, root).size());
+	}
+
+	@Test
+	public void testPreparedIndex() throws Exception {
+		final Lesson lesson = new Lesson(false);
+		final Category root = lesson.getRootCategory();
+		final Category child = root.addCategoryChild(new Category("child"));
+		final Card edited = new Card("old front", "back");
+		final Card removed = new Card("removed", "back");
+		root.addCard(edited);
+		child.addCard(removed);
+
+		final SearchIndex index = lesson.prepareSearchIndex();
+		assertNull(lesson.prepareSearchIndex());
+		final Thread builder = new Thread(index::build);
+		builder.start();
+		builder.join();
+
+		// the changes until the index is finished are applied by finish
+		edited.setSides("new front", "back");
+		final Card added = new Card("added", "back");
+		root.addCard(added);
+		child.remove();
+		assertFalse(index.isFinished());
+		assertEquals(2, index.getCandidates("added", SearchTool.FRONT_SIDE, true, root).size());
+
+		index.finish();
+		assertTrue(index.isFinished());
+		assertEquals(Collections.singletonList(edited), index.search("new", SearchTool.FRONT_SIDE, true, root));
+		assertEquals(Collections.emptyList(), index.search("old", SearchTool.FRONT_SIDE, true, root));
+		assertEquals(Collections.singletonList(added), index.search("added", SearchTool.FRONT_SIDE, true, root));
+		assertEquals(Collections.emptyList(), index.search("removed", SearchTool.FRONT_SIDE, true, root));
+	}
+
+	@Test
+	public void testFuzzyCandidates() {
+		final Lesson lesson = new Lesson(false);
+		final Category root = lesson.getRootCategory();
+		for (int i = 0; i < 1000; i++) {
+			root.addCard(new Card("card number " + i, "back"));
+		}
+		final Card misspelled = new Card("Vokabulary", "Wortschatz");
+		root.addCard(misspelled);
+
+		final SearchIndex index = lesson.getSearchIndex();
+		final List<Card> candidates = index.getCandidates("vocabulary", SearchTool.FUZZY_MODE,
+				SearchTool.BOTH_SIDES, false, root);
+		assertEquals(Collections.singletonList(misspelled), candidates);
+		assertEquals(candidates, index.search("vocabulary", SearchTool.FUZZY_MODE, SearchTool.BOTH_SIDES, false, root));
+
+		// without the index every card would have to be checked
+		assertEquals(1001, index.getCandidates("vocabulary", SearchTool.FUZZY_MODE, SearchTool.BOTH_SIDES, true, root)
+				.size());
+		assertEquals(1001, index.getCandidates("voc.bulary", SearchTool.REGEX_MODE, SearchTool.BOTH_SIDES, false, root)
+				.size());
+	}
+
+	private static void assertSearches(final SearchIndex index, final List<Category> categories,
+			final Random random) {
+		for (int i = 0; i < 200; i++) {
+			final String text = createText(random);
+			final int start = random.nextInt(text.length());
+			final String query = text.substring(start, Math.min(text.length(), start + 1 + random.nextInt(12)));
+
+			final Category category = categories.get(random.nextInt(categories.size()));
+			final int side = random.nextInt(3);
+			final boolean matchCase = random.nextBoolean();
+
+			final int mode = random.nextInt(3);
+
+			final List<Card> expected = SearchTool.search(query, mode, side, matchCase, category.getCardsView());
+			final List<Card> found = index.search(query, mode, side, matchCase, category);
+			assertEquals(query, new HashSet<Card>(expected), new HashSet<Card>(found));
+			assertEquals(query, expected.size(), found.size());
+
+			final List<Card> candidates = index.getCandidates(query, mode, side, matchCase, category);
+			assertTrue(query, candidates.containsAll(found));
+
+			// fuzzy results are ranked by distance
+			final CardMatcher matcher = SearchTool.matcher(query, mode, side, matchCase);
+			for (int j = 1; j < found.size(); j++) {
+				assertTrue(query, matcher.distance(found.get(j - 1)) <= matcher.distance(found.get(j)));
+			}
+		}
+	}
+
+	private static void addCard(final Category category, final Random random) {
+		category.addCard(new Card(createText(random), createText(random)), random.nextInt(3));
+	}
+
+	private static String createText(final Random random) {
+		final StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1 + random.nextInt(6); i++) {
+			text.append(PARTS[random.nextInt(PARTS.length)]);
+		}
+
+		return text.toString();
+	}
+}
@@ -1,9 +1,13 @@
 package jmemorize.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.regex.PatternSyntaxException;
 
 import org.junit.Test;
 
@@ -65,4 +69,98 @@ public class SearchToolTest {
 			assertEquals(1, searchResults.size());
 		}
 	}
+
+	@Test
+	public void testIgnoreAccents() {
+		final List<Card> cards = new ArrayList<>();
+		cards.add(new Card("Café crème", "koffie"));
+		cards.add(new Card("cafe", "Koffie"));
+
+		assertEquals(2, SearchTool.search("CAFE", SearchTool.FRONT_SIDE, false, cards).size());
+		assertEquals(1, SearchTool.search("crème", SearchTool.FRONT_SIDE, true, cards).size());
+		assertEquals(1, SearchTool.search("creme", SearchTool.BOTH_SIDES, false, cards).size());
+		assertEquals(0, SearchTool.search("creme", SearchTool.BOTH_SIDES, true, cards).size());
+		assertEquals(2, SearchTool.search("köffie", SearchTool.FLIP_SIDE, false, cards).size());
+	}
+
+	@Test
+	public void testRefines() {
+		assertTrue(SearchTool.refines("hallo", "hal", true));
+		assertTrue(SearchTool.refines("hallo", "all", true));
+		assertFalse(SearchTool.refines("hallo", "HAL", true));
+		assertTrue(SearchTool.refines("hallo", "HAL", false));
+		assertTrue(SearchTool.refines("café", "cafe", false));
+		assertFalse(SearchTool.refines("café", "cafe", true));
+
+		// a final sigma becomes an ordinary one when the text goes on
+		final List<Card> cards = new ArrayList<>();
+		cards.add(new Card("ΑΣΑ", "-"));
+		assertFalse(SearchTool.refines("ΑΣΑ", "ΑΣ", false));
+		assertEquals(0, SearchTool.search("ΑΣ", SearchTool.FRONT_SIDE, false, cards).size());
+		assertEquals(1, SearchTool.search("ΑΣΑ", SearchTool.FRONT_SIDE, false, cards).size());
+	}
+
+	@Test
+	public void testMatcher() {
+		final List<Card> cards = new ArrayList<>();
+		cards.add(new Card("Café crème", "koffie"));
+		cards.add(new Card("cafe", "Koffie"));
+		cards.add(new Card("thee", "tea"));
+
+		for (final String text : new String[] { "CAFE", "crème", "Koffie", "e" }) {
+			for (int side = 0; side < 3; side++) {
+				for (final boolean matchCase : new boolean[] { true, false }) {
+					final List<Card> matched = new ArrayList<>(cards);
+					matched.removeIf(SearchTool.matcher(text, side, matchCase).negate());
+					assertEquals(SearchTool.search(text, side, matchCase, cards), matched);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRegex() {
+		final List<Card> cards = new ArrayList<>();
+		cards.add(new Card("der Hund", "dog"));
+		cards.add(new Card("die Katze", "cat"));
+		cards.add(new Card("das Pferd", "horse"));
+
+		assertEquals(2, SearchTool.search("^d[ie][er] ", SearchTool.REGEX_MODE, SearchTool.FRONT_SIDE, true, cards).size());
+		assertEquals(0, SearchTool.search("^DER", SearchTool.REGEX_MODE, SearchTool.FRONT_SIDE, true, cards).size());
+		assertEquals(1, SearchTool.search("^DER", SearchTool.REGEX_MODE, SearchTool.FRONT_SIDE, false, cards).size());
+		assertEquals(2, SearchTool.search("E$", SearchTool.REGEX_MODE, SearchTool.BOTH_SIDES, false, cards).size());
+	}
+
+	@Test(expected = PatternSyntaxException.class)
+	public void testInvalidRegex() {
+		SearchTool.matcher("[ab", SearchTool.REGEX_MODE, SearchTool.BOTH_SIDES, false);
+	}
+
+	@Test
+	public void testFuzzy() {
+		final List<Card> cards = new ArrayList<>();
+		final Card vocabulary = new Card("Vokabular", "vocabulary");
+		final Card vocabularies = new Card("vocabularies", "-");
+		final Card vocabel = new Card("Vokabel", "word");
+		final Card coffee = new Card("Café", "coffee");
+		cards.add(vocabel);
+		cards.add(vocabulary);
+		cards.add(vocabularies);
+		cards.add(coffee);
+
+		// the closest cards come first
+		assertEquals(Arrays.asList(vocabularies, vocabulary),
+				SearchTool.search("vocabulary", SearchTool.FUZZY_MODE, SearchTool.FRONT_SIDE, false, cards));
+		assertEquals(Arrays.asList(vocabulary, vocabularies),
+				SearchTool.search("vocabulary", SearchTool.FUZZY_MODE, SearchTool.BOTH_SIDES, false, cards));
+		assertEquals(Arrays.asList(vocabulary),
+				SearchTool.search("VOCABULARY", SearchTool.FUZZY_MODE, SearchTool.FLIP_SIDE, false, cards));
+		assertEquals(0, SearchTool.search("VOCABULARY", SearchTool.FUZZY_MODE, SearchTool.FLIP_SIDE, true, cards).size());
+		assertEquals(Arrays.asList(coffee),
+				SearchTool.search("caffe", SearchTool.FUZZY_MODE, SearchTool.FRONT_SIDE, false, cards));
+
+		assertEquals(0, SearchTool.getMaxDistance("ab"));
+		assertEquals(1, SearchTool.getMaxDistance("abcde"));
+		assertEquals(2, SearchTool.getMaxDistance("abcdef"));
+	}
 }
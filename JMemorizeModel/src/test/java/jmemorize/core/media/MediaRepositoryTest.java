@@ -1,15 +1,24 @@
 package jmemorize.core.media;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.ImageIcon;
 
+import jmemorize.core.media.MediaRepository.MediaItem;
+import jmemorize.core.media.MediaRepository.MediaSource;
+
 import org.junit.Test;
 
 public class MediaRepositoryTest {
@@ -50,4 +59,124 @@ public class MediaRepositoryTest {
 		
 
 	}
+
+	@Test
+	public void testImageReadOnDemand() throws IOException {
+		final MediaRepository mediaRepository = MediaRepository.getInstance();
+		mediaRepository.clear();
+
+		final byte[] bytes = { 1, 2, 3 };
+		final AtomicInteger opened = new AtomicInteger();
+		final String id = mediaRepository.addImage(() -> {
+			opened.incrementAndGet();
+			return new ByteArrayInputStream(bytes);
+		}, "lazy.png");
+
+		assertEquals("lazy.png", id);
+		assertEquals(0, opened.get());
+
+		final MediaItem item = mediaRepository.getImageItems().iterator().next();
+		assertArrayEquals(bytes, item.getBytes());
+		assertArrayEquals(bytes, item.getBytes());
+		assertEquals(1, opened.get());
+
+		mediaRepository.clear();
+	}
+
+	@Test
+	public void testByteBudget() throws IOException {
+		final MediaRepository mediaRepository = MediaRepository.getInstance();
+		mediaRepository.clear();
+
+		final long byteBudget = mediaRepository.getByteBudget();
+		mediaRepository.setByteBudget(250);
+
+		try {
+			final AtomicInteger opened = new AtomicInteger();
+			final MediaSource source = () -> {
+				opened.incrementAndGet();
+				return new ByteArrayInputStream(new byte[100]);
+			};
+
+			for (int i = 0; i < 5; i++) {
+				mediaRepository.addImage(source, "image" + i + ".png");
+			}
+
+			for (final MediaItem item : mediaRepository.getImageItems()) {
+				assertEquals(100, item.getBytes().length);
+				assertTrue(mediaRepository.getLoadedBytes() <= 250);
+			}
+			assertEquals(5, opened.get());
+			assertEquals(200, mediaRepository.getLoadedBytes());
+
+			// items that were dropped are read again, but streamed without
+			// being kept
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			for (final MediaItem item : mediaRepository.getImageItems()) {
+				item.writeTo(out);
+			}
+			assertEquals(500, out.size());
+			assertEquals(8, opened.get());
+			assertEquals(200, mediaRepository.getLoadedBytes());
+
+			// an item bigger than the budget is still kept when it is the
+			// last one read
+			mediaRepository.setByteBudget(50);
+			assertEquals(100, mediaRepository.getLoadedBytes());
+		} finally {
+			mediaRepository.setByteBudget(byteBudget);
+			mediaRepository.clear();
+		}
+	}
+
+	@Test
+	public void testDuplicates() throws IOException {
+		final MediaRepository mediaRepository = MediaRepository.getInstance();
+		mediaRepository.clear();
+
+		final byte[] bytes = { 1, 2, 3, 4 };
+		final String id = mediaRepository.addImage(new ByteArrayInputStream(bytes), "a.png");
+		assertEquals(id, mediaRepository.addImage(new ByteArrayInputStream(bytes), "b.png"));
+		assertEquals(1, mediaRepository.getKeys().size());
+		assertEquals(1, mediaRepository.getDuplicates());
+		assertEquals(4, mediaRepository.getDuplicateBytes());
+
+		// images that aren't read yet are only compared if their length fits
+		final AtomicInteger opened = new AtomicInteger();
+		final String lazyId = mediaRepository.addImage(new MediaSource() {
+			public InputStream open() {
+				opened.incrementAndGet();
+				return new ByteArrayInputStream(new byte[] { 5, 6, 7, 8 });
+			}
+
+			public long length() {
+				return 4;
+			}
+		}, "c.png");
+		mediaRepository.addImage(() -> {
+			opened.incrementAndGet();
+			return new ByteArrayInputStream(new byte[] { 5, 6, 7, 8 });
+		}, "d.png");
+		assertEquals(lazyId, mediaRepository.addImage(new ByteArrayInputStream(new byte[] { 5, 6, 7, 8 }), "e.png"));
+		assertEquals(1, opened.get());
+		assertEquals(3, mediaRepository.getKeys().size());
+
+		// the image without a known length is only merged once it was read
+		assertEquals(0, mediaRepository.mergeDuplicates());
+		mediaRepository.getImageItems().forEach(item -> item.getBytes());
+		assertEquals(1, mediaRepository.mergeDuplicates());
+		assertEquals(2, mediaRepository.getKeys().size());
+		assertEquals(lazyId, mediaRepository.resolveId("d.png"));
+		assertEquals(3, mediaRepository.getDuplicates());
+
+		// an ID of a merged image isn't given to a new image
+		assertEquals("d_0.png", mediaRepository.addImage(new ByteArrayInputStream(new byte[] { 9 }), "d.png"));
+
+		mediaRepository.retain(Collections.singleton("d.png"));
+		assertEquals(Collections.singleton(lazyId), mediaRepository.getKeys());
+		assertEquals(lazyId, mediaRepository.resolveId("d.png"));
+		assertEquals("b.png", mediaRepository.resolveId("b.png"));
+
+		mediaRepository.clear();
+	}
 }
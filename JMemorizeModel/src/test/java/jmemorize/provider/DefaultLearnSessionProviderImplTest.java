@@ -1,5 +1,15 @@
 package jmemorize.provider;
 
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.LessonObserver;
+
 import org.junit.Test;
 
 public class DefaultLearnSessionProviderImplTest {
@@ -7,4 +17,40 @@ public class DefaultLearnSessionProviderImplTest {
 	public void testNewLesson() {
 
 	}
+
+	@Test
+	public void testBatchModifiesOnce() {
+		final DefaultLearnSessionProviderImpl provider = new DefaultLearnSessionProviderImpl();
+		final Lesson lesson = new Lesson(false);
+		provider.setLesson(lesson);
+
+		final List<Card> cards = new ArrayList<Card>();
+		for (int i = 0; i < 100; i++) {
+			cards.add(new Card("front " + i, "back"));
+		}
+		lesson.getRootCategory().addCards(cards, 0);
+
+		final int[] modified = new int[1];
+		provider.addLessonObserver(new LessonObserver() {
+			@Override
+			public void lessonLoaded(final Lesson lesson) {
+			}
+
+			@Override
+			public void lessonModified(final Lesson lesson) {
+				modified[0]++;
+			}
+
+			@Override
+			public void lessonSaved(final Lesson lesson) {
+			}
+
+			@Override
+			public void lessonClosed(final Lesson lesson) {
+			}
+		});
+
+		Category.removeCards(cards);
+		assertEquals(1, modified[0]);
+	}
 }
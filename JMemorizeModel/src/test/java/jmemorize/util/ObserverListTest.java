@@ -0,0 +1,63 @@
+package jmemorize.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ObserverListTest {
+	@Test
+	public void testAddRemove() {
+		final ObserverList<String> list = new ObserverList<String>(new String[0]);
+		assertTrue(list.isEmpty());
+
+		list.add("a");
+		list.add("b");
+		list.add("a");
+		assertArrayEquals(new String[] { "a", "b", "a" }, list.snapshot());
+
+		assertTrue(list.remove("a"));
+		assertArrayEquals(new String[] { "b", "a" }, list.snapshot());
+		assertFalse(list.remove("c"));
+		assertEquals(2, list.size());
+	}
+
+	@Test
+	public void testSnapshotIsStable() {
+		final ObserverList<Runnable> list = new ObserverList<Runnable>(new Runnable[0]);
+		final List<String> calls = new ArrayList<String>();
+
+		final Runnable second = () -> calls.add("second");
+		final Runnable first = new Runnable() {
+			@Override
+			public void run() {
+				calls.add("first");
+
+				// changes during dispatch only affect the next dispatch
+				list.remove(this);
+				list.remove(second);
+				list.add(() -> calls.add("third"));
+			}
+		};
+		list.add(first);
+		list.add(second);
+
+		final Runnable[] snapshot = list.snapshot();
+		assertSame(snapshot, list.snapshot());
+
+		for (final Runnable observer : snapshot) {
+			observer.run();
+		}
+		for (final Runnable observer : list.snapshot()) {
+			observer.run();
+		}
+
+		assertEquals("[first, second, third]", calls.toString());
+	}
+}
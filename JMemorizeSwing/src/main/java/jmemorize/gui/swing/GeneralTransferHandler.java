@@ -26,6 +26,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.imageio.ImageIO;
@@ -317,10 +318,12 @@ public class GeneralTransferHandler extends TransferHandler
             if (t.isDataFlavorSupported(CARDS_FLAVOR))
             {
                 List<Card> cards = (List<Card>)t.getTransferData(CARDS_FLAVOR);
+                List<Card> copies = new ArrayList<Card>(cards.size());
                 for (Card card : cards)
                 {
-                    targetCategory.addCard((Card)card.clone(), card.getLevel());
+                    copies.add((Card)card.clone());
                 }
+                targetCategory.addCards(copies);
     
                 return true;
             }
@@ -467,14 +470,8 @@ public class GeneralTransferHandler extends TransferHandler
         {
             if (data.isDataFlavorSupported(CARDS_FLAVOR))
             {
-                CardTable table = (CardTable)source;
-                Category category = table.getView().getCategory();
-
                 List<Card> cards = (List<Card>)data.getTransferData(CARDS_FLAVOR);
-                for (Card card : cards)
-                {
-                    category.removeCard(card);
-                }
+                Category.removeCards(cards);
             }
             else if (data.isDataFlavorSupported(CATEGORY_FLAVOR))
             {
@@ -20,8 +20,10 @@ package jmemorize.gui.swing.actions;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
+import java.util.Date;
 
 import jmemorize.core.Card;
+import jmemorize.core.CardBatch;
 import jmemorize.core.Category;
 import jmemorize.core.CategoryObserver;
 import jmemorize.core.LC;
@@ -90,6 +92,14 @@ public class LearnAction extends AbstractSessionDisabledAction
         updateEnablement();
     }
 
+    /* (non-Javadoc)
+     * @see jmemorize.core.CategoryObserver
+     */
+    public void onCardsEvent(int type, CardBatch batch)
+    {
+        updateEnablement();
+    }
+
     /* (non-Javadoc)
      * @see jmemorize.core.CategoryObserver
      */
@@ -114,8 +124,9 @@ public class LearnAction extends AbstractSessionDisabledAction
         boolean hasSelectedCards = m_selectionProvider.getSelectedCards() != null &&
             !m_selectionProvider.getSelectedCards().isEmpty();
             
-        boolean hasLearnableCards = m_selectionProvider.getCategory() != null && 
-            !m_selectionProvider.getCategory().getLearnableCards().isEmpty();
+        Category category = m_selectionProvider.getCategory();
+        boolean hasLearnableCards = category != null && 
+            (category.getCardCount(0) > 0 || category.getExpiredCardCount(new Date()) > 0);
         
         setEnabled(!runningSession && (hasLearnableCards || hasSelectedCards)); 
     }
@@ -77,17 +77,14 @@ public class RemoveAction extends AbstractAction2 implements SelectionObserver
                 return;
             }
 
-            for (Card card : selectedCards)
-            {
-                card.getCategory().removeCard(card); // HACK
-            }
+            Category.removeCards(selectedCards);
         }
         else if (selectedCategories.size() > 0)
         {
             
             for (Category category : selectedCategories)
             {
-                int cardCount = category.getCards().size();
+                int cardCount = category.getCardCount();
 
                 if (cardCount > 0)
                 {
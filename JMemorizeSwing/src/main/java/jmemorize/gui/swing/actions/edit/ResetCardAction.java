@@ -23,7 +23,7 @@ import java.text.MessageFormat;
 
 import javax.swing.JOptionPane;
 
-import jmemorize.core.Card;
+import jmemorize.core.Category;
 import jmemorize.core.LC;
 import jmemorize.core.Localization;
 import jmemorize.gui.swing.SelectionProvider;
@@ -65,10 +65,7 @@ public class ResetCardAction extends AbstractAction2 implements SelectionObserve
 
         if (n == JOptionPane.OK_OPTION)
         {
-            for (Card card : m_selectionProvider.getSelectedCards())
-            {
-                m_selectionProvider.getCategory().resetCard(card);
-            }
+            Category.resetCards(m_selectionProvider.getSelectedCards());
         }
     }
 
@@ -30,7 +30,12 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.PatternSyntaxException;
 
 import javax.swing.AbstractAction;
 import javax.swing.ButtonGroup;
@@ -42,19 +47,29 @@ import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JScrollPane;
 import javax.swing.KeyStroke;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.EtchedBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.PopupMenuEvent;
 import javax.swing.event.PopupMenuListener;
+import javax.swing.text.JTextComponent;
 
 import jmemorize.core.Card;
+import jmemorize.core.CardBatch;
+import jmemorize.core.CardMatcher;
 import jmemorize.core.Category;
 import jmemorize.core.CategoryObserver;
 import jmemorize.core.Events;
 import jmemorize.core.LC;
+import jmemorize.core.Lesson;
 import jmemorize.core.Localization;
+import jmemorize.core.Model;
 import jmemorize.core.Model.ProgramEndObserver;
+import jmemorize.core.SearchIndex;
 import jmemorize.core.SearchTool;
 import jmemorize.core.Settings;
 import jmemorize.gui.swing.Main;
@@ -79,6 +94,12 @@ public class FindFrame extends EscapableFrame implements CategoryObserver,
 		ProgramEndObserver {
 	private final static String FRAME_ID = "findframe";
 
+	// milliseconds without typing before the typed text is searched
+	private final static int TYPING_DELAY = 150;
+
+	// number of cards checked between two batches of results
+	private final static int BATCH_SIZE = 8192;
+
 	private final CardTable m_cardTable = new CardTable(this,
 			Main.USER_PREFS.node("find.table"), //$NON-NLS-1$
 			new int[] { CardTable.COLUMN_FRONTSIDE, CardTable.COLUMN_BACKSIDE,
@@ -98,15 +119,31 @@ public class FindFrame extends EscapableFrame implements CategoryObserver,
 	private final JRadioButton m_radioBackSide = new JRadioButton(
 			Localization.get(LC.FLIPSIDE));
 
+	private final JRadioButton m_radioText = new JRadioButton(
+			Localization.get(LC.SEARCH_MODE_TEXT), true);
+	private final JRadioButton m_radioRegex = new JRadioButton(
+			Localization.get(LC.SEARCH_MODE_REGEX));
+	private final JRadioButton m_radioFuzzy = new JRadioButton(
+			Localization.get(LC.SEARCH_MODE_FUZZY));
+
 	private final CategoryComboBox m_categoryBox = new CategoryComboBox();
 	private StatusBar m_statusBar = new StatusBar();
 
-	// these vars are stored when search button is clicked
+	// these vars are stored when a search is started
 	private String m_searchText;
+	private int m_searchMode;
 	private int m_searchSides;
 	private boolean m_matchCase;
 	private Category m_searchCategory;
 
+	// the cards that can contain the search text. These are the results once
+	// the search is done. null if the next search has to start from scratch.
+	private List<Card> m_searchCards;
+	private SearchWorker m_searchWorker;
+
+	private final Timer m_typingTimer = new Timer(TYPING_DELAY,
+			e -> searchTypedText());
+
 	private static FindFrame m_instance;
 
 	private class FindAction extends AbstractAction2 {
@@ -120,6 +157,167 @@ public class FindFrame extends EscapableFrame implements CategoryObserver,
 		}
 	}
 
+	/**
+	 * Checks cards on a background thread and adds the ones that contain the
+	 * search text to the card table in batches. Ranked results are ordered
+	 * by their distance to the search text, the closest first, and shown
+	 * once all cards have been checked.
+	 */
+	private class SearchWorker extends SwingWorker<List<Card>, List<Card>> {
+		private final List<Card> m_cards;
+		private final CardMatcher m_matcher;
+		private final boolean m_ranked;
+
+		// the cards of the previous search are shown until the first batch
+		private boolean m_cleared;
+
+		public SearchWorker(final List<Card> cards,
+				final CardMatcher matcher, final boolean ranked) {
+			m_cards = cards;
+			m_matcher = matcher;
+			m_ranked = ranked;
+		}
+
+		@Override
+		protected List<Card> doInBackground() {
+			if (m_ranked)
+				return rank();
+
+			final List<Card> foundCards = new ArrayList<Card>();
+			int published = 0;
+
+			for (int i = 0; i < m_cards.size(); i++) {
+				if (i % BATCH_SIZE == 0) {
+					if (isCancelled())
+						return null;
+
+					if (foundCards.size() > published) {
+						publish(new ArrayList<Card>(foundCards.subList(
+								published, foundCards.size())));
+						published = foundCards.size();
+					}
+				}
+
+				final Card card = m_cards.get(i);
+				if (m_matcher.test(card)) {
+					foundCards.add(card);
+				}
+			}
+
+			if (foundCards.size() > published) {
+				publish(new ArrayList<Card>(foundCards.subList(published,
+						foundCards.size())));
+			}
+
+			return foundCards;
+		}
+
+		private List<Card> rank() {
+			// the distances are small, so there is one list per distance,
+			// like in SearchTool.search
+			final List<List<Card>> foundCards = new ArrayList<List<Card>>();
+
+			for (int i = 0; i < m_cards.size(); i++) {
+				if (i % BATCH_SIZE == 0 && isCancelled())
+					return null;
+
+				final Card card = m_cards.get(i);
+				final int distance = m_matcher.distance(card);
+				if (distance >= 0) {
+					while (foundCards.size() <= distance) {
+						foundCards.add(new ArrayList<Card>());
+					}
+
+					foundCards.get(distance).add(card);
+				}
+			}
+
+			final List<Card> rankedCards = new ArrayList<Card>();
+			for (final List<Card> distanceCards : foundCards) {
+				rankedCards.addAll(distanceCards);
+			}
+
+			return rankedCards;
+		}
+
+		@Override
+		protected void process(final List<List<Card>> batches) {
+			if (this != m_searchWorker || isCancelled())
+				return;
+
+			final List<Card> cards = new ArrayList<Card>();
+			for (final List<Card> batch : batches) {
+				cards.addAll(batch);
+			}
+
+			if (m_cleared) {
+				m_cardTable.getView().addCards(cards);
+			} else {
+				m_cardTable.getView().setCards(cards, m_searchCategory);
+				m_cleared = true;
+			}
+		}
+
+		@Override
+		protected void done() {
+			if (this != m_searchWorker || isCancelled())
+				return;
+
+			try {
+				m_searchCards = get();
+			} catch (final InterruptedException | ExecutionException e) {
+				Model.logThrowable("Error searching cards", e); //$NON-NLS-1$
+				return;
+			}
+
+			// the table changes its rows when cards are removed, the
+			// results of a search don't
+			if (m_ranked) {
+				m_cardTable.getView().setCards(
+						new ArrayList<Card>(m_searchCards), m_searchCategory);
+				return;
+			}
+
+			// the last batches can still be on their way, but without any
+			// there's nothing to replace the previous results
+			if (m_searchCards.isEmpty()) {
+				m_cardTable.getView().setCards(new ArrayList<Card>(0),
+						m_searchCategory);
+			}
+		}
+	}
+
+	/**
+	 * Builds the search index of a lesson on a background thread and
+	 * finishes it on the event dispatch thread. Searches check all cards
+	 * until then.
+	 */
+	private static class IndexWorker extends SwingWorker<Void, Void> {
+		private final SearchIndex m_index;
+
+		public IndexWorker(final SearchIndex index) {
+			m_index = index;
+		}
+
+		@Override
+		protected Void doInBackground() {
+			m_index.build();
+			return null;
+		}
+
+		@Override
+		protected void done() {
+			try {
+				get();
+			} catch (final InterruptedException | ExecutionException e) {
+				Model.logThrowable("Error building search index", e); //$NON-NLS-1$
+				return;
+			}
+
+			m_index.finish();
+		}
+	}
+
 	private class CloseAction extends AbstractAction2 {
 		public CloseAction() {
 			setName(Localization.get(LC.CANCEL));
@@ -155,6 +353,9 @@ public class FindFrame extends EscapableFrame implements CategoryObserver,
 	 * Remove all search results.
 	 */
 	public void clear() {
+		cancelSearch();
+		m_searchCards = null;
+
 		final Category selectedCategory = m_categoryBox.getSelectedCategory();
 		m_cardTable.getView()
 				.setCards(new ArrayList<Card>(0), selectedCategory);
@@ -166,28 +367,8 @@ public class FindFrame extends EscapableFrame implements CategoryObserver,
 		if (searchText == null || searchText.equals("")) //$NON-NLS-1$
 			return;
 
-		m_searchText = searchText;
-		m_recentSearchTexts.push(m_searchText);
-
-		if (m_radioBothSides.isSelected()) {
-			m_searchSides = SearchTool.BOTH_SIDES;
-		} else {
-			m_searchSides = m_radioFrontSide.isSelected() ? SearchTool.FRONT_SIDE
-					: SearchTool.FLIP_SIDE;
-		}
-
-		if (m_searchCategory != null) {
-			m_searchCategory.removeObserver(FindFrame.this);
-		}
-		m_searchCategory = m_categoryBox.getSelectedCategory();
-		m_searchCategory.addObserver(FindFrame.this);
-
-		m_matchCase = m_matchCaseBox.isSelected();
-
-		final List<Card> results = SearchTool.search(m_searchText,
-				m_searchSides, m_matchCase, m_searchCategory.getCards());
-
-		m_cardTable.getView().setCards(results, m_searchCategory);
+		m_recentSearchTexts.push(searchText);
+		startSearch(searchText);
 	}
 
 	@Override
@@ -209,6 +390,26 @@ public class FindFrame extends EscapableFrame implements CategoryObserver,
 		if (type == Events.REMOVED_EVENT) {
 			cards.remove(card);
 		}
+		restartSearch();
+
+		m_cardTable.getView().setCards(cards, m_searchCategory);
+		updateStatusBar();
+	}
+
+	/*
+	 * @see jmemorize.core.CategoryObserver#onCardsEvent
+	 */
+	@Override
+	public void onCardsEvent(final int type, final CardBatch batch) {
+		final List<Card> cards = m_cardTable.getView().getCards();
+
+		if (type == Events.REMOVED_EVENT) {
+			final Set<Card> removed = Collections
+					.newSetFromMap(new IdentityHashMap<Card, Boolean>());
+			removed.addAll(batch.getCards());
+			cards.removeIf(removed::contains);
+		}
+		restartSearch();
 
 		m_cardTable.getView().setCards(cards, m_searchCategory);
 		updateStatusBar();
@@ -236,6 +437,119 @@ public class FindFrame extends EscapableFrame implements CategoryObserver,
 		Settings.storeFrameState(this, FRAME_ID);
 	}
 
+	/**
+	 * Starts searching given text in the background and stops the current
+	 * search. If the cards that contain the text are a subset of the ones
+	 * found for the previous text, only those are searched again.
+	 */
+	private void startSearch(final String text) {
+		m_typingTimer.stop();
+
+		final int mode;
+		if (m_radioRegex.isSelected()) {
+			mode = SearchTool.REGEX_MODE;
+		} else {
+			mode = m_radioFuzzy.isSelected() ? SearchTool.FUZZY_MODE
+					: SearchTool.TEXT_MODE;
+		}
+
+		final int sides;
+		if (m_radioBothSides.isSelected()) {
+			sides = SearchTool.BOTH_SIDES;
+		} else {
+			sides = m_radioFrontSide.isSelected() ? SearchTool.FRONT_SIDE
+					: SearchTool.FLIP_SIDE;
+		}
+		final boolean matchCase = m_matchCaseBox.isSelected();
+		final Category category = m_categoryBox.getSelectedCategory();
+
+		final CardMatcher matcher;
+		try {
+			matcher = SearchTool.matcher(text, mode, sides, matchCase);
+		} catch (final PatternSyntaxException e) {
+			// regular expressions are often incomplete while typing
+			clear();
+			return;
+		}
+
+		final List<Card> cards;
+		if (m_searchCards != null && mode == SearchTool.TEXT_MODE
+				&& mode == m_searchMode && sides == m_searchSides
+				&& matchCase == m_matchCase && category == m_searchCategory
+				&& SearchTool.refines(text, m_searchText, matchCase)) {
+			cards = m_searchCards;
+		} else {
+			// the lesson keeps an index of its cards, which is built in the
+			// background on first use
+			final Lesson lesson = Main.getInstance().getLesson();
+			if (lesson.getRootCategory() == m_categoryBox.getRootCategory()) {
+				final SearchIndex index = lesson.prepareSearchIndex();
+				if (index != null) {
+					new IndexWorker(index).execute();
+				}
+
+				cards = lesson.getSearchIndex().getCandidates(text, mode,
+						sides, matchCase, category);
+			} else {
+				cards = new ArrayList<Card>(category.getCardsView());
+			}
+		}
+
+		cancelSearch();
+
+		if (m_searchCategory != null) {
+			m_searchCategory.removeObserver(FindFrame.this);
+		}
+		m_searchCategory = category;
+		m_searchCategory.addObserver(FindFrame.this);
+
+		// fuzzy results are shown closest first until sorted by a column
+		final boolean ranked = mode == SearchTool.FUZZY_MODE;
+		if (ranked != (m_searchMode == SearchTool.FUZZY_MODE)
+				|| m_searchText == null) {
+			m_cardTable.getView().setRanked(ranked);
+		}
+
+		m_searchText = text;
+		m_searchMode = mode;
+		m_searchSides = sides;
+		m_matchCase = matchCase;
+		m_searchCards = cards;
+
+		m_searchWorker = new SearchWorker(cards, matcher, ranked);
+		m_searchWorker.execute();
+	}
+
+	private void searchTypedText() {
+		final String text = (String) m_searchTextBox.getEditor().getItem();
+
+		if (text == null || text.equals("")) { //$NON-NLS-1$
+			clear();
+		} else {
+			startSearch(text);
+		}
+	}
+
+	private void cancelSearch() {
+		if (m_searchWorker != null) {
+			m_searchWorker.cancel(false);
+			m_searchWorker = null;
+		}
+	}
+
+	/**
+	 * Cards that are found for the search text can change with every card
+	 * event, so the next search has to start from scratch. A running search
+	 * is started again.
+	 */
+	private void restartSearch() {
+		m_searchCards = null;
+
+		if (m_searchWorker != null && !m_searchWorker.isDone()) {
+			startSearch(m_searchText);
+		}
+	}
+
 	private void updateStatusBar() {
 		m_statusBar.setCards(m_cardTable.getView().getCards());
 	}
@@ -250,7 +564,7 @@ public class FindFrame extends EscapableFrame implements CategoryObserver,
 
 		final FormLayout layout = new FormLayout(
 				"right:pref, 3dlu, pref:grow, 3dlu, pref:grow, 3dlu, pref:grow", // columns // //$NON-NLS-1$
-				"p, 3dlu, p, 3dlu, p, 3dlu, p, 9dlu, p, 9dlu, fill:d:grow"); // rows // //$NON-NLS-1$
+				"p, 3dlu, p, 3dlu, p, 3dlu, p, 3dlu, p, 9dlu, p, 9dlu, fill:d:grow"); // rows // //$NON-NLS-1$
 
 		final CellConstraints cc = new CellConstraints();
 
@@ -268,11 +582,16 @@ public class FindFrame extends EscapableFrame implements CategoryObserver,
 		builder.add(m_radioFrontSide, cc.xy(5, 5));
 		builder.add(m_radioBackSide, cc.xy(7, 5));
 
-		builder.add(m_matchCaseBox, cc.xyw(3, 7, 5));
+		builder.addLabel(Localization.get(LC.SEARCH_MODE), cc.xy(1, 7));
+		builder.add(m_radioText, cc.xy(3, 7));
+		builder.add(m_radioRegex, cc.xy(5, 7));
+		builder.add(m_radioFuzzy, cc.xy(7, 7));
+
+		builder.add(m_matchCaseBox, cc.xyw(3, 9, 5));
 
 		builder.addSeparator(
-				Localization.get("FindTool.RESULTS"), cc.xyw(1, 9, 7)); //$NON-NLS-1$
-		builder.add(scrollPane, cc.xyw(1, 11, 7));
+				Localization.get("FindTool.RESULTS"), cc.xyw(1, 11, 7)); //$NON-NLS-1$
+		builder.add(scrollPane, cc.xyw(1, 13, 7));
 
 		return builder.getPanel();
 	}
@@ -299,6 +618,27 @@ public class FindFrame extends EscapableFrame implements CategoryObserver,
 			}
 		});
 
+		// search while typing
+		m_typingTimer.setRepeats(false);
+		final JTextComponent textField = (JTextComponent) m_searchTextBox
+				.getEditor().getEditorComponent();
+		textField.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate(final DocumentEvent e) {
+				m_typingTimer.restart();
+			}
+
+			@Override
+			public void removeUpdate(final DocumentEvent e) {
+				m_typingTimer.restart();
+			}
+
+			@Override
+			public void changedUpdate(final DocumentEvent e) {
+				// ignore attribute changes
+			}
+		});
+
 		final Component comp = m_searchTextBox.getEditor().getEditorComponent();
 		comp.addKeyListener(new KeyListener() {
 			@Override
@@ -361,6 +701,11 @@ public class FindFrame extends EscapableFrame implements CategoryObserver,
 		group.add(m_radioFrontSide);
 		group.add(m_radioBackSide);
 
+		final ButtonGroup modeGroup = new ButtonGroup();
+		modeGroup.add(m_radioText);
+		modeGroup.add(m_radioRegex);
+		modeGroup.add(m_radioFuzzy);
+
 		final JPanel mainPanel = new JPanel(new BorderLayout());
 		mainPanel.add(buildSearchPanel(), BorderLayout.CENTER);
 		mainPanel.add(buildSearchBar(), BorderLayout.SOUTH);
@@ -116,7 +116,7 @@ public class MainFrame extends JFrame implements CategoryObserver, SelectionProv
 	 */
 	private static final long serialVersionUID = 2885593013862395823L;
 	static public final TransferHandler TRANSFER_HANDLER = new GeneralTransferHandler();
-	public static final ExtensionFileFilter FILE_FILTER = new ExtensionFileFilter("jml",
+	public static final ExtensionFileFilter FILE_FILTER = new ExtensionFileFilter("jml jmb",
 			Localization.get(LC.FILE_FILTER_DESC));
 
 	private static final String FRAME_ID = "main";
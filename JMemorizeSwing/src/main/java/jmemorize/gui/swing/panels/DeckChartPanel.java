@@ -26,6 +26,7 @@ import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
@@ -33,6 +34,7 @@ import javax.swing.JPanel;
 import javax.swing.border.EmptyBorder;
 
 import jmemorize.core.Card;
+import jmemorize.core.CardBatch;
 import jmemorize.core.Category;
 import jmemorize.core.CategoryObserver;
 import jmemorize.core.LC;
@@ -129,7 +131,7 @@ public class DeckChartPanel extends JPanel implements CategoryObserver {
 				final CategoryAxis domainAxis, final ValueAxis rangeAxis,
 				final CategoryDataset data, final int row, final int column,
 				final int pass) {
-			if (column - 1 == m_deck && m_category.getCards(m_deck).size() > 0) {
+			if (column - 1 == m_deck && m_category.getCardCount(m_deck) > 0) {
 				setOutlinePaint(ColorConstants.SELECTION_COLOR, false);
 				setBaseItemLabelFont(m_boldFont, false);
 				setItemLabelFont(m_boldFont, false);
@@ -252,6 +254,16 @@ public class DeckChartPanel extends JPanel implements CategoryObserver {
 		updateBars();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see jmemorize.core.CategoryObserver
+	 */
+	@Override
+	public void onCardsEvent(final int type, final CardBatch batch) {
+		updateBars();
+	}
+
 	private JFreeChart createChart() {
 		m_dataset = createDefaultDataSet();
 
@@ -350,26 +362,26 @@ public class DeckChartPanel extends JPanel implements CategoryObserver {
 	}
 
 	private void updateSummaryBar() {
-		final int learned = m_category.getLearnedCards().size();
-		final int expired = m_category.getExpiredCards().size();
-		final int unlearned = m_category.getUnlearnedCards().size();
+		final int unlearned = m_category.getCardCount(0);
+		final int expired = m_category.getExpiredCardCount(new Date());
+		final int learned = m_category.getCardCount() - unlearned - expired;
 
 		setValues(m_dataset, SUMMARY_BAR_NAME, unlearned, expired, learned);
 	}
 
 	private void updateBar(final int level) {
 		if (level == 0) {
-			final int unlearnedCards = m_category.getCards(level).size();
+			final int unlearnedCards = m_category.getCardCount(level);
 			setValues(m_dataset, DECK0_NAME, unlearnedCards, 0, 0);
 		} else {
 			final String deckLabel = getDeckLabel(level);
 			if (level >= m_category.getNumberOfDecks()) {
 				setValues(m_dataset, deckLabel, 0, 0, 0);
 			} else {
-				final int learnedCards = m_category.getLearnedCards(level)
-						.size();
-				final int expiredCards = m_category.getExpiredCards(level)
-						.size();
+				final int expiredCards = m_category.getExpiredCardCount(level,
+						new Date());
+				final int learnedCards = m_category.getCardCount(level)
+						- expiredCards;
 
 				setValues(m_dataset, deckLabel, 0, expiredCards, learnedCards);
 			}
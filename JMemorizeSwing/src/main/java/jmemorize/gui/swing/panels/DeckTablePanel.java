@@ -38,6 +38,7 @@ import javax.swing.UIManager;
 import javax.swing.border.EtchedBorder;
 
 import jmemorize.core.Card;
+import jmemorize.core.CardBatch;
 import jmemorize.core.Category;
 import jmemorize.core.CategoryObserver;
 import jmemorize.core.Localization;
@@ -70,7 +71,7 @@ public class DeckTablePanel extends JPanel implements CategoryObserver
         public void actionPerformed(ActionEvent e)
         {
             int nextLevel = m_currentDeckLevel + 1;
-            while (m_category.getCards(nextLevel).isEmpty())
+            while (m_category.getCardCount(nextLevel) == 0)
             {
                 nextLevel++;
             } 
@@ -94,7 +95,7 @@ public class DeckTablePanel extends JPanel implements CategoryObserver
         public void actionPerformed(ActionEvent e)
         {
             int prevLevel = m_currentDeckLevel - 1;
-            while (prevLevel >= 0 && m_category.getCards(prevLevel).isEmpty() )
+            while (prevLevel >= 0 && m_category.getCardCount(prevLevel) == 0)
             {
                 prevLevel--;
             }
@@ -188,6 +189,14 @@ public class DeckTablePanel extends JPanel implements CategoryObserver
         setDeck(m_currentDeckLevel);
     }
     
+    /* (non-Javadoc)
+     * @see jmemorize.core.CategoryObserver
+     */
+    public void onCardsEvent(int type, CardBatch batch)
+    {
+        setDeck(m_currentDeckLevel);
+    }
+    
     private void updateButtons()
     {
         m_previousDeckAction.setEnabled(m_currentDeckLevel >= 0);
@@ -603,8 +603,8 @@ public class LearnSettingPanels
     
     private void updateCardButtons()
     {
-        boolean enableUnlearned = !getSelectedCategory().getUnlearnedCards().isEmpty();
-        boolean enableExpired = !getSelectedCategory().getExpiredCards().isEmpty();
+        boolean enableUnlearned = getSelectedCategory().getCardCount(0) > 0;
+        boolean enableExpired = getSelectedCategory().getExpiredCardCount(new Date()) > 0;
         boolean enableAll = enableUnlearned && enableExpired;
         boolean enableSelected =  m_hasSelectedCards;
         
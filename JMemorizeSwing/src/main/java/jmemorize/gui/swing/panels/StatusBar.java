@@ -20,7 +20,7 @@ package jmemorize.gui.swing.panels;
 
 import java.awt.BorderLayout;
 import java.text.MessageFormat;
-import java.util.List;
+import java.util.Collection;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -70,7 +70,7 @@ public class StatusBar extends JPanel
      * 
      * @param cards The cards that are currently displayed.
      */
-    public void setCards(List<Card> cards)
+    public void setCards(Collection<Card> cards)
     {
         int unlearned = 0;
         int learned = 0;
@@ -26,12 +26,13 @@ public class TypeInQuiz implements Quiz
      */
     public float showAnswer()
     {
-        String actual = m_cardSide.getText().getUnformatted();
-        String expected = m_text.getUnformatted();
+        // case doesn't matter, accents do
+        String actual = FormattedText.foldCase(m_cardSide.getText().getUnformatted());
+        String expected = FormattedText.foldCase(m_text.getUnformatted());
         
         m_cardSide.setText(m_text);
         
-        if (expected.equalsIgnoreCase(actual))
+        if (expected.equals(actual))
             return 1f;
         
         return -1f;
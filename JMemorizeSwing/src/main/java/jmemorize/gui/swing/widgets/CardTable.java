@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.prefs.Preferences;
@@ -55,6 +56,7 @@ import javax.swing.table.TableColumnModel;
 
 import jmemorize.core.Card;
 import jmemorize.core.Category;
+import jmemorize.core.FormattedText;
 import jmemorize.core.LC;
 import jmemorize.core.Localization;
 import jmemorize.core.Model.ProgramEndObserver;
@@ -218,6 +220,18 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
 		 */
 		@Override
 		public int compare(final Card arg0, final Card arg1) {
+			// texts are ordered regardless of case and accents first
+			if (m_modelIndex == COLUMN_FRONTSIDE
+					|| m_modelIndex == COLUMN_BACKSIDE) {
+				final FormattedText text0 = getText(arg0);
+				final FormattedText text1 = getText(arg1);
+
+				final int order = text0.getFolded().compareTo(
+						text1.getFolded());
+				return order != 0 ? order : text0.getUnformatted().compareTo(
+						text1.getUnformatted());
+			}
+
 			final Comparable col0 = (Comparable) getValue(arg0, m_modelIndex);
 			final Comparable col1 = (Comparable) getValue(arg1, m_modelIndex);
 
@@ -227,6 +241,11 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
 				return col1 == null ? 1 : col0.compareTo(col1);
 			}
 		}
+
+		private FormattedText getText(final Card card) {
+			return m_modelIndex == COLUMN_FRONTSIDE ? card.getFrontSide()
+					.getText() : card.getBackSide().getText();
+		}
 	}
 
 	/**
@@ -252,7 +271,8 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
 				l.setHorizontalTextPosition(SwingConstants.LEFT);
 				final int modelColumn = table.convertColumnIndexToModel(column);
 
-				if (modelColumn == m_tableModel.getSortingColumn()) {
+				if (modelColumn == m_tableModel.getSortingColumn()
+						&& !m_tableModel.isRanked()) {
 					l.setIcon(m_tableModel.getSortingDir() == ViewModel.ASCENDING ? m_ascendingArrow
 							: m_descendingArrow);
 				} else {
@@ -279,6 +299,9 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
 		private int m_orderModelIndex;
 		private int m_orderDir;
 
+		// cards are shown in the given order instead of sorted, see setRanked
+		private boolean m_ranked;
+
 		public Category getCategory() {
 			return m_category;
 		}
@@ -291,6 +314,46 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
 			updateCardCountStatusBar();
 		}
 
+		/**
+		 * Adds cards to the shown ones without sorting all of them again, for
+		 * results that come in batches.
+		 */
+		public void addCards(final List<Card> cards) {
+			if (m_ranked) {
+				m_cards.addAll(cards);
+				fireTableDataChanged();
+
+				updateCardCountStatusBar();
+				return;
+			}
+
+			final List<Card> added = new ArrayList<Card>(cards);
+			final Comparator<Card> comparator = getComparator();
+			Collections.sort(added, comparator);
+
+			// merge the sorted batch into the sorted rows
+			final List<Card> merged = new ArrayList<Card>(m_cards.size()
+					+ added.size());
+			final Iterator<Card> it = m_cards.iterator();
+			Card next = it.hasNext() ? it.next() : null;
+			for (final Card card : added) {
+				while (next != null && comparator.compare(next, card) <= 0) {
+					merged.add(next);
+					next = it.hasNext() ? it.next() : null;
+				}
+				merged.add(card);
+			}
+			while (next != null) {
+				merged.add(next);
+				next = it.hasNext() ? it.next() : null;
+			}
+
+			m_cards = merged;
+			fireTableDataChanged();
+
+			updateCardCountStatusBar();
+		}
+
 		/**
 		 * Set the model column index and direction by which this table should
 		 * be sorted.
@@ -303,8 +366,27 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
 		public void setSorting(final int modelIndex, final int direction) {
 			m_orderModelIndex = modelIndex;
 			m_orderDir = direction;
+			m_ranked = false;
+
+			resort();
+		}
 
+		/**
+		 * Shows the cards in the order in which they are given, e.g. ranked
+		 * by how well they match a search, instead of sorting them. Sorting
+		 * by a column turns this off.
+		 */
+		public void setRanked(final boolean ranked) {
+			if (ranked == m_ranked)
+				return;
+
+			m_ranked = ranked;
 			resort();
+			getTableHeader().repaint();
+		}
+
+		public boolean isRanked() {
+			return m_ranked;
 		}
 
 		public List<Card> getCards() {
@@ -369,14 +451,19 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
 		private void resort() {
 			if (m_cards != null) // CHECK
 			{
-				final Comparator<Card> comparator = new CardComparator(
-						m_orderModelIndex);
-				Collections.sort(m_cards, m_orderDir == ASCENDING ? comparator
-						: new ReverseOrder<Card>(comparator));
+				if (!m_ranked)
+					Collections.sort(m_cards, getComparator());
 
 				fireTableDataChanged();
 			}
 		}
+
+		private Comparator<Card> getComparator() {
+			final Comparator<Card> comparator = new CardComparator(
+					m_orderModelIndex);
+			return m_orderDir == ASCENDING ? comparator
+					: new ReverseOrder<Card>(comparator);
+		}
 	}
 
 	// column enum